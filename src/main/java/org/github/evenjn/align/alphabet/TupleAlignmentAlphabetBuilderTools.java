@@ -1,6 +1,5 @@
 package org.github.evenjn.align.alphabet;
 
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Vector;
 import java.util.function.BiFunction;
@@ -12,7 +11,6 @@ import org.github.evenjn.align.Tael;
 import org.github.evenjn.align.graph.NotAlignableException;
 import org.github.evenjn.align.graph.TupleAlignmentGraph;
 import org.github.evenjn.align.graph.TupleAlignmentGraphFactory;
-import org.github.evenjn.align.graph.TupleAlignmentNode;
 import org.github.evenjn.knit.KnittingCursable;
 import org.github.evenjn.knit.KnittingTuple;
 import org.github.evenjn.knit.SafeProgressSpawner;
@@ -244,15 +242,11 @@ public class TupleAlignmentAlphabetBuilderTools {
 						min_below,
 						max_below );
 
-		Iterator<TupleAlignmentNode> forward = graph.forward( );
-		while ( forward.hasNext( ) ) {
-			TupleAlignmentNode node = forward.next( );
-			for ( int ie = 0; ie < node.number_of_incoming_edges; ie++ ) {
-				int index = node.incoming_edges[ie][2];
-				Tael<SymbolAbove, SymbolBelow> pair =
-						buffer.get( index - 1 );
-				result.add( pair );
-			}
+		for ( int edge = 0; edge < graph.number_of_edges; edge++ ) {
+			int index = graph.edge_symbol[edge];
+			Tael<SymbolAbove, SymbolBelow> pair =
+					buffer.get( index - 1 );
+			result.add( pair );
 		}
 		return result;
 	}
@@ -18,101 +18,160 @@
 package org.github.evenjn.align.graph;
 
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Set;
 
 /** A TupleAlignmentGraph represents alignments between two tuples A and B
- * (Above and Below). The graph consists of:
+ * (Above and Below). The graph is a directed acyclic graph (DAG)
+ * representing all the possible alignments.
  * 
- * The actual directed acyclic graph (DAG) reprsenting all the possible
- * alignments. The DAG is represented by a matrix (array of arrays).
+ * Each node represents a pair of prefixes, of length A above and B below.
+ * Nodes are identified by an index. Node 0 is the root, which represents
+ * the pair of empty prefixes. Nodes are sorted by A first and B second, so
+ * the last node represents the pair of whole tuples, and the source of an
+ * edge always comes before its target.
  * 
- * The array has as many sub-arrays (rows) as there are elements Above.
- * Each sub-array has as many cells (columns) as there are elements Below.
+ * The graph is stored in compressed sparse row (CSR) format, using flat
+ * arrays:
  * 
- * Each cell is a pointer to a TupleAlignmentNode (or null).
+ * {@code node_a[n]} and {@code node_b[n]} are the coordinates of node n.
  * 
- * Each TupleAlignmentNode represents a node in the graph, and contains
- * information about incoming edges.
+ * The edges entering node n are those with index from
+ * {@code edge_offset[n]} (included) to {@code edge_offset[n+1]} (excluded).
  * 
+ * {@code edge_source[e]} is the index of the node edge e comes from.
+ * 
+ * {@code edge_symbol[e]} is a unique id that identifies the pair [p q] where
+ * p is a tuple of symbols above and q is a tuple of symbols below, such that
+ * {@code Above[0..x] + p = Above[0..a]} and
+ * {@code Below[0..y] + q = Below[0..b]}, where [x y] are the coordinates of
+ * the source and [a b] are the coordinates of the target.
+ * 
+ * Arrays may be longer than necessary: only the first
+ * {@code number_of_nodes} (respectively {@code number_of_edges}) elements
+ * are meaningful. The arrays must not be modified.
  */
 public class TupleAlignmentGraph {
 
-	public TupleAlignmentGraph(TupleAlignmentNode[][] matrix, int a, int b) {
-		this.matrix = matrix;
-		this.above = a;
-		this.below = b;
+	public TupleAlignmentGraph(
+			int la,
+			int lb,
+			int number_of_nodes,
+			int[] node_a,
+			int[] node_b,
+			int[] edge_offset,
+			int number_of_edges,
+			int[] edge_source,
+			int[] edge_symbol) {
+		this.above = la;
+		this.below = lb;
+		this.number_of_nodes = number_of_nodes;
+		this.node_a = node_a;
+		this.node_b = node_b;
+		this.edge_offset = edge_offset;
+		this.number_of_edges = number_of_edges;
+		this.edge_source = edge_source;
+		this.edge_symbol = edge_symbol;
 	}
-	
+
 	/**
-	 * This function iterates over all the cells of the matrix except [0 0].
-	 * It populates the alphabet of actually occurring atomic alignments.
-	 * It populates the list of nodes. 
+	 * The number of nodes, including the root.
 	 */
-	private void computeNodesList() {
-		int la = la();
-		int lb = lb();
-		for (int a = 0; a <= la; a++) {
-			for ( int b = (a == 0 ? 1 : 0); b <= lb; b++) {
-				TupleAlignmentNode cell =  matrix[a][b];
-				if (cell == null ) {
-					/* this cell is not in any path */
-					continue;
-				}
-				cell.a = a;
-				cell.b = b;
-				for (int e = 0; e < cell.number_of_incoming_edges; e++) {
-					encout_combinations.add( cell.incoming_edges[e][2] );
-				}
-				nodes.add( cell );
-			}
-		}
-	}
+	public final int number_of_nodes;
 
-	final TupleAlignmentNode[][] matrix;
-	
-	private final HashSet<Integer> encout_combinations = new HashSet<>( );
+	/**
+	 * The row-index of each node.
+	 */
+	public final int[] node_a;
 
-	public Set<Integer> combinations() {
-		if (encout_combinations.isEmpty( )) {
-			computeNodesList( );
-		}
-		return encout_combinations;
-	}
+	/**
+	 * The column-index of each node.
+	 */
+	public final int[] node_b;
+
+	/**
+	 * The index of the first edge entering each node, plus one more element
+	 * set to the number of edges.
+	 */
+	public final int[] edge_offset;
+
+	/**
+	 * The number of edges.
+	 */
+	public final int number_of_edges;
+
+	/**
+	 * The index of the node each edge comes from.
+	 */
+	public final int[] edge_source;
+
+	/**
+	 * The encoded pair of tuples associated with each edge.
+	 */
+	public final int[] edge_symbol;
 
-	private final LinkedList<TupleAlignmentNode> nodes = new LinkedList<>( );
 	private final int above;
+
 	private final int below;
-	
-	public Iterator<TupleAlignmentNode> backward() {
-		if (nodes.isEmpty( )) {
-			computeNodesList();
+
+	private Set<Integer> encout_combinations = null;
+
+	/**
+	 * @return The set of encoded pairs associated with at least one edge.
+	 */
+	public Set<Integer> combinations( ) {
+		if ( encout_combinations == null ) {
+			HashSet<Integer> combinations = new HashSet<>( );
+			for ( int e = 0; e < number_of_edges; e++ ) {
+				combinations.add( edge_symbol[e] );
+			}
+			encout_combinations = combinations;
 		}
-		return nodes.descendingIterator( );
+		return encout_combinations;
 	}
-	
+
 	/**
-	 * @return An iterator over all the nodes of this graph, starting
-	 * with all the nodes of the first row (from the first column to the last one),
-	 * then the nodes of the second row, etc.
+	 * @return The index of the root node.
 	 */
-	public Iterator<TupleAlignmentNode> forward() {
-		if (nodes.isEmpty( )) {
-			computeNodesList();
-		}
-		return nodes.iterator( );
+	public int root( ) {
+		return 0;
 	}
 
-	public TupleAlignmentNode get(int a, int b) {
-		return matrix[a][b];
+	/**
+	 * @return The index of the node representing the whole tuples.
+	 */
+	public int last( ) {
+		return number_of_nodes - 1;
 	}
-	
-	public int la() {
+
+	/**
+	 * @return The index of the node with coordinates [a b], or -1 when there
+	 *         is no such node.
+	 */
+	public int node( int a, int b ) {
+		int low = 0;
+		int high = number_of_nodes - 1;
+		while ( low <= high ) {
+			final int middle = ( low + high ) >>> 1;
+			final int ma = node_a[middle];
+			final int mb = node_b[middle];
+			if ( ma < a || ( ma == a && mb < b ) ) {
+				low = middle + 1;
+			}
+			else if ( ma == a && mb == b ) {
+				return middle;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return -1;
+	}
+
+	public int la( ) {
 		return above;
 	}
-	
-	public int lb() {
+
+	public int lb( ) {
 		return below;
 	}
 
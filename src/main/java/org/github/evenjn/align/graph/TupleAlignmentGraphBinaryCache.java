@@ -0,0 +1,294 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.align.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.github.evenjn.lang.Rook;
+import org.github.evenjn.yarn.Cursable;
+import org.github.evenjn.yarn.Cursor;
+import org.github.evenjn.yarn.EndOfCursorException;
+
+/**
+ * A file of tuple alignment graphs in binary format.
+ * 
+ * The file starts with a header of six little-endian 32-bit integers: a magic
+ * number, the format version, the length of the longest tuple at the front,
+ * the length of the longest tuple at the back, the maximum number of edges in
+ * a graph and the number of graphs.
+ * 
+ * Each graph follows as a record of 32-bit integers: la, lb, the number of
+ * nodes n, the number of edges e, then the arrays node_a[n], node_b[n],
+ * edge_offset[n+1], edge_source[e] and edge_symbol[e] of the graph.
+ * 
+ * The file is read through memory-mapped buffers, and each graph is decoded
+ * only when the cursor reaches it, with bulk copies of its arrays. Reading
+ * the graphs involves no parsing.
+ */
+public class TupleAlignmentGraphBinaryCache
+		implements
+		Cursable<TupleAlignmentGraph> {
+
+	private static final int magic = 0x54414731;
+
+	private static final int version = 1;
+
+	private static final int header_size = 6 * 4;
+
+	private static final int record_header_size = 4 * 4;
+
+	/*
+	 * The size of the portion of file mapped at once. A record larger than
+	 * this is mapped on its own.
+	 */
+	private static final long window_size = 1L << 28;
+
+	private final Path path;
+
+	private final int max_length_front;
+
+	private final int max_length_back;
+
+	private final int max_number_of_edges;
+
+	private final int number_of_graphs;
+
+	private TupleAlignmentGraphBinaryCache(
+			Path path,
+			int max_length_front,
+			int max_length_back,
+			int max_number_of_edges,
+			int number_of_graphs) {
+		this.path = path;
+		this.max_length_front = max_length_front;
+		this.max_length_back = max_length_back;
+		this.max_number_of_edges = max_number_of_edges;
+		this.number_of_graphs = number_of_graphs;
+	}
+
+	public int getMaxLenghtFront( ) {
+		return max_length_front;
+	}
+
+	public int getMaxLenghtBack( ) {
+		return max_length_back;
+	}
+
+	public int getMaxNumberOfEdges( ) {
+		return max_number_of_edges;
+	}
+
+	public int size( ) {
+		return number_of_graphs;
+	}
+
+	/**
+	 * Reads the header of the file.
+	 */
+	public static TupleAlignmentGraphBinaryCache open( Path path )
+			throws IOException {
+		try ( FileChannel channel =
+				FileChannel.open( path, StandardOpenOption.READ ) ) {
+			ByteBuffer header =
+					ByteBuffer.allocate( header_size ).order( ByteOrder.LITTLE_ENDIAN );
+			while ( header.hasRemaining( ) ) {
+				if ( channel.read( header ) < 0 ) {
+					throw new IOException( "Truncated graph file: " + path );
+				}
+			}
+			header.flip( );
+			if ( header.getInt( ) != magic ) {
+				throw new IOException( "Not a graph file: " + path );
+			}
+			if ( header.getInt( ) != version ) {
+				throw new IOException( "Unsupported graph file version: " + path );
+			}
+			final int max_length_front = header.getInt( );
+			final int max_length_back = header.getInt( );
+			final int max_number_of_edges = header.getInt( );
+			final int number_of_graphs = header.getInt( );
+			return new TupleAlignmentGraphBinaryCache( path, max_length_front,
+					max_length_back, max_number_of_edges, number_of_graphs );
+		}
+	}
+
+	/**
+	 * Writes the graphs to the file, replacing its content.
+	 */
+	public static void write(
+			Path path,
+			int max_length_front,
+			int max_length_back,
+			int max_number_of_edges,
+			Iterable<TupleAlignmentGraph> graphs )
+			throws IOException {
+		try ( FileChannel channel = FileChannel.open( path,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE ) ) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect( 1 << 20 )
+					.order( ByteOrder.LITTLE_ENDIAN );
+			buffer.position( header_size );
+			int number_of_graphs = 0;
+			for ( TupleAlignmentGraph g : graphs ) {
+				final int n = g.number_of_nodes;
+				final int e = g.number_of_edges;
+				final long size = record_header_size + 4L * ( 3L * n + 1 + 2L * e );
+				if ( buffer.remaining( ) < size ) {
+					drain( channel, buffer );
+					if ( buffer.capacity( ) < size ) {
+						buffer = ByteBuffer.allocateDirect( Math.toIntExact( size ) )
+								.order( ByteOrder.LITTLE_ENDIAN );
+					}
+				}
+				buffer.putInt( g.la( ) );
+				buffer.putInt( g.lb( ) );
+				buffer.putInt( n );
+				buffer.putInt( e );
+				put( buffer, g.node_a, n );
+				put( buffer, g.node_b, n );
+				put( buffer, g.edge_offset, n + 1 );
+				put( buffer, g.edge_source, e );
+				put( buffer, g.edge_symbol, e );
+				number_of_graphs++;
+			}
+			drain( channel, buffer );
+
+			buffer.clear( );
+			buffer.putInt( magic );
+			buffer.putInt( version );
+			buffer.putInt( max_length_front );
+			buffer.putInt( max_length_back );
+			buffer.putInt( max_number_of_edges );
+			buffer.putInt( number_of_graphs );
+			buffer.flip( );
+			long position = 0;
+			while ( buffer.hasRemaining( ) ) {
+				position += channel.write( buffer, position );
+			}
+		}
+	}
+
+	private static void put( ByteBuffer buffer, int[] array, int length ) {
+		buffer.asIntBuffer( ).put( array, 0, length );
+		buffer.position( buffer.position( ) + 4 * length );
+	}
+
+	private static void drain( FileChannel channel, ByteBuffer buffer )
+			throws IOException {
+		buffer.flip( );
+		while ( buffer.hasRemaining( ) ) {
+			channel.write( buffer );
+		}
+		buffer.clear( );
+	}
+
+	@Override
+	public Cursor<TupleAlignmentGraph> pull( Rook rook ) {
+		final FileChannel channel;
+		final long file_size;
+		try {
+			channel = rook.hook( FileChannel.open( path, StandardOpenOption.READ ) );
+			file_size = channel.size( );
+		}
+		catch ( IOException e ) {
+			throw new RuntimeException( e );
+		}
+		return new Cursor<TupleAlignmentGraph>( ) {
+
+			private MappedByteBuffer window;
+
+			private long window_start = 0;
+
+			private long window_end = 0;
+
+			private long position = header_size;
+
+			private int graphs_read = 0;
+
+			@Override
+			public TupleAlignmentGraph next( )
+					throws EndOfCursorException {
+				if ( graphs_read >= number_of_graphs ) {
+					throw EndOfCursorException.neo( );
+				}
+				ensureMapped( record_header_size );
+				int offset = (int) ( position - window_start );
+				final int la = window.getInt( offset );
+				final int lb = window.getInt( offset + 4 );
+				final int n = window.getInt( offset + 8 );
+				final int e = window.getInt( offset + 12 );
+				final long size = record_header_size + 4L * ( 3L * n + 1 + 2L * e );
+				ensureMapped( size );
+				offset = (int) ( position - window_start ) + record_header_size;
+				final int[] node_a = new int[n];
+				final int[] node_b = new int[n];
+				final int[] edge_offset = new int[n + 1];
+				final int[] edge_source = new int[e];
+				final int[] edge_symbol = new int[e];
+				offset = get( offset, node_a );
+				offset = get( offset, node_b );
+				offset = get( offset, edge_offset );
+				offset = get( offset, edge_source );
+				get( offset, edge_symbol );
+				position += size;
+				graphs_read++;
+				return new TupleAlignmentGraph( la, lb, n, node_a, node_b,
+						edge_offset, e, edge_source, edge_symbol );
+			}
+
+			private int get( int offset, int[] array ) {
+				window.position( offset );
+				window.asIntBuffer( ).get( array );
+				return offset + 4 * array.length;
+			}
+
+			/*
+			 * Makes sure that the next size bytes from the current position are
+			 * mapped.
+			 */
+			private void ensureMapped( long size ) {
+				if ( position + size <= window_end ) {
+					return;
+				}
+				if ( position + size > file_size ) {
+					throw new IllegalStateException(
+							"Truncated graph file: " + path );
+				}
+				final long length =
+						Math.min( file_size - position, Math.max( size, window_size ) );
+				try {
+					window = channel.map( FileChannel.MapMode.READ_ONLY, position,
+							length );
+				}
+				catch ( IOException e ) {
+					throw new RuntimeException( e );
+				}
+				window.order( ByteOrder.LITTLE_ENDIAN );
+				window_start = position;
+				window_end = position + length;
+			}
+		};
+	}
+}
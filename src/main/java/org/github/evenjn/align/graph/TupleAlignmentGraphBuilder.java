@@ -0,0 +1,153 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.align.graph;
+
+import java.util.Arrays;
+
+/**
+ * Collects nodes and edges of a tuple alignment graph, and builds the graph
+ * in compressed sparse row format.
+ * 
+ * Edges must be added grouped by target node, with target nodes sorted by A
+ * first and B second. The root (node [0 0]) is created automatically. A
+ * builder can be reused after calling {@link #build()}.
+ */
+class TupleAlignmentGraphBuilder {
+
+	private int[] node_a = new int[16];
+
+	private int[] node_b = new int[16];
+
+	private int[] edge_offset = new int[17];
+
+	private int[] edge_source = new int[16];
+
+	private int[] edge_symbol = new int[16];
+
+	private int number_of_nodes;
+
+	private int number_of_edges;
+
+	/*
+	 * [a b] -> the index of the node, or -1.
+	 */
+	private int[][] index = new int[0][];
+
+	TupleAlignmentGraphBuilder() {
+		reset( );
+	}
+
+	private void reset( ) {
+		for ( int n = 0; n < number_of_nodes; n++ ) {
+			index[node_a[n]][node_b[n]] = -1;
+		}
+		number_of_nodes = 0;
+		number_of_edges = 0;
+		addNode( 0, 0 );
+	}
+
+	private void addNode( int a, int b ) {
+		if ( a >= index.length || b >= index[0].length ) {
+			growIndex( Math.max( a + 1, index.length ),
+					Math.max( b + 1, index.length == 0 ? 0 : index[0].length ) );
+		}
+		if ( number_of_nodes == node_a.length ) {
+			final int capacity = 2 * node_a.length;
+			node_a = Arrays.copyOf( node_a, capacity );
+			node_b = Arrays.copyOf( node_b, capacity );
+			edge_offset = Arrays.copyOf( edge_offset, capacity + 1 );
+		}
+		node_a[number_of_nodes] = a;
+		node_b[number_of_nodes] = b;
+		edge_offset[number_of_nodes] = number_of_edges;
+		index[a][b] = number_of_nodes;
+		number_of_nodes++;
+	}
+
+	private void growIndex( int rows, int columns ) {
+		int[][] new_index = new int[rows][columns];
+		for ( int a = 0; a < rows; a++ ) {
+			Arrays.fill( new_index[a], -1 );
+		}
+		for ( int n = 0; n < number_of_nodes; n++ ) {
+			new_index[node_a[n]][node_b[n]] = n;
+		}
+		index = new_index;
+	}
+
+	/**
+	 * Adds an edge from the node [x y] to the node [a b], associated with the
+	 * given encoded pair.
+	 * 
+	 * @throws IllegalArgumentException
+	 *           when the edges are not sorted by target, or when the source node
+	 *           does not exist.
+	 */
+	void edge( int a, int b, int x, int y, int symbol ) {
+		final int last = number_of_nodes - 1;
+		if ( a != node_a[last] || b != node_b[last] ) {
+			if ( a < node_a[last] || ( a == node_a[last] && b < node_b[last] ) ) {
+				throw new IllegalArgumentException(
+						"Edges must be sorted by target node." );
+			}
+			addNode( a, b );
+		}
+		final int source =
+				( x < index.length && y < index[x].length ) ? index[x][y] : -1;
+		if ( source == -1 || ( x == a && y == b ) ) {
+			throw new IllegalArgumentException(
+					"Edge from [" + x + " " + y + "] to [" + a + " " + b
+							+ "] has no valid source." );
+		}
+		if ( number_of_edges == edge_source.length ) {
+			edge_source = Arrays.copyOf( edge_source, 2 * edge_source.length );
+			edge_symbol = Arrays.copyOf( edge_symbol, 2 * edge_symbol.length );
+		}
+		edge_source[number_of_edges] = source;
+		edge_symbol[number_of_edges] = symbol;
+		number_of_edges++;
+	}
+
+	/**
+	 * @return true when no edge was added since the last build.
+	 */
+	boolean isEmpty( ) {
+		return number_of_edges == 0;
+	}
+
+	/**
+	 * Builds a graph with the nodes and edges added so far, and resets the
+	 * builder. The last node added represents the whole tuples.
+	 */
+	TupleAlignmentGraph build( ) {
+		edge_offset[number_of_nodes] = number_of_edges;
+		final int last = number_of_nodes - 1;
+		TupleAlignmentGraph graph = new TupleAlignmentGraph(
+				node_a[last],
+				node_b[last],
+				number_of_nodes,
+				Arrays.copyOf( node_a, number_of_nodes ),
+				Arrays.copyOf( node_b, number_of_nodes ),
+				Arrays.copyOf( edge_offset, number_of_nodes + 1 ),
+				number_of_edges,
+				Arrays.copyOf( edge_source, number_of_edges ),
+				Arrays.copyOf( edge_symbol, number_of_edges ) );
+		reset( );
+		return graph;
+	}
+}
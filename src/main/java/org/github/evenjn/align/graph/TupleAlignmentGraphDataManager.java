@@ -17,7 +17,8 @@
  */
 package org.github.evenjn.align.graph;
 
-import java.util.Iterator;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -66,6 +67,10 @@ import org.github.evenjn.yarn.OptionalMap;
  * In this case, the data is transformed and cached. Then data is loaded from
  * cache and passed over.
  * 
+ * The same four configurations apply to the binary writer and reader, which
+ * use the format of {@link TupleAlignmentGraphBinaryCache}. When a binary
+ * reader is set, graphs are loaded from it rather than from the text reader.
+ * 
  */
 public class TupleAlignmentGraphDataManager<Above, Below> {
 
@@ -82,12 +87,27 @@ public class TupleAlignmentGraphDataManager<Above, Below> {
 			int max_below,
 			Ring<Consumer<String>> putter_coalignment_graphs,
 			Cursable<String> reader_coalignment_graphs) {
+		this( min_above, max_above, min_below, max_below,
+				putter_coalignment_graphs, reader_coalignment_graphs, null, null );
+	}
+
+	public TupleAlignmentGraphDataManager(
+			int min_above,
+			int max_above,
+			int min_below,
+			int max_below,
+			Ring<Consumer<String>> putter_coalignment_graphs,
+			Cursable<String> reader_coalignment_graphs,
+			Path writer_binary_graphs,
+			Path reader_binary_graphs) {
 		this.min_above = min_above;
 		this.max_above = max_above;
 		this.min_below = min_below;
 		this.max_below = max_below;
 		this.putter_coalignment_graphs = putter_coalignment_graphs;
 		this.reader_coalignment_graphs = reader_coalignment_graphs;
+		this.writer_binary_graphs = writer_binary_graphs;
+		this.reader_binary_graphs = reader_binary_graphs;
 	}
 
 	private final int min_above;
@@ -102,6 +122,10 @@ public class TupleAlignmentGraphDataManager<Above, Below> {
 
 	private final Cursable<String> reader_coalignment_graphs;
 
+	private final Path writer_binary_graphs;
+
+	private final Path reader_binary_graphs;
+
 	private KnittingCursable<TupleAlignmentGraph> exposed_graphs;
 
 	public KnittingCursable<TupleAlignmentGraph> getGraphs( ) {
@@ -168,14 +192,7 @@ public class TupleAlignmentGraphDataManager<Above, Below> {
 					record_max_length_back = lb;
 				}
 
-				int current_number_of_edges = 0;
-				Iterator<TupleAlignmentNode> iter = g.forward( );
-				while ( iter.hasNext( ) ) {
-					TupleAlignmentNode node = iter.next( );
-					int no_ie = node.number_of_incoming_edges;
-					current_number_of_edges = current_number_of_edges + no_ie;
-
-				}
+				int current_number_of_edges = g.number_of_edges;
 				if ( record_max_number_of_edges < current_number_of_edges ) {
 					record_max_number_of_edges = current_number_of_edges;
 				}
@@ -215,14 +232,17 @@ public class TupleAlignmentGraphDataManager<Above, Below> {
 				};
 
 		if ( null != putter_coalignment_graphs
-				|| null == reader_coalignment_graphs ) {
+				|| null != writer_binary_graphs
+				|| ( null == reader_coalignment_graphs
+						&& null == reader_binary_graphs ) ) {
 			/*
 			 * re-compute the coalignment graphs.
 			 * 
 			 * This is a lazy iterator, so the graphs are computed on demand.
 			 */
 
-			if ( null != putter_coalignment_graphs ) {
+			if ( null != putter_coalignment_graphs
+					|| null != writer_binary_graphs ) {
 
 				progress.info( "Computing dataset size before computing limits." );
 				int progress_target = 0;
@@ -230,36 +250,77 @@ public class TupleAlignmentGraphDataManager<Above, Below> {
 					Progress spawn = progress.spawn( rook2, "computing dataset size" );
 					progress_target = data.peek( x -> spawn.step( 1 ) ).count( );
 				}
-				progress.target( 2 * progress_target );
+				int passes = 1;
+				if ( null != putter_coalignment_graphs ) {
+					passes++;
+				}
+				if ( null != writer_binary_graphs ) {
+					passes++;
+				}
+				progress.target( passes * progress_target );
 
 				progress.info( "Computing limits." );
 				computeLimits( progress,
 						data.peek( x -> progress.step( 1 ) ).flatmapOptional( optmap ) );
 
-				progress.info( "Caching graphs." );
 				KnittingCursable<TupleAlignmentGraph> graphs_to_write = data
 						.peek( x -> progress.step( 1 ) )
 						.flatmapOptional( optmap );
 
-				StringBuilder header = new StringBuilder( );
-				header.append( record_max_length_front );
-				header.append( "," );
-				header.append( record_max_length_back );
-				header.append( "," );
-				header.append( record_max_number_of_edges );
-				try ( BasicRook rook = new BasicRook( ) ) {
-					KnittingCursor.on( header.toString( ) ).append(
-							graphs_to_write
-									.pull( rook )
-									.flatmapIterable(
-											x -> new TupleAlignmentGraphSerializer( x ) ) )
-							.consume( putter_coalignment_graphs );
+				if ( null != putter_coalignment_graphs ) {
+					progress.info( "Caching graphs." );
+					StringBuilder header = new StringBuilder( );
+					header.append( record_max_length_front );
+					header.append( "," );
+					header.append( record_max_length_back );
+					header.append( "," );
+					header.append( record_max_number_of_edges );
+					try ( BasicRook rook = new BasicRook( ) ) {
+						KnittingCursor.on( header.toString( ) ).append(
+								graphs_to_write
+										.pull( rook )
+										.flatmapIterable(
+												x -> new TupleAlignmentGraphSerializer( x ) ) )
+								.consume( putter_coalignment_graphs );
+					}
+				}
+
+				if ( null != writer_binary_graphs ) {
+					progress.info( "Caching graphs in binary format." );
+					try ( BasicRook rook = new BasicRook( ) ) {
+						TupleAlignmentGraphBinaryCache.write(
+								writer_binary_graphs,
+								record_max_length_front,
+								record_max_length_back,
+								record_max_number_of_edges,
+								graphs_to_write.pull( rook ).once( ) );
+					}
+					catch ( IOException e ) {
+						throw new RuntimeException( e );
+					}
 				}
 				limits_are_computed = true;
 			}
 		}
 
-		if ( null != reader_coalignment_graphs ) {
+		if ( null != reader_binary_graphs ) {
+			TupleAlignmentGraphBinaryCache cache;
+			try {
+				cache = TupleAlignmentGraphBinaryCache.open( reader_binary_graphs );
+			}
+			catch ( IOException e ) {
+				throw new RuntimeException( e );
+			}
+			record_max_length_front = cache.getMaxLenghtFront( );
+			record_max_length_back = cache.getMaxLenghtBack( );
+			record_max_number_of_edges = cache.getMaxNumberOfEdges( );
+			limits_are_computed = true;
+			/*
+			 * read them from the memory-mapped file.
+			 */
+			return KnittingCursable.wrap( cache );
+		}
+		else if ( null != reader_coalignment_graphs ) {
 
 			Pattern splitter = Pattern.compile( "," );
 
@@ -276,9 +337,7 @@ public class TupleAlignmentGraphDataManager<Above, Below> {
 			return KnittingCursable
 					.wrap( reader_coalignment_graphs )
 					.headless( 1 )
-					.purlOptional( ( ) -> new TupleAlignmentGraphDeserializer(
-							record_max_length_front,
-							record_max_length_back ) );
+					.purlOptional( ( ) -> new TupleAlignmentGraphDeserializer( ) );
 		}
 		else {
 			if ( !limits_are_computed ) {
@@ -17,6 +17,7 @@
  */
 package org.github.evenjn.align.graph;
 
+import java.nio.file.Path;
 import java.util.function.Consumer;
 
 import org.github.evenjn.lang.Ring;
@@ -36,6 +37,10 @@ public class TupleAlignmentGraphDataManagerBlueprint<I, O> {
 
 	private Cursable<String> reader_coalignment_graphs;
 
+	private Path writer_binary_graphs;
+
+	private Path reader_binary_graphs;
+
 	public TupleAlignmentGraphDataManagerBlueprint<I, O>
 			setMinMaxBelow( int min, int max ) {
 		this.min_below = min;
@@ -64,6 +69,26 @@ public class TupleAlignmentGraphDataManagerBlueprint<I, O> {
 		return this;
 	}
 
+	/**
+	 * Reads the graphs from a file in the format of
+	 * {@link TupleAlignmentGraphBinaryCache}.
+	 */
+	public TupleAlignmentGraphDataManagerBlueprint<I, O>
+			readBinaryTupleAlignmentGraphs( Path binary_file ) {
+		this.reader_binary_graphs = binary_file;
+		return this;
+	}
+
+	/**
+	 * Writes the graphs to a file in the format of
+	 * {@link TupleAlignmentGraphBinaryCache}.
+	 */
+	public TupleAlignmentGraphDataManagerBlueprint<I, O>
+			writeBinaryTupleAlignmentGraphs( Path binary_file ) {
+		this.writer_binary_graphs = binary_file;
+		return this;
+	}
+
 	public TupleAlignmentGraphDataManager<I, O> create( ) {
 		return new TupleAlignmentGraphDataManager<>(
 				min_above,
@@ -71,6 +96,8 @@ public class TupleAlignmentGraphDataManagerBlueprint<I, O> {
 				min_below,
 				max_below,
 				putter_coalignment_graphs,
-				reader_coalignment_graphs );
+				reader_coalignment_graphs,
+				writer_binary_graphs,
+				reader_binary_graphs );
 	}
 }
@@ -147,26 +147,25 @@ public class TupleAlignmentGraphFactory {
 		final int max_number_of_edges = (1+max_below) * (1+max_above);
 
 		/* Indexing may be confusing.
-		 * Cell in position [4 7] the matrix holds a node representing
-		 * information about the prefix of length 4 above and length 7 below.
+		 * Cell in position [4 7] the matrix holds the edges entering the node
+		 * representing information about the prefix of length 4 above and
+		 * length 7 below. Each edge takes three integers: x, y and encoded.
 		 */
-		TupleAlignmentNode[][] matrix =
-				new TupleAlignmentNode[1 + labove][1 + lbelow];
+		int[][][] matrix = new int[1 + labove][1 + lbelow][];
+		int[][] number_of_incoming_edges = new int[1 + labove][1 + lbelow];
 		boolean[][] reachable = new boolean[1 + labove][1 + lbelow];
 
 		/*
 		 * Cell in position [0 0] exists and has a purpose.
 		 */
-		TupleAlignmentNode root = new TupleAlignmentNode( );
-		matrix[0][0] = root;
+		matrix[0][0] = new int[0];
 
 		// we fill in the structure
 
 		for ( int a = 0; a <= labove; a++ ) {
 			for ( int b = 0; b <= lbelow; b++ ) {
 				
-				TupleAlignmentNode source_node = matrix[a][b];
-				if ( source_node == null ) {
+				if ( matrix[a][b] == null ) {
 					continue;
 				}
 
@@ -193,20 +192,19 @@ public class TupleAlignmentGraphFactory {
 							continue;
 						}
 
-						TupleAlignmentNode target_node = matrix[q][z];
-						if ( target_node == null ) {
-							target_node = new TupleAlignmentNode( );
-							target_node.incoming_edges = new int[max_number_of_edges][3];
-							matrix[q][z] = target_node;
+						int[] target_edges = matrix[q][z];
+						if ( target_edges == null ) {
+							target_edges = new int[3 * max_number_of_edges];
+							matrix[q][z] = target_edges;
 						}
 
-						int edges = target_node.number_of_incoming_edges;
+						int edges = number_of_incoming_edges[q][z];
 
-						target_node.incoming_edges[edges][0] = a;
-						target_node.incoming_edges[edges][1] = b;
-						target_node.incoming_edges[edges][2] = enc;
+						target_edges[3 * edges] = a;
+						target_edges[3 * edges + 1] = b;
+						target_edges[3 * edges + 2] = enc;
 
-						target_node.number_of_incoming_edges = edges + 1;
+						number_of_incoming_edges[q][z] = edges + 1;
 					}
 				}
 			}
@@ -217,32 +215,42 @@ public class TupleAlignmentGraphFactory {
 			throw NotAlignableException.neo;
 		}
 
+		/*
+		 * Only the nodes on some path from the root to the last node are kept.
+		 */
 		reachable[labove][lbelow] = true;
 
 		for ( int a = labove; a >= 0; a-- ) {
 			for ( int b = lbelow; b >= 0; b-- ) {
-				TupleAlignmentNode node = matrix[a][b];
-
-				if ( node == null ) {
+				if ( matrix[a][b] == null || !reachable[a][b] ) {
 					continue;
 				}
-				if ( !reachable[a][b] ) {
-					matrix[a][b] = null;
+				final int[] node_edges = matrix[a][b];
+				final int edges = number_of_incoming_edges[a][b];
+				for ( int e = 0; e < edges; e++ ) {
+					reachable[node_edges[3 * e]][node_edges[3 * e + 1]] = true;
 				}
+			}
+		}
 
-				int edges = node.number_of_incoming_edges;
-
+		TupleAlignmentGraphBuilder builder = new TupleAlignmentGraphBuilder( );
+		for ( int a = 0; a <= labove; a++ ) {
+			for ( int b = ( a == 0 ? 1 : 0 ); b <= lbelow; b++ ) {
+				if ( matrix[a][b] == null || !reachable[a][b] ) {
+					continue;
+				}
+				final int[] node_edges = matrix[a][b];
+				final int edges = number_of_incoming_edges[a][b];
 				for ( int e = 0; e < edges; e++ ) {
-
-					int x = node.incoming_edges[e][0];
-					int y = node.incoming_edges[e][1];
-
-					reachable[x][y] = true;
+					builder.edge( a, b,
+							node_edges[3 * e],
+							node_edges[3 * e + 1],
+							node_edges[3 * e + 2] );
 				}
 			}
 		}
-		
-		TupleAlignmentGraph graph = new TupleAlignmentGraph( matrix, labove, lbelow );
+
+		TupleAlignmentGraph graph = builder.build( );
 
 		return graph;
 	}
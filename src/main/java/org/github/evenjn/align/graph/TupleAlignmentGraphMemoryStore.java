@@ -0,0 +1,146 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.align.graph;
+
+import java.util.Arrays;
+
+import org.github.evenjn.knit.KnittingCursable;
+import org.github.evenjn.lang.BasicRook;
+import org.github.evenjn.lang.Rook;
+import org.github.evenjn.yarn.Cursable;
+import org.github.evenjn.yarn.Cursor;
+import org.github.evenjn.yarn.EndOfCursorException;
+
+/**
+ * Keeps a dataset of tuple alignment graphs in memory, so that it can be
+ * iterated many times without reading or computing the graphs again.
+ * 
+ * Graphs are stored with arrays trimmed to their exact size.
+ */
+public class TupleAlignmentGraphMemoryStore
+		implements
+		Cursable<TupleAlignmentGraph> {
+
+	private final TupleAlignmentGraph[] graphs;
+
+	private final int size;
+
+	private final long footprint;
+
+	private TupleAlignmentGraphMemoryStore(
+			TupleAlignmentGraph[] graphs,
+			int size,
+			long footprint) {
+		this.graphs = graphs;
+		this.size = size;
+		this.footprint = footprint;
+	}
+
+	public int size( ) {
+		return size;
+	}
+
+	/**
+	 * @return An estimate of the number of bytes taken by the graphs.
+	 */
+	public long footprint( ) {
+		return footprint;
+	}
+
+	/**
+	 * Pulls all the graphs once, and keeps them in memory.
+	 * 
+	 * @param memory_budget
+	 *          The maximum number of bytes the graphs may take.
+	 * @return The store, or null when the graphs do not fit in the budget.
+	 */
+	public static TupleAlignmentGraphMemoryStore load(
+			Cursable<TupleAlignmentGraph> data,
+			long memory_budget ) {
+		TupleAlignmentGraph[] graphs = new TupleAlignmentGraph[1024];
+		int size = 0;
+		long footprint = 0;
+		try ( BasicRook rook = new BasicRook( ) ) {
+			for ( TupleAlignmentGraph g : KnittingCursable.wrap( data )
+					.pull( rook ).once( ) ) {
+				final TupleAlignmentGraph packed = pack( g );
+				footprint += footprint( packed );
+				if ( footprint > memory_budget ) {
+					return null;
+				}
+				if ( size == graphs.length ) {
+					graphs = Arrays.copyOf( graphs, 2 * size );
+				}
+				graphs[size++] = packed;
+			}
+		}
+		return new TupleAlignmentGraphMemoryStore( graphs, size, footprint );
+	}
+
+	/*
+	 * Returns the graph itself when its arrays have the exact size, or a copy
+	 * with trimmed arrays otherwise.
+	 */
+	private static TupleAlignmentGraph pack( TupleAlignmentGraph g ) {
+		final int n = g.number_of_nodes;
+		final int e = g.number_of_edges;
+		if ( g.node_a.length == n
+				&& g.node_b.length == n
+				&& g.edge_offset.length == n + 1
+				&& g.edge_source.length == e
+				&& g.edge_symbol.length == e ) {
+			return g;
+		}
+		return new TupleAlignmentGraph(
+				g.la( ),
+				g.lb( ),
+				n,
+				Arrays.copyOf( g.node_a, n ),
+				Arrays.copyOf( g.node_b, n ),
+				Arrays.copyOf( g.edge_offset, n + 1 ),
+				e,
+				Arrays.copyOf( g.edge_source, e ),
+				Arrays.copyOf( g.edge_symbol, e ) );
+	}
+
+	/*
+	 * Five arrays and one object, assuming 16 bytes of header for each and 4
+	 * bytes per reference.
+	 */
+	private static long footprint( TupleAlignmentGraph g ) {
+		final long elements = 3L * g.number_of_nodes + 1 + 2L * g.number_of_edges;
+		return 4L * elements + 6 * 16 + 10 * 4;
+	}
+
+	@Override
+	public Cursor<TupleAlignmentGraph> pull( Rook rook ) {
+		return new Cursor<TupleAlignmentGraph>( ) {
+
+			private int next = 0;
+
+			@Override
+			public TupleAlignmentGraph next( )
+					throws EndOfCursorException {
+				if ( next >= size ) {
+					throw EndOfCursorException.neo( );
+				}
+				return graphs[next++];
+			}
+		};
+	}
+}
@@ -20,16 +20,22 @@ package org.github.evenjn.align.graph;
 public class TupleAlignmentGraphPrinter {
 
 	public static String print( TupleAlignmentGraph graph ) {
-		TupleAlignmentNode[][] mx = graph.matrix;
-		int la = mx.length - 1;
-		int lb = mx[0].length - 1;
+		int la = graph.la( );
+		int lb = graph.lb( );
+		int[][] mx = new int[la + 1][lb + 1];
+		for ( int a = 0; a <= la; a++ ) {
+			for ( int b = 0; b <= lb; b++ ) {
+				mx[a][b] = -1;
+			}
+		}
+		for ( int n = 0; n < graph.number_of_nodes; n++ ) {
+			mx[graph.node_a[n]][graph.node_b[n]] = n;
+		}
 		StringBuilder sb = new StringBuilder( );
 		sb.append( " - nodes -\n" );
 		for ( int a = 0; a <= la; a++ ) {
-			TupleAlignmentNode[] columns = mx[a];
 			for ( int b = 0; b <= lb; b++ ) {
-				TupleAlignmentNode edges = columns[b];
-				if ( edges == null ) {
+				if ( mx[a][b] == -1 ) {
 					sb.append( " . " );
 				}
 				else {
@@ -42,13 +48,12 @@ public class TupleAlignmentGraphPrinter {
 		int max = 0;
 		sb.append( " - incoming edges -\n" );
 		for ( int a = 0; a <= la; a++ ) {
-			TupleAlignmentNode[] columns = mx[a];
 			for ( int b = 0; b <= lb; b++ ) {
-				TupleAlignmentNode edges = columns[b];
-				if ( edges == null ) {
+				final int node = mx[a][b];
+				if ( node == -1 ) {
 					sb.append( " . " );
 				} else {
-					int val = edges.number_of_incoming_edges;
+					int val = graph.edge_offset[node + 1] - graph.edge_offset[node];
 					if ( val > max ) {
 						max = val;
 					}
@@ -62,12 +67,14 @@ public class TupleAlignmentGraphPrinter {
 		for ( int layer = 0; layer < max; layer++ ) {
 			sb.append( " - layer " + layer + " -\n" );
 			for ( int a = 0; a <= la; a++ ) {
-				TupleAlignmentNode[] columns = mx[a];
 				for ( int b = 0; b <= lb; b++ ) {
-					TupleAlignmentNode edges = columns[b];
-					if ( edges != null && edges.number_of_incoming_edges > layer ) {
-						sb.append( edges.incoming_edges[layer][0] )
-								.append( edges.incoming_edges[layer][1] )
+					final int node = mx[a][b];
+					if ( node != -1
+							&& graph.edge_offset[node + 1] - graph.edge_offset[node] > layer ) {
+						final int source =
+								graph.edge_source[graph.edge_offset[node] + layer];
+						sb.append( graph.node_a[source] )
+								.append( graph.node_b[source] )
 								.append( " " );
 					} else {
 						sb.append( ".. " );
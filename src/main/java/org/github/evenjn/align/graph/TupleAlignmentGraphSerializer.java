@@ -39,9 +39,7 @@ public class TupleAlignmentGraphSerializer
 
 			boolean started = false;
 
-			private int a = 0;
-
-			private int b = 0;
+			private int node = 0;
 
 			private int e = 0;
 
@@ -52,34 +50,25 @@ public class TupleAlignmentGraphSerializer
 					started = true;
 					return "";
 				}
-				int la = graph.la( );
-				int lb = graph.lb( );
-
-				for ( ; a <= la; a++ ) {
-					for ( ; b <= lb; b++ ) {
-						if ( graph.matrix[a][b] == null || ( a == 0 && b == 0 ) ) {
-							continue;
-						}
-						if ( e < graph.matrix[a][b].number_of_incoming_edges ) {
-							int[] js = graph.matrix[a][b].incoming_edges[e];
-							StringBuilder sb = new StringBuilder( );
-							sb.append( a );
-							sb.append( " " );
-							sb.append( b );
-							sb.append( " " );
-							sb.append( js[0] );
-							sb.append( " " );
-							sb.append( js[1] );
-							sb.append( " " );
-							sb.append( js[2] );
-							e++;
-							return sb.toString( );
-						}
-						e = 0;
-					}
-					b = 0;
+				if ( e >= graph.number_of_edges ) {
+					throw EndOfCursorException.neo();
+				}
+				while ( graph.edge_offset[node + 1] <= e ) {
+					node++;
 				}
-				throw EndOfCursorException.neo();
+				final int source = graph.edge_source[e];
+				StringBuilder sb = new StringBuilder( );
+				sb.append( graph.node_a[node] );
+				sb.append( " " );
+				sb.append( graph.node_b[node] );
+				sb.append( " " );
+				sb.append( graph.node_a[source] );
+				sb.append( " " );
+				sb.append( graph.node_b[source] );
+				sb.append( " " );
+				sb.append( graph.edge_symbol[e] );
+				e++;
+				return sb.toString( );
 			}
 		}).asIterator( );
 	}
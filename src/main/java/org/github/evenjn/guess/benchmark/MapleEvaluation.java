@@ -32,8 +32,7 @@ import org.github.evenjn.knit.DiffPair;
 import org.github.evenjn.knit.KnittingTuple;
 import org.github.evenjn.lang.Tuple;
 import org.github.evenjn.numeric.FrequencyDistribution;
-import org.github.evenjn.numeric.NumericUtils;
-import org.github.evenjn.numeric.NumericUtils.Summation;
+import org.github.evenjn.numeric.NumericCompensatedSum;
 import org.github.evenjn.numeric.PercentPrinter;
 import org.github.evenjn.numeric.SixCharFormat;
 
@@ -51,20 +50,20 @@ public class MapleEvaluation<I, O> {
 
 	private int total_guessed_elements;
 
-	private Summation er_summation =
-			NumericUtils.summation( 10000, NumericUtils::sumDoubles );
+	private NumericCompensatedSum er_summation =
+			new NumericCompensatedSum( );
 
-	private Summation input_accuracy_summation =
-			NumericUtils.summation( 10000, NumericUtils::sumDoubles );
+	private NumericCompensatedSum input_accuracy_summation =
+			new NumericCompensatedSum( );
 
-	private Summation gold_accuracy_summation =
-			NumericUtils.summation( 10000, NumericUtils::sumDoubles );
+	private NumericCompensatedSum gold_accuracy_summation =
+			new NumericCompensatedSum( );
 
-	private Summation guessed_accuracy_summation =
-			NumericUtils.summation( 10000, NumericUtils::sumDoubles );
+	private NumericCompensatedSum guessed_accuracy_summation =
+			new NumericCompensatedSum( );
 
-	private Summation longest_accuracy_summation =
-			NumericUtils.summation( 10000, NumericUtils::sumDoubles );
+	private NumericCompensatedSum longest_accuracy_summation =
+			new NumericCompensatedSum( );
 
 	private int positive;
 
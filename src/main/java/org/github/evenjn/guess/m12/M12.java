@@ -1,6 +1,7 @@
 package org.github.evenjn.guess.m12;
 
 import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 
 import org.github.evenjn.align.AlignmentElement;
@@ -12,6 +13,7 @@ import org.github.evenjn.guess.m12.libra.M12Libra;
 import org.github.evenjn.guess.m12.libra.M12LibraFileDeserializer;
 import org.github.evenjn.guess.m12.maple.M12ClassicMaple;
 import org.github.evenjn.guess.m12.maple.M12ClassicMapleFileDeserializer;
+import org.github.evenjn.guess.m12.maple.M12MapleBeam;
 import org.github.evenjn.guess.m12.maple.M12PreciseMaple;
 import org.github.evenjn.guess.m12.maple.M12PreciseMapleFileDeserializer;
 import org.github.evenjn.lang.Tuple;
@@ -32,7 +34,10 @@ public class M12<I, P, O> {
 				null,
 				schema.getAboveDecoder( ),
 				schema.getBelowDecoder( ),
-				path );
+				path,
+				schema.getSinglePrecision( ),
+				schema.getLogAddError( ),
+				schema.getMappedCore( ) );
 		return new DiscriminativeModel<I, Tuple<O>>( ) {
 
 			@Override
@@ -43,11 +48,21 @@ public class M12<I, P, O> {
 	}
 
 	public Function<I, Tuple<O>> asMapleClassic( ) {
+		return asMapleClassic( M12MapleBeam.exact( ) );
+	}
+
+	/**
+	 * Decodes with the classic maple, pruning states with the given beam; see
+	 * {@link M12MapleBeam}.
+	 */
+	public Function<I, Tuple<O>> asMapleClassic( M12MapleBeam beam ) {
 		M12ClassicMaple<P, O> local = M12ClassicMapleFileDeserializer.deserialize(
 				null,
 				schema.getAboveDecoder( ),
 				schema.getBelowDecoder( ),
-				path );
+				path,
+				schema.getSinglePrecision( ),
+				schema.getMappedCore( ) ).withBeam( beam );
 		return new Function<I, Tuple<O>>( ) {
 
 			@Override
@@ -57,12 +72,54 @@ public class M12<I, P, O> {
 		};
 	}
 
+	/**
+	 * Decodes many inputs with the classic maple on {@code number_of_workers}
+	 * workers; see {@link M12BatchDecoder}. The classic maple can be shared
+	 * between threads, so all workers use the same tables.
+	 */
+	public M12BatchDecoder<I, O> asMapleClassicBatch(
+			int number_of_workers,
+			ExecutorService executor ) {
+		Function<I, Tuple<O>> local = asMapleClassic( );
+		return new M12BatchDecoder<>( ( ) -> local, number_of_workers, executor );
+	}
+
 	public Function<I, Tuple<O>> asMaplePrecise( ) {
-		M12PreciseMaple<P, O> local = M12PreciseMapleFileDeserializer.deserialize(
+		return asMaplePrecise( loadMaplePrecise( ) );
+	}
+
+	/**
+	 * Decodes with the precise maple, pruning output symbols with the given
+	 * beam; see {@link M12MapleBeam}.
+	 */
+	public Function<I, Tuple<O>> asMaplePrecise( M12MapleBeam beam ) {
+		return asMaplePrecise( loadMaplePrecise( ).withBeam( beam ) );
+	}
+
+	/**
+	 * Decodes many inputs with the precise maple on {@code number_of_workers}
+	 * workers; see {@link M12BatchDecoder}. The precise maple can be shared
+	 * between threads, so all workers use the same model.
+	 */
+	public M12BatchDecoder<I, O> asMaplePreciseBatch(
+			int number_of_workers,
+			ExecutorService executor ) {
+		Function<I, Tuple<O>> local = asMaplePrecise( );
+		return new M12BatchDecoder<>( ( ) -> local, number_of_workers, executor );
+	}
+
+	private M12PreciseMaple<P, O> loadMaplePrecise( ) {
+		return M12PreciseMapleFileDeserializer.deserialize(
 				null,
 				schema.getAboveDecoder( ),
 				schema.getBelowDecoder( ),
-				path );
+				path,
+				schema.getSinglePrecision( ),
+				schema.getLogAddError( ),
+				schema.getMappedCore( ) );
+	}
+
+	private Function<I, Tuple<O>> asMaplePrecise( M12PreciseMaple<P, O> local ) {
 		return new Function<I, Tuple<O>>( ) {
 
 			@Override
@@ -77,7 +134,9 @@ public class M12<I, P, O> {
 				null,
 				schema.getAboveDecoder( ),
 				schema.getBelowDecoder( ),
-				path );
+				path,
+				schema.getSinglePrecision( ),
+				schema.getMappedCore( ) );
 		return new TupleAligner<P, O>( ) {
 
 			@Override
@@ -0,0 +1,217 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.github.evenjn.knit.KnittingCursor;
+import org.github.evenjn.lang.BasicRook;
+import org.github.evenjn.lang.Tuple;
+import org.github.evenjn.yarn.Cursable;
+import org.github.evenjn.yarn.Cursor;
+
+/**
+ * Decodes many inputs, splitting the work among workers.
+ * 
+ * Inputs are grouped in chunks of consecutive inputs. Each chunk is decoded
+ * by one worker on {@code executor}, or on a fixed thread pool owned by this
+ * object for the duration of the call when {@code executor} is null. Each
+ * worker uses a decoder of its own, obtained from the factory, so decoders
+ * need not be thread-safe. Outputs are delivered in the order of the inputs.
+ * 
+ * With zero workers, inputs are decoded on the caller's thread.
+ * 
+ * When decoding an input fails, the chunks not yet written are cancelled and
+ * the failure is rethrown on the caller's thread.
+ *
+ * @param <I>
+ *          The type of inputs.
+ * @param <O>
+ *          The type of output symbols.
+ */
+public class M12BatchDecoder<I, O> {
+
+	private final static int default_chunk_size = 256;
+
+	private final int number_of_workers;
+
+	private final ExecutorService executor;
+
+	private final int chunk_size;
+
+	/*
+	 * The decoders not in use by a worker.
+	 */
+	private final BlockingQueue<Function<I, Tuple<O>>> decoders;
+
+	public M12BatchDecoder(
+			Supplier<Function<I, Tuple<O>>> decoder_factory,
+			int number_of_workers,
+			ExecutorService executor) {
+		this( decoder_factory, number_of_workers, executor, default_chunk_size );
+	}
+
+	public M12BatchDecoder(
+			Supplier<Function<I, Tuple<O>>> decoder_factory,
+			int number_of_workers,
+			ExecutorService executor,
+			int chunk_size) {
+		if ( number_of_workers < 0 || chunk_size < 1 ) {
+			throw new IllegalArgumentException(
+					"Invalid number of workers (" + number_of_workers
+							+ ") or chunk size (" + chunk_size
+							+ "): workers must be zero or more, chunks one or more." );
+		}
+		this.number_of_workers = number_of_workers;
+		this.executor = executor;
+		this.chunk_size = chunk_size;
+		final int number_of_decoders = Math.max( 1, number_of_workers );
+		decoders = new ArrayBlockingQueue<>( number_of_decoders );
+		for ( int w = 0; w < number_of_decoders; w++ ) {
+			decoders.add( decoder_factory.get( ) );
+		}
+	}
+
+	/**
+	 * Returns the outputs of the inputs, in order.
+	 */
+	public List<Tuple<O>> decode( List<? extends I> inputs ) {
+		List<Tuple<O>> result = new ArrayList<>( inputs.size( ) );
+		run( inputs, result::add );
+		return result;
+	}
+
+	/**
+	 * Returns the outputs of the inputs, in order.
+	 */
+	public List<Tuple<O>> decode( Cursable<? extends I> inputs ) {
+		List<Tuple<O>> result = new ArrayList<>( );
+		decode( inputs, result::add );
+		return result;
+	}
+
+	/**
+	 * Passes the outputs of the inputs to {@code output}, in order, on the
+	 * caller's thread.
+	 * 
+	 * Reading, decoding and writing overlap: while workers decode some chunks,
+	 * the caller reads the next ones and writes those already decoded. At most
+	 * two chunks per worker are held in memory at any time.
+	 */
+	public void decode(
+			Cursable<? extends I> inputs,
+			Consumer<? super Tuple<O>> output ) {
+		try ( BasicRook rook = new BasicRook( ) ) {
+			Cursor<? extends I> cursor = inputs.pull( rook );
+			run( KnittingCursor.wrap( cursor ).once( ), output );
+		}
+	}
+
+	private void run(
+			Iterable<? extends I> inputs,
+			Consumer<? super Tuple<O>> output ) {
+		if ( number_of_workers == 0 ) {
+			final Function<I, Tuple<O>> decoder = decoders.peek( );
+			for ( I input : inputs ) {
+				output.accept( decoder.apply( input ) );
+			}
+			return;
+		}
+		ExecutorService workers_executor = executor;
+		if ( workers_executor == null ) {
+			workers_executor = Executors.newFixedThreadPool( number_of_workers );
+		}
+		ArrayDeque<Future<List<Tuple<O>>>> in_flight = new ArrayDeque<>( );
+		try {
+			List<I> chunk = new ArrayList<>( chunk_size );
+			for ( I input : inputs ) {
+				chunk.add( input );
+				if ( chunk.size( ) == chunk_size ) {
+					if ( in_flight.size( ) == 2 * number_of_workers ) {
+						write( in_flight.poll( ), output );
+					}
+					in_flight.add( submit( workers_executor, chunk ) );
+					chunk = new ArrayList<>( chunk_size );
+				}
+			}
+			if ( !chunk.isEmpty( ) ) {
+				in_flight.add( submit( workers_executor, chunk ) );
+			}
+			while ( !in_flight.isEmpty( ) ) {
+				write( in_flight.poll( ), output );
+			}
+		}
+		finally {
+			/*
+			 * Empty unless writing failed.
+			 */
+			for ( Future<List<Tuple<O>>> pending : in_flight ) {
+				pending.cancel( true );
+			}
+			if ( workers_executor != executor ) {
+				workers_executor.shutdownNow( );
+			}
+		}
+	}
+
+	private Future<List<Tuple<O>>> submit(
+			ExecutorService workers_executor,
+			List<I> chunk ) {
+		return workers_executor.submit( ( ) -> {
+			final Function<I, Tuple<O>> decoder = decoders.take( );
+			try {
+				List<Tuple<O>> result = new ArrayList<>( chunk.size( ) );
+				for ( I input : chunk ) {
+					result.add( decoder.apply( input ) );
+				}
+				return result;
+			}
+			finally {
+				decoders.add( decoder );
+			}
+		} );
+	}
+
+	private void write(
+			Future<List<Tuple<O>>> future,
+			Consumer<? super Tuple<O>> output ) {
+		try {
+			for ( Tuple<O> decoded : future.get( ) ) {
+				output.accept( decoded );
+			}
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread( ).interrupt( );
+			throw new RuntimeException( e );
+		}
+		catch ( ExecutionException e ) {
+			throw new RuntimeException( e.getCause( ) );
+		}
+	}
+}
@@ -109,6 +109,13 @@ public class M12Fool {
 				plan.getEpochs( ),
 				plan.getSeed( ),
 				plan.getNumberOfStates( ) );
+		trainer.parallel( plan.getNumberOfWorkers( ), plan.getExecutor( ) );
+		trainer.scaledKernel( plan.getScaledKernel( ) );
+		trainer.residentGraphs( plan.getGraphMemoryBudget( ) );
+		trainer.stepwise( plan.getMiniBatchSize( ),
+				plan.getStepSizeExponent( ) );
+		trainer.checkpoint( plan.getCheckpointPeriod( ) );
+		trainer.logAddError( plan.getLogAddError( ) );
 
 		trainer.train(
 				progress_spawner,
@@ -19,6 +19,12 @@ public class M12Schema<I, P, O> implements
 
 	protected Function<String, O> b_deserializer;
 
+	protected boolean single_precision = false;
+
+	protected double log_add_error = 0d;
+
+	protected boolean mapped_core = false;
+
 	public Object clone( )
 			throws CloneNotSupportedException {
 		return super.clone( );
@@ -40,6 +46,30 @@ public class M12Schema<I, P, O> implements
 		return b_serializer;
 	}
 
+	/**
+	 * Whether models opened with this schema keep their emission table in
+	 * single precision.
+	 */
+	public boolean getSinglePrecision( ) {
+		return single_precision;
+	}
+
+	/**
+	 * The error bound of the tabulated log-add used by models trained or opened
+	 * with this schema; zero means exact sums.
+	 */
+	public double getLogAddError( ) {
+		return log_add_error;
+	}
+
+	/**
+	 * Whether models opened with this schema serve their emission table from
+	 * the memory-mapped binary core file, rather than from the heap.
+	 */
+	public boolean getMappedCore( ) {
+		return mapped_core;
+	}
+
 	public Function<I, Tuple<P>> getProjector( ) {
 		return projector;
 	}
@@ -76,4 +106,24 @@ public class M12Schema<I, P, O> implements
 	public void setProjector( Function<I, Tuple<P>> projector ) {
 		this.projector = projector;
 	}
+
+	public void setLogAddError( double max_error ) {
+		this.log_add_error = max_error;
+	}
+
+	public void setSinglePrecision( boolean single_precision ) {
+		this.single_precision = single_precision;
+	}
+
+	/**
+	 * When true, models are opened with their emission table mapped from the
+	 * binary core file, which is shared by all processes serving the same
+	 * model; see {@link org.github.evenjn.guess.markov.MarkovLoader}. Single
+	 * precision does not apply to mapped tables. The classic maple reads every
+	 * emission once when it is built, while the precise maple, the libra and
+	 * the aligner read emissions on demand.
+	 */
+	public void setMappedCore( boolean mapped_core ) {
+		this.mapped_core = mapped_core;
+	}
 }
@@ -18,11 +18,7 @@
 package org.github.evenjn.guess.m12.aligner;
 
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
 import java.util.Vector;
-import java.util.function.BiFunction;
 
 import org.github.evenjn.align.AlignmentElement;
 import org.github.evenjn.align.TupleAligner;
@@ -30,14 +26,13 @@ import org.github.evenjn.align.alphabet.TupleAlignmentAlphabet;
 import org.github.evenjn.align.graph.NotAlignableException;
 import org.github.evenjn.align.graph.TupleAlignmentGraph;
 import org.github.evenjn.align.graph.TupleAlignmentGraphFactory;
-import org.github.evenjn.align.graph.TupleAlignmentNode;
 import org.github.evenjn.guess.markov.Markov;
 import org.github.evenjn.knit.BiValueTray;
 import org.github.evenjn.knit.KnittingTuple;
 import org.github.evenjn.lang.Equivalencer;
 import org.github.evenjn.lang.Tuple;
-import org.github.evenjn.numeric.Cubix;
-import org.github.evenjn.numeric.DenseCubix;
+import org.github.evenjn.numeric.DoubleMatrix;
+import org.github.evenjn.numeric.IntMatrix;
 import org.github.evenjn.numeric.NumericLogarithm;
 
 class AlignmentElementImpl<I, O> extends BiValueTray<I, O> implements AlignmentElement<I, O> {
@@ -50,6 +45,13 @@ class AlignmentElementImpl<I, O> extends BiValueTray<I, O> implements AlignmentE
 	
 }
 
+/**
+ * Aligns pairs of tuples with the most likely path of a one-to-many hidden
+ * markov model.
+ * 
+ * An aligner can be shared between threads: each thread aligns with tables
+ * of its own, which are reused across calls.
+ */
 public class M12Aligner<I, O> implements
 		TupleAligner<I, O> {
 
@@ -64,14 +66,12 @@ public class M12Aligner<I, O> implements
 		this.core = core;
 	}
 
-	private static class Source {
-
-		int x;
-
-		int y;
-
-		int state;
-	}
+	/*
+	 * The tables used by each thread, so that an aligner can be shared between
+	 * threads.
+	 */
+	private final ThreadLocal<M12AlignerSession> sessions =
+			ThreadLocal.withInitial( M12AlignerSession::new );
 
 	public KnittingTuple<AlignmentElement<Integer, Integer>> align(
 			Tuple<I> above,
@@ -105,31 +105,16 @@ public class M12Aligner<I, O> implements
 		// find the path with the max probability.
 		// use Viterbi
 
-		/**
-		 * This tri-map contains information about the best source for each node.
-		 * 
-		 * [ a b ] -> { x y state }
-		 * 
-		 */
+		final int nodes = coalign.number_of_nodes;
+		final int root = coalign.root( );
 
-		Vector<BiHashMap<Integer, Integer, Source>> all_pointers = new Vector<>( );
-
-		for ( int s = 0; s < core.number_of_states; s++ ) {
-			all_pointers.add( new BiHashMap<Integer, Integer, Source>( null ) );
-		}
-
-		/**
-		 * [ x y s ] -> the probability of the automa to be in state s after the
-		 * emission of the first x observed symbols above and the first y symbols
-		 * below
-		 * 
-		 * (given the whole sequence above/below).
-		 */
-		Cubix<Double> probability =
-				new DenseCubix<>( 1 + length_above, 1 + length_below,
-						core.number_of_states,
-						NumericLogarithm::elnsum2,
-						NumericLogarithm.smallLogValue );
+		final M12AlignerSession session = sessions.get( );
+		final IntMatrix pointer_node = session.pointer_node;
+		final IntMatrix pointer_state = session.pointer_state;
+		final DoubleMatrix probability = session.probability;
+		pointer_node.reset( nodes, core.number_of_states );
+		pointer_state.reset( nodes, core.number_of_states );
+		probability.reset( nodes, core.number_of_states );
 
 		/**
 		 * \ | t a k s - o . . . . T o o o . . A . . o o o X . . . . o
@@ -140,55 +125,43 @@ public class M12Aligner<I, O> implements
 		 * includes the incoming edge.
 		 */
 
-		Iterator<TupleAlignmentNode> it = coalign.forward( );
-		while ( it.hasNext( ) ) {
-			TupleAlignmentNode node = it.next( );
-			// skip the root.
-			if ( node.number_of_incoming_edges == 0 ) {
-				System.out.println( "Skipping the root." );
-				continue;
-			}
-
-			int a = node.a;
-			int b = node.b;
+		for ( int node = 1; node < nodes; node++ ) {
+			final int a = coalign.node_a[node];
+			final int edge_begin = coalign.edge_offset[node];
+			final int edge_end = coalign.edge_offset[node + 1];
 
 			/**
 			 * for each state, we must consider all ways to reach [a b]
 			 */
 			for ( int d = 0; d < core.number_of_states; d++ ) {
 
-				final int edges = node.number_of_incoming_edges;
-
 				double best_path_prob = NumericLogarithm.smallLogValue;
-				int best_source_x = -1;
-				int best_source_y = -1;
+				int best_source = -1;
 				int best_source_state = -1;
 				boolean found = false;
 
-				for ( int edge = 0; edge < edges; edge++ ) {
+				for ( int edge = edge_begin; edge < edge_end; edge++ ) {
 
-					final int x = node.incoming_edges[edge][0];
-					final int y = node.incoming_edges[edge][1];
-					final int encoded = node.incoming_edges[edge][2];
+					final int source = coalign.edge_source[edge];
+					final int encoded = coalign.edge_symbol[edge];
 
 					/*
 					 * consider this edge
 					 */
-					if ( a != 1 + x ) {
+					if ( a != 1 + coalign.node_a[source] ) {
 						throw new IllegalStateException(
 								"This is not a valid M12 alignment!" );
 					}
 
-					if ( x == 0 && y == 0 ) {
+					if ( source == root ) {
 
 						double this_path_prob = NumericLogarithm.elnproduct(
 								core.initial_table[d],
-								core.emission_table[d][encoded] );
+								core.emission.get( d, encoded ) );
 
 						if ( !found || this_path_prob > best_path_prob ) {
 							best_path_prob = this_path_prob;
-							best_source_x = 0;
-							best_source_y = 0;
+							best_source = root;
 							best_source_state = -1;
 							found = true;
 						}
@@ -196,7 +169,7 @@ public class M12Aligner<I, O> implements
 						continue;
 					}
 
-					double p_emission = core.emission_table[d][encoded];
+					double p_emission = core.emission.get( d, encoded );
 
 					/*
 					 * assuming we have reached [a b] along this edge, what is the best
@@ -205,44 +178,35 @@ public class M12Aligner<I, O> implements
 					for ( int s = 0; s < core.number_of_states; s++ ) {
 
 						double this_path_prob = NumericLogarithm.elnproduct(
-								probability.get( x, y, s ),
+								probability.get( source, s ),
 								core.transition_table[s][d],
 								p_emission );
 
 						if ( !found || this_path_prob > best_path_prob ) {
 							best_path_prob = this_path_prob;
-							best_source_x = x;
-							best_source_y = y;
+							best_source = source;
 							best_source_state = s;
 							found = true;
 						}
 					}
 				}
 
-				probability.set( a, b, d, best_path_prob );
+				probability.set( node, d, best_path_prob );
 
 				/**
-				 * Tracks the best source for [ a b d ]
+				 * Tracks the best source for [ node d ]
 				 */
-				BiHashMap<Integer, Integer, Source> pointers =
-						all_pointers.elementAt( d );
-				Source existing_source = pointers.apply( a, b );
-				if ( existing_source == null ) {
-					existing_source = new Source( );
-					pointers.map( a, b, existing_source );
-				}
-
-				existing_source.x = best_source_x;
-				existing_source.y = best_source_y;
-				existing_source.state = best_source_state;
+				pointer_node.set( node, d, best_source );
+				pointer_state.set( node, d, best_source_state );
 			}
 		}
 
+		final int last = coalign.last( );
 		int best_final_state = 0;
 		double final_max = NumericLogarithm.smallLogValue;
 		boolean final_found = false;
 		for ( int s = 0; s < core.number_of_states; s++ ) {
-			Double tmp = probability.get( length_above, length_below, s );
+			double tmp = probability.get( last, s );
 			if ( !final_found || tmp > final_max ) {
 				final_found = true;
 				best_final_state = s;
@@ -254,57 +218,23 @@ public class M12Aligner<I, O> implements
 		 * Reconstruct path
 		 */
 		int state = best_final_state;
+		int node = last;
 
 		Vector<AlignmentElement<Integer, Integer>> result = new Vector<>( );
-		while ( length_above != 0 || length_below != 0 ) {
-			Source source =
-					all_pointers.get( state ).apply( length_above, length_below );
-			final Integer front = length_above - source.x;
-			final Integer back = length_below - source.y;
+		while ( node != root ) {
+			final int source = pointer_node.get( node, state );
+			final Integer front = coalign.node_a[node] - coalign.node_a[source];
+			final Integer back = coalign.node_b[node] - coalign.node_b[source];
 			result.add( new AlignmentElementImpl<>(
 					front,
 					back,
 					KnittingTuple.getNullEquivalencer( ),
 					KnittingTuple.getNullEquivalencer( ) ) );
-			state = source.state;
-			length_above = source.x;
-			length_below = source.y;
+			state = pointer_state.get( node, state );
+			node = source;
 		}
 		Collections.reverse( result );
 		return KnittingTuple.wrap( result );
 	}
 
 }
-
-class BiHashMap<K1, K2, V> implements
-		BiFunction<K1, K2, V> {
-
-	protected Map<K1, Map<K2, V>> core = new HashMap<K1, Map<K2, V>>( );
-
-	protected final V ifAbsent;
-
-	public BiHashMap(V ifAbsent) {
-		this.ifAbsent = ifAbsent;
-	}
-
-	public void map( K1 row, K2 col, V val ) {
-		Map<K2, V> map = core.get( row );
-		if ( map == null ) {
-			map = new HashMap<K2, V>( );
-			core.put( row, map );
-		}
-		map.put( col, val );
-	}
-
-	public V apply( K1 row, K2 col ) {
-		Map<K2, V> map = core.get( row );
-		if ( map == null ) {
-			return ifAbsent;
-		}
-		V double1 = map.get( col );
-		if ( double1 == null )
-			return ifAbsent;
-		return double1;
-	}
-
-}
@@ -24,8 +24,9 @@ import org.github.evenjn.align.alphabet.TupleAlignmentAlphabet;
 import org.github.evenjn.align.alphabet.TupleAlignmentAlphabetDeserializer;
 import org.github.evenjn.file.FileFool;
 import org.github.evenjn.guess.markov.Markov;
-import org.github.evenjn.guess.markov.MarkovChecker;
-import org.github.evenjn.guess.markov.MarkovDeserializer;
+import org.github.evenjn.guess.markov.MarkovFloatEmission;
+import org.github.evenjn.guess.markov.MarkovLoader;
+import org.github.evenjn.guess.markov.MarkovMappedEmission;
 import org.github.evenjn.knit.KnittingCursable;
 import org.github.evenjn.lang.BasicRook;
 import org.github.evenjn.lang.ProgressSpawner;
@@ -38,10 +39,41 @@ public class M12AlignerFileDeserializer {
 			Function<String, I> a_deserializer,
 			Function<String, O> b_deserializer,
 			Path dojo_path ) {
+		return deserialize( progress_spawner, a_deserializer, b_deserializer,
+				dojo_path, false );
+	}
+
+	/**
+	 * When {@code single_precision} is true, the emission table is converted to
+	 * a {@link MarkovFloatEmission} after loading, which halves its memory.
+	 */
+	public static <I, O> M12Aligner<I, O> deserialize(
+			ProgressSpawner progress_spawner,
+			Function<String, I> a_deserializer,
+			Function<String, O> b_deserializer,
+			Path dojo_path,
+			boolean single_precision ) {
+		return deserialize( progress_spawner, a_deserializer, b_deserializer,
+				dojo_path, single_precision, false );
+	}
+
+	/**
+	 * When {@code mapped} is true, the emission table is mapped from the binary
+	 * core file when possible; see {@link MarkovLoader}. Mapped tables are not
+	 * converted to single precision.
+	 */
+	public static <I, O> M12Aligner<I, O> deserialize(
+			ProgressSpawner progress_spawner,
+			Function<String, I> a_deserializer,
+			Function<String, O> b_deserializer,
+			Path dojo_path,
+			boolean single_precision,
+			boolean mapped ) {
 
 		TupleAlignmentAlphabet<I, O> alphabet;
 		Markov core;
 		Path m12core_stable_file = dojo_path.resolve( "./m12_core.stable.txt" );
+		Path m12core_binary_file = dojo_path.resolve( "./m12_core.stable.bin" );
 		Path alphabet_stable_file = dojo_path.resolve( "./ta_alphabet.stable.txt" );
 		try ( BasicRook rook = new BasicRook() ) {
 			/**
@@ -57,15 +89,11 @@ public class M12AlignerFileDeserializer {
 							b_deserializer ) )
 					.one( );
 		}
-		try ( BasicRook rook = new BasicRook() ) {
-			core = KnittingCursable
-					.wrap( h -> PlainText.reader( )
-							.build( ).get( h, FileFool.r( ).open( m12core_stable_file ).read( h ) ) )
-					.pull( rook )
-					.purlOptional( new MarkovDeserializer( ) )
-					.one( );
-
-			MarkovChecker.check( core );
+		core = MarkovLoader.load( m12core_binary_file, m12core_stable_file,
+				mapped );
+		if ( single_precision
+				&& !( core.emission instanceof MarkovMappedEmission ) ) {
+			core = MarkovFloatEmission.toSinglePrecision( core );
 		}
 		return new M12Aligner<>( alphabet, core );
 	}
@@ -0,0 +1,53 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.aligner;
+
+import org.github.evenjn.numeric.DoubleMatrix;
+import org.github.evenjn.numeric.IntMatrix;
+import org.github.evenjn.numeric.NumericLogarithm;
+
+/**
+ * The tables used by {@link M12Aligner} to align one pair of tuples at a
+ * time.
+ * 
+ * Tables grow geometrically with the largest alignment graph seen so far. A
+ * session is not thread-safe: each thread uses its own.
+ */
+class M12AlignerSession {
+
+	/**
+	 * These tables contain information about the best source for each node and
+	 * state.
+	 * 
+	 * [ node state ] -> { source node, source state }
+	 * 
+	 */
+	final IntMatrix pointer_node = new IntMatrix( -1 );
+
+	final IntMatrix pointer_state = new IntMatrix( -1 );
+
+	/**
+	 * [ node s ] -> the probability of the automa to be in state s after the
+	 * emission of the first x observed symbols above and the first y symbols
+	 * below, where [ x y ] are the coordinates of the node.
+	 * 
+	 * (given the whole sequence above/below).
+	 */
+	final DoubleMatrix probability =
+			new DoubleMatrix( NumericLogarithm.smallLogValue );
+}
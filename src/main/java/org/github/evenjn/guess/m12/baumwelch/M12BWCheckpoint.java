@@ -0,0 +1,429 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.baumwelch;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.github.evenjn.guess.markov.Markov;
+
+/**
+ * A snapshot of Baum-Welch training taken at the end of an epoch: the tables
+ * of the model and the state of the training loop.
+ * 
+ * A checkpoint is written to a temporary file, which is forced to disk and
+ * then moved over the checkpoint file. So, the checkpoint file always holds a
+ * complete snapshot, even when the process is killed while writing.
+ * 
+ * A checkpoint carries a fingerprint of the training run that wrote it: see
+ * {@link #fingerprint(Markov, int)}. A checkpoint is resumed only by a run
+ * with the same fingerprint, so that a checkpoint left behind by a crashed
+ * run is not resumed after the training data or the initial model change.
+ * 
+ * The file holds little-endian values: a magic number, the format version,
+ * the number of states, the number of symbols, the fingerprint, the next
+ * epoch, the number of epochs without improvement, the number of stepwise
+ * updates, the previous probability indicator (NaN when there is none), the
+ * initial, transition and emission tables (row by row), and a CRC32 checksum
+ * of all that precedes it.
+ */
+class M12BWCheckpoint {
+
+	private static final int magic = 0x4D314243;
+
+	private static final int version = 2;
+
+	private static final int header_size = 7 * 4 + 8 + 8;
+
+	/*
+	 * Tables are written and read through a buffer of this size, so that
+	 * checkpoints of any size take little memory beyond the model.
+	 */
+	private static final int buffer_size = 1 << 16;
+
+	/**
+	 * The fingerprint of the training run.
+	 */
+	final long fingerprint;
+
+	/**
+	 * The epoch training resumes from.
+	 */
+	final int epoch;
+
+	final int not_increased_for_n_epochs;
+
+	final int updates;
+
+	/**
+	 * The probability indicator of the last epoch, or null.
+	 */
+	final Double previous_probability;
+
+	M12BWCheckpoint(
+			long fingerprint,
+			int epoch,
+			int not_increased_for_n_epochs,
+			int updates,
+			Double previous_probability) {
+		this.fingerprint = fingerprint;
+		this.epoch = epoch;
+		this.not_increased_for_n_epochs = not_increased_for_n_epochs;
+		this.updates = updates;
+		this.previous_probability = previous_probability;
+	}
+
+	/**
+	 * Atomically replaces the checkpoint file with a snapshot of this state
+	 * and of the model.
+	 */
+	void write( Path file, Markov hmm )
+			throws IOException {
+		final int S = hmm.number_of_states;
+		final int V = hmm.number_of_symbols;
+		Path temporary = file.resolveSibling( file.getFileName( ) + ".tmp" );
+		try ( FileChannel channel = FileChannel.open( temporary,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE ) ) {
+			Output output = new Output( channel );
+			output.putInt( magic );
+			output.putInt( version );
+			output.putInt( S );
+			output.putInt( V );
+			output.putLong( fingerprint );
+			output.putInt( epoch );
+			output.putInt( not_increased_for_n_epochs );
+			output.putInt( updates );
+			output.putDouble(
+					previous_probability == null ? Double.NaN : previous_probability );
+			output.putDoubles( hmm.initial_table );
+			for ( int s = 0; s < S; s++ ) {
+				output.putDoubles( hmm.transition_table[s] );
+			}
+			final double[] emission_of_s = new double[V];
+			for ( int s = 0; s < S; s++ ) {
+				hmm.emission.getRow( s, emission_of_s );
+				output.putDoubles( emission_of_s );
+			}
+			output.finish( );
+			channel.force( true );
+		}
+		try {
+			Files.move( temporary, file, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING );
+		}
+		catch ( AtomicMoveNotSupportedException e ) {
+			Files.move( temporary, file, StandardCopyOption.REPLACE_EXISTING );
+		}
+	}
+
+	/**
+	 * Returns the fingerprint of a training run on {@code data_size} graphs
+	 * that starts from the given model: a CRC32 checksum of the number of
+	 * graphs and of the tables of the model. The initial model depends on the
+	 * seed, or on the initial core it is read from.
+	 */
+	static long fingerprint( Markov hmm, int data_size ) {
+		final int S = hmm.number_of_states;
+		final int V = hmm.number_of_symbols;
+		Digest digest = new Digest( );
+		digest.putInt( data_size );
+		digest.putInt( S );
+		digest.putInt( V );
+		digest.putDoubles( hmm.initial_table );
+		for ( int s = 0; s < S; s++ ) {
+			digest.putDoubles( hmm.transition_table[s] );
+		}
+		final double[] emission_of_s = new double[V];
+		for ( int s = 0; s < S; s++ ) {
+			hmm.emission.getRow( s, emission_of_s );
+			digest.putDoubles( emission_of_s );
+		}
+		return digest.finish( );
+	}
+
+	/**
+	 * Reads the checkpoint file and, when it holds a valid snapshot of a model
+	 * with the same number of states and symbols, written by a training run
+	 * with the given fingerprint, copies the tables into the model.
+	 * 
+	 * The file is read twice: once to verify the checksum, and once to copy the
+	 * tables, so that the model is left untouched when the file is not valid.
+	 * 
+	 * @return The state of the training loop, or null when there is no valid
+	 *         checkpoint.
+	 */
+	static M12BWCheckpoint read( Path file, Markov hmm, long fingerprint )
+			throws IOException {
+		final int S = hmm.number_of_states;
+		final int V = hmm.number_of_symbols;
+		final long size = size( S, V );
+		try ( FileChannel channel =
+				FileChannel.open( file, StandardOpenOption.READ ) ) {
+			if ( channel.size( ) != size ) {
+				return null;
+			}
+			Input check = new Input( channel, size - 8 );
+			check.skipAll( );
+			if ( check.checksum( ) != check.getLong( ) ) {
+				return null;
+			}
+			channel.position( 0 );
+			Input input = new Input( channel, size - 8 );
+			if ( input.getInt( ) != magic
+					|| input.getInt( ) != version
+					|| input.getInt( ) != S
+					|| input.getInt( ) != V
+					|| input.getLong( ) != fingerprint ) {
+				return null;
+			}
+			final int epoch = input.getInt( );
+			final int not_increased_for_n_epochs = input.getInt( );
+			final int updates = input.getInt( );
+			final double previous_probability = input.getDouble( );
+			input.getDoubles( hmm.initial_table );
+			for ( int s = 0; s < S; s++ ) {
+				input.getDoubles( hmm.transition_table[s] );
+			}
+			final double[] emission_of_s = new double[V];
+			for ( int s = 0; s < S; s++ ) {
+				input.getDoubles( emission_of_s );
+				hmm.emission.setRow( s, emission_of_s );
+			}
+			return new M12BWCheckpoint( fingerprint, epoch,
+					not_increased_for_n_epochs, updates,
+					Double.isNaN( previous_probability ) ? null : previous_probability );
+		}
+		catch ( NoSuchFileException e ) {
+			return null;
+		}
+	}
+
+	/*
+	 * Writes little-endian values through a buffer of fixed size, and appends
+	 * the checksum of all the values written.
+	 */
+	private static class Output {
+
+		private final FileChannel channel;
+
+		private final ByteBuffer buffer =
+				ByteBuffer.allocate( buffer_size ).order( ByteOrder.LITTLE_ENDIAN );
+
+		private final CRC32 crc = new CRC32( );
+
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void putInt( int value )
+				throws IOException {
+			if ( buffer.remaining( ) < 4 ) {
+				drain( );
+			}
+			buffer.putInt( value );
+		}
+
+		void putLong( long value )
+				throws IOException {
+			if ( buffer.remaining( ) < 8 ) {
+				drain( );
+			}
+			buffer.putLong( value );
+		}
+
+		void putDouble( double value )
+				throws IOException {
+			if ( buffer.remaining( ) < 8 ) {
+				drain( );
+			}
+			buffer.putDouble( value );
+		}
+
+		void putDoubles( double[] values )
+				throws IOException {
+			for ( int i = 0; i < values.length; i++ ) {
+				putDouble( values[i] );
+			}
+		}
+
+		void finish( )
+				throws IOException {
+			drain( );
+			buffer.putLong( crc.getValue( ) );
+			buffer.flip( );
+			while ( buffer.hasRemaining( ) ) {
+				channel.write( buffer );
+			}
+		}
+
+		private void drain( )
+				throws IOException {
+			buffer.flip( );
+			crc.update( buffer.array( ), 0, buffer.limit( ) );
+			while ( buffer.hasRemaining( ) ) {
+				channel.write( buffer );
+			}
+			buffer.clear( );
+		}
+	}
+
+	/*
+	 * Computes the checksum of little-endian values through a buffer of fixed
+	 * size, as if they were written to a file.
+	 */
+	private static class Digest {
+
+		private final ByteBuffer buffer =
+				ByteBuffer.allocate( buffer_size ).order( ByteOrder.LITTLE_ENDIAN );
+
+		private final CRC32 crc = new CRC32( );
+
+		void putInt( int value ) {
+			if ( buffer.remaining( ) < 4 ) {
+				drain( );
+			}
+			buffer.putInt( value );
+		}
+
+		void putDoubles( double[] values ) {
+			for ( int i = 0; i < values.length; i++ ) {
+				if ( buffer.remaining( ) < 8 ) {
+					drain( );
+				}
+				buffer.putDouble( values[i] );
+			}
+		}
+
+		long finish( ) {
+			drain( );
+			return crc.getValue( );
+		}
+
+		private void drain( ) {
+			crc.update( buffer.array( ), 0, buffer.position( ) );
+			buffer.clear( );
+		}
+	}
+
+	/*
+	 * Reads little-endian values through a buffer of fixed size, computing the
+	 * checksum of the first payload_size bytes.
+	 */
+	private static class Input {
+
+		private final FileChannel channel;
+
+		private final ByteBuffer buffer =
+				ByteBuffer.allocate( buffer_size ).order( ByteOrder.LITTLE_ENDIAN );
+
+		private final CRC32 crc = new CRC32( );
+
+		private final long payload_size;
+
+		private long payload_left;
+
+		Input(FileChannel channel, long payload_size) {
+			this.channel = channel;
+			this.payload_size = payload_size;
+			this.payload_left = payload_size;
+			buffer.limit( 0 );
+		}
+
+		int getInt( )
+				throws IOException {
+			fill( 4 );
+			return buffer.getInt( );
+		}
+
+		long getLong( )
+				throws IOException {
+			fill( 8 );
+			return buffer.getLong( );
+		}
+
+		double getDouble( )
+				throws IOException {
+			fill( 8 );
+			return buffer.getDouble( );
+		}
+
+		void getDoubles( double[] values )
+				throws IOException {
+			for ( int i = 0; i < values.length; i++ ) {
+				values[i] = getDouble( );
+			}
+		}
+
+		/*
+		 * Reads through the payload, leaving the checksum to be read.
+		 */
+		void skipAll( )
+				throws IOException {
+			long skip = payload_size;
+			while ( skip > 0 ) {
+				fill( 1 );
+				final int skipped = (int) Math.min( skip, buffer.remaining( ) );
+				buffer.position( buffer.position( ) + skipped );
+				skip -= skipped;
+			}
+		}
+
+		long checksum( ) {
+			return crc.getValue( );
+		}
+
+		/*
+		 * Ensures that the buffer holds at least the given number of bytes. Bytes
+		 * of the payload are added to the checksum as they are read.
+		 */
+		private void fill( int bytes )
+				throws IOException {
+			if ( buffer.remaining( ) >= bytes ) {
+				return;
+			}
+			buffer.compact( );
+			while ( buffer.position( ) < bytes ) {
+				final int start = buffer.position( );
+				if ( channel.read( buffer ) < 0 ) {
+					throw new EOFException( );
+				}
+				final int read = buffer.position( ) - start;
+				final int payload = (int) Math.min( read, payload_left );
+				crc.update( buffer.array( ), start, payload );
+				payload_left -= payload;
+			}
+			buffer.flip( );
+		}
+	}
+
+	private static long size( int S, int V ) {
+		return header_size + 8L * ( S + (long) S * S + (long) S * V ) + 8;
+	}
+}
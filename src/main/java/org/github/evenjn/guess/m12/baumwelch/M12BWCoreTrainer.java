@@ -17,10 +17,13 @@
  */
 package org.github.evenjn.guess.m12.baumwelch;
 
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
 import org.github.evenjn.align.graph.TupleAlignmentGraph;
+import org.github.evenjn.align.graph.TupleAlignmentGraphMemoryStore;
 import org.github.evenjn.guess.markov.Markov;
 import org.github.evenjn.guess.markov.MarkovChecker;
 import org.github.evenjn.guess.markov.MarkovDeserializer;
@@ -33,6 +36,7 @@ import org.github.evenjn.lang.BasicRook;
 import org.github.evenjn.lang.Progress;
 import org.github.evenjn.lang.ProgressSpawner;
 import org.github.evenjn.lang.Ring;
+import org.github.evenjn.numeric.NumericLogAdder;
 import org.github.evenjn.yarn.Cursable;
 
 public class M12BWCoreTrainer {
@@ -53,6 +57,24 @@ public class M12BWCoreTrainer {
 
 	private Consumer<String> logger;
 
+	private int number_of_workers;
+
+	private ExecutorService executor;
+
+	private boolean scaled_kernel;
+
+	private long graph_memory_budget;
+
+	private int mini_batch_size;
+
+	private double step_size_exponent;
+
+	private Path checkpoint_file;
+
+	private int checkpoint_period;
+
+	private double log_add_error;
+
 	public M12BWCoreTrainer(
 			int number_of_states,
 			int period,
@@ -61,7 +83,16 @@ public class M12BWCoreTrainer {
 			Ring<Consumer<String>> putter_core,
 			Cursable<String> reader_core,
 			BiFunction<Markov, ProgressSpawner, Boolean> quality_control,
-			long seed) {
+			long seed,
+			int number_of_workers,
+			ExecutorService executor,
+			boolean scaled_kernel,
+			long graph_memory_budget,
+			int mini_batch_size,
+			double step_size_exponent,
+			Path checkpoint_file,
+			int checkpoint_period,
+			double log_add_error) {
 		this.number_of_states = number_of_states;
 		this.grace_period = period;
 		this.epochs = epochs;
@@ -70,6 +101,15 @@ public class M12BWCoreTrainer {
 		this.reader_core = reader_core;
 		this.quality_control = quality_control;
 		this.seed = seed;
+		this.number_of_workers = number_of_workers;
+		this.executor = executor;
+		this.scaled_kernel = scaled_kernel;
+		this.graph_memory_budget = graph_memory_budget;
+		this.mini_batch_size = mini_batch_size;
+		this.step_size_exponent = step_size_exponent;
+		this.checkpoint_file = checkpoint_file;
+		this.checkpoint_period = checkpoint_period;
+		this.log_add_error = log_add_error;
 	}
 
 	public Markov load(
@@ -120,6 +160,27 @@ public class M12BWCoreTrainer {
 				}
 			}
 
+			KnittingCursable<TupleAlignmentGraph> training_graphs = graphs;
+			if ( graph_memory_budget > 0 ) {
+				/*
+				 * Keep the graphs in memory across epochs, unless they do not fit in
+				 * the budget.
+				 */
+				spawn.info( "Loading graphs in memory." );
+				TupleAlignmentGraphMemoryStore store =
+						TupleAlignmentGraphMemoryStore.load( graphs, graph_memory_budget );
+				if ( store == null ) {
+					spawn.info( "Graphs exceed the memory budget of "
+							+ graph_memory_budget
+							+ " bytes: they will be read at every epoch." );
+				}
+				else {
+					spawn.info( "Loaded " + store.size( ) + " graphs ("
+							+ store.footprint( ) + " bytes) in memory." );
+					training_graphs = KnittingCursable.wrap( store );
+				}
+			}
+
 			spawn.info( "Creating baumwelch data structures." );
 			
 			BiFunction<Markov, ProgressSpawner, Boolean> local_core_inspector =
@@ -141,10 +202,22 @@ public class M12BWCoreTrainer {
 					local_core_inspector,
 					record_max_number_of_edges,
 					record_max_length_above,
-					record_max_length_below );
+					record_max_length_below,
+					number_of_workers,
+					executor,
+					scaled_kernel,
+					mini_batch_size,
+					step_size_exponent );
+			if ( checkpoint_file != null ) {
+				baum_welch.checkpoint( checkpoint_file, checkpoint_period );
+			}
+			if ( log_add_error > 0 ) {
+				baum_welch.logAdder( NumericLogAdder.withMaxError( log_add_error ) );
+			}
 			
 			spawn.info( "Training." );
-			baum_welch.BaumWelch( logger, graphs, grace_period, epochs, spawn );
+			baum_welch.BaumWelch( logger, training_graphs, grace_period, epochs,
+					spawn );
 
 			if ( putter_core != null ) {
 				KnittingCursor.wrap( new MarkovSerializer( core ) )
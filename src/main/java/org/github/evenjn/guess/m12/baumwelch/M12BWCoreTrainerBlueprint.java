@@ -17,6 +17,8 @@
  */
 package org.github.evenjn.guess.m12.baumwelch;
 
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
@@ -43,6 +45,24 @@ public class M12BWCoreTrainerBlueprint {
 
 	private Consumer<String> logger;
 
+	private int number_of_workers;
+
+	private ExecutorService executor;
+
+	private boolean scaled_kernel;
+
+	private long graph_memory_budget;
+
+	private int mini_batch_size;
+
+	private double step_size_exponent = 0.7;
+
+	private Path checkpoint_file;
+
+	private int checkpoint_period;
+
+	private double log_add_error;
+
 	public M12BWCoreTrainerBlueprint trainingTime( int grace_period, int epochs ) {
 		this.grace_period = grace_period;
 		this.epochs = epochs;
@@ -60,6 +80,75 @@ public class M12BWCoreTrainerBlueprint {
 		return this;
 	}
 
+	/**
+	 * Runs the expectation step of Baum-Welch on {@code number_of_workers}
+	 * workers. When {@code executor} is null, the trainer creates (and shuts
+	 * down) a pool of its own. Zero workers (the default) means the expectation
+	 * step runs on the calling thread.
+	 */
+	public M12BWCoreTrainerBlueprint parallel( int number_of_workers,
+			ExecutorService executor ) {
+		this.number_of_workers = number_of_workers;
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * When true, forward-backward runs in linear probability space with
+	 * per-node scaling factors. When false (the default), it runs in log
+	 * space.
+	 */
+	public M12BWCoreTrainerBlueprint scaledKernel( boolean scaled_kernel ) {
+		this.scaled_kernel = scaled_kernel;
+		return this;
+	}
+
+	/**
+	 * When positive, the graphs are loaded in memory once and used for all
+	 * epochs, provided they take no more than {@code memory_budget} bytes.
+	 * Otherwise, or when zero (the default), the graphs are read again at every
+	 * epoch.
+	 */
+	public M12BWCoreTrainerBlueprint residentGraphs( long memory_budget ) {
+		this.graph_memory_budget = memory_budget;
+		return this;
+	}
+
+	/**
+	 * Updates the model after each mini-batch of {@code mini_batch_size}
+	 * graphs, with step size {@code ( k + 2 ) ^ -step_size_exponent} at the
+	 * k-th update (stepwise EM). The exponent must be in ( 0.5, 1 ]. Zero (the
+	 * default) means the model is updated once per epoch (batch EM).
+	 */
+	public M12BWCoreTrainerBlueprint stepwise( int mini_batch_size,
+			double step_size_exponent ) {
+		this.mini_batch_size = mini_batch_size;
+		this.step_size_exponent = step_size_exponent;
+		return this;
+	}
+
+	/**
+	 * Every {@code checkpoint_period} epochs, writes a binary checkpoint of the
+	 * model and of the state of training to {@code checkpoint_file}. When that
+	 * file holds a valid checkpoint, training resumes from it.
+	 */
+	public M12BWCoreTrainerBlueprint checkpoint( Path checkpoint_file,
+			int checkpoint_period ) {
+		this.checkpoint_file = checkpoint_file;
+		this.checkpoint_period = checkpoint_period;
+		return this;
+	}
+
+	/**
+	 * When positive, the log-space kernel sums probabilities with a
+	 * {@link org.github.evenjn.numeric.NumericTabulatedLogAdder} whose error
+	 * bound is {@code max_error}. Zero (the default) means exact sums.
+	 */
+	public M12BWCoreTrainerBlueprint logAddError( double max_error ) {
+		this.log_add_error = max_error;
+		return this;
+	}
+
 	public M12BWCoreTrainerBlueprint states( int number_of_states ) {
 		this.number_of_states = number_of_states;
 		return this;
@@ -92,7 +181,16 @@ public class M12BWCoreTrainerBlueprint {
 				putter_core,
 				reader_core,
 				quality_control,
-				seed );
+				seed,
+				number_of_workers,
+				executor,
+				scaled_kernel,
+				graph_memory_budget,
+				mini_batch_size,
+				step_size_exponent,
+				checkpoint_file,
+				checkpoint_period,
+				log_add_error );
 	}
 
 }
@@ -0,0 +1,215 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.baumwelch;
+
+import static org.github.evenjn.numeric.NumericLogarithm.elnsum2;
+
+import org.github.evenjn.numeric.NumericLogarithm;
+
+/**
+ * Expected counts collected during the expectation step of Baum-Welch.
+ *
+ * All values are natural logarithms.
+ *
+ * Emission counts are stored only for the symbols that have been touched
+ * since the last call to {@link #fill(double, double)} or {@link #erase()}.
+ * Each touched symbol is assigned a row with one count per state; rows are
+ * found with an open-addressing hash table keyed by symbol. The count of a
+ * symbol that was not touched is {@link #emissionBase()}. This way, memory
+ * is proportional to the number of symbols actually occurring in the data,
+ * rather than to the size of the alphabet.
+ */
+class M12BWCounts {
+
+	final double[] initial;
+
+	final double[][] transition;
+
+	/**
+	 * The emission counts of the touched symbols. The count of state
+	 * {@code s} for the symbol in row {@code r} is at
+	 * {@code emission[r * number_of_states + s]}.
+	 */
+	double[] emission;
+
+	private final int number_of_states;
+
+	private double emission_base = NumericLogarithm.smallLogValue;
+
+	/*
+	 * The open-addressing hash table: keys hold the symbol plus one (zero
+	 * means empty), values hold the row.
+	 */
+	private int[] table_keys;
+
+	private int[] table_rows;
+
+	private int[] symbol_of_row;
+
+	private int number_of_rows = 0;
+
+	M12BWCounts(int number_of_states) {
+		this.number_of_states = number_of_states;
+		initial = new double[number_of_states];
+		transition = new double[number_of_states][number_of_states];
+		table_keys = new int[64];
+		table_rows = new int[64];
+		symbol_of_row = new int[32];
+		emission = new double[32 * number_of_states];
+		fill( NumericLogarithm.smallLogValue, NumericLogarithm.smallLogValue );
+	}
+
+	/**
+	 * Sets every count to the given (logarithm of the) smoothing values.
+	 */
+	void fill( double uniform_state, double uniform_symbols ) {
+		for ( int s = 0; s < number_of_states; s++ ) {
+			initial[s] = uniform_state;
+			final double[] transitions_from_s = transition[s];
+			for ( int d = 0; d < number_of_states; d++ ) {
+				transitions_from_s[d] = uniform_state;
+			}
+		}
+		clearRows( );
+		emission_base = uniform_symbols;
+	}
+
+	/**
+	 * Sets every count to zero.
+	 */
+	void erase( ) {
+		fill( NumericLogarithm.smallLogValue, NumericLogarithm.smallLogValue );
+	}
+
+	/**
+	 * The emission count of any symbol that has not been touched.
+	 */
+	double emissionBase( ) {
+		return emission_base;
+	}
+
+	int numberOfTouchedSymbols( ) {
+		return number_of_rows;
+	}
+
+	int touchedSymbol( int row ) {
+		return symbol_of_row[row];
+	}
+
+	/**
+	 * Returns the offset in {@link #emission} of the counts of the symbol,
+	 * assigning a new row to the symbol if it has not been touched yet.
+	 * 
+	 * The emission array may be replaced by a larger one when a new row is
+	 * assigned, so it must be read after calling this method.
+	 */
+	int touch( int symbol ) {
+		final int mask = table_keys.length - 1;
+		int position = mix( symbol ) & mask;
+		for ( ;; ) {
+			final int key = table_keys[position];
+			if ( key == symbol + 1 ) {
+				return table_rows[position] * number_of_states;
+			}
+			if ( key == 0 ) {
+				break;
+			}
+			position = ( position + 1 ) & mask;
+		}
+		if ( number_of_rows == symbol_of_row.length ) {
+			int[] new_symbol_of_row = new int[2 * symbol_of_row.length];
+			System.arraycopy( symbol_of_row, 0, new_symbol_of_row, 0,
+					number_of_rows );
+			symbol_of_row = new_symbol_of_row;
+			double[] new_emission = new double[2 * emission.length];
+			System.arraycopy( emission, 0, new_emission, 0,
+					number_of_rows * number_of_states );
+			emission = new_emission;
+		}
+		final int row = number_of_rows++;
+		symbol_of_row[row] = symbol;
+		table_keys[position] = symbol + 1;
+		table_rows[position] = row;
+		final int offset = row * number_of_states;
+		for ( int s = 0; s < number_of_states; s++ ) {
+			emission[offset + s] = emission_base;
+		}
+		if ( 2 * number_of_rows > table_keys.length ) {
+			rehash( 2 * table_keys.length );
+		}
+		return offset;
+	}
+
+	/**
+	 * Adds these counts to the target counts. Emission counts are visited in the
+	 * order their symbols were first touched.
+	 */
+	void mergeInto( M12BWCounts target ) {
+		for ( int s = 0; s < number_of_states; s++ ) {
+			target.initial[s] = elnsum2( target.initial[s], initial[s] );
+			final double[] transitions_from_s = transition[s];
+			final double[] target_transitions_from_s = target.transition[s];
+			for ( int d = 0; d < number_of_states; d++ ) {
+				target_transitions_from_s[d] =
+						elnsum2( target_transitions_from_s[d], transitions_from_s[d] );
+			}
+		}
+		for ( int row = 0; row < number_of_rows; row++ ) {
+			final int offset = row * number_of_states;
+			final int target_offset = target.touch( symbol_of_row[row] );
+			final double[] target_emission = target.emission;
+			for ( int s = 0; s < number_of_states; s++ ) {
+				target_emission[target_offset + s] = elnsum2(
+						target_emission[target_offset + s],
+						emission[offset + s] );
+			}
+		}
+	}
+
+	private void clearRows( ) {
+		for ( int row = 0; row < number_of_rows; row++ ) {
+			final int mask = table_keys.length - 1;
+			int position = mix( symbol_of_row[row] ) & mask;
+			while ( table_keys[position] != 0 ) {
+				table_keys[position] = 0;
+				position = ( position + 1 ) & mask;
+			}
+		}
+		number_of_rows = 0;
+	}
+
+	private void rehash( int capacity ) {
+		table_keys = new int[capacity];
+		table_rows = new int[capacity];
+		final int mask = capacity - 1;
+		for ( int row = 0; row < number_of_rows; row++ ) {
+			final int symbol = symbol_of_row[row];
+			int position = mix( symbol ) & mask;
+			while ( table_keys[position] != 0 ) {
+				position = ( position + 1 ) & mask;
+			}
+			table_keys[position] = symbol + 1;
+			table_rows[position] = row;
+		}
+	}
+
+	private static int mix( int symbol ) {
+		final int h = symbol * 0x9E3779B9;
+		return h ^ ( h >>> 16 );
+	}
+}
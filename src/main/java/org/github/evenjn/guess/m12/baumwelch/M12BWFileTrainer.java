@@ -20,6 +20,7 @@ package org.github.evenjn.guess.m12.baumwelch;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -32,6 +33,8 @@ import org.github.evenjn.file.FileFool;
 import org.github.evenjn.guess.TrainingData;
 import org.github.evenjn.guess.m12.M12FileTrainer;
 import org.github.evenjn.guess.m12.M12QualityChecker;
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.guess.markov.MarkovBinary;
 import org.github.evenjn.knit.SafeProgressSpawner;
 import org.github.evenjn.lang.BasicRook;
 import org.github.evenjn.lang.Progress;
@@ -98,6 +101,47 @@ public class M12BWFileTrainer<I, O> implements
 	private final M12BWCoreTrainerBlueprint m12ctb =
 			new M12BWCoreTrainerBlueprint( );
 
+	public M12BWFileTrainer<I, O> parallel( int number_of_workers,
+			ExecutorService executor ) {
+		m12ctb.parallel( number_of_workers, executor );
+		return this;
+	}
+
+	public M12BWFileTrainer<I, O> scaledKernel( boolean scaled_kernel ) {
+		m12ctb.scaledKernel( scaled_kernel );
+		return this;
+	}
+
+	public M12BWFileTrainer<I, O> residentGraphs( long memory_budget ) {
+		m12ctb.residentGraphs( memory_budget );
+		return this;
+	}
+
+	private int checkpoint_period = 0;
+
+	/**
+	 * Every {@code checkpoint_period} epochs, writes a checkpoint of training
+	 * to m12_core.checkpoint.bin. If training is interrupted, the next run
+	 * resumes from the last checkpoint, provided it trains on as many graphs
+	 * and starts from the same initial core; otherwise, the checkpoint is
+	 * ignored. Zero (the default) means no checkpoints.
+	 */
+	public M12BWFileTrainer<I, O> checkpoint( int checkpoint_period ) {
+		this.checkpoint_period = checkpoint_period;
+		return this;
+	}
+
+	public M12BWFileTrainer<I, O> logAddError( double max_error ) {
+		m12ctb.logAddError( max_error );
+		return this;
+	}
+
+	public M12BWFileTrainer<I, O> stepwise( int mini_batch_size,
+			double step_size_exponent ) {
+		m12ctb.stepwise( mini_batch_size, step_size_exponent );
+		return this;
+	}
+
 	@Override
 	public <K> void train(
 			ProgressSpawner progress_spawner,
@@ -158,34 +202,34 @@ public class M12BWFileTrainer<I, O> implements
 			}
 
 			Path graphs_stable_file =
-					ff.getRoot( ).resolve( "ta_graphs.stable.txt" );
+					ff.getRoot( ).resolve( "ta_graphs.stable.bin" );
 			Path graphs_working_file =
-					ff.getRoot( ).resolve( "ta_graphs.working.txt" );
+					ff.getRoot( ).resolve( "ta_graphs.working.bin" );
 
 			if ( ff.exists( graphs_working_file ) ) {
 				ff.delete( graphs_working_file );
 			}
 			if ( ff.exists( graphs_stable_file ) ) {
 				System.out.println( "Using graphs cached in " + graphs_stable_file );
-				tagdmb.deserializeTupleAlignmentGraphs( h -> PlainText.reader( )
-						.build( ).get( h, ff.open( graphs_stable_file ).read( h ) ) );
+				tagdmb.readBinaryTupleAlignmentGraphs( graphs_stable_file );
 			}
 			else {
-				ff.create( ff.mold( graphs_working_file ) );
-				tagdmb.serializeTupleAlignmentGraphs( h -> PlainText.writer( ).build( )
-						.apply( h, ff.open( graphs_working_file ).write( h ) ) );
-				tagdmb.deserializeTupleAlignmentGraphs( h -> PlainText.reader( )
-						.build( ).get( h, ff.open( graphs_working_file ).read( h ) ) );
+				tagdmb.writeBinaryTupleAlignmentGraphs( graphs_working_file );
+				tagdmb.readBinaryTupleAlignmentGraphs( graphs_working_file );
 			}
 
 			Path m12core_initial_file =
 					ff.getRoot( ).resolve( "./m12_core.initial.txt" );
 			Path m12core_stable_file =
 					ff.getRoot( ).resolve( "./m12_core.stable.txt" );
+			Path m12core_stable_binary_file =
+					ff.getRoot( ).resolve( "./m12_core.stable.bin" );
 			Path m12core_working_file =
 					ff.getRoot( ).resolve( "./m12_core.working.txt" );
 			Path m12core_log_file =
 					ff.getRoot( ).resolve( "./m12_core.log.txt" );
+			Path m12core_checkpoint_file =
+					ff.getRoot( ).resolve( "./m12_core.checkpoint.bin" );
 
 			if ( ff.exists( m12core_working_file ) ) {
 				ff.delete( m12core_working_file );
@@ -216,6 +260,9 @@ public class M12BWFileTrainer<I, O> implements
 				}
 				m12ctb.serializeModel( h -> PlainText.writer( ).build( )
 						.apply( h, ff.open( m12core_working_file ).write( h ) ) );
+				if ( checkpoint_period > 0 ) {
+					m12ctb.checkpoint( m12core_checkpoint_file, checkpoint_period );
+				}
 			}
 
 			/*
@@ -262,7 +309,10 @@ public class M12BWFileTrainer<I, O> implements
 				progress.info( "Training M12 core." );
 				M12BWCoreTrainer m12ct = m12ctb.create( );
 
-				m12ct.load(
+				if ( ff.exists( m12core_stable_binary_file ) ) {
+					ff.delete( m12core_stable_binary_file );
+				}
+				Markov core = m12ct.load(
 						taadm.getAlphabet( ).size( ),
 						tagdm.getMaxNumberOfEdges( ),
 						tagdm.getMaxLenghtFront( ),
@@ -270,9 +320,18 @@ public class M12BWFileTrainer<I, O> implements
 						tagdm.getGraphs( ),
 						progress );
 
+				/*
+				 * The binary file is complete before the text file marks the core as
+				 * stable.
+				 */
+				MarkovBinary.writeAtomically( m12core_stable_binary_file, core, false );
 				Files.copy( m12core_working_file, m12core_stable_file );
 			}
 
+			if ( ff.exists( m12core_checkpoint_file ) ) {
+				ff.delete( m12core_checkpoint_file );
+			}
+
 			if ( ff.exists( alphabet_working_file ) ) {
 				ff.delete( alphabet_working_file );
 			}
@@ -0,0 +1,40 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.baumwelch;
+
+import org.github.evenjn.align.graph.TupleAlignmentGraph;
+
+/**
+ * Carries out the expectation step of Baum-Welch on one tuple alignment graph
+ * at a time.
+ * 
+ * A kernel is not thread-safe. Each worker owns a kernel.
+ */
+interface M12BWKernel {
+
+	/**
+	 * Adds to {@code counts} the expected counts collected on the observed
+	 * graph, and stores in {@code probability_of_this_graph} (when not null) the
+	 * natural logarithm of the probability of the observed graph.
+	 */
+	void expectation(
+			TupleAlignmentGraph observed,
+			M12BWCounts counts,
+			double[] probability_of_this_graph );
+
+}
@@ -0,0 +1,170 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.baumwelch;
+
+import static org.github.evenjn.numeric.NumericLogarithm.elnproduct;
+import static org.github.evenjn.numeric.NumericLogarithm.elnsum2;
+
+import org.github.evenjn.align.graph.TupleAlignmentGraph;
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.numeric.NumericLogarithm;
+
+/**
+ * The emission table of a model trained in stepwise mode, where each update
+ * moves every emission probability towards its estimate.
+ * 
+ * Within an epoch, the estimate of the symbols not touched by a mini-batch is
+ * the same for all of them: the smoothing. Rather than rewriting the whole
+ * table at each update, the affine maps {@code v -> ( 1 - step ) v + step *
+ * estimate} of the updates are composed, and each symbol records the update
+ * its row was last brought to. A row is brought up to date, in one step, only
+ * when a graph about to be processed reads it, and every row is brought up to
+ * date at the end of the epoch. This way, an update costs time proportional to
+ * the number of touched symbols rather than to the size of the alphabet.
+ * 
+ * The composition after update i is kept as a pair (A, C), such that a row
+ * that was up to date at the beginning of the epoch holds A * ( v + C ) after
+ * update i. Both are kept as logarithms, since A shrinks and C grows with the
+ * number of updates.
+ */
+class M12BWLazyEmission {
+
+	private final Markov hmm;
+
+	private final M12BWLinearModel linear_model;
+
+	private final int number_of_states;
+
+	/*
+	 * For each symbol, the number of updates in this epoch its row reflects.
+	 */
+	private final int[] last_update;
+
+	/*
+	 * The logarithms of A and C after each update of this epoch. Entry 0 is
+	 * the identity.
+	 */
+	private double[] ln_keep_product = new double[64];
+
+	private double[] ln_offset = new double[64];
+
+	private int updates = 0;
+
+	/**
+	 * When {@code linear_model} is not null, the emissions of a symbol are
+	 * copied to it each time the row of the symbol is brought up to date.
+	 */
+	M12BWLazyEmission(Markov hmm, M12BWLinearModel linear_model) {
+		this.hmm = hmm;
+		this.linear_model = linear_model;
+		number_of_states = hmm.number_of_states;
+		last_update = new int[hmm.number_of_symbols];
+		ln_keep_product[0] = NumericLogarithm.oneLogValue;
+		ln_offset[0] = NumericLogarithm.smallLogValue;
+	}
+
+	/**
+	 * Records an update that moves each row not written since by
+	 * {@link #written(int)} towards {@code estimate}, given (the logarithms of)
+	 * 1 - step and step.
+	 */
+	void update( double ln_keep, double ln_step, double estimate ) {
+		if ( updates + 1 == ln_keep_product.length ) {
+			ln_keep_product = grow( ln_keep_product );
+			ln_offset = grow( ln_offset );
+		}
+		final double ln_keep_product_after = ln_keep_product[updates] + ln_keep;
+		ln_offset[updates + 1] = elnsum2( ln_offset[updates],
+				elnproduct( ln_step, estimate ) - ln_keep_product_after );
+		ln_keep_product[updates + 1] = ln_keep_product_after;
+		updates++;
+	}
+
+	/**
+	 * Records that the row of the symbol was written by the last update.
+	 */
+	void written( int symbol ) {
+		last_update[symbol] = updates;
+		if ( linear_model != null ) {
+			linear_model.updateSymbol( symbol );
+		}
+	}
+
+	/**
+	 * Brings up to date the rows of the symbols on the edges of the graph.
+	 */
+	void bring( TupleAlignmentGraph graph ) {
+		final int[] edge_symbol = graph.edge_symbol;
+		for ( int edge = 0; edge < graph.number_of_edges; edge++ ) {
+			bring( edge_symbol[edge] );
+		}
+	}
+
+	/**
+	 * Brings every row up to date, and starts composing updates afresh.
+	 */
+	void finish( ) {
+		for ( int y = 0; y < last_update.length; y++ ) {
+			bring( y );
+			last_update[y] = 0;
+		}
+		updates = 0;
+	}
+
+	/**
+	 * Brings up to date the row of the symbol.
+	 */
+	void bring( int symbol ) {
+		final int since = last_update[symbol];
+		if ( since == updates ) {
+			return;
+		}
+		/*
+		 * v <- ( A / A' ) v + A ( C - C' ), where (A', C') is the composition at
+		 * the time the row was last brought up to date.
+		 */
+		final double ln_ratio = ln_keep_product[updates] - ln_keep_product[since];
+		final double ln_shift = elnproduct( ln_keep_product[updates],
+				lnDifference( ln_offset[updates], ln_offset[since] ) );
+		for ( int s = 0; s < number_of_states; s++ ) {
+			hmm.emission.set( s, symbol, elnsum2(
+					elnproduct( ln_ratio, hmm.emission.get( s, symbol ) ),
+					ln_shift ) );
+		}
+		written( symbol );
+	}
+
+	/*
+	 * The logarithm of e^a - e^b, given a >= b.
+	 */
+	private static double lnDifference( double a, double b ) {
+		if ( b <= NumericLogarithm.smallLogValue ) {
+			return a;
+		}
+		if ( b >= a ) {
+			return NumericLogarithm.smallLogValue;
+		}
+		return a + Math.log1p( -Math.exp( b - a ) );
+	}
+
+	private static double[] grow( double[] array ) {
+		double[] result = new double[2 * array.length];
+		System.arraycopy( array, 0, result, 0, array.length );
+		return result;
+	}
+}
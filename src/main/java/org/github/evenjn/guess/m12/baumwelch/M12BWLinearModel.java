@@ -0,0 +1,95 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.baumwelch;
+
+import static org.github.evenjn.numeric.NumericLogarithm.eexp;
+
+import org.github.evenjn.guess.markov.Markov;
+
+/**
+ * The parameters of a Markov model in linear probability space, as used by
+ * {@link M12BWScaledWorkspace}. Emission probabilities are stored by symbol,
+ * so that the emission probabilities of one symbol are contiguous.
+ * 
+ * It is updated once per epoch, and it is shared (read-only) by all workers.
+ * In stepwise mode, it is updated after each mini-batch, one symbol at a
+ * time, as the emission table is brought up to date.
+ * 
+ * This is a dense copy on the heap, whatever the {@link
+ * org.github.evenjn.guess.markov.MarkovEmission} behind the model: the scaled
+ * kernel needs linear values grouped by symbol, while the emission table holds
+ * logarithms grouped by state. Reading through the accessor would repeat the
+ * exponentiation at every step of every sequence. Training with a sparse or
+ * mapped emission table therefore takes number_of_symbols * number_of_states
+ * doubles of heap for this copy; the log-space kernel does not.
+ */
+class M12BWLinearModel {
+
+	final double[] initial;
+
+	final double[][] transition;
+
+	final double[][] emission_by_symbol;
+
+	private final Markov hmm;
+
+	M12BWLinearModel(Markov hmm) {
+		this.hmm = hmm;
+		initial = new double[hmm.number_of_states];
+		transition = new double[hmm.number_of_states][hmm.number_of_states];
+		emission_by_symbol = new double[hmm.number_of_symbols][hmm.number_of_states];
+	}
+
+	/**
+	 * Copies the parameters of the Markov model, raising e to their power.
+	 */
+	void update( ) {
+		final int number_of_states = hmm.number_of_states;
+		final double[] emission_from_s = new double[hmm.number_of_symbols];
+		updateStates( );
+		for ( int s = 0; s < number_of_states; s++ ) {
+			hmm.emission.getRow( s, emission_from_s );
+			for ( int e = 0; e < hmm.number_of_symbols; e++ ) {
+				emission_by_symbol[e][s] = eexp( emission_from_s[e] );
+			}
+		}
+	}
+
+	/**
+	 * Copies the initial and transition probabilities only.
+	 */
+	void updateStates( ) {
+		final int number_of_states = hmm.number_of_states;
+		for ( int s = 0; s < number_of_states; s++ ) {
+			initial[s] = eexp( hmm.initial_table[s] );
+			for ( int d = 0; d < number_of_states; d++ ) {
+				transition[s][d] = eexp( hmm.transition_table[s][d] );
+			}
+		}
+	}
+
+	/**
+	 * Copies the emission probabilities of one symbol only.
+	 */
+	void updateSymbol( int symbol ) {
+		final double[] emission_of_symbol = emission_by_symbol[symbol];
+		for ( int s = 0; s < hmm.number_of_states; s++ ) {
+			emission_of_symbol[s] = eexp( hmm.emission.get( s, symbol ) );
+		}
+	}
+}
@@ -0,0 +1,440 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.baumwelch;
+
+import static org.github.evenjn.numeric.NumericLogarithm.eln;
+import static org.github.evenjn.numeric.NumericLogarithm.elnsum2;
+
+import org.github.evenjn.align.graph.TupleAlignmentGraph;
+import org.github.evenjn.numeric.NumericLogarithm;
+
+/**
+ * The lattices and buffers used to carry out the expectation step of
+ * Baum-Welch on one tuple alignment graph at a time, in linear probability
+ * space.
+ * 
+ * The forward (and backward) vector of each node is normalized to sum to one,
+ * and the natural logarithm of the normalization factor is kept apart, one
+ * value per node. Since the paths reaching a node come from nodes that have
+ * different factors, the contribution of each incoming edge is rescaled to the
+ * largest factor among the source nodes. This way, there is one call to
+ * Math.exp per edge and one call to Math.log per node, instead of one call per
+ * term.
+ * 
+ * The expected counts collected on a graph are converted to log space once per
+ * graph, and then added to the counts.
+ * 
+ * The expected counts agree with those computed by {@link M12BWWorkspace} up
+ * to a relative difference of about 1E-12.
+ * 
+ * A workspace is not thread-safe. Each worker owns a workspace.
+ */
+class M12BWScaledWorkspace implements
+		M12BWKernel {
+
+	/*
+	 * The lattices are indexed by node, then by state. They hold at least as
+	 * many nodes as the largest graph seen so far, and grow geometrically.
+	 */
+	private double[][] alpha;
+
+	private double[] alpha_scale;
+
+	/*
+	 * For each node, the scaled forward vector times the transition matrix. It
+	 * does not depend on the edge leaving the node, so it is computed once per
+	 * node and used by all outgoing edges.
+	 */
+	private double[][] message;
+
+	private double[][] beta;
+
+	private double[] beta_scale;
+
+	private final double[] buffer_gamma;
+
+	private final double[] new_initial;
+
+	private final double[][] new_transition;
+
+	private final double[] transition_denominator;
+
+	private final double[] emission_denominator;
+
+	/*
+	 * The emission counts collected on a graph. Each symbol occurring in the
+	 * graph is assigned a slot.
+	 */
+	private final double[][] new_emission;
+
+	private final int[] slot_of_symbol;
+
+	private final int[] symbol_of_slot;
+
+	private int number_of_slots = 0;
+
+	private final int number_of_states;
+
+	private final M12BWLinearModel model;
+
+	M12BWScaledWorkspace(
+			M12BWLinearModel model,
+			int total_number_of_edges,
+			int max_length_above,
+			int max_length_below) {
+		this.model = model;
+		number_of_states = model.initial.length;
+		final int number_of_symbols = model.emission_by_symbol.length;
+		allocate( M12BWWorkspace.initialNumberOfNodes( max_length_above,
+				max_length_below ) );
+		buffer_gamma = new double[number_of_states];
+		new_initial = new double[number_of_states];
+		new_transition = new double[number_of_states][number_of_states];
+		transition_denominator = new double[number_of_states];
+		emission_denominator = new double[number_of_states];
+		new_emission = new double[1 + total_number_of_edges][number_of_states];
+		symbol_of_slot = new int[1 + total_number_of_edges];
+		slot_of_symbol = new int[number_of_symbols];
+		for ( int e = 0; e < number_of_symbols; e++ ) {
+			slot_of_symbol[e] = -1;
+		}
+	}
+
+	@Override
+	public void expectation(
+			TupleAlignmentGraph observed,
+			M12BWCounts counts,
+			double[] probability_of_this_graph ) {
+		if ( observed.la( ) < 2 ) {
+			throw new IllegalArgumentException(
+					"Sequences of length 0 or 1 as training data are not supported." );
+		}
+		if ( alpha.length < observed.number_of_nodes ) {
+			allocate( Math.max( observed.number_of_nodes, 2 * alpha.length ) );
+		}
+		forward( observed );
+		final double R = alpha_scale[observed.last( )];
+		if ( probability_of_this_graph != null ) {
+			probability_of_this_graph[0] = R;
+		}
+		if ( R <= NumericLogarithm.smallLogValue ) {
+			/* The graph has probability zero: there is nothing to count. */
+			return;
+		}
+		backward( observed );
+		collect( observed, R );
+		store( counts );
+	}
+
+	private void allocate( int number_of_nodes ) {
+		alpha = new double[number_of_nodes][number_of_states];
+		message = new double[number_of_nodes][number_of_states];
+		beta = new double[number_of_nodes][number_of_states];
+		alpha_scale = new double[number_of_nodes];
+		beta_scale = new double[number_of_nodes];
+	}
+
+	/*
+	 * Computes the sum over all source states of the scaled forward
+	 * probabilities of the source node multiplied by the transition
+	 * probabilities, for each destination state.
+	 */
+	private void message( double[] alpha_of_source, double[] message ) {
+		for ( int d = 0; d < number_of_states; d++ ) {
+			message[d] = 0d;
+		}
+		for ( int z = 0; z < number_of_states; z++ ) {
+			final double v = alpha_of_source[z];
+			if ( v == 0d ) {
+				continue;
+			}
+			final double[] transitions_from_z = model.transition[z];
+			for ( int d = 0; d < number_of_states; d++ ) {
+				message[d] += v * transitions_from_z[d];
+			}
+		}
+	}
+
+	private void forward( TupleAlignmentGraph observed ) {
+		final int last = observed.last( );
+		final int[] edge_offset = observed.edge_offset;
+		final int[] edge_source = observed.edge_source;
+		final int[] edge_symbol = observed.edge_symbol;
+		for ( int node = 1; node <= last; node++ ) {
+			final int first_edge = edge_offset[node];
+			final int end_edge = edge_offset[node + 1];
+			final double[] alpha_of_cell = alpha[node];
+
+			/*
+			 * The scale of the cell before normalization is the largest scale among
+			 * the source nodes. The root has scale zero.
+			 */
+			double reference = NumericLogarithm.smallLogValue;
+			for ( int edge = first_edge; edge < end_edge; edge++ ) {
+				final int source_node = edge_source[edge];
+				final double scale =
+						( source_node == 0 ) ? 0d : alpha_scale[source_node];
+				if ( reference < scale ) {
+					reference = scale;
+				}
+			}
+
+			for ( int d = 0; d < number_of_states; d++ ) {
+				alpha_of_cell[d] = 0d;
+			}
+			for ( int edge = first_edge; edge < end_edge; edge++ ) {
+				final int source_node = edge_source[edge];
+				final double[] emission_of_e =
+						model.emission_by_symbol[edge_symbol[edge]];
+				final double[] source;
+				final double weight;
+				if ( source_node == 0 ) {
+					source = model.initial;
+					weight = Math.exp( -reference );
+				}
+				else {
+					source = message[source_node];
+					weight = Math.exp( alpha_scale[source_node] - reference );
+				}
+				if ( weight == 0d ) {
+					continue;
+				}
+				for ( int d = 0; d < number_of_states; d++ ) {
+					alpha_of_cell[d] += weight * source[d] * emission_of_e[d];
+				}
+			}
+			alpha_scale[node] = normalize( alpha_of_cell, reference );
+			if ( node < last ) {
+				/* no edge leaves the last node */
+				message( alpha_of_cell, message[node] );
+				/*
+				 * The backward pass adds to the vector of each source node, so it
+				 * is cleared here, rather than by a separate pass over the lattice.
+				 */
+				final double[] beta_of_cell = beta[node];
+				for ( int s = 0; s < number_of_states; s++ ) {
+					beta_of_cell[s] = 0d;
+				}
+				beta_scale[node] = NumericLogarithm.smallLogValue;
+			}
+		}
+	}
+
+	/*
+	 * Divides the vector by the sum of its elements, and returns the new
+	 * (logarithmic) scale of the vector, given the old one.
+	 */
+	private double normalize( double[] vector, double scale ) {
+		double sum = 0d;
+		for ( int s = 0; s < number_of_states; s++ ) {
+			sum += vector[s];
+		}
+		if ( sum == 0d ) {
+			return NumericLogarithm.smallLogValue;
+		}
+		for ( int s = 0; s < number_of_states; s++ ) {
+			vector[s] = vector[s] / sum;
+		}
+		return scale + Math.log( sum );
+	}
+
+	private void backward( TupleAlignmentGraph observed ) {
+		final int last = observed.last( );
+		for ( int s = 0; s < number_of_states; s++ ) {
+			beta[last][s] = 1d;
+		}
+		beta_scale[last] = 0d;
+
+		final int[] edge_offset = observed.edge_offset;
+		final int[] edge_source = observed.edge_source;
+		final int[] edge_symbol = observed.edge_symbol;
+		for ( int node = last; node > 0; node-- ) {
+			final double[] beta_of_cell = beta[node];
+			/*
+			 * All the successors of this cell have been visited, so its backward
+			 * vector is complete.
+			 */
+			final double scale =
+					normalize( beta_of_cell, beta_scale[node] );
+			beta_scale[node] = scale;
+			if ( scale <= NumericLogarithm.smallLogValue ) {
+				continue;
+			}
+			for ( int edge = edge_offset[node]; edge < edge_offset[node
+					+ 1]; edge++ ) {
+				final int source_node = edge_source[edge];
+				if ( source_node == 0 ) {
+					continue;
+				}
+				final double[] emission_of_e =
+						model.emission_by_symbol[edge_symbol[edge]];
+				for ( int d = 0; d < number_of_states; d++ ) {
+					buffer_gamma[d] = emission_of_e[d] * beta_of_cell[d];
+				}
+				final double[] beta_of_source = beta[source_node];
+				double weight;
+				if ( beta_scale[source_node] < scale ) {
+					/* rescale what the source node collected so far */
+					final double rescale =
+							Math.exp( beta_scale[source_node] - scale );
+					for ( int z = 0; z < number_of_states; z++ ) {
+						beta_of_source[z] *= rescale;
+					}
+					beta_scale[source_node] = scale;
+					weight = 1d;
+				}
+				else {
+					weight = Math.exp( scale - beta_scale[source_node] );
+				}
+				for ( int z = 0; z < number_of_states; z++ ) {
+					final double[] transitions_from_z = model.transition[z];
+					double v = 0d;
+					for ( int d = 0; d < number_of_states; d++ ) {
+						v += transitions_from_z[d] * buffer_gamma[d];
+					}
+					beta_of_source[z] += weight * v;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Collects the expected counts of the graph in linear space.
+	 */
+	private void collect( TupleAlignmentGraph observed, double R ) {
+		for ( int s = 0; s < number_of_states; s++ ) {
+			new_initial[s] = 0d;
+			transition_denominator[s] = 0d;
+			emission_denominator[s] = 0d;
+			final double[] new_transition_from_s = new_transition[s];
+			for ( int d = 0; d < number_of_states; d++ ) {
+				new_transition_from_s[d] = 0d;
+			}
+		}
+
+		final int last = observed.last( );
+		final int[] edge_offset = observed.edge_offset;
+		final int[] edge_source = observed.edge_source;
+		final int[] edge_symbol = observed.edge_symbol;
+		for ( int node = 1; node <= last; node++ ) {
+			final boolean is_last = node == last;
+			final double[] alpha_of_cell = alpha[node];
+			final double[] beta_of_cell = beta[node];
+
+			final double gamma_weight =
+					Math.exp( alpha_scale[node] + beta_scale[node] - R );
+			for ( int s = 0; s < number_of_states; s++ ) {
+				final double g = alpha_of_cell[s] * beta_of_cell[s] * gamma_weight;
+				buffer_gamma[s] = g;
+				emission_denominator[s] += g;
+				if ( !is_last ) {
+					/* we want to count transitions */
+					transition_denominator[s] += g;
+				}
+			}
+
+			for ( int edge = edge_offset[node]; edge < edge_offset[node
+					+ 1]; edge++ ) {
+				final int source_node = edge_source[edge];
+				final int e = edge_symbol[edge];
+				final double[] emission_of_e = model.emission_by_symbol[e];
+				final double[] new_emission_of_e = new_emission[slot( e )];
+				final double[] zeno;
+				final double weight;
+				if ( source_node == 0 ) {
+					for ( int s = 0; s < number_of_states; s++ ) {
+						new_initial[s] += buffer_gamma[s];
+					}
+					zeno = model.initial;
+					weight = Math.exp( beta_scale[node] - R );
+				}
+				else {
+					final double[] alpha_of_source = alpha[source_node];
+					weight = Math.exp(
+							alpha_scale[source_node] + beta_scale[node] - R );
+					for ( int s = 0; s < number_of_states; s++ ) {
+						final double as = alpha_of_source[s] * weight;
+						if ( as == 0d ) {
+							continue;
+						}
+						final double[] transitions_from_s = model.transition[s];
+						final double[] new_transition_from_s = new_transition[s];
+						for ( int d = 0; d < number_of_states; d++ ) {
+							new_transition_from_s[d] += as * transitions_from_s[d]
+									* emission_of_e[d] * beta_of_cell[d];
+						}
+					}
+					zeno = message[source_node];
+				}
+				for ( int s = 0; s < number_of_states; s++ ) {
+					new_emission_of_e[s] +=
+							weight * emission_of_e[s] * zeno[s] * beta_of_cell[s];
+				}
+			}
+		}
+	}
+
+	private int slot( int symbol ) {
+		int slot = slot_of_symbol[symbol];
+		if ( slot == -1 ) {
+			slot = number_of_slots++;
+			slot_of_symbol[symbol] = slot;
+			symbol_of_slot[slot] = symbol;
+			final double[] new_emission_of_slot = new_emission[slot];
+			for ( int s = 0; s < number_of_states; s++ ) {
+				new_emission_of_slot[s] = 0d;
+			}
+		}
+		return slot;
+	}
+
+	/*
+	 * Adds the expected counts collected on the graph to the counts, in log
+	 * space.
+	 */
+	private void store( M12BWCounts counts ) {
+		for ( int s = 0; s < number_of_states; s++ ) {
+			counts.initial[s] = elnsum2( counts.initial[s], eln( new_initial[s] ) );
+			final double denominator = transition_denominator[s];
+			if ( denominator > 0d ) {
+				final double[] new_transition_from_s = new_transition[s];
+				final double[] counts_from_s = counts.transition[s];
+				for ( int d = 0; d < number_of_states; d++ ) {
+					counts_from_s[d] = elnsum2( counts_from_s[d],
+							eln( new_transition_from_s[d] / denominator ) );
+				}
+			}
+		}
+		for ( int slot = 0; slot < number_of_slots; slot++ ) {
+			final int e = symbol_of_slot[slot];
+			final double[] new_emission_of_e = new_emission[slot];
+			final int offset = counts.touch( e );
+			final double[] counts_emission = counts.emission;
+			for ( int s = 0; s < number_of_states; s++ ) {
+				final double denominator = emission_denominator[s];
+				if ( denominator > 0d ) {
+					counts_emission[offset + s] = elnsum2( counts_emission[offset + s],
+							eln( new_emission_of_e[s] / denominator ) );
+				}
+			}
+			slot_of_symbol[e] = -1;
+		}
+		number_of_slots = 0;
+	}
+
+}
@@ -0,0 +1,523 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.baumwelch;
+
+import static org.github.evenjn.numeric.NumericLogarithm.eexp;
+import static org.github.evenjn.numeric.NumericLogarithm.elndivision;
+import static org.github.evenjn.numeric.NumericLogarithm.elnproduct;
+import static org.github.evenjn.numeric.NumericLogarithm.elnsum2;
+
+import org.github.evenjn.align.graph.TupleAlignmentGraph;
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.numeric.NumericLogAdder;
+import org.github.evenjn.numeric.NumericLogarithm;
+
+/**
+ * The lattices and buffers used to carry out the expectation step of
+ * Baum-Welch on one tuple alignment graph at a time, in log space.
+ * 
+ * A workspace is not thread-safe. Each worker owns a workspace.
+ */
+class M12BWWorkspace implements
+		M12BWKernel {
+
+	/*
+	 * The lattices are indexed by node, then by state. They hold at least as
+	 * many nodes as the largest graph seen so far, and grow geometrically.
+	 */
+	private double[][] alpha;
+
+	private double[][] message;
+
+	private double[][] beta;
+
+	private final double[] buffer_states;
+
+	private final double[] buffer_edge;
+
+	private final double[] buffer_total_edges;
+
+	/*
+	 * The expected counts collected on a graph, each kept as a pair (max, sum)
+	 * such that the natural logarithm of the count is max + ln( sum ).
+	 */
+	private final double[] initial_max;
+
+	private final double[] initial_sum;
+
+	private final double[][] transition_max;
+
+	private final double[][] transition_sum;
+
+	private final double[] transition_denominator_max;
+
+	private final double[] transition_denominator_sum;
+
+	private final double[] emission_denominator_max;
+
+	private final double[] emission_denominator_sum;
+
+	/*
+	 * The emission counts collected on a graph. Each symbol occurring in the
+	 * graph is assigned a slot.
+	 */
+	private final double[][] emission_max;
+
+	private final double[][] emission_sum;
+
+	private final int[] slot_of_symbol;
+
+	private final int[] symbol_of_slot;
+
+	private int number_of_slots = 0;
+
+	private final int number_of_states;
+
+	private final Markov hmm;
+
+	private final NumericLogAdder log_adder;
+
+	private final static boolean print_debug_expectation = false;
+
+	M12BWWorkspace(
+			Markov hmm,
+			int total_number_of_edges,
+			int max_length_above,
+			int max_length_below) {
+		this( hmm, total_number_of_edges, max_length_above, max_length_below,
+				NumericLogAdder.exact( ) );
+	}
+
+	/**
+	 * Forward-backward sums probabilities with {@code log_adder}; the
+	 * collection of expected counts is always exact.
+	 */
+	M12BWWorkspace(
+			Markov hmm,
+			int total_number_of_edges,
+			int max_length_above,
+			int max_length_below,
+			NumericLogAdder log_adder) {
+		this.hmm = hmm;
+		this.log_adder = log_adder;
+		number_of_states = hmm.number_of_states;
+		final int number_of_symbols = hmm.number_of_symbols;
+		allocate( initialNumberOfNodes( max_length_above, max_length_below ) );
+		buffer_states = new double[number_of_states];
+		buffer_edge = new double[number_of_states];
+		buffer_total_edges = new double[1 + total_number_of_edges];
+		initial_max = new double[number_of_states];
+		initial_sum = new double[number_of_states];
+		transition_max = new double[number_of_states][number_of_states];
+		transition_sum = new double[number_of_states][number_of_states];
+		transition_denominator_max = new double[number_of_states];
+		transition_denominator_sum = new double[number_of_states];
+		emission_denominator_max = new double[number_of_states];
+		emission_denominator_sum = new double[number_of_states];
+		emission_max = new double[1 + total_number_of_edges][number_of_states];
+		emission_sum = new double[1 + total_number_of_edges][number_of_states];
+		symbol_of_slot = new int[1 + total_number_of_edges];
+		slot_of_symbol = new int[number_of_symbols];
+		for ( int e = 0; e < number_of_symbols; e++ ) {
+			slot_of_symbol[e] = -1;
+		}
+	}
+
+	/*
+	 * probability_of_this_graph is (the natural logarithm of) the probability
+	 * of the observed graph using the m12 core in its present state.
+	 * 
+	 * It is useful to compute statistics. It is optional.
+	 */
+	@Override
+	public void expectation(
+			TupleAlignmentGraph observed,
+			M12BWCounts counts,
+			double[] probability_of_this_graph ) {
+		if ( observed.la( ) < 2 ) {
+			throw new IllegalArgumentException(
+					"Sequences of length 0 or 1 as training data are not supported." );
+		}
+		ensureCapacity( observed.number_of_nodes );
+		forward( observed );
+		if (probability_of_this_graph != null) {
+			probability_of_this_graph[0] = probabilityOf( observed );
+		}
+		backward( observed );
+		double R = r( observed );
+		collect( observed, R );
+		store( counts );
+	}
+
+	private void ensureCapacity( int number_of_nodes ) {
+		if ( alpha.length < number_of_nodes ) {
+			allocate( Math.max( number_of_nodes, 2 * alpha.length ) );
+		}
+	}
+
+	private void allocate( int number_of_nodes ) {
+		alpha = new double[number_of_nodes][number_of_states];
+		message = new double[number_of_nodes][number_of_states];
+		beta = new double[number_of_nodes][number_of_states];
+	}
+
+	/*
+	 * The lattices start with room for the graphs of a few short pairs, rather
+	 * than for the pair of the longest sequences, so that one long pair does
+	 * not inflate the workspace before it is met.
+	 */
+	static int initialNumberOfNodes(
+			int max_length_above,
+			int max_length_below ) {
+		final int bound = ( max_length_above + 1 ) * ( max_length_below + 1 );
+		return bound < initial_number_of_nodes ? bound : initial_number_of_nodes;
+	}
+
+	private final static int initial_number_of_nodes = 256;
+
+	private double probabilityOf( TupleAlignmentGraph observed ) {
+		final double[] alpha_of_last = alpha[observed.last( )];
+		double max = NumericLogarithm.smallLogValue;
+		for ( int s = 0; s < number_of_states; s++ ) {
+			final double v = alpha_of_last[s];
+			if ( max < v ) {
+				max = v;
+			}
+			buffer_states[s] = v;
+		}
+		return log_adder.elnsum( max, buffer_states, number_of_states );
+	}
+
+	private double r( TupleAlignmentGraph observed ) {
+		final int last = observed.last( );
+		double max = NumericLogarithm.smallLogValue;
+		for ( int s = 0; s < number_of_states; s++ ) {
+			final double v = elnproduct( alpha[last][s], beta[last][s] );
+			buffer_states[s] = v;
+			if ( max < v ) {
+				max = v;
+			}
+		}
+		return log_adder.elnsum( max, buffer_states, number_of_states );
+	}
+
+	private void forward( TupleAlignmentGraph observed ) {
+
+		final int last = observed.last( );
+		for ( int s = 0; s < number_of_states; s++ ) {
+			alpha[observed.root( )][s] = NumericLogarithm.smallLogValue;
+			beta[observed.root( )][s] = NumericLogarithm.smallLogValue;
+		}
+
+		final int[] edge_offset = observed.edge_offset;
+		final int[] edge_source = observed.edge_source;
+		final int[] edge_symbol = observed.edge_symbol;
+		for ( int node = 1; node <= last; node++ ) {
+			final int first_edge = edge_offset[node];
+			final int edges = edge_offset[node + 1] - first_edge;
+			for ( int destination_s =
+					0; destination_s < number_of_states; destination_s++ ) {
+				double edge_buffer_max = NumericLogarithm.smallLogValue;
+				for ( int edge = 0; edge < edges; edge++ ) {
+					final int source = edge_source[first_edge + edge];
+					final int encoded = edge_symbol[first_edge + edge];
+					double cost;
+					if ( source == 0 ) {
+						cost = hmm.initial_table[destination_s];
+					} else {
+						cost = message[source][destination_s];
+					}
+					cost = elnproduct( cost, hmm.emission.get( destination_s, encoded ) );
+					buffer_total_edges[edge] = cost;
+					if ( edge_buffer_max < cost ) {
+						edge_buffer_max = cost;
+					}
+				}
+				alpha[node][destination_s] =
+						log_adder.elnsum( edge_buffer_max, buffer_total_edges, edges );
+			}
+			if ( node < last ) {
+				/* no edge leaves the last node */
+				message( node );
+				/*
+				 * The backward pass adds to the vector of each source node, so it
+				 * is cleared here, rather than by a separate pass over the lattice.
+				 */
+				final double[] beta_of_node = beta[node];
+				for ( int s = 0; s < number_of_states; s++ ) {
+					beta_of_node[s] = NumericLogarithm.smallLogValue;
+				}
+			}
+		}
+
+		if ( print_debug_expectation ) {
+			System.out.println( "Forward - M12" );
+			for ( int node = 0; node <= last; node++ ) {
+				for ( int s = 0; s < number_of_states; s++ ) {
+					System.out.println( "" + observed.node_a[node] + " "
+							+ observed.node_b[node] + " " + eexp( alpha[node][s] ) );
+				}
+			}
+		}
+	}
+
+	/*
+	 * For each destination state, computes the (logarithm of the) sum over all
+	 * source states of alpha times the transition probability. It does not
+	 * depend on the edge leaving the node, so it is computed once per node and
+	 * used by the forward pass and by the emissions.
+	 */
+	private void message( int node ) {
+		final double[] alpha_of_source = alpha[node];
+		for ( int destination_s =
+				0; destination_s < number_of_states; destination_s++ ) {
+			double max = NumericLogarithm.smallLogValue;
+			for ( int source_s = 0; source_s < number_of_states; source_s++ ) {
+				final double v = elnproduct(
+						alpha_of_source[source_s],
+						hmm.transition_table[source_s][destination_s] );
+				buffer_states[source_s] = v;
+				if ( max < v ) {
+					max = v;
+				}
+			}
+			message[node][destination_s] =
+					log_adder.elnsum( max, buffer_states, number_of_states );
+		}
+	}
+
+	private void backward( TupleAlignmentGraph observed ) {
+		final int last = observed.last( );
+		for ( int s = 0; s < hmm.number_of_states; s++ ) {
+			beta[last][s] = NumericLogarithm.oneLogValue;
+		}
+
+		final int[] edge_offset = observed.edge_offset;
+		final int[] edge_source = observed.edge_source;
+		final int[] edge_symbol = observed.edge_symbol;
+		for ( int node = last; node > 0; node-- ) {
+			final double[] beta_of_node = beta[node];
+			for ( int edge = edge_offset[node]; edge < edge_offset[node
+					+ 1]; edge++ ) {
+				final double[] beta_of_source = beta[edge_source[edge]];
+				final int encoded = edge_symbol[edge];
+				for ( int source_s = 0; source_s < number_of_states; source_s++ ) {
+					double max = NumericLogarithm.smallLogValue;
+					for ( int destination_s =
+							0; destination_s < number_of_states; destination_s++ ) {
+						final double v = elnproduct(
+								beta_of_node[destination_s],
+								hmm.transition_table[source_s][destination_s],
+								hmm.emission.get( destination_s, encoded ) );
+						buffer_states[destination_s] = v;
+						if ( max < v ) {
+							max = v;
+						}
+					}
+					final double cost =
+							log_adder.elnsum( max, buffer_states, number_of_states );
+					beta_of_source[source_s] =
+							log_adder.elnsum2( cost, beta_of_source[source_s] );
+				}
+			}
+		}
+		if ( print_debug_expectation ) {
+			System.out.println( "Backward - M12" );
+			for ( int node = 0; node <= last; node++ ) {
+				for ( int s = 0; s < number_of_states; s++ ) {
+					System.out.println( "" + observed.node_a[node] + " "
+							+ observed.node_b[node] + " " + eexp( beta[node][s] ) );
+				}
+			}
+		}
+	}
+
+	/*
+	 * Adds the value v (a natural logarithm) to the sum kept in log space as a
+	 * pair (max, sum), such that the sum is max + ln( sum ). This takes one call
+	 * to Math.exp, and no call to Math.log.
+	 */
+	private static void accumulate(
+			double[] max,
+			double[] sum,
+			int i,
+			double v ) {
+		if ( v <= NumericLogarithm.smallLogValue ) {
+			return;
+		}
+		final double m = max[i];
+		if ( v <= m ) {
+			sum[i] += Math.exp( v - m );
+		}
+		else {
+			sum[i] = sum[i] * Math.exp( m - v ) + 1d;
+			max[i] = v;
+		}
+	}
+
+	private static double total( double max, double sum ) {
+		if ( sum == 0d ) {
+			return NumericLogarithm.smallLogValue;
+		}
+		return max + Math.log( sum );
+	}
+
+	private static void clear( double[] max, double[] sum ) {
+		for ( int i = 0; i < max.length; i++ ) {
+			max[i] = NumericLogarithm.smallLogValue;
+			sum[i] = 0d;
+		}
+	}
+
+	/**
+	 * Collects initial, transition and emission expected counts for all states
+	 * together, in a single sweep over the graph.
+	 * 
+	 * Asymptotic computational time cost is N*N*E
+	 */
+	private void collect( TupleAlignmentGraph observed, double R ) {
+		clear( initial_max, initial_sum );
+		clear( transition_denominator_max, transition_denominator_sum );
+		clear( emission_denominator_max, emission_denominator_sum );
+		for ( int s = 0; s < number_of_states; s++ ) {
+			clear( transition_max[s], transition_sum[s] );
+		}
+
+		final int last = observed.last( );
+		final int[] edge_offset = observed.edge_offset;
+		final int[] edge_source = observed.edge_source;
+		final int[] edge_symbol = observed.edge_symbol;
+		for ( int node = 1; node <= last; node++ ) {
+			final boolean is_last = node == last;
+			final int a = observed.node_a[node];
+			final double[] alpha_of_cell = alpha[node];
+			final double[] beta_of_cell = beta[node];
+			for ( int s = 0; s < number_of_states; s++ ) {
+				final double gamma = elndivision(
+						elnproduct( alpha_of_cell[s], beta_of_cell[s] ), R );
+				buffer_states[s] = gamma;
+				accumulate( emission_denominator_max, emission_denominator_sum, s,
+						gamma );
+				if ( !is_last ) {
+					/* we want to count transitions */
+					accumulate( transition_denominator_max, transition_denominator_sum,
+							s, gamma );
+				}
+			}
+
+			for ( int edge = edge_offset[node]; edge < edge_offset[node
+					+ 1]; edge++ ) {
+				final int source = edge_source[edge];
+				final int e = edge_symbol[edge];
+				/*
+				 * The emission of the edge times the backward vector of the node,
+				 * shared by the transition and the emission counts.
+				 */
+				for ( int d = 0; d < number_of_states; d++ ) {
+					buffer_edge[d] = elnproduct(
+							hmm.emission.get( d, e ),
+							beta_of_cell[d] );
+				}
+				final double[] zeno;
+				if ( source == 0 ) {
+					for ( int s = 0; s < number_of_states; s++ ) {
+						accumulate( initial_max, initial_sum, s, buffer_states[s] );
+					}
+					zeno = hmm.initial_table;
+				}
+				else {
+					final double[] alpha_of_source = alpha[source];
+					for ( int s = 0; s < number_of_states; s++ ) {
+						final double alpha_cost = alpha_of_source[s];
+						if ( alpha_cost <= NumericLogarithm.smallLogValue ) {
+							continue;
+						}
+						final double[] transitions_from_s = hmm.transition_table[s];
+						final double[] max_from_s = transition_max[s];
+						final double[] sum_from_s = transition_sum[s];
+						for ( int d = 0; d < number_of_states; d++ ) {
+							accumulate( max_from_s, sum_from_s, d, elnproduct(
+									alpha_cost,
+									transitions_from_s[d],
+									buffer_edge[d] ) - R );
+						}
+					}
+					zeno = message[source];
+				}
+				if ( a == 0 ) {
+					continue;
+				}
+				final int slot = slot( e );
+				final double[] max_of_slot = emission_max[slot];
+				final double[] sum_of_slot = emission_sum[slot];
+				for ( int s = 0; s < number_of_states; s++ ) {
+					accumulate( max_of_slot, sum_of_slot, s,
+							elnproduct( zeno[s], buffer_edge[s] ) - R );
+				}
+			}
+		}
+	}
+
+	private int slot( int symbol ) {
+		int slot = slot_of_symbol[symbol];
+		if ( slot == -1 ) {
+			slot = number_of_slots++;
+			slot_of_symbol[symbol] = slot;
+			symbol_of_slot[slot] = symbol;
+			clear( emission_max[slot], emission_sum[slot] );
+		}
+		return slot;
+	}
+
+	/*
+	 * Adds the expected counts collected on the graph to the counts.
+	 */
+	private void store( M12BWCounts counts ) {
+		for ( int s = 0; s < number_of_states; s++ ) {
+			counts.initial[s] = elnsum2( counts.initial[s],
+					total( initial_max[s], initial_sum[s] ) );
+			final double denominator = total( transition_denominator_max[s],
+					transition_denominator_sum[s] );
+			final double[] counts_from_s = counts.transition[s];
+			for ( int d = 0; d < number_of_states; d++ ) {
+				final double numerator =
+						total( transition_max[s][d], transition_sum[s][d] );
+				counts_from_s[d] = elnsum2(
+						counts_from_s[d],
+						elndivision( numerator, denominator ) );
+			}
+		}
+		for ( int slot = 0; slot < number_of_slots; slot++ ) {
+			final int e = symbol_of_slot[slot];
+			final int offset = counts.touch( e );
+			final double[] counts_emission = counts.emission;
+			for ( int s = 0; s < number_of_states; s++ ) {
+				final double denominator = total( emission_denominator_max[s],
+						emission_denominator_sum[s] );
+				final double numerator =
+						total( emission_max[slot][s], emission_sum[slot][s] );
+				counts_emission[offset + s] = elnsum2(
+						counts_emission[offset + s],
+						elndivision( numerator, denominator ) );
+			}
+			slot_of_symbol[e] = -1;
+		}
+		number_of_slots = 0;
+	}
+
+}
@@ -17,19 +17,24 @@
  */
 package org.github.evenjn.guess.m12.baumwelch;
 
-import static org.github.evenjn.numeric.NumericLogarithm.eexp;
 import static org.github.evenjn.numeric.NumericLogarithm.eln;
 import static org.github.evenjn.numeric.NumericLogarithm.elndivision;
 import static org.github.evenjn.numeric.NumericLogarithm.elnproduct;
-import static org.github.evenjn.numeric.NumericLogarithm.elnsum;
 import static org.github.evenjn.numeric.NumericLogarithm.elnsum2;
 
-import java.util.Iterator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
 import org.github.evenjn.align.graph.TupleAlignmentGraph;
-import org.github.evenjn.align.graph.TupleAlignmentNode;
 import org.github.evenjn.guess.markov.Markov;
 import org.github.evenjn.knit.KnittingCursable;
 import org.github.evenjn.knit.KnittingCursor;
@@ -37,59 +42,218 @@ import org.github.evenjn.knit.SafeProgressSpawner;
 import org.github.evenjn.lang.BasicRook;
 import org.github.evenjn.lang.Progress;
 import org.github.evenjn.lang.ProgressSpawner;
+import org.github.evenjn.numeric.NumericLogAdder;
+import org.github.evenjn.numeric.NumericLogSum;
 import org.github.evenjn.numeric.NumericLogarithm;
-import org.github.evenjn.numeric.NumericUtils;
-import org.github.evenjn.numeric.NumericUtils.Summation;
 import org.github.evenjn.numeric.SixCharFormat;
 import org.github.evenjn.yarn.EndOfCursorException;
 
 public class M12BaumWelch {
 
-	private final double[][][] alpha;
+	private final int number_of_states;
 
-	private final double[][][] beta;
+	private final int number_of_symbols;
 
-	private final double[][][] gamma;
+	private final Markov hmm;
 
-	private final double[] buffer_states;
+	private final M12BWKernel[] workspaces;
 
-	private final double[] buffer_total_edges;
+	private final M12BWLinearModel linear_model;
 
-	private final double[][] buffer_transitions;
+	private final M12BWCounts[] partial_counts;
 
-	private final int number_of_states;
+	/*
+	 * Scratch space of the maximization step, which runs once per update: the
+	 * symbols touched by the counts (all false between updates), and one row
+	 * of the emission table.
+	 */
+	private final boolean[] is_touched;
 
-	private final int number_of_symbols;
+	private final double[] emission_row;
 
-	private final Markov hmm;
+	/*
+	 * In stepwise mode, the emission table, brought up to date lazily.
+	 */
+	private final M12BWLazyEmission lazy_emission;
 
-	private final static boolean erase_buffers = true;
+	private final int number_of_workers;
 
-	private final static boolean print_debug_expectation = false;
+	private final ExecutorService executor;
+
+	/**
+	 * The number of graphs in a chunk. In parallel mode, the data is split into
+	 * chunks of this size; each chunk is assigned to a worker, and the partial
+	 * counts of the chunks are added up in the order the chunks appear in the
+	 * data. Since the chunk boundaries do not depend on the number of workers,
+	 * neither does the result.
+	 */
+	private final static int chunk_size = 64;
+
+	/**
+	 * When positive, the model is updated after each mini-batch of this many
+	 * graphs (stepwise EM). When zero, the model is updated after each epoch
+	 * (batch EM).
+	 */
+	private final int mini_batch_size;
 
-	private final static boolean print_debug_maximization = false;
+	/**
+	 * The exponent alpha of the step size schedule of stepwise EM: the k-th
+	 * update (counting from zero) has step size ( k + 2 ) ^ -alpha.
+	 */
+	private final double step_size_exponent;
 
 	private BiFunction<Markov, ProgressSpawner, Boolean> core_inspector;
 
+	private final int total_number_of_edges;
+
+	private final int max_length_above;
+
+	private final int max_length_below;
+
+	private Path checkpoint_file;
+
+	private int checkpoint_period;
+
 	public M12BaumWelch(
 			Markov hmm,
 			BiFunction<Markov, ProgressSpawner, Boolean> core_inspector,
 			int total_number_of_edges,
 			int max_length_above,
 			int max_length_below) {
+		this( hmm, core_inspector, total_number_of_edges, max_length_above,
+				max_length_below, 0, null, false );
+	}
+
+	public M12BaumWelch(
+			Markov hmm,
+			BiFunction<Markov, ProgressSpawner, Boolean> core_inspector,
+			int total_number_of_edges,
+			int max_length_above,
+			int max_length_below,
+			int number_of_workers,
+			ExecutorService executor,
+			boolean scaled_kernel) {
+		this( hmm, core_inspector, total_number_of_edges, max_length_above,
+				max_length_below, number_of_workers, executor, scaled_kernel, 0, 1d );
+	}
+
+	/**
+	 * When {@code number_of_workers} is zero, the expectation step is carried
+	 * out on the calling thread, one graph at a time, and counts are accumulated
+	 * directly.
+	 * 
+	 * When {@code number_of_workers} is positive, the expectation step runs in
+	 * parallel mode: each worker owns its own lattices and partial counts. The
+	 * workers run on {@code executor}, or on a fixed thread pool owned by this
+	 * object when {@code executor} is null. In parallel mode, a seeded run
+	 * produces the same model whatever the number of workers.
+	 * 
+	 * When {@code scaled_kernel} is true, forward-backward runs in linear
+	 * probability space with per-node scaling factors, which avoids most calls
+	 * to Math.exp and Math.log. Otherwise, it runs in log space.
+	 * 
+	 * When {@code mini_batch_size} is positive, training runs in stepwise EM
+	 * mode (Liang and Klein, 2009): after each mini-batch, the model is moved
+	 * towards the estimate obtained from that mini-batch alone, with step size
+	 * {@code ( k + 2 ) ^ -step_size_exponent} at the k-th update. The exponent
+	 * must be in ( 0.5, 1 ]. When {@code mini_batch_size} is zero, training
+	 * runs in batch mode and the exponent is ignored.
+	 * 
+	 * In stepwise mode, an update takes time proportional to the number of
+	 * symbols occurring in the mini-batch, not to the size of the alphabet: the
+	 * emissions of the other symbols are brought up to date when they are next
+	 * read, and at the end of each epoch. Each epoch still visits the whole
+	 * emission table once.
+	 */
+	public M12BaumWelch(
+			Markov hmm,
+			BiFunction<Markov, ProgressSpawner, Boolean> core_inspector,
+			int total_number_of_edges,
+			int max_length_above,
+			int max_length_below,
+			int number_of_workers,
+			ExecutorService executor,
+			boolean scaled_kernel,
+			int mini_batch_size,
+			double step_size_exponent) {
+		if ( number_of_workers < 0 ) {
+			throw new IllegalArgumentException(
+					"The number of workers must not be negative." );
+		}
+		if ( mini_batch_size < 0 ) {
+			throw new IllegalArgumentException(
+					"The mini-batch size must not be negative." );
+		}
+		if ( mini_batch_size > 0
+				&& ( step_size_exponent <= 0.5 || step_size_exponent > 1d ) ) {
+			throw new IllegalArgumentException(
+					"The step size exponent must be in ( 0.5, 1 ]." );
+		}
+		this.mini_batch_size = mini_batch_size;
+		this.step_size_exponent = step_size_exponent;
 		this.hmm = hmm;
 		this.core_inspector = core_inspector;
+		this.number_of_workers = number_of_workers;
+		this.executor = executor;
+		this.total_number_of_edges = total_number_of_edges;
+		this.max_length_above = max_length_above;
+		this.max_length_below = max_length_below;
 		number_of_states = hmm.number_of_states;
 		number_of_symbols = hmm.number_of_symbols;
-		alpha = new double[max_length_above + 1][max_length_below
-				+ 1][number_of_states];
-		beta = new double[max_length_above + 1][max_length_below
-				+ 1][number_of_states];
-		gamma = new double[max_length_above + 1][max_length_below
-				+ 1][number_of_states];
-		buffer_states = new double[number_of_states];
-		buffer_total_edges = new double[1 + total_number_of_edges];
-		buffer_transitions = new double[number_of_states][number_of_states];
+		workspaces = new M12BWKernel[Math.max( 1, number_of_workers )];
+		partial_counts = new M12BWCounts[number_of_workers];
+		is_touched = new boolean[number_of_symbols];
+		emission_row = new double[number_of_symbols];
+		linear_model = scaled_kernel ? new M12BWLinearModel( hmm ) : null;
+		lazy_emission = mini_batch_size > 0
+				? new M12BWLazyEmission( hmm, linear_model )
+				: null;
+		for ( int w = 0; w < workspaces.length; w++ ) {
+			if ( scaled_kernel ) {
+				workspaces[w] = new M12BWScaledWorkspace( linear_model,
+						total_number_of_edges, max_length_above, max_length_below );
+			}
+			else {
+				workspaces[w] = new M12BWWorkspace( hmm, total_number_of_edges,
+						max_length_above, max_length_below );
+			}
+		}
+		for ( int w = 0; w < number_of_workers; w++ ) {
+			partial_counts[w] = new M12BWCounts( number_of_states );
+		}
+	}
+
+	/**
+	 * Makes the log-space kernel sum probabilities with {@code log_adder}
+	 * during forward-backward. The scaled kernel does not sum logarithms, and
+	 * ignores it.
+	 */
+	public M12BaumWelch logAdder( NumericLogAdder log_adder ) {
+		for ( int w = 0; w < workspaces.length; w++ ) {
+			if ( workspaces[w] instanceof M12BWWorkspace ) {
+				workspaces[w] = new M12BWWorkspace( hmm, total_number_of_edges,
+						max_length_above, max_length_below, log_adder );
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Every {@code checkpoint_period} epochs, writes a checkpoint of the model
+	 * and of the state of training to {@code checkpoint_file}. When the file
+	 * holds a valid checkpoint at the beginning of training, the model and the
+	 * state of training are restored from it, and training resumes from the
+	 * epoch following the checkpoint.
+	 */
+	public M12BaumWelch checkpoint( Path checkpoint_file,
+			int checkpoint_period ) {
+		if ( checkpoint_period <= 0 ) {
+			throw new IllegalArgumentException(
+					"The checkpoint period must be positive." );
+		}
+		this.checkpoint_file = checkpoint_file;
+		this.checkpoint_period = checkpoint_period;
+		return this;
 	}
 
 	/**
@@ -117,22 +281,33 @@ public class M12BaumWelch {
 				logger.accept( " probability assigned to a data point by the initial model." );
 				logger.accept( "If possible, we will also display the ratio between that average" );
 				logger.accept( " and the one obtained in the previous epoch." );
+				if ( mini_batch_size > 0 ) {
+					logger.accept( "The model is updated every " + mini_batch_size
+							+ " data points (stepwise EM, step size exponent "
+							+ step_size_exponent + ")." );
+				}
 			}
 			spawn.target( epochs * data_size );
 
-			BasicRook[] local = {
-					new BasicRook( )
-			};
-			rook.hook( new AutoCloseable( ) {
+			GraphPuller puller = rook.hook( new GraphPuller( observed_cursable ) );
 
-				@Override
-				public void close( ) {
-					local[0].close( );
-				}
-			} );
+			ExecutorService workers_executor = executor;
+			if ( number_of_workers > 0 && workers_executor == null ) {
+				ExecutorService owned_executor =
+						Executors.newFixedThreadPool( number_of_workers );
+				rook.hook( new AutoCloseable( ) {
+
+					@Override
+					public void close( ) {
+						owned_executor.shutdownNow( );
+					}
+				} );
+				workers_executor = owned_executor;
+			}
+			final TupleAlignmentGraph[] round =
+					new TupleAlignmentGraph[number_of_workers * chunk_size];
+			final double[] round_probabilities = new double[round.length];
 
-			KnittingCursor<TupleAlignmentGraph> observed_re =
-					observed_cursable.pull( local[0] );
 			/**
 			 * Smoothing..
 			 */
@@ -144,20 +319,55 @@ public class M12BaumWelch {
 					eln( smoothing_count / ( 1.0 * number_of_symbols ) );
 
 			Double previous_probability = null;
-			/* example: states = 100(!) total space = 800 b */
-			final double[] new_initial = new double[number_of_states];
-
-			/* example: states = 100(!) total space = 80 kb */
-			final double[][] new_transition =
-					new double[number_of_states][number_of_states];
+			/*
+			 * Emission counts are kept only for the symbols occurring in the data.
+			 */
+			final M12BWCounts counts =
+					new M12BWCounts( number_of_states );
 
-			/* example: states = 100(!) symbols = 1 000 000 total space = 800 Mb */
-			final double[][] new_emission =
-					new double[number_of_states][number_of_symbols];
-			
 			int not_increased_for_n_epochs = 0;
 
-			for ( int epoch = 0; epoch < max_epoch; epoch++ ) {
+			/*
+			 * The number of updates carried out so far in stepwise mode.
+			 */
+			int updates = 0;
+
+			int first_epoch = 0;
+			/*
+			 * The fingerprint is taken before the model is replaced by the one in
+			 * the checkpoint, if any.
+			 */
+			final long fingerprint = checkpoint_file == null ? 0L
+					: M12BWCheckpoint.fingerprint( hmm, data_size );
+			if ( checkpoint_file != null ) {
+				M12BWCheckpoint resumed;
+				try {
+					resumed = M12BWCheckpoint.read( checkpoint_file, hmm, fingerprint );
+				}
+				catch ( IOException e ) {
+					throw new RuntimeException( e );
+				}
+				if ( resumed == null && Files.exists( checkpoint_file ) ) {
+					if ( logger != null ) {
+						logger.accept( "Ignoring the checkpoint in " + checkpoint_file
+								+ ": it is damaged, or it was written by a different"
+								+ " training run." );
+					}
+				}
+				if ( resumed != null ) {
+					first_epoch = resumed.epoch;
+					not_increased_for_n_epochs = resumed.not_increased_for_n_epochs;
+					updates = resumed.updates;
+					previous_probability = resumed.previous_probability;
+					spawn.step( Math.min( first_epoch, max_epoch ) * data_size );
+					if ( logger != null ) {
+						logger.accept( "Resuming from the checkpoint written at the end"
+								+ " of epoch " + ( first_epoch - 1 ) + "." );
+					}
+				}
+			}
+
+			for ( int epoch = first_epoch; epoch < max_epoch; epoch++ ) {
 				if ( not_increased_for_n_epochs == grace_period ) {
 					break;
 				}
@@ -171,55 +381,101 @@ public class M12BaumWelch {
 				}
 				spawn.info( "training at epoch " + epoch );
 
-				for ( int s = 0; s < number_of_states; s++ ) {
-					new_initial[s] = uniform_state;
-					final double[] new_transitions_from_s = new_transition[s];
-					final double[] new_emissions_from_s = new_emission[s];
-					for ( int d = 0; d < number_of_states; d++ ) {
-						new_transitions_from_s[d] = uniform_state;
-					}
-					for ( int e = 0; e < number_of_symbols; e++ ) {
-						new_emissions_from_s[e] = uniform_symbols;
-					}
+				counts.fill( uniform_state, uniform_symbols );
+				if ( linear_model != null ) {
+					linear_model.update( );
 				}
 				double[] probability_of_this_graph = {
 						NumericLogarithm.smallLogValue
 				};
-				Summation summation = null;
+				NumericLogSum summation = new NumericLogSum( );
 				int total = 0;
-				summation = NumericUtils.summation( 10000,
-						x -> NumericLogarithm.elnsum( KnittingCursable.wrap( x ) ) );
 				int samples = 0;
-				for ( ; samples < data_size; samples++ ) {
-					if ( !observed_re.hasNext( ) ) {
-						if (samples != 0) {
-							throw new IllegalArgumentException( "Something wrong with training data size." );
-						}
-						local[0].close( );
-						local[0] = new BasicRook( );
-						observed_re = observed_cursable.pull( local[0] );
-						if ( !observed_re.hasNext( ) ) {
-							throw new IllegalArgumentException( "Empty training set" );
-						}
-					}
-					try {
-						TupleAlignmentGraph graph = observed_re.next( );
+				/*
+				 * The number of samples whose counts have not been used to update the
+				 * model yet.
+				 */
+				int in_batch = 0;
+				if ( number_of_workers == 0 ) {
+					for ( ; samples < data_size; samples++ ) {
+						TupleAlignmentGraph graph = puller.next( samples );
 						if ( graph.la( ) >= 2 ) {
-							expectation(
+							if ( lazy_emission != null ) {
+								lazy_emission.bring( graph );
+							}
+							workspaces[0].expectation(
 									graph,
-									new_initial,
-									new_transition,
-									new_emission,
+									counts,
 									probability_of_this_graph );
 							summation.add( probability_of_this_graph[0] );
 							total++;
 						}
+						spawn.step( 1 );
+						in_batch++;
+						if ( in_batch == mini_batch_size ) {
+							maximization( counts, in_batch, smoothing_count,
+									stepSize( updates++ ) );
+							counts.fill( uniform_state, uniform_symbols );
+							if ( linear_model != null ) {
+								linear_model.updateStates( );
+							}
+							in_batch = 0;
+						}
 					}
-					catch ( EndOfCursorException e ) {
-						throw new IllegalArgumentException( "Empty training set" );
+				}
+				else {
+					while ( samples < data_size ) {
+						int in_round = 0;
+						/*
+						 * In stepwise mode, a round never crosses the boundary of a
+						 * mini-batch. Chunks start at multiples of chunk_size from the
+						 * beginning of the mini-batch, whatever the number of workers.
+						 */
+						int round_length = round.length;
+						if ( mini_batch_size > 0 ) {
+							round_length =
+									Math.min( round_length, mini_batch_size - in_batch );
+						}
+						while ( in_round < round_length && samples < data_size ) {
+							round[in_round++] = puller.next( samples++ );
+						}
+						if ( lazy_emission != null ) {
+							for ( int i = 0; i < in_round; i++ ) {
+								if ( round[i].la( ) >= 2 ) {
+									lazy_emission.bring( round[i] );
+								}
+							}
+						}
+						expectationInParallel( workers_executor, round, in_round,
+								round_probabilities );
+						/*
+						 * The partial counts are added up in the order the chunks appear
+						 * in the data, so the result does not depend on which worker
+						 * processed which chunk.
+						 */
+						final int chunks = ( in_round + chunk_size - 1 ) / chunk_size;
+						for ( int c = 0; c < chunks; c++ ) {
+							partial_counts[c].mergeInto( counts );
+						}
+						for ( int i = 0; i < in_round; i++ ) {
+							if ( round[i].la( ) >= 2 ) {
+								summation.add( round_probabilities[i] );
+								total++;
+							}
+							round[i] = null;
+							spawn.step( 1 );
+						}
+						in_batch += in_round;
+						if ( in_batch == mini_batch_size ) {
+							maximization( counts, in_batch, smoothing_count,
+									stepSize( updates++ ) );
+							counts.fill( uniform_state, uniform_symbols );
+							if ( linear_model != null ) {
+								linear_model.updateStates( );
+							}
+							in_batch = 0;
+						}
 					}
-
-					spawn.step( 1 );
 				}
 				double current_probability =
 						NumericLogarithm.eexp( summation.getSum( ) ) / ( 1.0 * total );
@@ -252,12 +508,37 @@ public class M12BaumWelch {
 					}
 				}
 				previous_probability = current_probability;
-				maximization(
-						new_initial,
-						new_transition,
-						new_emission,
-						samples,
-						smoothing_count );
+				if ( mini_batch_size == 0 ) {
+					maximization(
+							counts,
+							samples,
+							smoothing_count,
+							1d );
+				}
+				else if ( in_batch > 0 ) {
+					/*
+					 * The last mini-batch of the epoch may be smaller than the others.
+					 */
+					maximization(
+							counts,
+							in_batch,
+							smoothing_count,
+							stepSize( updates++ ) );
+				}
+				if ( lazy_emission != null ) {
+					lazy_emission.finish( );
+				}
+				if ( checkpoint_file != null
+						&& ( epoch + 1 ) % checkpoint_period == 0 ) {
+					try {
+						new M12BWCheckpoint( fingerprint, epoch + 1,
+								not_increased_for_n_epochs, updates, previous_probability )
+										.write( checkpoint_file, hmm );
+					}
+					catch ( IOException e ) {
+						throw new RuntimeException( e );
+					}
+				}
 			}
 
 			if ( core_inspector != null ) {
@@ -272,430 +553,194 @@ public class M12BaumWelch {
 	}
 
 	/*
-	 * probability_of_this_graph is (the natural logarithm of) the probability
-	 * of the observed graph using the m12 core in its present state.
-	 * 
-	 * It is useful to compute statistics. It is optional.
+	 * Carries out the expectation step on the first {@code number_of_graphs}
+	 * graphs, in chunks of {@code chunk_size} graphs. Chunk {@code c} is
+	 * processed using the c-th workspace and the c-th partial counts.
 	 */
-	private void expectation(
-			TupleAlignmentGraph observed,
-			double[] new_initial,
-			double[][] new_transition,
-			double[][] new_emission,
-			double[] probability_of_this_graph ) {
-		if ( observed.la( ) < 2 ) {
-			throw new IllegalArgumentException(
-					"Sequences of length 0 or 1 as training data are not supported." );
-		}
-		forward( observed );
-		if (probability_of_this_graph != null) {
-			probability_of_this_graph[0] = probabilityOf( observed );
-		}
-		backward( observed );
-		double R = r( observed );
-		gamma( observed, R );
-		initial( observed, R, new_initial );
-		transitions( observed, R, new_transition );
-		emissions( observed, R, new_emission );
-	}
-
-	private double probabilityOf( TupleAlignmentGraph observed ) {
-		double max = NumericLogarithm.smallLogValue;
-		for ( int s = 0; s < number_of_states; s++ ) {
-			final double v = alpha[observed.la( )][observed.lb( )][s];
-			if ( max < v ) {
-				max = v;
-			}
-			buffer_states[s] = v;
-		}
-		return elnsum( max, buffer_states, number_of_states );
-	}
-
-	private double r( TupleAlignmentGraph observed ) {
-		final int la = observed.la( );
-		final int lb = observed.lb( );
-		double max = NumericLogarithm.smallLogValue;
-		for ( int s = 0; s < number_of_states; s++ ) {
-			final double v = elnproduct( alpha[la][lb][s], beta[la][lb][s] );
-			buffer_states[s] = v;
-			if ( max < v ) {
-				max = v;
-			}
-		}
-		return elnsum( max, buffer_states, number_of_states );
-	}
-
-	private void forward( TupleAlignmentGraph observed ) {
-
-		if ( erase_buffers ) {
-			final int la = observed.la( );
-			final int lb = observed.lb( );
-			for ( int a = 0; a <= la; a++ ) {
-				for ( int b = 0; b <= lb; b++ ) {
-					for ( int s = 0; s < number_of_states; s++ ) {
-						alpha[a][b][s] = NumericLogarithm.smallLogValue;
+	private void expectationInParallel(
+			ExecutorService executor,
+			TupleAlignmentGraph[] graphs,
+			int number_of_graphs,
+			double[] probabilities ) {
+		final int chunks = ( number_of_graphs + chunk_size - 1 ) / chunk_size;
+		List<Future<?>> futures = new ArrayList<>( chunks );
+		for ( int c = 0; c < chunks; c++ ) {
+			final M12BWKernel workspace = workspaces[c];
+			final M12BWCounts partial = partial_counts[c];
+			final int from = c * chunk_size;
+			final int to = Math.min( number_of_graphs, from + chunk_size );
+			futures.add( executor.submit( ( ) -> {
+				double[] probability_of_this_graph = {
+						NumericLogarithm.smallLogValue
+				};
+				partial.erase( );
+				for ( int i = from; i < to; i++ ) {
+					if ( graphs[i].la( ) >= 2 ) {
+						workspace.expectation(
+								graphs[i],
+								partial,
+								probability_of_this_graph );
+						probabilities[i] = probability_of_this_graph[0];
 					}
 				}
+			} ) );
+		}
+		try {
+			for ( Future<?> future : futures ) {
+				future.get( );
 			}
 		}
-		for ( int s = 0; s < number_of_states; s++ ) {
-			alpha[0][0][s] = NumericLogarithm.smallLogValue;
+		catch ( InterruptedException e ) {
+			Thread.currentThread( ).interrupt( );
+			throw new RuntimeException( e );
 		}
-
-		Iterator<TupleAlignmentNode> it = observed.forward( );
-		while ( it.hasNext( ) ) {
-			TupleAlignmentNode cell = it.next( );
-			final int edges = cell.number_of_incoming_edges;
-			for ( int destination_s =
-					0; destination_s < number_of_states; destination_s++ ) {
-				double edge_buffer_max = NumericLogarithm.smallLogValue;
-				for ( int edge = 0; edge < edges; edge++ ) {
-					final int x = cell.incoming_edges[edge][0];
-					final int y = cell.incoming_edges[edge][1];
-					final int encoded = cell.incoming_edges[edge][2];
-					double cost;
-					if ( x == 0 && y == 0 ) {
-						cost = hmm.initial_table[destination_s];
-					} else {
-						double max = NumericLogarithm.smallLogValue;
-						for ( int source_s = 0; source_s < number_of_states; source_s++ ) {
-							final double v = elnproduct(
-									alpha[x][y][source_s],
-									hmm.transition_table[source_s][destination_s] );
-							buffer_states[source_s] = v;
-							if ( max < v ) {
-								max = v;
-							}
-						}
-						cost = elnsum( max, buffer_states, number_of_states );
-					}
-					cost = elnproduct( cost, hmm.emission_table[destination_s][encoded] );
-					buffer_total_edges[edge] = cost;
-					if ( edge_buffer_max < cost ) {
-						edge_buffer_max = cost;
-					}
-				}
-				alpha[cell.a][cell.b][destination_s] =
-						elnsum( edge_buffer_max, buffer_total_edges, edges );
-			}
+		catch ( ExecutionException e ) {
+			throw new RuntimeException( e.getCause( ) );
 		}
+	}
 
-		if ( print_debug_expectation ) {
-			System.out.println( "Forward - M12" );
-			final int la1 = observed.la( );
-			final int lb1 = observed.lb( );
-			for ( int a = 0; a <= la1; a++ ) {
-				for ( int b = 0; b <= lb1; b++ ) {
-					for ( int s = 0; s < number_of_states; s++ ) {
-						System.out
-								.println( "" + a + " " + b + " " + eexp( alpha[a][b][s] ) );
-					}
-				}
-			}
-		}
+	/*
+	 * The step size of the k-th update in stepwise mode.
+	 */
+	private double stepSize( int k ) {
+		return Math.pow( k + 2, -step_size_exponent );
 	}
 
-	private void backward( TupleAlignmentGraph observed ) {
-		final int la = observed.la( );
-		final int lb = observed.lb( );
-		if ( erase_buffers ) {
-			for ( int a = 0; a <= la; a++ ) {
-				for ( int b = 0; b <= lb; b++ ) {
-					for ( int s = 0; s < number_of_states; s++ ) {
-						beta[a][b][s] = NumericLogarithm.smallLogValue;
-					}
-				}
+	/*
+	 * Replaces each parameter with ( 1 - step ) times its current value plus
+	 * step times the estimate obtained from the counts. In batch mode, the step
+	 * is one: the parameters are replaced by the estimate.
+	 */
+	private void maximization(
+			M12BWCounts counts,
+			int samples,
+			double smoothing_count,
+			double step ) {
+		double denominator = eln( samples );
+		double denominator_smoothing = eln( smoothing_count );
+		denominator = elnsum2( denominator, denominator_smoothing );
+		final double ln_keep = eln( 1d - step );
+		final double ln_step = eln( step );
+		for ( int s = 0; s < number_of_states; s++ ) {
+			hmm.initial_table[s] = interpolate( hmm.initial_table[s],
+					elndivision( counts.initial[s], denominator ), ln_keep, ln_step );
+			double[] new_transition_for_this_state = counts.transition[s];
+			final double[] transition_of_s = hmm.transition_table[s];
+			for ( int d = 0; d < number_of_states; d++ ) {
+				transition_of_s[d] = interpolate( transition_of_s[d],
+						elndivision( new_transition_for_this_state[d], denominator ),
+						ln_keep, ln_step );
 			}
 		}
-		for ( int s = 0; s < hmm.number_of_states; s++ ) {
-			beta[la][lb][s] = NumericLogarithm.oneLogValue;
+		/*
+		 * The counts of the symbols that were not touched only got smoothing.
+		 * Each touched symbol is visited once, in the order it was touched.
+		 */
+		final int touched = counts.numberOfTouchedSymbols( );
+		final double smoothing_only =
+				elndivision( counts.emissionBase( ), denominator );
+		if ( lazy_emission != null ) {
+			/*
+			 * In stepwise mode, the untouched symbols are moved towards the
+			 * smoothing when they are next read.
+			 */
+			lazy_emission.update( ln_keep, ln_step, smoothing_only );
 		}
-
-		Iterator<TupleAlignmentNode> it = observed.backward( );
-		while ( it.hasNext( ) ) {
-			TupleAlignmentNode cell = it.next( );
-			final int a_ = cell.a;
-			final int b_ = cell.b;
-			final int edges = cell.number_of_incoming_edges;
-			for ( int edge = 0; edge < edges; edge++ ) {
-				int x = cell.incoming_edges[edge][0];
-				int y = cell.incoming_edges[edge][1];
-				int encoded = cell.incoming_edges[edge][2];
-				for ( int source_s = 0; source_s < number_of_states; source_s++ ) {
-					double max = NumericLogarithm.smallLogValue;
-					for ( int destination_s =
-							0; destination_s < number_of_states; destination_s++ ) {
-						final double v = elnproduct(
-								beta[a_][b_][destination_s],
-								hmm.transition_table[source_s][destination_s],
-								hmm.emission_table[destination_s][encoded] );
-						buffer_states[destination_s] = v;
-						if ( max < v ) {
-							max = v;
-						}
-					}
-					final double cost = elnsum( max, buffer_states, number_of_states );
-					beta[x][y][source_s] = elnsum2( cost, beta[x][y][source_s] );
-				}
+		for ( int row = 0; row < touched; row++ ) {
+			final int y = counts.touchedSymbol( row );
+			is_touched[y] = true;
+			final int offset = row * number_of_states;
+			for ( int s = 0; s < number_of_states; s++ ) {
+				hmm.emission.set( s, y, interpolate( hmm.emission.get( s, y ),
+						elndivision( counts.emission[offset + s], denominator ),
+						ln_keep, ln_step ) );
 			}
-		}
-		if ( print_debug_expectation ) {
-			System.out.println( "Backward - M12" );
-			for ( int a = 0; a <= la; a++ ) {
-				for ( int b = 0; b <= lb; b++ ) {
-					for ( int s = 0; s < number_of_states; s++ ) {
-						System.out
-								.println( "" + a + " " + b + " " + eexp( beta[a][b][s] ) );
-					}
-				}
+			if ( lazy_emission != null ) {
+				lazy_emission.written( y );
 			}
 		}
-	}
-
-	private void gamma( TupleAlignmentGraph observed, double R ) {
-		Iterator<TupleAlignmentNode> it = observed.forward( );
-		while ( it.hasNext( ) ) {
-			TupleAlignmentNode cell = it.next( );
-			final int a = cell.a;
-			final int b = cell.b;
+		if ( lazy_emission == null ) {
+			final double[] emission_of_s = emission_row;
 			for ( int s = 0; s < number_of_states; s++ ) {
-				final double val = elnproduct( alpha[a][b][s], beta[a][b][s] );
-				gamma[a][b][s] = elndivision( val, R );
-			}
-		}
-		if ( print_debug_expectation ) {
-			final int la = observed.la( );
-			final int lb = observed.lb( );
-			System.out.println( "Gamma - M12" );
-			for ( int a = 0; a <= la; a++ ) {
-				for ( int b = 0; b <= lb; b++ ) {
-					for ( int s = 0; s < number_of_states; s++ ) {
-						System.out
-								.println( "" + a + " " + b + " " + eexp( gamma[a][b][s] ) );
+				hmm.emission.getRow( s, emission_of_s );
+				for ( int y = 0; y < number_of_symbols; y++ ) {
+					if ( !is_touched[y] ) {
+						emission_of_s[y] = interpolate( emission_of_s[y], smoothing_only,
+								ln_keep, ln_step );
 					}
 				}
+				hmm.emission.setRow( s, emission_of_s );
 			}
 		}
+		for ( int row = 0; row < touched; row++ ) {
+			is_touched[counts.touchedSymbol( row )] = false;
+		}
 	}
 
-	/**
-	 * Asymptotic computational time cost is N*E
-	 * 
+	/*
+	 * Returns (the logarithm of) ( 1 - step ) * current + step * estimate,
+	 * given (the logarithms of) 1 - step and step.
 	 */
-	private void initial(
-			TupleAlignmentGraph observed,
-			double R,
-			double[] new_initial ) {
-		for ( int s = 0; s < number_of_states; s++ ) {
-			double max = new_initial[s];
-			int len = 1;
-			buffer_total_edges[0] = max;
-			Iterator<TupleAlignmentNode> it = observed.forward( );
-			while ( it.hasNext( ) ) {
-				TupleAlignmentNode cell = it.next( );
-				final int edges = cell.number_of_incoming_edges;
-				for ( int edge = 0; edge < edges; edge++ ) {
-					final int x = cell.incoming_edges[edge][0];
-					final int y = cell.incoming_edges[edge][1];
-					if ( x == 0 && y == 0 ) {
-						double v = gamma[cell.a][cell.b][s];
-						if ( max < v ) {
-							max = v;
-						}
-						buffer_total_edges[len++] = v;
-					}
-				}
-			}
-			new_initial[s] = elnsum( max, buffer_total_edges, len );
+	private static double interpolate(
+			double current,
+			double estimate,
+			double ln_keep,
+			double ln_step ) {
+		if ( ln_keep <= NumericLogarithm.smallLogValue ) {
+			return estimate;
 		}
-		if ( print_debug_maximization ) {
-			System.out.println( "NewInitial - M12" );
-			for ( int s = 0; s < number_of_states; s++ ) {
-				System.out.println( "" + s + " " + eexp( new_initial[s] ) );
-			}
+		final double a = elnproduct( ln_keep, current );
+		final double b = elnproduct( ln_step, estimate );
+		final double max = Math.max( a, b );
+		if ( max <= NumericLogarithm.smallLogValue ) {
+			return NumericLogarithm.smallLogValue;
 		}
+		return max + Math.log( Math.exp( a - max ) + Math.exp( b - max ) );
 	}
 
-	/**
-	 * Asymptotic computational time cost is N*N*E
-	 * 
+	/*
+	 * Pulls graphs from the observed cursable, and pulls it again from the
+	 * beginning when the data is over.
 	 */
-	private void transitions(
-			TupleAlignmentGraph observed,
-			double R,
-			double[][] new_transition ) {
-		for ( int s = 0; s < number_of_states; s++ ) {
-			for ( int d = 0; d < number_of_states; d++ ) {
-				double transition_cost = hmm.transition_table[s][d];
-				double max = NumericLogarithm.smallLogValue;
-				int len = 0;
-				Iterator<TupleAlignmentNode> it = observed.forward( );
-				while ( it.hasNext( ) ) {
-					TupleAlignmentNode cell = it.next( );
-					final int a = cell.a;
-					final int b = cell.b;
-					final int edges = cell.number_of_incoming_edges;
-					final double beta_cost = beta[a][b][d];
-					for ( int edge = 0; edge < edges; edge++ ) {
-						final int x = cell.incoming_edges[edge][0];
-						final int y = cell.incoming_edges[edge][1];
-						final int e = cell.incoming_edges[edge][2];
-						final double emission_cost = hmm.emission_table[d][e];
-						double v = elnproduct(
-								alpha[x][y][s],
-								transition_cost,
-								emission_cost,
-								beta_cost );
-						if ( max < v ) {
-							max = v;
-						}
-						buffer_total_edges[len++] = v;
-					}
-				}
-				buffer_transitions[s][d] =
-						elndivision( elnsum( max, buffer_total_edges, len ), R );
-			}
-		}
-		for ( int s = 0; s < number_of_states; s++ ) {
-			double max = NumericLogarithm.smallLogValue;
-			int len = 0;
-			Iterator<TupleAlignmentNode> it = observed.forward( );
-			while ( it.hasNext( ) ) {
-				TupleAlignmentNode cell = it.next( );
-				if ( !it.hasNext( ) ) {
-					/* we want to count transitions */
-					break;
-				}
-				final double v = gamma[cell.a][cell.b][s];
-				if ( max < v ) {
-					max = v;
-				}
-				buffer_total_edges[len++] = v;
-			}
-			double denominator = elnsum( max, buffer_total_edges, len );
-			for ( int d = 0; d < number_of_states; d++ ) {
-				double numerator = buffer_transitions[s][d];
-				new_transition[s][d] =
-						elnsum2(
-								new_transition[s][d],
-								elndivision( numerator, denominator ) );
-			}
-		}
-		if ( print_debug_maximization ) {
-			System.out.println( "NewTransitions - M12" );
-			for ( int s = 0; s < number_of_states; s++ ) {
-				for ( int d = 0; d < number_of_states; d++ ) {
-					System.out
-							.println( "" + s + " " + d + " " + eexp( new_transition[s][d] ) );
-				}
-			}
+	private static class GraphPuller implements
+			AutoCloseable {
+
+		private final KnittingCursable<TupleAlignmentGraph> observed_cursable;
+
+		private BasicRook local;
+
+		private KnittingCursor<TupleAlignmentGraph> observed_re;
+
+		GraphPuller(KnittingCursable<TupleAlignmentGraph> observed_cursable) {
+			this.observed_cursable = observed_cursable;
+			this.local = new BasicRook( );
+			this.observed_re = observed_cursable.pull( local );
 		}
-	}
 
-	private void emissions(
-			TupleAlignmentGraph observed,
-			double R,
-			double[][] new_emission ) {
-		for ( int s = 0; s < number_of_states; s++ ) {
-			int len = 0;
-			double max = NumericLogarithm.smallLogValue;
-			Iterator<TupleAlignmentNode> it = observed.forward( );
-			while ( it.hasNext( ) ) {
-				TupleAlignmentNode cell = it.next( );
-				double v = gamma[cell.a][cell.b][s];
-				if ( max < v ) {
-					max = v;
+		TupleAlignmentGraph next( int samples ) {
+			if ( !observed_re.hasNext( ) ) {
+				if ( samples != 0 ) {
+					throw new IllegalArgumentException(
+							"Something wrong with training data size." );
 				}
-				buffer_total_edges[len++] = v;
-			}
-			double denominator = elnsum( max, buffer_total_edges, len );
-			double[] new_emission_for_this_state = new_emission[s];
-			for ( Integer e_type : observed.combinations( ) ) {
-				max = NumericLogarithm.smallLogValue;
-				double max_across_all_edges = max;
-				len = 0;
-				double emission_cost = hmm.emission_table[s][e_type];
-				it = observed.forward( );
-				while ( it.hasNext( ) ) {
-					TupleAlignmentNode cell = it.next( );
-					final int a = cell.a;
-					if ( a == 0 ) {
-						continue;
-					}
-					final int b = cell.b;
-					final int edges = cell.number_of_incoming_edges;
-					for ( int edge = 0; edge < edges; edge++ ) {
-						final int e = cell.incoming_edges[edge][2];
-						if ( e != e_type ) {
-							continue;
-						}
-						final int x = cell.incoming_edges[edge][0];
-						final int y = cell.incoming_edges[edge][1];
-						double zeno;
-						if ( x == 0 && y == 0 ) {
-							zeno = hmm.initial_table[s];
-						} else {
-							for ( int z = 0; z < number_of_states; z++ ) {
-								double v =
-										elnproduct( alpha[x][y][z], hmm.transition_table[z][s] );
-								if ( max < v ) {
-									max = v;
-								}
-								buffer_states[z] = v;
-							}
-							zeno = elnsum( max, buffer_states, number_of_states );
-						}
-						double cost = elnproduct(
-								emission_cost,
-								zeno,
-								beta[a][b][s] );
-						cost = elndivision( cost, R );
-						if ( max_across_all_edges < cost ) {
-							max_across_all_edges = cost;
-						}
-						buffer_total_edges[len++] = cost;
-					}
+				local.close( );
+				local = new BasicRook( );
+				observed_re = observed_cursable.pull( local );
+				if ( !observed_re.hasNext( ) ) {
+					throw new IllegalArgumentException( "Empty training set" );
 				}
-				double numerator =
-						elnsum( max_across_all_edges, buffer_total_edges, len );
-				double value_to_add = elndivision( numerator, denominator );
-				new_emission_for_this_state[e_type] = elnsum2(
-						new_emission_for_this_state[e_type],
-						value_to_add );
 			}
-		}
-		if ( print_debug_maximization ) {
-			System.out.println( "NewEmissions - M12" );
-			for ( int s = 0; s < number_of_states; s++ ) {
-				for ( int e = 0; e < number_of_symbols; e++ ) {
-					System.out
-							.println( "" + s + " " + e + " " + eexp( new_emission[s][e] ) );
-				}
+			try {
+				return observed_re.next( );
+			}
+			catch ( EndOfCursorException e ) {
+				throw new IllegalArgumentException( "Empty training set" );
 			}
 		}
-	}
 
-	private void maximization(
-			double[] new_initial,
-			double[][] new_transition,
-			double[][] new_emission,
-			int samples,
-			double smoothing_count ) {
-		double denominator = eln( samples );
-		double denominator_smoothing = eln( smoothing_count );
-		denominator = elnsum2( denominator, denominator_smoothing );
-		for ( int s = 0; s < number_of_states; s++ ) {
-			hmm.initial_table[s] = elndivision( new_initial[s], denominator );
-			double[] new_transition_for_this_state = new_transition[s];
-			for ( int d = 0; d < number_of_states; d++ ) {
-				hmm.transition_table[s][d] =
-						elndivision( new_transition_for_this_state[d], denominator );
-			}
-			double[] new_emission_for_this_state = new_emission[s];
-			for ( int y = 0; y < number_of_symbols; y++ ) {
-				hmm.emission_table[s][y] =
-						elndivision( new_emission_for_this_state[y], denominator );
-			}
+		@Override
+		public void close( ) {
+			local.close( );
 		}
 	}
 
@@ -1,5 +1,7 @@
 package org.github.evenjn.guess.m12.baumwelch;
 
+import java.util.concurrent.ExecutorService;
+
 import org.github.evenjn.guess.m12.M12TrainingPlan;
 import org.github.evenjn.lang.Kloneable;
 
@@ -14,6 +16,20 @@ public class M12BaumWelchTrainingPlan<I, P, O>
 
 	private int number_of_states;
 
+	private int number_of_workers;
+
+	private ExecutorService executor;
+
+	private boolean scaled_kernel;
+
+	private long graph_memory_budget;
+
+	private int mini_batch_size;
+
+	private double step_size_exponent = 0.7;
+
+	private int checkpoint_period;
+
 	public Object clone( )
 			throws CloneNotSupportedException {
 		return super.clone( );
@@ -31,6 +47,34 @@ public class M12BaumWelchTrainingPlan<I, P, O>
 		return number_of_states;
 	}
 
+	public int getNumberOfWorkers( ) {
+		return number_of_workers;
+	}
+
+	public ExecutorService getExecutor( ) {
+		return executor;
+	}
+
+	public boolean getScaledKernel( ) {
+		return scaled_kernel;
+	}
+
+	public long getGraphMemoryBudget( ) {
+		return graph_memory_budget;
+	}
+
+	public int getMiniBatchSize( ) {
+		return mini_batch_size;
+	}
+
+	public double getStepSizeExponent( ) {
+		return step_size_exponent;
+	}
+
+	public int getCheckpointPeriod( ) {
+		return checkpoint_period;
+	}
+
 	public long getSeed( ) {
 		return seed;
 	}
@@ -54,6 +98,68 @@ public class M12BaumWelchTrainingPlan<I, P, O>
 		this.number_of_states = number_of_states;
 	}
 
+	/**
+	 * Sets the number of workers carrying out the expectation step of
+	 * Baum-Welch in parallel. Zero (the default) means no parallelism.
+	 */
+	public void setParallelism( int number_of_workers ) {
+		setParallelism( number_of_workers, null );
+	}
+
+	/**
+	 * Sets the number of workers carrying out the expectation step of
+	 * Baum-Welch in parallel, and the executor they run on.
+	 */
+	public void setParallelism( int number_of_workers,
+			ExecutorService executor ) {
+		this.number_of_workers = number_of_workers;
+		this.executor = executor;
+	}
+
+	/**
+	 * When true, forward-backward runs in linear probability space with
+	 * per-node scaling factors, instead of log space.
+	 */
+	public void setScaledKernel( boolean scaled_kernel ) {
+		this.scaled_kernel = scaled_kernel;
+	}
+
+	/**
+	 * Sets the number of bytes the tuple alignment graphs may take when kept
+	 * in memory across epochs. Zero (the default) means the graphs are read
+	 * again at every epoch.
+	 */
+	public void setGraphMemoryBudget( long graph_memory_budget ) {
+		this.graph_memory_budget = graph_memory_budget;
+	}
+
+	/**
+	 * Sets the number of data points after which the model is updated
+	 * (stepwise EM). Zero (the default) means the model is updated once per
+	 * epoch.
+	 */
+	public void setMiniBatchSize( int mini_batch_size ) {
+		this.mini_batch_size = mini_batch_size;
+	}
+
+	/**
+	 * Sets the exponent alpha of the stepwise EM schedule: the k-th update has
+	 * step size ( k + 2 ) ^ -alpha. It must be in ( 0.5, 1 ]; the default is
+	 * 0.7. Smaller values forget old statistics faster.
+	 */
+	public void setStepSizeExponent( double step_size_exponent ) {
+		this.step_size_exponent = step_size_exponent;
+	}
+
+	/**
+	 * Sets the number of epochs between two checkpoints of training. When
+	 * training is interrupted, the next run resumes from the last checkpoint.
+	 * Zero (the default) means no checkpoints.
+	 */
+	public void setCheckpointPeriod( int checkpoint_period ) {
+		this.checkpoint_period = checkpoint_period;
+	}
+
 	public void setSeed( long seed ) {
 		this.seed = seed;
 	}
@@ -18,18 +18,15 @@
 package org.github.evenjn.guess.m12.libra;
 
 import static org.github.evenjn.numeric.NumericLogarithm.elnproduct;
-import static org.github.evenjn.numeric.NumericLogarithm.elnsum;
-
-import java.util.Iterator;
 
 import org.github.evenjn.align.alphabet.TupleAlignmentAlphabet;
 import org.github.evenjn.align.graph.NotAlignableException;
 import org.github.evenjn.align.graph.TupleAlignmentGraph;
 import org.github.evenjn.align.graph.TupleAlignmentGraphFactory;
-import org.github.evenjn.align.graph.TupleAlignmentNode;
 import org.github.evenjn.guess.DiscriminativeModel;
 import org.github.evenjn.guess.markov.Markov;
 import org.github.evenjn.lang.Tuple;
+import org.github.evenjn.numeric.NumericLogAdder;
 import org.github.evenjn.numeric.NumericLogarithm;
 
 public class M12Libra<I, O> implements
@@ -39,17 +36,27 @@ public class M12Libra<I, O> implements
 
 	private TupleAlignmentAlphabet<I, O> coalignment_alphabet;
 
-	private int max_length_above = 0;
-
-	private int max_length_below = 0;
-
 	private int total_number_of_edges;
 
+	private final NumericLogAdder log_adder;
+
 	public M12Libra(
 			TupleAlignmentAlphabet<I, O> coalignment_alphabet,
 			Markov hmm) {
+		this( coalignment_alphabet, hmm, NumericLogAdder.exact( ) );
+	}
+
+	/**
+	 * Sums probabilities with the given adder; see
+	 * {@link org.github.evenjn.numeric.NumericTabulatedLogAdder}.
+	 */
+	public M12Libra(
+			TupleAlignmentAlphabet<I, O> coalignment_alphabet,
+			Markov hmm,
+			NumericLogAdder log_adder) {
 		core = hmm;
 		this.coalignment_alphabet = coalignment_alphabet;
+		this.log_adder = log_adder;
 		buffer_states = new double[hmm.number_of_states];
 	}
 
@@ -58,16 +65,6 @@ public class M12Libra<I, O> implements
 			Tuple<O> output ) {
 		Tuple<O> below = output;
 		Tuple<I> above = input;
-		boolean must_update_alpha = false;
-		boolean must_update_eb = false;
-		if ( above.size( ) > max_length_above ) {
-			max_length_above = above.size( );
-			must_update_alpha = true;
-		}
-		if ( below.size( ) > max_length_below ) {
-			max_length_below = below.size( );
-			must_update_alpha = true;
-		}
 
 		TupleAlignmentGraph observed;
 		try {
@@ -84,11 +81,12 @@ public class M12Libra<I, O> implements
 			return 0d;
 		}
 
-		Iterator<TupleAlignmentNode> it = observed.forward( );
-		while ( it.hasNext( ) ) {
-			TupleAlignmentNode cell = it.next( );
-			if ( cell.number_of_incoming_edges > total_number_of_edges ) {
-				total_number_of_edges = cell.number_of_incoming_edges;
+		boolean must_update_eb = false;
+		for ( int node = 0; node < observed.number_of_nodes; node++ ) {
+			final int edges =
+					observed.edge_offset[node + 1] - observed.edge_offset[node];
+			if ( edges > total_number_of_edges ) {
+				total_number_of_edges = edges;
 				must_update_eb = true;
 			}
 		}
@@ -97,25 +95,40 @@ public class M12Libra<I, O> implements
 			buffer_total_edges = new double[1 + total_number_of_edges];
 		}
 
-		if ( must_update_alpha ) {
-			alpha = new double[max_length_above + 1][max_length_below
-					+ 1][core.number_of_states];
+		if ( alpha == null || alpha.length < observed.number_of_nodes ) {
+			final int capacity = alpha == null
+					? observed.number_of_nodes
+					: Math.max( observed.number_of_nodes, 2 * alpha.length );
+			alpha = new double[capacity][core.number_of_states];
+			message = new double[capacity][core.number_of_states];
 		}
 
 		forward( observed );
 		double max = NumericLogarithm.smallLogValue;
+		final double[] alpha_of_last = alpha[observed.last( )];
 		for ( int s = 0; s < core.number_of_states; s++ ) {
-			final double v = alpha[observed.la( )][observed.lb( )][s];
+			final double v = alpha_of_last[s];
 			if ( max < v ) {
 				max = v;
 			}
 			buffer_states[s] = v;
 		}
-		return elnsum( max, buffer_states, core.number_of_states );
+		return log_adder.elnsum( max, buffer_states, core.number_of_states );
 
 	}
 
-	private double[][][] alpha;
+	/*
+	 * The forward lattice, indexed by node and state. It grows geometrically,
+	 * with the largest graph weighed so far.
+	 */
+	private double[][] alpha;
+
+	/*
+	 * For each node, and for each destination state, the (logarithm of the) sum
+	 * over all source states of alpha times the transition probability. It does
+	 * not depend on the edge leaving the node, so it is computed once per node.
+	 */
+	private double[][] message;
 
 	private double[] buffer_total_edges;
 
@@ -123,58 +136,62 @@ public class M12Libra<I, O> implements
 
 	private void forward( TupleAlignmentGraph observed ) {
 
-		final int la = observed.la( );
-		final int lb = observed.lb( );
-		for ( int a = 0; a <= la; a++ ) {
-			for ( int b = 0; b <= lb; b++ ) {
-				for ( int s = 0; s < core.number_of_states; s++ ) {
-					alpha[a][b][s] = NumericLogarithm.smallLogValue;
-				}
-			}
-		}
+		final int root = observed.root( );
+		final int last = observed.last( );
 		for ( int s = 0; s < core.number_of_states; s++ ) {
-			alpha[0][0][s] = NumericLogarithm.smallLogValue;
+			alpha[root][s] = NumericLogarithm.smallLogValue;
 		}
 
-		Iterator<TupleAlignmentNode> it = observed.forward( );
-		while ( it.hasNext( ) ) {
-			TupleAlignmentNode cell = it.next( );
-			final int edges = cell.number_of_incoming_edges;
+		for ( int node = 1; node <= last; node++ ) {
+			final int edge_begin = observed.edge_offset[node];
+			final int edges = observed.edge_offset[node + 1] - edge_begin;
+			final double[] alpha_of_node = alpha[node];
 			for ( int destination_s =
 					0; destination_s < core.number_of_states; destination_s++ ) {
 				double edge_buffer_max = NumericLogarithm.smallLogValue;
 				for ( int edge = 0; edge < edges; edge++ ) {
-					final int x = cell.incoming_edges[edge][0];
-					final int y = cell.incoming_edges[edge][1];
-					final int encoded = cell.incoming_edges[edge][2];
+					final int source = observed.edge_source[edge_begin + edge];
+					final int encoded = observed.edge_symbol[edge_begin + edge];
 					double cost;
-					if ( x == 0 && y == 0 ) {
+					if ( source == root ) {
 						cost = core.initial_table[destination_s];
 					}
 					else {
-						double max = NumericLogarithm.smallLogValue;
-						for ( int source_s =
-								0; source_s < core.number_of_states; source_s++ ) {
-							final double v = elnproduct(
-									alpha[x][y][source_s],
-									core.transition_table[source_s][destination_s] );
-							buffer_states[source_s] = v;
-							if ( max < v ) {
-								max = v;
-							}
-						}
-						cost = elnsum( max, buffer_states, core.number_of_states );
+						cost = message[source][destination_s];
 					}
 					cost =
-							elnproduct( cost, core.emission_table[destination_s][encoded] );
+							elnproduct( cost, core.emission.get( destination_s, encoded ) );
 					buffer_total_edges[edge] = cost;
 					if ( edge_buffer_max < cost ) {
 						edge_buffer_max = cost;
 					}
 				}
-				alpha[cell.a][cell.b][destination_s] =
-						elnsum( edge_buffer_max, buffer_total_edges, edges );
+				alpha_of_node[destination_s] =
+						log_adder.elnsum( edge_buffer_max, buffer_total_edges, edges );
+			}
+			if ( node != last ) {
+				/* no edge leaves the last node */
+				message( node );
+			}
+		}
+	}
+
+	private void message( int node ) {
+		final double[] alpha_of_source = alpha[node];
+		for ( int destination_s =
+				0; destination_s < core.number_of_states; destination_s++ ) {
+			double max = NumericLogarithm.smallLogValue;
+			for ( int source_s = 0; source_s < core.number_of_states; source_s++ ) {
+				final double v = elnproduct(
+						alpha_of_source[source_s],
+						core.transition_table[source_s][destination_s] );
+				buffer_states[source_s] = v;
+				if ( max < v ) {
+					max = v;
+				}
 			}
+			message[node][destination_s] =
+					log_adder.elnsum( max, buffer_states, core.number_of_states );
 		}
 	}
 
@@ -28,9 +28,8 @@ import org.github.evenjn.lang.BasicRook;
 import org.github.evenjn.lang.Progress;
 import org.github.evenjn.lang.ProgressSpawner;
 import org.github.evenjn.lang.Tuple;
+import org.github.evenjn.numeric.NumericLogSum;
 import org.github.evenjn.numeric.NumericLogarithm;
-import org.github.evenjn.numeric.NumericUtils;
-import org.github.evenjn.numeric.NumericUtils.Summation;
 import org.github.evenjn.numeric.PercentPrinter;
 import org.github.evenjn.numeric.SixCharFormat;
 
@@ -69,8 +68,7 @@ public class M12LibraQualityChecker<I, O> implements
 			int target ) {
 		int total = 0;
 		int not_aligneable = 0;
-		Summation summation = NumericUtils.summation( 10000,
-				x -> NumericLogarithm.elnsum( KnittingCursable.wrap( x ) ) );
+		NumericLogSum summation = new NumericLogSum( );
 		try ( BasicRook rook2 = new BasicRook( ) ) {
 			Progress spawn2 = spawn.spawn( rook2, "check" ).target( target );
 			for ( K g : KnittingCursable
@@ -19,9 +19,7 @@ package org.github.evenjn.guess.m12.maple;
 
 import static org.github.evenjn.numeric.NumericLogarithm.elnproduct;
 
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.Map;
 import java.util.Vector;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -35,10 +33,10 @@ import org.github.evenjn.lang.BasicRook;
 import org.github.evenjn.lang.Progress;
 import org.github.evenjn.lang.ProgressSpawner;
 import org.github.evenjn.lang.Tuple;
-import org.github.evenjn.numeric.DenseMatrix;
-import org.github.evenjn.numeric.Matrix;
+import org.github.evenjn.numeric.DoubleMatrix;
+import org.github.evenjn.numeric.IntMatrix;
+import org.github.evenjn.numeric.NumericLogSum;
 import org.github.evenjn.numeric.NumericLogarithm;
-import org.github.evenjn.numeric.NumericUtils.Summation;
 
 /**
  * Uses a one-to-many hidden markov model to implement a transducer.
@@ -62,6 +60,8 @@ public class M12ClassicMaple<I, O> implements
 
 	private final boolean fail_on_unknown_input_symbol;
 
+	private final M12MapleBeam beam;
+
 	public M12ClassicMaple(
 			TupleAlignmentAlphabet<I, O> coalignment_alphabet,
 			Markov core,
@@ -83,12 +83,25 @@ public class M12ClassicMaple<I, O> implements
 			boolean fail_on_unknown_input_symbol,
 			ProgressSpawner progress_spawner) {
 		this.fail_on_unknown_input_symbol = fail_on_unknown_input_symbol;
+		this.beam = M12MapleBeam.exact( );
 		// Map<I, Set<Tuple<O>>> actual_pairs = new HashMap<>();
 
 		try ( BasicRook rook = new BasicRook() ) {
 
 			this.core = core;
-			init_cache( core.number_of_states );
+			above = coalignment_alphabet.above( );
+			below = coalignment_alphabet.below( );
+			number_of_above = above.size( );
+			id_of_above = new HashMap<>( );
+			for ( int id = 0; id < number_of_above; id++ ) {
+				id_of_above.put( above.get( id ).get( 0 ), id );
+			}
+			HashMap<Tuple<O>, Integer> id_of_below = new HashMap<>( );
+			for ( int id = 0; id < below.size( ); id++ ) {
+				id_of_below.put( below.get( id ), id );
+			}
+			partial_prob = new double[number_of_above * core.number_of_states];
+			prediction = new int[number_of_above * core.number_of_states];
 
 			double[] buffer = new double[coalignment_alphabet.size( )];
 
@@ -100,17 +113,15 @@ public class M12ClassicMaple<I, O> implements
 			 * of observing it for each symbol above, the most probable symbol below.
 			 */
 			for ( int s = 0; s < core.number_of_states; s++ ) {
-				cache_prediction[s] = new HashMap<I, Tuple<O>>( );
-				cache_partial_prob[s] = new HashMap<I, Double>( );
-
-				for ( TupleValue<I> sa : coalignment_alphabet.above( ).asIterable( ) ) {
+				for ( int above_id = 0; above_id < number_of_above; above_id++ ) {
+					TupleValue<I> sa = above.get( above_id );
 					int len = 0;
 					double max = 0;
 					Tuple<O> best = null;
 					for ( TupleValue<O> sb : coalignment_alphabet
 							.correspondingBelow( sa ) ) {
 						int encode = coalignment_alphabet.encode( sa, sb );
-						double prob = core.emission_table[s][encode];
+						double prob = core.emission.get( s, encode );
 						if ( best == null || prob > max ) {
 							max = prob;
 							best = sb;
@@ -129,7 +140,7 @@ public class M12ClassicMaple<I, O> implements
 						/**
 						 * This symbol above is not a leaf in the tree of symbols.
 						 */
-						HashMap<Tuple<O>, Summation> sum_map = new HashMap<>( );
+						HashMap<Tuple<O>, NumericLogSum> sum_map = new HashMap<>( );
 						for ( TupleValue<I> sa_descendant : coalignment_alphabet.above( )
 								.asIterable( ) ) {
 							if ( !descendant_test.apply( sa, sa_descendant ) ) {
@@ -139,12 +150,12 @@ public class M12ClassicMaple<I, O> implements
 							for ( TupleValue<O> sb : coalignment_alphabet
 									.correspondingBelow( sa_descendant ) ) {
 								int encode = coalignment_alphabet.encode( sa_descendant, sb );
-								double prob = core.emission_table[s][encode];
+								double prob = core.emission.get( s, encode );
 
-								Summation summation = sum_map.get( sb );
+								NumericLogSum summation = sum_map.get( sb );
 								if ( summation == null ) {
-									summation = new Summation( coalignment_alphabet.size( ),
-											NumericLogarithm::elnsumIterable );
+									summation = new NumericLogSum( );
+									sum_map.put( sb, summation );
 								}
 								summation.add( prob );
 							}
@@ -175,9 +186,9 @@ public class M12ClassicMaple<I, O> implements
 					// actual_pairs.put( sa, fd );
 					// }
 					// fd.add( best );
-					cache_prediction[s].put( sa.get( 0 ), best );
-					cache_partial_prob[s].put( sa.get( 0 ),
-							NumericLogarithm.elnsum( max, buffer, len ) );
+					final int cell = above_id * core.number_of_states + s;
+					prediction[cell] = id_of_below.get( best );
+					partial_prob[cell] = NumericLogarithm.elnsum( max, buffer, len );
 				}
 
 			}
@@ -193,40 +204,101 @@ public class M12ClassicMaple<I, O> implements
 		// }
 	}
 
-	@SuppressWarnings("unchecked")
-	private void init_cache( int number_of_states ) {
-		cache_partial_prob = (Map<I, Double>[]) new Map<?, ?>[number_of_states];
-		cache_prediction = (Map<I, Tuple<O>>[]) new Map<?, ?>[number_of_states];
+	private M12ClassicMaple(M12ClassicMaple<I, O> other, M12MapleBeam beam) {
+		this.core = other.core;
+		this.fail_on_unknown_input_symbol = other.fail_on_unknown_input_symbol;
+		this.beam = beam;
+		this.above = other.above;
+		this.below = other.below;
+		this.number_of_above = other.number_of_above;
+		this.id_of_above = other.id_of_above;
+		this.partial_prob = other.partial_prob;
+		this.prediction = other.prediction;
 	}
 
-	private Map<I, Double>[] cache_partial_prob;
+	/**
+	 * Returns a decoder that shares the tables of this one, and extends at each
+	 * step only the states kept by the given beam; see {@link M12MapleBeam}.
+	 */
+	public M12ClassicMaple<I, O> withBeam( M12MapleBeam beam ) {
+		return new M12ClassicMaple<>( this, beam );
+	}
+
+	private final KnittingTuple<TupleValue<I>> above;
+
+	private final KnittingTuple<TupleValue<O>> below;
+
+	private final int number_of_above;
+
+	/*
+	 * Input symbols are interned to dense ids, in the order of the alphabet.
+	 */
+	private final HashMap<I, Integer> id_of_above;
+
+	/*
+	 * For each input symbol id and each state, at [ id * states + state ], the
+	 * (logarithm of the) probability of emitting the input symbol and the id of
+	 * the most likely output tuple.
+	 */
+	private final double[] partial_prob;
 
-	private Map<I, Tuple<O>>[] cache_prediction;
+	private final int[] prediction;
 
 	/*
 	 * This is used by Viterbi
 	 */
-	private double emission( int s, I i ) {
-		Double result = cache_partial_prob[s].get( i );
-		if ( result == null ) {
-			if ( fail_on_unknown_input_symbol ) {
+	private double emission( int s, int above_id ) {
+		if ( above_id < 0 ) {
+			return NumericLogarithm.oneLogValue;
+		}
+		return partial_prob[above_id * core.number_of_states + s];
+	}
+
+	/**
+	 * Returns the id of the input symbol, or -1 if the symbol is unknown.
+	 */
+	public int aboveId( I symbol ) {
+		Integer id = id_of_above.get( symbol );
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the ids of the input symbols, with -1 for unknown symbols.
+	 */
+	public int[] aboveIds( Tuple<? extends I> observed ) {
+		int[] result = new int[observed.size( )];
+		aboveIds( observed, result );
+		return result;
+	}
+
+	/**
+	 * Writes the ids of the input symbols in {@code result}, with -1 for unknown
+	 * symbols.
+	 */
+	public void aboveIds( Tuple<? extends I> observed, int[] result ) {
+		final int length = observed.size( );
+		for ( int t = 0; t < length; t++ ) {
+			result[t] = aboveId( observed.get( t ) );
+			if ( result[t] < 0 && fail_on_unknown_input_symbol ) {
 				throw new IllegalArgumentException(
-						"M12Maple unknown symbol: " + i.toString( ) );
-			}
-			else {
-				return NumericLogarithm.oneLogValue;
+						"M12Maple unknown symbol: " + observed.get( t ).toString( ) );
 			}
 		}
-		return result;
 	}
 
-	/*
-	 * This is cached here, used by Viterbi.
+	/**
+	 * Returns the output tuple with the given id.
 	 */
-	Tuple<O> mostLikelyBelowGivenStateAndAbove( I i, int s ) {
-		return cache_prediction[s].get( i );
+	public Tuple<O> below( int below_id ) {
+		return below.get( below_id );
 	}
 
+	/*
+	 * The session used by the methods that do not take one.
+	 */
+	private final ThreadLocal<M12ClassicMapleSession> sessions =
+			ThreadLocal.withInitial( M12ClassicMapleSession::new );
+
 	@Override
 	public Tuple<O> apply( Tuple<I> t ) {
 		return KnittingTuple.wrap( mostLikelySequenceOfSymbolsBelow( t ) );
@@ -234,51 +306,112 @@ public class M12ClassicMaple<I, O> implements
 
 	public Vector<O> mostLikelySequenceOfSymbolsBelow(
 			Tuple<? extends I> observed ) {
-		Vector<Integer> steps =
-				mostLikelySequenceOfStates( observed );
+		return mostLikelySequenceOfSymbolsBelow( sessions.get( ), observed );
+	}
+
+	public Vector<O> mostLikelySequenceOfSymbolsBelow(
+			M12ClassicMapleSession session,
+			Tuple<? extends I> observed ) {
+		final int length = observed.size( );
+		int[] above_ids = session.aboveIds( length );
+		int[] below_ids = session.belowIds( length );
+		aboveIds( observed, above_ids );
+		mostLikelyBelow( session, above_ids, length, below_ids );
 		Vector<O> result = new Vector<>( );
 
-		int i = 0;
-		for ( Integer s : steps ) {
-			Tuple<O> mostLikelyBelowGivenStateAndAbove =
-					mostLikelyBelowGivenStateAndAbove( observed.get( i ), s );
-			if ( mostLikelyBelowGivenStateAndAbove != null ) {
-				for ( O sb : KnittingTuple.wrap( mostLikelyBelowGivenStateAndAbove )
-						.asIterable( ) ) {
-					result.add( sb );
+		for ( int i = 0; i < length; i++ ) {
+			if ( below_ids[i] >= 0 ) {
+				Tuple<O> mostLikelyBelowGivenStateAndAbove = below.get( below_ids[i] );
+				for ( int j = 0; j < mostLikelyBelowGivenStateAndAbove.size( ); j++ ) {
+					result.add( mostLikelyBelowGivenStateAndAbove.get( j ) );
 				}
 			}
 			else {
 				System.err.println(
 						"M12Maple unknown symbol: " + observed.get( i ).toString( ) );
 			}
-			i++;
 		}
 		return result;
 	}
 
+	/**
+	 * Given the ids of the input symbols (see {@link #aboveIds(Tuple)}), returns
+	 * for each of them the id of the most likely output tuple (see
+	 * {@link #below(int)}), or -1 if the input symbol is unknown.
+	 */
+	public int[] mostLikelyBelow( int[] observed ) {
+		int[] result = new int[observed.length];
+		mostLikelyBelow( sessions.get( ), observed, observed.length, result );
+		return result;
+	}
+
+	/**
+	 * Same as {@link #mostLikelyBelow(int[])}, on the first {@code length} ids,
+	 * writing in {@code result}. This does not allocate, once the buffers of the
+	 * session are large enough.
+	 */
+	public void mostLikelyBelow(
+			M12ClassicMapleSession session,
+			int[] observed,
+			int length,
+			int[] result ) {
+		mostLikelySequenceOfStates( session, observed, length, result );
+		for ( int t = 0; t < length; t++ ) {
+			result[t] = observed[t] < 0
+					? -1
+					: prediction[observed[t] * core.number_of_states + result[t]];
+		}
+	}
+
 	/**
 	 * The classic viterbi algorithm.
 	 * 
 	 */
 	public Vector<Integer> mostLikelySequenceOfStates(
 			Tuple<? extends I> observed ) {
+		Vector<Integer> result = new Vector<>( );
+		for ( int s : mostLikelySequenceOfStates( aboveIds( observed ) ) ) {
+			result.add( s );
+		}
+		return result;
+	}
 
-		int length = observed.size( );
-		Matrix<Integer> pointers =
-				new DenseMatrix<>( length, core.number_of_states, Integer::sum, -1 );
+	/**
+	 * The classic viterbi algorithm, on the ids of the input symbols.
+	 */
+	public int[] mostLikelySequenceOfStates( int[] observed ) {
+		int[] result = new int[observed.length];
+		mostLikelySequenceOfStates( sessions.get( ), observed, observed.length,
+				result );
+		return result;
+	}
 
-		/**
-		 * [ x s ] -> the probability of the automa to be in state s and the
-		 * emission of the first x observed symbols above (given the whole sequence
-		 * above/below).
-		 */
-		Matrix<Double> probability =
-				new DenseMatrix<>( 1 + length, core.number_of_states,
-						NumericLogarithm::elnsum2,
-						NumericLogarithm.smallLogValue );
+	/**
+	 * Same as {@link #mostLikelySequenceOfStates(int[])}, on the first
+	 * {@code length} ids, writing in {@code result}. This does not allocate,
+	 * once the buffers of the session are large enough.
+	 */
+	public void mostLikelySequenceOfStates(
+			M12ClassicMapleSession session,
+			int[] observed,
+			int length,
+			int[] result ) {
+		final IntMatrix pointers = session.pointers;
+		final DoubleMatrix probability = session.probability;
+		pointers.reset( length, core.number_of_states );
+		probability.reset( 1 + length, core.number_of_states );
+		final int[] active = session.activeStates( core.number_of_states );
+		int number_of_active = core.number_of_states;
+		for ( int s = 0; s < number_of_active; s++ ) {
+			active[s] = s;
+		}
 
 		for ( int t = 0; t < length; t++ ) {
+			final int above_id = observed[t];
+			if ( above_id < 0 && fail_on_unknown_input_symbol ) {
+				throw new IllegalArgumentException(
+						"M12Maple unknown symbol at position " + t );
+			}
 
 			/*
 			 * For each state s, we must compute the probability of the most probable
@@ -288,20 +421,21 @@ public class M12ClassicMaple<I, O> implements
 			 */
 			for ( int s = 0; s < core.number_of_states; s++ ) {
 				// for this state, there is a fixed cost, the cost of emission.
-				double cost = emission( s, observed.get( t ) );
+				double cost = emission( s, above_id );
 
 				if ( t > 0 ) {
 					double max = 0d;
 					boolean found = false;
 					int best_source = 0;
-					for ( int input = 0; input < core.number_of_states; input++ ) {
+					for ( int a = 0; a < number_of_active; a++ ) {
+						final int input = active[a];
 						/*
 						 * in classic HMM, we would consider only states as they occurred at
 						 * time t - 1.
 						 * 
 						 */
 
-						double tmp = elnproduct( probability.apply( t, input ),
+						double tmp = elnproduct( probability.get( t, input ),
 								core.transition_table[input][s] );
 
 						if ( !found || tmp > max ) {
@@ -313,7 +447,7 @@ public class M12ClassicMaple<I, O> implements
 
 					pointers.set( t, s, best_source );
 					cost = elnproduct(
-							cost, probability.apply( t, best_source ),
+							cost, probability.get( t, best_source ),
 							core.transition_table[best_source][s] );
 
 				}
@@ -323,38 +457,55 @@ public class M12ClassicMaple<I, O> implements
 				probability.set( t + 1, s, cost );
 
 			}
+
+			if ( !beam.isExact( ) ) {
+				number_of_active = prune( session, t + 1, active );
+			}
 		}
 
 		int best_final_state = 0;
 		double final_max = 0d;
 		boolean final_found = false;
 		for ( int s = 0; s < core.number_of_states; s++ ) {
-			Double tmp = probability.apply( length, s );
+			double tmp = probability.get( length, s );
 			if ( !final_found || tmp > final_max ) {
 				final_found = true;
 				best_final_state = s;
 				final_max = tmp;
 			}
 		}
-		return reconstructPath(
-				( time, state ) -> pointers.apply( time, state ),
-				length,
-				best_final_state );
-	}
 
-	private Vector<Integer> reconstructPath(
-			BiFunction<Integer, Integer, Integer> pointers,
-			int length,
-			Integer s ) {
-		Vector<Integer> result = new Vector<>( );
+		/*
+		 * Reconstruct the path.
+		 */
+		int s = best_final_state;
 		for ( int t = length - 1; t >= 0; t-- ) {
-			result.add( s );
+			result[t] = s;
 			if ( t > 0 ) {
-				s = pointers.apply( t, s );
+				s = pointers.get( t, s );
 			}
 		}
-		Collections.reverse( result );
-		return result;
+	}
+
+	/*
+	 * Lists in active the states kept by the beam after x observed symbols, and
+	 * returns how many they are. The next step extends only these states.
+	 */
+	private int prune( M12ClassicMapleSession session, int x, int[] active ) {
+		final int size = core.number_of_states;
+		final double[] scores = session.scores( size );
+		for ( int s = 0; s < size; s++ ) {
+			scores[s] = session.probability.get( x, s );
+		}
+		double cutoff = beam.cutoff( scores, size, session.beamBuffer( size ) );
+		int number_of_active = 0;
+		for ( int s = 0; s < size; s++ ) {
+			if ( scores[s] >= cutoff ) {
+				active[number_of_active] = s;
+				number_of_active++;
+			}
+		}
+		return number_of_active;
 	}
 
 }
@@ -0,0 +1,109 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.maple;
+
+import org.github.evenjn.numeric.DoubleMatrix;
+import org.github.evenjn.numeric.IntMatrix;
+import org.github.evenjn.numeric.NumericLogarithm;
+
+/**
+ * The buffers used by {@link M12ClassicMaple} to decode one sequence at a
+ * time.
+ * 
+ * Buffers grow geometrically with the longest sequence decoded so far. Once
+ * they are large enough, decoding allocates nothing beyond the result.
+ * 
+ * A session is not thread-safe. Each thread uses its own session, which may
+ * be used with any number of decoders.
+ */
+public class M12ClassicMapleSession {
+
+	/*
+	 * The Viterbi back-pointers: [ t s ] -> the best state at time t - 1.
+	 */
+	final IntMatrix pointers = new IntMatrix( -1 );
+
+	/**
+	 * [ x s ] -> the probability of the automa to be in state s and the
+	 * emission of the first x observed symbols above (given the whole sequence
+	 * above/below).
+	 */
+	final DoubleMatrix probability =
+			new DoubleMatrix( NumericLogarithm.smallLogValue );
+
+	private int[] above_ids = new int[16];
+
+	private int[] below_ids = new int[16];
+
+	private int[] active_states = new int[0];
+
+	private double[] scores = new double[0];
+
+	private double[] beam_buffer = new double[0];
+
+	/**
+	 * A buffer for the ids of at least {@code length} input symbols.
+	 */
+	int[] aboveIds( int length ) {
+		if ( above_ids.length < length ) {
+			above_ids = new int[Math.max( length, 2 * above_ids.length )];
+		}
+		return above_ids;
+	}
+
+	/**
+	 * A buffer for the ids of at least {@code length} output tuples.
+	 */
+	int[] belowIds( int length ) {
+		if ( below_ids.length < length ) {
+			below_ids = new int[Math.max( length, 2 * below_ids.length )];
+		}
+		return below_ids;
+	}
+
+	/**
+	 * A buffer for the ids of at least {@code size} states that are extended at
+	 * the next step.
+	 */
+	int[] activeStates( int size ) {
+		if ( active_states.length < size ) {
+			active_states = new int[size];
+		}
+		return active_states;
+	}
+
+	/**
+	 * A buffer for the scores of at least {@code size} states.
+	 */
+	double[] scores( int size ) {
+		if ( scores.length < size ) {
+			scores = new double[size];
+		}
+		return scores;
+	}
+
+	/**
+	 * A buffer of at least {@code size} values, for the beam.
+	 */
+	double[] beamBuffer( int size ) {
+		if ( beam_buffer.length < size ) {
+			beam_buffer = new double[size];
+		}
+		return beam_buffer;
+	}
+}
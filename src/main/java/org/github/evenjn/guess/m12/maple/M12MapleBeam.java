@@ -0,0 +1,128 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.maple;
+
+import java.util.Arrays;
+
+/**
+ * Bounds the hypotheses that the maple decoders extend at each step.
+ * 
+ * After each step, a hypothesis is pruned when its (logarithm of the)
+ * probability is more than {@code threshold} below the best one, or when it
+ * is not among the best {@code width}. Hypotheses tied with the last one kept
+ * are kept too. The best hypothesis is never pruned.
+ * 
+ * The {@link #exact()} beam prunes nothing, so that decoding is exhaustive.
+ * 
+ * A width sorts the scores at each step, while a threshold only looks for the
+ * best one. With few hypotheses per step, as in the classic maple on models
+ * with a few dozen states, a threshold is the cheaper bound.
+ */
+public class M12MapleBeam {
+
+	private static final M12MapleBeam exact =
+			new M12MapleBeam( 0, Double.POSITIVE_INFINITY );
+
+	private final int width;
+
+	private final double threshold;
+
+	private M12MapleBeam(int width, double threshold) {
+		this.width = width;
+		this.threshold = threshold;
+	}
+
+	public static M12MapleBeam exact( ) {
+		return exact;
+	}
+
+	/**
+	 * Keeps at most {@code width} hypotheses at each step, besides ties.
+	 */
+	public static M12MapleBeam width( int width ) {
+		return nu( width, Double.POSITIVE_INFINITY );
+	}
+
+	/**
+	 * Keeps the hypotheses whose logarithm of the probability is at most
+	 * {@code threshold} below the best one.
+	 */
+	public static M12MapleBeam threshold( double threshold ) {
+		return nu( 0, threshold );
+	}
+
+	/**
+	 * Applies both bounds. A width of zero or less, and an infinite threshold,
+	 * mean no bound.
+	 */
+	public static M12MapleBeam nu( int width, double threshold ) {
+		if ( Double.isNaN( threshold ) || threshold < 0d ) {
+			throw new IllegalArgumentException(
+					"The beam threshold must be non-negative." );
+		}
+		if ( width <= 0 && threshold == Double.POSITIVE_INFINITY ) {
+			return exact;
+		}
+		return new M12MapleBeam( Math.max( 0, width ), threshold );
+	}
+
+	public boolean isExact( ) {
+		return this == exact;
+	}
+
+	public int getWidth( ) {
+		return width;
+	}
+
+	public double getThreshold( ) {
+		return threshold;
+	}
+
+	/**
+	 * Given the scores of {@code size} hypotheses, returns the score below which
+	 * hypotheses are pruned. {@code buffer} must hold at least {@code size}
+	 * values, and is overwritten.
+	 */
+	double cutoff( double[] scores, int size, double[] buffer ) {
+		if ( isExact( ) || size == 0 ) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		double best = scores[0];
+		for ( int i = 1; i < size; i++ ) {
+			if ( best < scores[i] ) {
+				best = scores[i];
+			}
+		}
+		double cutoff = best - threshold;
+		if ( width > 0 && width < size ) {
+			System.arraycopy( scores, 0, buffer, 0, size );
+			Arrays.sort( buffer, 0, size );
+			cutoff = Math.max( cutoff, buffer[size - width] );
+		}
+		return cutoff;
+	}
+
+	@Override
+	public String toString( ) {
+		if ( isExact( ) ) {
+			return "exact";
+		}
+		return "beam( width: " + ( width > 0 ? Integer.toString( width ) : "any" )
+				+ ", threshold: " + threshold + " )";
+	}
+}
@@ -19,10 +19,9 @@ package org.github.evenjn.guess.m12.maple;
 
 import static org.github.evenjn.numeric.NumericLogarithm.elnproduct;
 
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.Set;
 import java.util.Vector;
-import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import org.github.evenjn.align.alphabet.TupleAlignmentAlphabet;
@@ -30,10 +29,10 @@ import org.github.evenjn.guess.markov.Markov;
 import org.github.evenjn.knit.KnittingTuple;
 import org.github.evenjn.knit.TupleValue;
 import org.github.evenjn.lang.Tuple;
-import org.github.evenjn.numeric.Cubix;
-import org.github.evenjn.numeric.DenseCubix;
-import org.github.evenjn.numeric.DenseMatrix;
-import org.github.evenjn.numeric.Matrix;
+import org.github.evenjn.numeric.DoubleCubix;
+import org.github.evenjn.numeric.DoubleMatrix;
+import org.github.evenjn.numeric.IntMatrix;
+import org.github.evenjn.numeric.NumericLogAdder;
 import org.github.evenjn.numeric.NumericLogarithm;
 
 /**
@@ -44,6 +43,9 @@ import org.github.evenjn.numeric.NumericLogarithm;
  * emission probability "one" to unknown symbols, the system chooses the most
  * likely state based on transition probabilities only.
  * 
+ * A decoder can be shared between threads: each thread decodes with tables
+ * of its own, which are reused across calls.
+ * 
  * @author Marco Trevisan
  *
  * @param <I>
@@ -58,13 +60,110 @@ public class M12PreciseMaple<I, O> implements
 
 	private TupleAlignmentAlphabet<I, O> coalignment_alphabet;
 
+	private final NumericLogAdder log_adder;
+
+	private final M12MapleBeam beam;
+
 	public M12PreciseMaple(
 			TupleAlignmentAlphabet<I, O> coalignment_alphabet,
 			Markov core) {
+		this( coalignment_alphabet, core, NumericLogAdder.exact( ) );
+	}
+
+	/**
+	 * Sums probabilities with the given adder; see
+	 * {@link org.github.evenjn.numeric.NumericTabulatedLogAdder}.
+	 */
+	public M12PreciseMaple(
+			TupleAlignmentAlphabet<I, O> coalignment_alphabet,
+			Markov core,
+			NumericLogAdder log_adder) {
+		this( coalignment_alphabet, core, log_adder, M12MapleBeam.exact( ) );
+	}
+
+	/**
+	 * Sums probabilities with the given adder, and extends at each step only
+	 * the output symbols kept by the given beam; see {@link M12MapleBeam}.
+	 */
+	public M12PreciseMaple(
+			TupleAlignmentAlphabet<I, O> coalignment_alphabet,
+			Markov core,
+			NumericLogAdder log_adder,
+			M12MapleBeam beam) {
 		this.coalignment_alphabet = coalignment_alphabet;
 		this.core = core;
+		this.log_adder = log_adder;
+		this.beam = beam;
+		this.sessions = ThreadLocal.withInitial( ( ) -> new M12PreciseMapleSession(
+				core.number_of_states, core.number_of_symbols ) );
+
+		KnittingTuple<TupleValue<I>> above = coalignment_alphabet.above( );
+		KnittingTuple<TupleValue<O>> below = coalignment_alphabet.below( );
+		int number_of_above = above.size( );
+		this.id_of_above = new HashMap<>( );
+		this.corresponding_below = new int[number_of_above][];
+		this.corresponding_code = new int[number_of_above][];
+		for ( int above_id = 0; above_id < number_of_above; above_id++ ) {
+			TupleValue<I> sa = above.get( above_id );
+			id_of_above.put( sa.get( 0 ), above_id );
+			Set<TupleValue<O>> correspondingBelow =
+					coalignment_alphabet.correspondingBelow( sa );
+			int[] below_ids = new int[correspondingBelow.size( )];
+			int[] codes = new int[correspondingBelow.size( )];
+			int size = 0;
+			for ( int below_id = 0; below_id < below.size( ); below_id++ ) {
+				TupleValue<O> sb = below.get( below_id );
+				if ( !correspondingBelow.contains( sb ) ) {
+					continue;
+				}
+				below_ids[size] = below_id;
+				codes[size] = coalignment_alphabet.encode( sa, sb );
+				size++;
+			}
+			corresponding_below[above_id] = below_ids;
+			corresponding_code[above_id] = codes;
+		}
+	}
+
+	private M12PreciseMaple(M12PreciseMaple<I, O> other, M12MapleBeam beam) {
+		this.coalignment_alphabet = other.coalignment_alphabet;
+		this.core = other.core;
+		this.log_adder = other.log_adder;
+		this.beam = beam;
+		this.sessions = ThreadLocal.withInitial( ( ) -> new M12PreciseMapleSession(
+				core.number_of_states, core.number_of_symbols ) );
+		this.id_of_above = other.id_of_above;
+		this.corresponding_below = other.corresponding_below;
+		this.corresponding_code = other.corresponding_code;
+	}
+
+	/**
+	 * Returns a decoder of the same model that prunes hypotheses with the given
+	 * beam.
+	 */
+	public M12PreciseMaple<I, O> withBeam( M12MapleBeam beam ) {
+		return new M12PreciseMaple<>( this, beam );
 	}
 
+	/*
+	 * Input symbols are interned to dense ids, in the order of the alphabet.
+	 */
+	private final HashMap<I, Integer> id_of_above;
+
+	/*
+	 * For each input symbol id, the ids of the output symbols that may
+	 * correspond to it, in the order of the alphabet, and the code of each pair.
+	 */
+	private final int[][] corresponding_below;
+
+	private final int[][] corresponding_code;
+
+	/*
+	 * The tables and buffers used by each thread, so that a decoder can be
+	 * shared between threads.
+	 */
+	private final ThreadLocal<M12PreciseMapleSession> sessions;
+
 	@Override
 	public Tuple<O> apply( Tuple<I> t ) {
 		return KnittingTuple.wrap( mostLikelySequenceOfSymbolsBelow( t ) );
@@ -134,12 +233,34 @@ public class M12PreciseMaple<I, O> implements
 	 * {@code p[1 A 0] = [A B C]=>( p[0 ? 0] * transition[? A] )+>sum * emission[A 1/0]}<br>
 	 * </p>
 	 * 
-	 * 
+	 * <p>
+	 * The cost of moving from virtual state {@code u} at step {@code x-1} to
+	 * virtual state {@code v} at step {@code x} sums over pairs of real states:
+	 * {@code [? ?']=>( p[x-1 ? u] * transition[? ?'] * p[x ?' v] )+>sum}.
+	 * Summing first over the source state gives a vector
+	 * {@code f[x-1 ?' u] = [?]=>( p[x-1 ? u] * transition[? ?'] )+>sum} that
+	 * depends on {@code u} alone, so that each pair of virtual states costs a
+	 * product of vectors instead of a sum over all pairs of real states.
+	 * </p>
 	 */
 	private Vector<O>
 			mostLikelySequenceOfSymbolsBelow( Tuple<? extends I> observed ) {
 		Vector<O> result = new Vector<>( );
 		int length = observed.size( );
+		final M12PreciseMapleSession session = sessions.get( );
+		final IntMatrix encoded = session.encoded;
+		final IntMatrix corresponding = session.corresponding;
+		final DoubleMatrix probability_real = session.probability_real;
+		final DoubleMatrix probability_virtual = session.probability_virtual;
+		final DoubleCubix probability_real_virtual =
+				session.probability_real_virtual;
+		final DoubleCubix probability_forward = session.probability_forward;
+		final DoubleMatrix probability = session.probability;
+		final IntMatrix pointers = session.pointers;
+		final double[] from_sources = session.from_sources;
+		final double[] sources = session.sources;
+		final double[] prob_for_each_output = session.prob_for_each_output;
+		final double[] prob_for_each_state = session.prob_for_each_state;
 		/**
 		 * For each input symbol, we build a virtual state for each possible output.
 		 * 
@@ -148,75 +269,60 @@ public class M12PreciseMaple<I, O> implements
 		 */
 
 		KnittingTuple<TupleValue<O>> ka_below = coalignment_alphabet.below( );
+		final int number_of_states = core.number_of_states;
+		final int number_of_below = ka_below.size( );
+
+		encode( session, observed, ka_below );
+		final int[] number_of_corresponding = session.number_of_corresponding;
 
-		Matrix<Double> probability_real = new DenseMatrix<>(
-				length,
-				core.number_of_states,
-				NumericLogarithm::elnsum2,
-				NumericLogarithm.smallLogValue );
-
-		Matrix<Double> probability_virtual = new DenseMatrix<>(
-				length,
-				ka_below.size( ),
-				NumericLogarithm::elnsum2,
-				NumericLogarithm.smallLogValue );
-
-		Cubix<Double> probability_real_virtual = new DenseCubix<>(
-				length,
-				core.number_of_states,
-				ka_below.size( ),
-				NumericLogarithm::elnsum2,
-				NumericLogarithm.smallLogValue );
+		probability_real.reset( length, number_of_states );
+		probability_virtual.reset( length, number_of_below );
+		probability_real_virtual.reset( length, number_of_below,
+				number_of_states );
+		probability_forward.reset( length, number_of_below, number_of_states );
 
 		for ( int t = 0; t < length; t++ ) {
-			I current_above = observed.get( t );
-			TupleValue<I> current_above_tuple =
-					KnittingTuple.on( current_above ).asTupleValue( );
-			Set<TupleValue<O>> correspondingBelow =
-					coalignment_alphabet.correspondingBelow( current_above_tuple );
-			for ( int s = 0; s < core.number_of_states; s++ ) {
+			final int size = number_of_corresponding[t];
 
-				double prob_for_each_output_max = NumericLogarithm.smallLogValue;
-				int prob_for_each_output_size = 0;
-				double[] prob_for_each_output = new double[core.number_of_symbols];
+			/*
+			 * The probability of reaching each state at this step, before emitting,
+			 * does not depend on the output symbol.
+			 */
+			for ( int s = 0; s < number_of_states; s++ ) {
+				if ( t > 0 ) {
+					double max = NumericLogarithm.smallLogValue;
+					int input = 0;
+					for ( ; input < number_of_states; input++ ) {
 
-				for ( int below_id = 0; below_id < ka_below.size( ); below_id++ ) {
-					TupleValue<O> sb = ka_below.get( below_id );
+						double tmp = elnproduct( probability_real.get( t - 1, input ),
+								core.transition_table[input][s] );
 
-					if ( !correspondingBelow.contains( sb ) ) {
-						continue;
+						sources[input] = tmp;
+						if ( max < tmp ) {
+							max = tmp;
+						}
 					}
-					// for this state, there is a fixed cost, the cost of emission.
-					int encode = coalignment_alphabet
-							.encode( current_above_tuple, sb );
-
-					double cost = core.emission_table[s][encode];
-
-					if ( t > 0 ) {
-						double[] sources = new double[core.number_of_states];
-						double max = NumericLogarithm.smallLogValue;
-						int input = 0;
-						for ( ; input < core.number_of_states; input++ ) {
+					from_sources[s] = log_adder.elnsum( max, sources, input );
+				}
+				else {
+					from_sources[s] = core.initial_table[s];
+				}
+			}
 
-							double tmp = elnproduct( probability_real.apply( t - 1, input ),
-									core.transition_table[input][s] );
+			for ( int s = 0; s < number_of_states; s++ ) {
 
-							sources[input] = tmp;
-							if ( max < tmp ) {
-								max = tmp;
-							}
-						}
-						double total_from_sources =
-								NumericLogarithm.elnsum( max, sources, input );
+				double prob_for_each_output_max = NumericLogarithm.smallLogValue;
+				int prob_for_each_output_size = 0;
 
-						cost = elnproduct( cost, total_from_sources );
+				for ( int k = 0; k < size; k++ ) {
+					int below_id = corresponding.get( t, k );
 
-					}
-					else {
-						cost = elnproduct( cost, core.initial_table[s] );
-					}
+					// for this state, there is a fixed cost, the cost of emission.
+					double cost = elnproduct(
+							core.emission.get( s, encoded.get( t, below_id ) ),
+							from_sources[s] );
 
-					probability_real_virtual.set( t, s, below_id, cost );
+					probability_real_virtual.set( t, below_id, s, cost );
 					prob_for_each_output[prob_for_each_output_size] = cost;
 					prob_for_each_output_size++;
 					if ( prob_for_each_output_max < cost ) {
@@ -224,7 +330,7 @@ public class M12PreciseMaple<I, O> implements
 					}
 				}
 
-				double total_from_symbols = NumericLogarithm.elnsum(
+				double total_from_symbols = log_adder.elnsum(
 						prob_for_each_output_max,
 						prob_for_each_output,
 						prob_for_each_output_size );
@@ -232,149 +338,109 @@ public class M12PreciseMaple<I, O> implements
 				probability_real.set( t, s, total_from_symbols );
 			}
 
-			for ( int below_id = 0; below_id < ka_below.size( ); below_id++ ) {
-				TupleValue<O> sb = ka_below.get( below_id );
-
-				if ( !correspondingBelow.contains( sb ) ) {
-					continue;
-				}
-				// for this state, there is a fixed cost, the cost of emission.
-				int encode = coalignment_alphabet
-						.encode( current_above_tuple, sb );
+			for ( int k = 0; k < size; k++ ) {
+				int below_id = corresponding.get( t, k );
 
 				double prob_for_each_state_max = NumericLogarithm.smallLogValue;
-				int prob_for_each_state_size = 0;
-				double[] prob_for_each_state = new double[core.number_of_states];
-
-				for ( int s = 0; s < core.number_of_states; s++ ) {
-					double cost = core.emission_table[s][encode];
-
-					if ( t > 0 ) {
-						double[] sources = new double[core.number_of_states];
-						double max = NumericLogarithm.smallLogValue;
-						int input = 0;
-						for ( ; input < core.number_of_states; input++ ) {
-
-							double tmp = elnproduct( probability_real.apply( t - 1, input ),
-									core.transition_table[input][s] );
 
-							sources[input] = tmp;
-							if ( max < tmp ) {
-								max = tmp;
-							}
-						}
-						double total_from_sources =
-								NumericLogarithm.elnsum( max, sources, input );
-
-						cost = elnproduct( cost, total_from_sources );
-
-					}
-					else {
-						cost = elnproduct( cost, core.initial_table[s] );
-					}
-
-					prob_for_each_state[prob_for_each_state_size] = cost;
-					prob_for_each_state_size++;
+				for ( int s = 0; s < number_of_states; s++ ) {
+					double cost = probability_real_virtual.get( t, below_id, s );
+					prob_for_each_state[s] = cost;
 					if ( prob_for_each_state_max < cost ) {
 						prob_for_each_state_max = cost;
 					}
 				}
-				double total_from_states = NumericLogarithm.elnsum(
+				double total_from_states = log_adder.elnsum(
 						prob_for_each_state_max,
 						prob_for_each_state,
-						prob_for_each_state_size );
+						number_of_states );
 
 				probability_virtual.set( t, below_id, total_from_states );
 			}
+
+			if ( !beam.isExact( ) ) {
+				prune( session, t );
+			}
+
+			if ( t == length - 1 ) {
+				continue;
+			}
+
+			for ( int k = 0; k < number_of_corresponding[t]; k++ ) {
+				int below_id = corresponding.get( t, k );
+
+				/*
+				 * The probability of moving to each state at the next step, having
+				 * emitted this output symbol.
+				 */
+				for ( int s_dest = 0; s_dest < number_of_states; s_dest++ ) {
+					double max = NumericLogarithm.smallLogValue;
+					for ( int s_source =
+							0; s_source < number_of_states; s_source++ ) {
+						double tmp = elnproduct(
+								probability_real_virtual.get( t, below_id, s_source ),
+								core.transition_table[s_source][s_dest] );
+						sources[s_source] = tmp;
+						if ( max < tmp ) {
+							max = tmp;
+						}
+					}
+					probability_forward.set( t, below_id, s_dest,
+							log_adder.elnsum( max, sources, number_of_states ) );
+				}
+			}
 		}
 
 		/**
 		 * 
 		 */
 
-		Matrix<Double> probability =
-				new DenseMatrix<>( length, ka_below.size( ),
-						NumericLogarithm::elnsum2,
-						NumericLogarithm.smallLogValue );
-
-		Matrix<Integer> pointers =
-				new DenseMatrix<>( length, ka_below.size( ), Integer::sum, -1 );
+		probability.reset( length, number_of_below );
+		pointers.reset( length, number_of_below );
 
 		for ( int t = 0; t < length; t++ ) {
 
-			I current_above = observed.get( t );
-			TupleValue<I> current_above_tuple =
-					KnittingTuple.on( current_above ).asTupleValue( );
-			Set<TupleValue<O>> correspondingBelow =
-					coalignment_alphabet.correspondingBelow( current_above_tuple );
 			/*
 			 * For each state s, we must compute the probability of the most probable
 			 * state sequence responsible for input:0..t that have s as the final
 			 * state AND that the emission at s is a sequence of symbols with length
 			 * == gap.
 			 */
-			for ( int vs_dest = 0; vs_dest < ka_below.size( ); vs_dest++ ) {
-				TupleValue<O> vs_dest_below = ka_below.get( vs_dest );
-
-				if ( !correspondingBelow.contains( vs_dest_below ) ) {
-					continue;
-				}
+			for ( int k = 0; k < number_of_corresponding[t]; k++ ) {
+				int vs_dest = corresponding.get( t, k );
 
 				// for this state, there is a fixed cost, the cost of emission.
 				double cost = NumericLogarithm.oneLogValue;
 
 				if ( t > 0 ) {
 
-					I previous_above = observed.get( t - 1 );
-					TupleValue<I> previous_above_tuple =
-							KnittingTuple.on( previous_above ).asTupleValue( );
-					Set<TupleValue<O>> previous_correspondingBelow =
-							coalignment_alphabet.correspondingBelow( previous_above_tuple );
-
 					double max = 0d;
 					boolean found = false;
 					int best_source = 0;
-					for ( int vs_source = 0; vs_source < ka_below.size( ); vs_source++ ) {
-
-						Tuple<O> vs_source_below = ka_below.get( vs_source );
-
-						if ( !previous_correspondingBelow.contains( vs_source_below ) ) {
-							continue;
-						}
+					for ( int j = 0; j < number_of_corresponding[t - 1]; j++ ) {
+						int vs_source = corresponding.get( t - 1, j );
 
 						/**
 						 * we compute the combined cost of transition
 						 */
 
 						double prob_for_each_state_max = NumericLogarithm.smallLogValue;
-						int prob_for_each_state_size = 0;
-						double[] prob_for_each_state =
-								new double[core.number_of_states * core.number_of_states];
-
-						for ( int s_source =
-								0; s_source < core.number_of_states; s_source++ ) {
-
-							double xx =
-									probability_real_virtual.get( t - 1, s_source, vs_source );
-
-							for ( int s_dest = 0; s_dest < core.number_of_states; s_dest++ ) {
-								double c = elnproduct(
-										xx,
-										probability_real_virtual.get( t, s_dest, vs_dest ),
-										core.transition_table[s_source][s_dest] );
-
-								prob_for_each_state[prob_for_each_state_size] = c;
-								prob_for_each_state_size++;
-								if ( prob_for_each_state_max < c ) {
-									prob_for_each_state_max = c;
-								}
+
+						for ( int s_dest = 0; s_dest < number_of_states; s_dest++ ) {
+							double c = elnproduct(
+									probability_forward.get( t - 1, vs_source, s_dest ),
+									probability_real_virtual.get( t, vs_dest, s_dest ) );
+
+							prob_for_each_state[s_dest] = c;
+							if ( prob_for_each_state_max < c ) {
+								prob_for_each_state_max = c;
 							}
 						}
 
-						double transition_cost = NumericLogarithm.elnsum(
+						double transition_cost = log_adder.elnsum(
 								prob_for_each_state_max,
 								prob_for_each_state,
-								prob_for_each_state_size );
+								number_of_states );
 						transition_cost = elnproduct( transition_cost,
 								probability_virtual.get( t - 1, vs_source ) );
 						if ( !found || transition_cost > max ) {
@@ -399,8 +465,8 @@ public class M12PreciseMaple<I, O> implements
 		int best_final_state = 0;
 		double final_max = 0d;
 		boolean final_found = false;
-		for ( int s = 0; s < ka_below.size( ); s++ ) {
-			Double tmp = probability.apply( length - 1, s );
+		for ( int s = 0; s < number_of_below; s++ ) {
+			double tmp = probability.get( length - 1, s );
 			if ( !final_found || tmp > final_max ) {
 				final_found = true;
 				best_final_state = s;
@@ -408,13 +474,11 @@ public class M12PreciseMaple<I, O> implements
 			}
 		}
 
-		Vector<Integer> reconstructPath = reconstructPath(
-				( time, state ) -> pointers.apply( time, state ),
-				length,
-				best_final_state );
+		final int[] path = session.path( length );
+		reconstructPath( pointers, length, best_final_state, path );
 
-		for ( Integer encoded : reconstructPath ) {
-			Tuple<O> elements = ka_below.get( encoded );
+		for ( int t = 0; t < length; t++ ) {
+			Tuple<O> elements = ka_below.get( path[t] );
 			for ( int i = 0; i < elements.size( ); i++ )
 				result.add( elements.get( i ) );
 
@@ -422,19 +486,91 @@ public class M12PreciseMaple<I, O> implements
 		return result;
 	}
 
-	private Vector<Integer> reconstructPath(
-			BiFunction<Integer, Integer, Integer> pointers,
+	/*
+	 * For each step, lists the output symbols that may correspond to the input
+	 * symbol, in the order of the alphabet, with the code of each pair. Known
+	 * input symbols use the lists built by the constructor.
+	 */
+	private void encode( M12PreciseMapleSession session,
+			Tuple<? extends I> observed,
+			KnittingTuple<TupleValue<O>> ka_below ) {
+		int length = observed.size( );
+		final IntMatrix encoded = session.encoded;
+		final IntMatrix corresponding = session.corresponding;
+		encoded.reset( length, ka_below.size( ) );
+		corresponding.reset( length, ka_below.size( ) );
+		final int[] number_of_corresponding =
+				session.numberOfCorresponding( length );
+		for ( int t = 0; t < length; t++ ) {
+			Integer above_id = id_of_above.get( observed.get( t ) );
+			if ( above_id != null ) {
+				final int[] below_ids = corresponding_below[above_id];
+				final int[] codes = corresponding_code[above_id];
+				for ( int k = 0; k < below_ids.length; k++ ) {
+					encoded.set( t, below_ids[k], codes[k] );
+					corresponding.set( t, k, below_ids[k] );
+				}
+				number_of_corresponding[t] = below_ids.length;
+				continue;
+			}
+			TupleValue<I> current_above_tuple =
+					KnittingTuple.on( observed.get( t ) ).asTupleValue( );
+			Set<TupleValue<O>> correspondingBelow =
+					coalignment_alphabet.correspondingBelow( current_above_tuple );
+			int size = 0;
+			for ( int below_id = 0; below_id < ka_below.size( ); below_id++ ) {
+				TupleValue<O> sb = ka_below.get( below_id );
+
+				if ( !correspondingBelow.contains( sb ) ) {
+					continue;
+				}
+				encoded.set( t, below_id,
+						coalignment_alphabet.encode( current_above_tuple, sb ) );
+				corresponding.set( t, size, below_id );
+				size++;
+			}
+			number_of_corresponding[t] = size;
+		}
+	}
+
+	/*
+	 * Removes from the output symbols of step t those pruned by the beam, given
+	 * the probability of their virtual states. Pruned virtual states are neither
+	 * reached nor left by the second pass.
+	 */
+	private void prune( M12PreciseMapleSession session, int t ) {
+		final IntMatrix corresponding = session.corresponding;
+		final int[] number_of_corresponding = session.number_of_corresponding;
+		final double[] prob_for_each_output = session.prob_for_each_output;
+		final DoubleMatrix probability_virtual = session.probability_virtual;
+		final int size = number_of_corresponding[t];
+		for ( int k = 0; k < size; k++ ) {
+			prob_for_each_output[k] =
+					probability_virtual.get( t, corresponding.get( t, k ) );
+		}
+		double cutoff =
+				beam.cutoff( prob_for_each_output, size, session.beam_buffer );
+		int kept = 0;
+		for ( int k = 0; k < size; k++ ) {
+			if ( prob_for_each_output[k] >= cutoff ) {
+				corresponding.set( t, kept, corresponding.get( t, k ) );
+				kept++;
+			}
+		}
+		number_of_corresponding[t] = kept;
+	}
+
+	private static void reconstructPath(
+			IntMatrix pointers,
 			int length,
-			Integer s ) {
-		Vector<Integer> result = new Vector<>( );
+			int s,
+			int[] path ) {
 		for ( int t = length - 1; t >= 0; t-- ) {
-			result.add( s );
+			path[t] = s;
 			if ( t > 0 ) {
-				s = pointers.apply( t, s );
+				s = pointers.get( t, s );
 			}
 		}
-		Collections.reverse( result );
-		return result;
 	}
 
 }
@@ -0,0 +1,109 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.maple;
+
+import org.github.evenjn.numeric.DoubleCubix;
+import org.github.evenjn.numeric.DoubleMatrix;
+import org.github.evenjn.numeric.IntMatrix;
+import org.github.evenjn.numeric.NumericLogarithm;
+
+/**
+ * The tables and buffers used by {@link M12PreciseMaple} to decode one
+ * sequence at a time.
+ * 
+ * Tables grow geometrically with the longest sequence decoded so far. A
+ * session is not thread-safe: each thread uses its own.
+ */
+class M12PreciseMapleSession {
+
+	/*
+	 * [ t below ] -> the code of the pair of the input symbol at t and the
+	 * output symbol, or -1 when they do not correspond.
+	 */
+	final IntMatrix encoded = new IntMatrix( -1 );
+
+	/*
+	 * [ t k ] -> the k-th output symbol that may correspond to the input symbol
+	 * at t, for k less than number_of_corresponding[t].
+	 */
+	final IntMatrix corresponding = new IntMatrix( -1 );
+
+	int[] number_of_corresponding = new int[0];
+
+	/*
+	 * [ t ] -> the output symbol on the most likely path.
+	 */
+	int[] path = new int[0];
+
+	final DoubleMatrix probability_real =
+			new DoubleMatrix( NumericLogarithm.smallLogValue );
+
+	final DoubleMatrix probability_virtual =
+			new DoubleMatrix( NumericLogarithm.smallLogValue );
+
+	final DoubleCubix probability_real_virtual =
+			new DoubleCubix( NumericLogarithm.smallLogValue );
+
+	final DoubleCubix probability_forward =
+			new DoubleCubix( NumericLogarithm.smallLogValue );
+
+	final DoubleMatrix probability =
+			new DoubleMatrix( NumericLogarithm.smallLogValue );
+
+	final IntMatrix pointers = new IntMatrix( -1 );
+
+	final double[] from_sources;
+
+	final double[] sources;
+
+	final double[] prob_for_each_output;
+
+	final double[] prob_for_each_state;
+
+	final double[] beam_buffer;
+
+	M12PreciseMapleSession(int number_of_states, int number_of_symbols) {
+		from_sources = new double[number_of_states];
+		sources = new double[number_of_states];
+		prob_for_each_output = new double[number_of_symbols];
+		prob_for_each_state = new double[number_of_states];
+		beam_buffer = new double[number_of_symbols];
+	}
+
+	/**
+	 * The counts of corresponding output symbols, for at least {@code length}
+	 * steps.
+	 */
+	int[] numberOfCorresponding( int length ) {
+		if ( number_of_corresponding.length < length ) {
+			number_of_corresponding =
+					new int[Math.max( length, 2 * number_of_corresponding.length )];
+		}
+		return number_of_corresponding;
+	}
+
+	/**
+	 * The buffer of the most likely path, for at least {@code length} steps.
+	 */
+	int[] path( int length ) {
+		if ( path.length < length ) {
+			path = new int[Math.max( length, 2 * path.length )];
+		}
+		return path;
+	}
+}
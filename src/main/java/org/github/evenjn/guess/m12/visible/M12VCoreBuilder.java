@@ -2,12 +2,10 @@ package org.github.evenjn.guess.m12.visible;
 
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.github.evenjn.align.graph.TupleAlignmentGraph;
-import org.github.evenjn.align.graph.TupleAlignmentNode;
 import org.github.evenjn.guess.markov.Markov;
 import org.github.evenjn.knit.KnittingCursable;
 import org.github.evenjn.knit.SafeProgressSpawner;
@@ -57,14 +55,11 @@ public class M12VCoreBuilder {
 			
 			for ( TupleAlignmentGraph observed : observed_cursable.pull( rook ) .once( )) {
 
-				Iterator<TupleAlignmentNode> it = observed.forward( );
-				while ( it.hasNext( ) ) {
-					TupleAlignmentNode cell = it.next( );
-					final int edges = cell.number_of_incoming_edges;
-					for ( int edge = 0; edge < edges; edge++ ) {
-						final int x = cell.incoming_edges[edge][0];
-						final int y = cell.incoming_edges[edge][1];
-						final int encoded = cell.incoming_edges[edge][2];
+				for ( int node = 1; node < observed.number_of_nodes; node++ ) {
+					final int edge_end = observed.edge_offset[node + 1];
+					for ( int edge = observed.edge_offset[node]; edge < edge_end; edge++ ) {
+						final int source = observed.edge_source[edge];
+						final int encoded = observed.edge_symbol[edge];
 						Object key = unveiler.apply( encoded );
 						
 						FrequencyDistribution<Object> fdtest = transitions.get( key );
@@ -75,7 +70,7 @@ public class M12VCoreBuilder {
 						
 						states.add( key );
 						symbols.add( encoded );
-						if (x == 0 && y == 0) {
+						if ( source == observed.root( ) ) {
 							initial.accept( key );
 						}
 						else {
@@ -85,12 +80,12 @@ public class M12VCoreBuilder {
 							
 							// maybe it's as simple as this:
 							
-							TupleAlignmentNode source = observed.get( x, y );
-							final int source_edges = source.number_of_incoming_edges;
+							final int source_begin = observed.edge_offset[source];
+							final int source_end = observed.edge_offset[source + 1];
 							int current_encoded = 0;
-							for ( int source_edge = 0; source_edge < source_edges; source_edge++ ) {
-								final int source_encoded = source.incoming_edges[source_edge][2];
-								if (source_edge == 0 || current_encoded != source_encoded ) {
+							for ( int source_edge = source_begin; source_edge < source_end; source_edge++ ) {
+								final int source_encoded = observed.edge_symbol[source_edge];
+								if (source_edge == source_begin || current_encoded != source_encoded ) {
 									current_encoded = source_encoded;
 									Object source_key = unveiler.apply( current_encoded );
 									FrequencyDistribution<Object> fd = transitions.get( source_key );
@@ -170,7 +165,7 @@ public class M12VCoreBuilder {
 					Integer local = emissions.get( state )
 							.getFrequency( symbol ).orElse( 0 );
 					double val = NumericLogarithm.eln( ( 1.0 * local ) / ( 1.0 * total_emissions_from_state ) );
-					result.emission_table[state_id][symbol_id] = val;
+					result.emission.set( state_id, symbol_id, val );
 				}
 			}
 			
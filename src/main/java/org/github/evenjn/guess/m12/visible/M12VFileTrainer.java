@@ -32,6 +32,8 @@ import org.github.evenjn.file.FileFool;
 import org.github.evenjn.guess.TrainingData;
 import org.github.evenjn.guess.m12.M12FileTrainer;
 import org.github.evenjn.guess.m12.M12QualityChecker;
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.guess.markov.MarkovBinary;
 import org.github.evenjn.knit.SafeProgressSpawner;
 import org.github.evenjn.lang.BasicRook;
 import org.github.evenjn.lang.Progress;
@@ -153,30 +155,28 @@ public class M12VFileTrainer<I, O> implements M12FileTrainer<I, O>  {
 			}
 
 			Path graphs_stable_file =
-					ff.getRoot( ).resolve( "ta_graphs.stable.txt" );
+					ff.getRoot( ).resolve( "ta_graphs.stable.bin" );
 			Path graphs_working_file =
-					ff.getRoot( ).resolve( "ta_graphs.working.txt" );
+					ff.getRoot( ).resolve( "ta_graphs.working.bin" );
 
 			if ( ff.exists( graphs_working_file ) ) {
 				ff.delete( graphs_working_file );
 			}
 			if ( ff.exists( graphs_stable_file ) ) {
 				System.out.println( "Using graphs cached in " + graphs_stable_file );
-				tagdmb.deserializeTupleAlignmentGraphs( h -> PlainText.reader( )
-						.build( ).get( h, ff.open( graphs_stable_file ).read( h ) ) );
+				tagdmb.readBinaryTupleAlignmentGraphs( graphs_stable_file );
 			}
 			else {
-				ff.create( ff.mold( graphs_working_file ) );
-				tagdmb.serializeTupleAlignmentGraphs( h -> PlainText.writer( ).build( )
-						.apply( h, ff.open( graphs_working_file ).write( h ) ) );
-				tagdmb.deserializeTupleAlignmentGraphs( h -> PlainText.reader( )
-						.build( ).get( h, ff.open( graphs_working_file ).read( h ) ) );
+				tagdmb.writeBinaryTupleAlignmentGraphs( graphs_working_file );
+				tagdmb.readBinaryTupleAlignmentGraphs( graphs_working_file );
 			}
 
 			Path mvcore_initial_file =
 					ff.getRoot( ).resolve( "./m12_core.initial.txt" );
 			Path mvcore_stable_file =
 					ff.getRoot( ).resolve( "./m12_core.stable.txt" );
+			Path mvcore_stable_binary_file =
+					ff.getRoot( ).resolve( "./m12_core.stable.bin" );
 			Path mvcore_working_file =
 					ff.getRoot( ).resolve( "./m12_core.working.txt" );
 			Path mvcore_log_file =
@@ -264,7 +264,10 @@ public class M12VFileTrainer<I, O> implements M12FileTrainer<I, O>  {
 				mvctb.unveiler( x->taadm.getAlphabet( ).get( x ).getBelow( ) );
 				M12VCoreTrainer mvct = mvctb.create( );
 
-				mvct.load(
+				if ( ff.exists( mvcore_stable_binary_file ) ) {
+					ff.delete( mvcore_stable_binary_file );
+				}
+				Markov core = mvct.load(
 						taadm.getAlphabet( ).size( ),
 						tagdm.getMaxNumberOfEdges( ),
 						tagdm.getMaxLenghtFront( ),
@@ -272,6 +275,11 @@ public class M12VFileTrainer<I, O> implements M12FileTrainer<I, O>  {
 						tagdm.getGraphs( ),
 						progress );
 
+				/*
+				 * The binary file is complete before the text file marks the core as
+				 * stable.
+				 */
+				MarkovBinary.writeAtomically( mvcore_stable_binary_file, core, false );
 				Files.copy( mvcore_working_file, mvcore_stable_file );
 			}
 
@@ -27,14 +27,24 @@ public class Markov {
 
 	public final double[][] transition_table;
 
-	public final double[][] emission_table;
+	public final MarkovEmission emission;
 
 	public Markov(int number_of_states, int number_of_symbols) {
+		this( number_of_states, number_of_symbols,
+				new MarkovDenseEmission( number_of_states, number_of_symbols ) );
+	}
+
+	/**
+	 * Creates a model whose emission table is backed by the given store. The
+	 * initial and transition tables are always on the heap.
+	 */
+	public Markov(int number_of_states, int number_of_symbols,
+			MarkovEmission emission) {
 		this.number_of_states = number_of_states;
 		this.number_of_symbols = number_of_symbols;
 		initial_table = new double[number_of_states];
 		transition_table = new double[number_of_states][number_of_states];
-		emission_table = new double[number_of_states][number_of_symbols];
+		this.emission = emission;
 	}
 
 }
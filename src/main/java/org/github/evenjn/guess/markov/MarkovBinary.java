@@ -0,0 +1,412 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.markov;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.github.evenjn.numeric.NumericLogarithm;
+
+/**
+ * Reads and writes Markov models in a binary format.
+ * 
+ * The file starts with a header of five little-endian 32-bit integers: a
+ * magic number, the format version, the number of bytes per value (8 for
+ * double, 4 for float), the number of states and the number of symbols.
+ * 
+ * Then follow three blocks of little-endian values: the initial table, the
+ * transition table and the emission table. Tables are written row by row,
+ * in the same order they have in memory: emissions are grouped by state, not
+ * by symbol.
+ * 
+ * Models with a {@link MarkovSparseEmission} table are written with format
+ * version 2, where the emission table is replaced by one block per state: the
+ * floor value, the number of stored symbols as a 32-bit integer, the stored
+ * symbols as 32-bit integers and their values. These files take time and
+ * space proportional to the number of stored emissions, and are read back
+ * into a sparse table.
+ * 
+ * Files are read through memory-mapped buffers, one block or one row at a
+ * time, with bulk copies. Values written as float are read back as double.
+ * Files written as double can also be mapped with {@link #map(Path, boolean)},
+ * leaving the emission table off the heap.
+ * The natural logarithm of zero, {@link NumericLogarithm#smallLogValue}, is
+ * preserved in both precisions.
+ */
+public class MarkovBinary {
+
+	private static final int magic = 0x4D4B5631;
+
+	private static final int version = 1;
+
+	private static final int version_sparse = 2;
+
+	private static final int header_size = 5 * 4;
+
+	public static void write( Path path, Markov core )
+			throws IOException {
+		write( path, core, false );
+	}
+
+	/**
+	 * Writes the model. When {@code single_precision} is true, values are
+	 * written as float, which halves the size of the file.
+	 */
+	public static void write( Path path, Markov core, boolean single_precision )
+			throws IOException {
+		try ( FileChannel channel = FileChannel.open( path,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE ) ) {
+			write( channel, core, single_precision );
+		}
+	}
+
+	/**
+	 * Writes the model to a temporary file, which is forced to disk and then
+	 * moved over the given path. So, the file at the given path is either
+	 * absent or complete, even when the process is killed while writing.
+	 */
+	public static void writeAtomically( Path path, Markov core,
+			boolean single_precision )
+			throws IOException {
+		Path temporary = path.resolveSibling( path.getFileName( ) + ".tmp" );
+		try ( FileChannel channel = FileChannel.open( temporary,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE ) ) {
+			write( channel, core, single_precision );
+			channel.force( true );
+		}
+		try {
+			Files.move( temporary, path, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING );
+		}
+		catch ( AtomicMoveNotSupportedException e ) {
+			Files.move( temporary, path, StandardCopyOption.REPLACE_EXISTING );
+		}
+	}
+
+	private static void write( FileChannel channel, Markov core,
+			boolean single_precision )
+			throws IOException {
+		final int bytes_per_value = single_precision ? 4 : 8;
+		final int S = core.number_of_states;
+		final int V = core.number_of_symbols;
+		ByteBuffer buffer = ByteBuffer
+				.allocateDirect( Math.max( header_size,
+						bytes_per_value * Math.max( S, V ) ) )
+				.order( ByteOrder.LITTLE_ENDIAN );
+		final boolean sparse = core.emission instanceof MarkovSparseEmission;
+		buffer.putInt( magic );
+		buffer.putInt( sparse ? version_sparse : version );
+		buffer.putInt( bytes_per_value );
+		buffer.putInt( S );
+		buffer.putInt( V );
+		drain( channel, buffer );
+		writeRow( channel, buffer, core.initial_table, single_precision );
+		for ( int s = 0; s < S; s++ ) {
+			writeRow( channel, buffer, core.transition_table[s],
+					single_precision );
+		}
+		if ( sparse ) {
+			writeSparse( channel, buffer, (MarkovSparseEmission) core.emission,
+					S, single_precision );
+			return;
+		}
+		final double[] emission_of_s = new double[V];
+		for ( int s = 0; s < S; s++ ) {
+			core.emission.getRow( s, emission_of_s );
+			writeRow( channel, buffer, emission_of_s, single_precision );
+		}
+	}
+
+	private static void writeSparse(
+			FileChannel channel,
+			ByteBuffer buffer,
+			MarkovSparseEmission emission,
+			int S,
+			boolean single_precision )
+			throws IOException {
+		for ( int s = 0; s < S; s++ ) {
+			final int stored = emission.numberOfStoredSymbols( s );
+			writeRow( channel, buffer, new double[] { emission.floor( s ) },
+					single_precision );
+			buffer.putInt( stored );
+			final int[] symbols = new int[stored];
+			final double[] values = new double[stored];
+			for ( int i = 0; i < stored; i++ ) {
+				symbols[i] = emission.storedSymbol( s, i );
+				values[i] = emission.storedValue( s, i );
+			}
+			drain( channel, buffer );
+			buffer.asIntBuffer( ).put( symbols );
+			buffer.position( buffer.position( ) + 4 * stored );
+			drain( channel, buffer );
+			writeRow( channel, buffer, values, single_precision );
+		}
+	}
+
+	private static void writeRow(
+			FileChannel channel,
+			ByteBuffer buffer,
+			double[] row,
+			boolean single_precision )
+			throws IOException {
+		if ( single_precision ) {
+			for ( int i = 0; i < row.length; i++ ) {
+				buffer.putFloat( (float) row[i] );
+			}
+		}
+		else {
+			buffer.asDoubleBuffer( ).put( row );
+			buffer.position( buffer.position( ) + 8 * row.length );
+		}
+		drain( channel, buffer );
+	}
+
+	private static void drain( FileChannel channel, ByteBuffer buffer )
+			throws IOException {
+		buffer.flip( );
+		while ( buffer.hasRemaining( ) ) {
+			channel.write( buffer );
+		}
+		buffer.clear( );
+	}
+
+	public static Markov read( Path path )
+			throws IOException {
+		try ( FileChannel channel =
+				FileChannel.open( path, StandardOpenOption.READ ) ) {
+			final int[] header = readHeader( channel, path );
+			final int bytes_per_value = header[0];
+			final int S = header[1];
+			final int V = header[2];
+			if ( header[3] == version_sparse ) {
+				MarkovSparseEmission emission = new MarkovSparseEmission( S, V );
+				Markov core = new Markov( S, V, emission );
+				long position = readTables( channel, core, bytes_per_value );
+				for ( int s = 0; s < S; s++ ) {
+					position = readSparseRow( channel, position, emission, s,
+							bytes_per_value, path );
+				}
+				if ( position != channel.size( ) ) {
+					throw new IOException( "Corrupted Markov file: " + path );
+				}
+				return core;
+			}
+			MarkovDenseEmission emission = new MarkovDenseEmission( S, V );
+			Markov core = new Markov( S, V, emission );
+			long position = readTables( channel, core, bytes_per_value );
+			for ( int s = 0; s < S; s++ ) {
+				position = readRow( channel, position, emission.table[s],
+						bytes_per_value );
+			}
+			return core;
+		}
+	}
+
+	/**
+	 * Reads the initial and transition tables onto the heap, and maps the
+	 * emission table, which stays in the file. See
+	 * {@link MarkovMappedEmission}.
+	 * 
+	 * When {@code writable} is true, changes to the emission table are written
+	 * back to the file; otherwise, the emission table is read-only.
+	 * 
+	 * Only files written in double precision can be mapped.
+	 */
+	public static Markov map( Path path, boolean writable )
+			throws IOException {
+		try ( FileChannel channel = writable
+				? FileChannel.open( path, StandardOpenOption.READ,
+						StandardOpenOption.WRITE )
+				: FileChannel.open( path, StandardOpenOption.READ ) ) {
+			final int[] header = readHeader( channel, path );
+			final int bytes_per_value = header[0];
+			final int S = header[1];
+			final int V = header[2];
+			if ( header[3] == version_sparse ) {
+				throw new IOException(
+						"Sparse Markov files cannot be mapped: " + path );
+			}
+			if ( bytes_per_value != 8 ) {
+				throw new IOException(
+						"Only double precision Markov files can be mapped: " + path );
+			}
+			final long row_size = 8L * V;
+			if ( row_size > Integer.MAX_VALUE ) {
+				throw new IOException(
+						"Too many symbols to map Markov file: " + path );
+			}
+			/*
+			 * The emission table is at the end of the file, so it can be located
+			 * before the other tables are read.
+			 */
+			final long emission_position = channel.size( ) - S * row_size;
+			final FileChannel.MapMode mode = writable
+					? FileChannel.MapMode.READ_WRITE
+					: FileChannel.MapMode.READ_ONLY;
+			MappedByteBuffer[] rows = new MappedByteBuffer[S];
+			for ( int s = 0; s < S; s++ ) {
+				rows[s] =
+						channel.map( mode, emission_position + s * row_size, row_size );
+			}
+			Markov core = new Markov( S, V, new MarkovMappedEmission( rows ) );
+			readTables( channel, core, bytes_per_value );
+			return core;
+		}
+	}
+
+	/*
+	 * Validates the header, and returns the number of bytes per value, the
+	 * number of states, the number of symbols and the format version.
+	 */
+	private static int[] readHeader( FileChannel channel, Path path )
+			throws IOException {
+		if ( channel.size( ) < header_size ) {
+			throw new IOException( "Truncated Markov file: " + path );
+		}
+		MappedByteBuffer header =
+				channel.map( FileChannel.MapMode.READ_ONLY, 0, header_size );
+		header.order( ByteOrder.LITTLE_ENDIAN );
+		if ( header.getInt( ) != magic ) {
+			throw new IOException( "Not a Markov file: " + path );
+		}
+		final int file_version = header.getInt( );
+		if ( file_version != version && file_version != version_sparse ) {
+			throw new IOException( "Unsupported Markov file version: " + path );
+		}
+		final int bytes_per_value = header.getInt( );
+		if ( bytes_per_value != 4 && bytes_per_value != 8 ) {
+			throw new IOException( "Unsupported Markov file precision: " + path );
+		}
+		final int S = header.getInt( );
+		final int V = header.getInt( );
+		if ( file_version == version_sparse ) {
+			final long minimum = header_size
+					+ (long) bytes_per_value * ( S + (long) S * S )
+					+ (long) S * ( bytes_per_value + 4 );
+			if ( channel.size( ) < minimum ) {
+				throw new IOException( "Truncated Markov file: " + path );
+			}
+			return new int[] { bytes_per_value, S, V, file_version };
+		}
+		final long expected = header_size
+				+ (long) bytes_per_value * ( S + (long) S * S + (long) S * V );
+		if ( channel.size( ) != expected ) {
+			throw new IOException( "Truncated Markov file: " + path );
+		}
+		return new int[] { bytes_per_value, S, V, file_version };
+	}
+
+	/*
+	 * Reads the initial and transition tables, and returns the position of the
+	 * emission table.
+	 */
+	private static long readTables(
+			FileChannel channel,
+			Markov core,
+			int bytes_per_value )
+			throws IOException {
+		long position = header_size;
+		position = readRow( channel, position, core.initial_table,
+				bytes_per_value );
+		for ( int s = 0; s < core.number_of_states; s++ ) {
+			position = readRow( channel, position, core.transition_table[s],
+					bytes_per_value );
+		}
+		return position;
+	}
+
+	private static long readSparseRow(
+			FileChannel channel,
+			long position,
+			MarkovSparseEmission emission,
+			int state,
+			int bytes_per_value,
+			Path path )
+			throws IOException {
+		final double[] floor = new double[1];
+		position = readRow( channel, position, floor, bytes_per_value );
+		if ( position + 4 > channel.size( ) ) {
+			throw new IOException( "Truncated Markov file: " + path );
+		}
+		MappedByteBuffer count =
+				channel.map( FileChannel.MapMode.READ_ONLY, position, 4 );
+		final int stored = count.order( ByteOrder.LITTLE_ENDIAN ).getInt( );
+		position = position + 4;
+		if ( stored < 0 || position
+				+ (long) stored * ( 4 + bytes_per_value ) > channel.size( ) ) {
+			throw new IOException( "Truncated Markov file: " + path );
+		}
+		final int[] symbols = new int[stored];
+		final double[] values = new double[stored];
+		if ( stored > 0 ) {
+			MappedByteBuffer mapped =
+					channel.map( FileChannel.MapMode.READ_ONLY, position, 4L * stored );
+			mapped.order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer( ).get( symbols );
+			position = readRow( channel, position + 4L * stored, values,
+					bytes_per_value );
+		}
+		for ( int i = 0; i < stored; i++ ) {
+			if ( symbols[i] < 0 || symbols[i] >= emission.numberOfSymbols( )
+					|| ( i > 0 && symbols[i] <= symbols[i - 1] ) ) {
+				throw new IOException( "Corrupted Markov file: " + path );
+			}
+		}
+		emission.setRow( state, floor[0], symbols, values );
+		return position;
+	}
+
+	private static long readRow(
+			FileChannel channel,
+			long position,
+			double[] row,
+			int bytes_per_value )
+			throws IOException {
+		final long size = (long) bytes_per_value * row.length;
+		MappedByteBuffer mapped =
+				channel.map( FileChannel.MapMode.READ_ONLY, position, size );
+		mapped.order( ByteOrder.LITTLE_ENDIAN );
+		if ( bytes_per_value == 8 ) {
+			mapped.asDoubleBuffer( ).get( row );
+		}
+		else {
+			for ( int i = 0; i < row.length; i++ ) {
+				/*
+				 * Logarithms of zero do not fit in a float, and are written as
+				 * negative infinity.
+				 */
+				final float value = mapped.getFloat( );
+				row[i] = value == Float.NEGATIVE_INFINITY
+						? NumericLogarithm.smallLogValue
+						: value;
+			}
+		}
+		return position + size;
+	}
+}
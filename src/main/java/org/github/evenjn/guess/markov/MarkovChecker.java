@@ -109,18 +109,22 @@ public class MarkovChecker {
 		double[] values = new double[size];
 
 		for ( int z = 0; z < m12.number_of_states; z++ ) {
-			double[] z_emission = m12.emission_table[z];
-
-			double max = z_emission[0];
-			for ( int y = 0; y < m12.number_of_symbols; y++ ) {
-				double v = z_emission[y];
-				if ( max < v ) {
-					max = v;
-				}
-				values[y] = v;
+			double sum;
+			if ( m12.emission instanceof MarkovSparseEmission ) {
+				sum = sparseSum( (MarkovSparseEmission) m12.emission, z, values );
 			}
+			else {
+				m12.emission.getRow( z, values );
+
+				double max = values[0];
+				for ( int y = 0; y < m12.number_of_symbols; y++ ) {
+					if ( max < values[y] ) {
+						max = values[y];
+					}
+				}
 
-			double sum = NumericLogarithm.elnsum( max, values, size );
+				sum = NumericLogarithm.elnsum( max, values, size );
+			}
 
 			if ( NumericLogarithm.eexp( sum ) > threshold_max
 					|| NumericLogarithm.eexp( sum ) < threshold_min ) {
@@ -136,4 +140,29 @@ public class MarkovChecker {
 			}
 		}
 	}
+
+	/*
+	 * Sums the stored emissions, plus the floor once for each symbol that is
+	 * not stored.
+	 */
+	private double sparseSum( MarkovSparseEmission emission, int z,
+			double[] values ) {
+		final int stored = emission.numberOfStoredSymbols( z );
+		final int not_stored = m12.number_of_symbols - stored;
+		double max = NumericLogarithm.smallLogValue;
+		for ( int i = 0; i < stored; i++ ) {
+			values[i] = emission.storedValue( z, i );
+			if ( max < values[i] ) {
+				max = values[i];
+			}
+		}
+		double sum = stored == 0
+				? NumericLogarithm.smallLogValue
+				: NumericLogarithm.elnsum( max, values, stored );
+		if ( not_stored > 0 ) {
+			sum = NumericLogarithm.elnsum2( sum, NumericLogarithm.elnproduct(
+					NumericLogarithm.eln( not_stored ), emission.floor( z ) ) );
+		}
+		return sum;
+	}
 }
@@ -0,0 +1,52 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.markov;
+
+/**
+ * An emission table that lives on the heap, as an array of rows, one per
+ * state.
+ */
+public class MarkovDenseEmission implements
+		MarkovEmission {
+
+	public final double[][] table;
+
+	public MarkovDenseEmission(int number_of_states, int number_of_symbols) {
+		table = new double[number_of_states][number_of_symbols];
+	}
+
+	@Override
+	public double get( int state, int symbol ) {
+		return table[state][symbol];
+	}
+
+	@Override
+	public void set( int state, int symbol, double value ) {
+		table[state][symbol] = value;
+	}
+
+	@Override
+	public void getRow( int state, double[] target ) {
+		System.arraycopy( table[state], 0, target, 0, target.length );
+	}
+
+	@Override
+	public void setRow( int state, double[] source ) {
+		System.arraycopy( source, 0, table[state], 0, source.length );
+	}
+}
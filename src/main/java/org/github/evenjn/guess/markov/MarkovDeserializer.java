@@ -28,12 +28,22 @@ public class MarkovDeserializer implements
 
 	private Markov core;
 
+	private int number_of_states;
+
+	private int number_of_symbols;
+
+	private double[] initial_table;
+
+	private double[][] transition_table;
+
 	private int symbol = 0;
 
 	private int state_s = 0;
 
 	private int state_d = 0;
 
+	private int stored = 0;
+
 	@Override
 	public Optional<Markov> end( ) {
 		if ( core == null ) {
@@ -48,16 +58,18 @@ public class MarkovDeserializer implements
 			if ( step == 4 ) {
 				step = 3;
 				int indexOf = object.indexOf( ' ' );
-				core = new Markov(
-						Integer.parseInt( object.substring( 0, indexOf ) ),
-						Integer.parseInt( object.substring( indexOf + 1 ) ) );
+				number_of_states = Integer.parseInt( object.substring( 0, indexOf ) );
+				number_of_symbols =
+						Integer.parseInt( object.substring( indexOf + 1 ) );
+				initial_table = new double[number_of_states];
+				transition_table = new double[number_of_states][number_of_states];
 				return Optional.empty( );
 			}
 			if ( step == 3 ) {
 				/* initial */
-				if ( state_s < core.number_of_states ) {
+				if ( state_s < number_of_states ) {
 					double val = Double.parseDouble( object );
-					core.initial_table[state_s++] = val;
+					initial_table[state_s++] = val;
 					return Optional.empty( );
 				}
 				step = 2;
@@ -69,28 +81,41 @@ public class MarkovDeserializer implements
 			}
 			if ( step == 2 ) {
 				/* transition */
-				while ( state_s < core.number_of_states ) {
-					if ( state_d < core.number_of_states ) {
+				while ( state_s < number_of_states ) {
+					if ( state_d < number_of_states ) {
 						double val = Double.parseDouble( object );
-						core.transition_table[state_s][state_d++] = val;
+						transition_table[state_s][state_d++] = val;
 						return Optional.empty( );
 					}
 					state_d = 0;
 					state_s++;
 				}
-				step = 1;
 				state_s = 0;
+				/*
+				 * The emission table is allocated only now, because its representation
+				 * depends on the separator.
+				 */
+				if ( object.equals( "---1 sparse---" ) ) {
+					step = 5;
+					state_d = -1;
+					create( new MarkovSparseEmission( number_of_states,
+							number_of_symbols ) );
+					return Optional.empty( );
+				}
+				step = 1;
 				if ( !object.equals( "---" + step + "---" ) ) {
 					throw new IllegalArgumentException( );
 				}
+				create( new MarkovDenseEmission( number_of_states,
+						number_of_symbols ) );
 				return Optional.empty( );
 			}
 			if ( step == 1 ) {
 				/* emission */
-				while ( symbol < core.number_of_symbols ) {
-					if ( state_s < core.number_of_states ) {
+				while ( symbol < number_of_symbols ) {
+					if ( state_s < number_of_states ) {
 						double val = Double.parseDouble( object );
-						core.emission_table[state_s++][symbol] = val;
+						core.emission.set( state_s++, symbol, val );
 						return Optional.empty( );
 					}
 					state_s = 0;
@@ -102,10 +127,47 @@ public class MarkovDeserializer implements
 				}
 				return Optional.empty( );
 			}
+			if ( step == 5 ) {
+				/* sparse emission */
+				MarkovSparseEmission sparse = (MarkovSparseEmission) core.emission;
+				while ( state_s < number_of_states ) {
+					int indexOf = object.indexOf( ' ' );
+					if ( state_d < 0 ) {
+						sparse.setFloor( state_s,
+								Double.parseDouble( object.substring( 0, indexOf ) ) );
+						stored = Integer.parseInt( object.substring( indexOf + 1 ) );
+						state_d = 0;
+						return Optional.empty( );
+					}
+					if ( state_d < stored ) {
+						state_d++;
+						sparse.set( state_s,
+								Integer.parseInt( object.substring( 0, indexOf ) ),
+								Double.parseDouble( object.substring( indexOf + 1 ) ) );
+						return Optional.empty( );
+					}
+					state_d = -1;
+					state_s++;
+				}
+				step = 0;
+				if ( !object.equals( "---" + step + "---" ) ) {
+					throw new IllegalArgumentException( );
+				}
+				return Optional.empty( );
+			}
 		}
 		catch ( IndexOutOfBoundsException | NumberFormatException t ) {
 			throw new IllegalArgumentException( object, t );
 		}
 		return Optional.empty( );
 	}
+
+	private void create( MarkovEmission emission ) {
+		core = new Markov( number_of_states, number_of_symbols, emission );
+		for ( int s = 0; s < number_of_states; s++ ) {
+			core.initial_table[s] = initial_table[s];
+			System.arraycopy( transition_table[s], 0, core.transition_table[s], 0,
+					number_of_states );
+		}
+	}
 }
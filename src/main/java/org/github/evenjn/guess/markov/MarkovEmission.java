@@ -0,0 +1,48 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.markov;
+
+/**
+ * Gives access to the emission table of a {@link Markov} model.
+ * 
+ * The value for a state and a symbol is the natural logarithm of the
+ * probability that the state emits the symbol.
+ * 
+ * Emission tables grow with the size of the alphabet, and may be much larger
+ * than the initial and transition tables. Implementations may keep the table
+ * on the heap ({@link MarkovDenseEmission}) or in a memory-mapped file
+ * ({@link MarkovMappedEmission}).
+ */
+public interface MarkovEmission {
+
+	double get( int state, int symbol );
+
+	void set( int state, int symbol, double value );
+
+	/**
+	 * Copies the emissions of the state into the target array, which must have
+	 * one slot per symbol.
+	 */
+	void getRow( int state, double[] target );
+
+	/**
+	 * Copies the source array, which must have one value per symbol, into the
+	 * emissions of the state.
+	 */
+	void setRow( int state, double[] source );
+}
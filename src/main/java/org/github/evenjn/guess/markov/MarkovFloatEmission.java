@@ -0,0 +1,93 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.markov;
+
+import org.github.evenjn.numeric.NumericLogarithm;
+
+/**
+ * An emission table that lives on the heap in single precision, taking half
+ * the memory of {@link MarkovDenseEmission}.
+ * 
+ * Decoders only compare log-probabilities, so the precision of float is
+ * enough to serve a trained model, but not to train one.
+ * 
+ * The natural logarithm of zero, {@link NumericLogarithm#smallLogValue}, does
+ * not fit in a float, and is stored as negative infinity; it is read back as
+ * {@link NumericLogarithm#smallLogValue}.
+ */
+public class MarkovFloatEmission implements
+		MarkovEmission {
+
+	public final float[][] table;
+
+	public MarkovFloatEmission(int number_of_states, int number_of_symbols) {
+		table = new float[number_of_states][number_of_symbols];
+	}
+
+	@Override
+	public double get( int state, int symbol ) {
+		final float value = table[state][symbol];
+		return value == Float.NEGATIVE_INFINITY
+				? NumericLogarithm.smallLogValue
+				: value;
+	}
+
+	@Override
+	public void set( int state, int symbol, double value ) {
+		table[state][symbol] = (float) value;
+	}
+
+	@Override
+	public void getRow( int state, double[] target ) {
+		final float[] row = table[state];
+		for ( int y = 0; y < row.length; y++ ) {
+			target[y] = row[y] == Float.NEGATIVE_INFINITY
+					? NumericLogarithm.smallLogValue
+					: row[y];
+		}
+	}
+
+	@Override
+	public void setRow( int state, double[] source ) {
+		final float[] row = table[state];
+		for ( int y = 0; y < row.length; y++ ) {
+			row[y] = (float) source[y];
+		}
+	}
+
+	/**
+	 * Returns a copy of the model whose emission table is in single precision.
+	 * The initial and transition tables, whose size does not depend on the
+	 * number of symbols, are copied in double precision.
+	 */
+	public static Markov toSinglePrecision( Markov core ) {
+		final int S = core.number_of_states;
+		final int V = core.number_of_symbols;
+		MarkovFloatEmission emission = new MarkovFloatEmission( S, V );
+		Markov result = new Markov( S, V, emission );
+		System.arraycopy( core.initial_table, 0, result.initial_table, 0, S );
+		final double[] row = new double[V];
+		for ( int s = 0; s < S; s++ ) {
+			System.arraycopy( core.transition_table[s], 0,
+					result.transition_table[s], 0, S );
+			core.emission.getRow( s, row );
+			emission.setRow( s, row );
+		}
+		return result;
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.markov;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.github.evenjn.file.FileFool;
+import org.github.evenjn.knit.KnittingCursable;
+import org.github.evenjn.lang.BasicRook;
+import org.github.evenjn.plaintext.PlainText;
+
+/**
+ * Loads a trained model that is stored as text and, optionally, in the
+ * binary format of {@link MarkovBinary}.
+ * 
+ * The binary file is preferred when present. When it cannot be read, for
+ * example because it was left truncated by an older version, the failure is
+ * reported on the standard error and the text file is read instead.
+ * 
+ * The model can also be served from a mapped binary file; see
+ * {@link #load(Path, Path, boolean)}.
+ */
+public class MarkovLoader {
+
+	/**
+	 * When {@code mapped} is true and the binary file can be mapped (see
+	 * {@link MarkovBinary#map(Path, boolean)}), returns a read-only model whose
+	 * emission table stays in the file. Processes that map the same file share
+	 * one copy in the page cache, and loading does not read the emission table.
+	 * For the same reason, mapped models are not checked with
+	 * {@link MarkovChecker}: the file was written from a checked model.
+	 * 
+	 * Otherwise, the model is loaded onto the heap as by
+	 * {@link #load(Path, Path)}.
+	 */
+	public static Markov load( Path binary_file, Path text_file,
+			boolean mapped ) {
+		if ( mapped && Files.exists( binary_file ) ) {
+			try {
+				return MarkovBinary.map( binary_file, false );
+			}
+			catch ( IOException e ) {
+				System.err.println( "Unable to map " + binary_file
+						+ ", loading it onto the heap instead: " + e.getMessage( ) );
+			}
+		}
+		return load( binary_file, text_file );
+	}
+
+	public static Markov load( Path binary_file, Path text_file ) {
+		if ( Files.exists( binary_file ) ) {
+			try {
+				Markov core = MarkovBinary.read( binary_file );
+				MarkovChecker.check( core );
+				return core;
+			}
+			catch ( IOException e ) {
+				System.err.println( "Unable to read " + binary_file
+						+ ", reading " + text_file + " instead: " + e.getMessage( ) );
+			}
+		}
+		try ( BasicRook rook = new BasicRook() ) {
+			Markov core = KnittingCursable
+					.wrap( h -> PlainText.reader( )
+							.build( ).get( h, FileFool.r( ).open( text_file ).read( h ) ) )
+					.pull( rook )
+					.purlOptional( new MarkovDeserializer( ) )
+					.one( );
+
+			MarkovChecker.check( core );
+			return core;
+		}
+	}
+}
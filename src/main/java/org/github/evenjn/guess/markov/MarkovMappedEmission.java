@@ -0,0 +1,81 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.markov;
+
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * An emission table that lives in a memory-mapped file, outside of the heap.
+ * 
+ * Each state has its own mapped buffer holding one little-endian double per
+ * symbol. Pages are loaded by the operating system on demand, and several
+ * processes mapping the same file share one copy in the page cache.
+ * 
+ * Instances are created by {@link MarkovBinary#map(java.nio.file.Path,
+ * boolean)}. When the file is mapped read-only, setting a value throws
+ * {@link java.nio.ReadOnlyBufferException}. When it is mapped for writing,
+ * changes are written back to the file.
+ */
+public class MarkovMappedEmission implements
+		MarkovEmission {
+
+	private final MappedByteBuffer[] mapped;
+
+	private final DoubleBuffer[] rows;
+
+	MarkovMappedEmission(MappedByteBuffer[] mapped) {
+		this.mapped = mapped;
+		this.rows = new DoubleBuffer[mapped.length];
+		for ( int s = 0; s < mapped.length; s++ ) {
+			rows[s] = mapped[s].order( ByteOrder.LITTLE_ENDIAN ).asDoubleBuffer( );
+		}
+	}
+
+	@Override
+	public double get( int state, int symbol ) {
+		return rows[state].get( symbol );
+	}
+
+	@Override
+	public void set( int state, int symbol, double value ) {
+		rows[state].put( symbol, value );
+	}
+
+	@Override
+	public void getRow( int state, double[] target ) {
+		DoubleBuffer row = rows[state].duplicate( );
+		row.get( target );
+	}
+
+	@Override
+	public void setRow( int state, double[] source ) {
+		DoubleBuffer row = rows[state].duplicate( );
+		row.put( source );
+	}
+
+	/**
+	 * Forces changes made to a writable mapping onto the storage device.
+	 */
+	public void force( ) {
+		for ( MappedByteBuffer buffer : mapped ) {
+			buffer.force( );
+		}
+	}
+}
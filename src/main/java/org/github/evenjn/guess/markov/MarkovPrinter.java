@@ -77,7 +77,7 @@ public class MarkovPrinter {
 			double max = NumericLogarithm.smallLogValue;
 			
 			for ( int e = 0; e < core.number_of_symbols; e++ ) {
-				double c = core.emission_table[s][e];
+				double c = core.emission.get( s, e );
 				if ( c > max ) {
 					max = c;
 				}
@@ -86,7 +86,7 @@ public class MarkovPrinter {
 				}
 			}
 			for ( int e = 0; e < core.number_of_symbols; e++ ) {
-				double c = core.emission_table[s][e];
+				double c = core.emission.get( s, e );
 				if ( NumericLogarithm.eexp(c)
 						< NumericLogarithm.eexp(min) + ( ( NumericLogarithm.eexp( max) - NumericLogarithm.eexp(min) ) / 2 ) )
 					continue;
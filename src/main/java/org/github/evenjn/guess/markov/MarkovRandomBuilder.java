@@ -114,13 +114,13 @@ public class MarkovRandomBuilder {
 		for ( int s = 0; s < number_of_states; s++ ) {
 			generator.resetTotal( );
 			for ( int e = 0; e < number_of_symbols; e++ ) {
-				m12.emission_table[s][e] = NumericLogarithm.eln( generator.next( ) );
+				m12.emission.set( s, e, NumericLogarithm.eln( generator.next( ) ) );
 			}
 			denominator = NumericLogarithm.eln( generator.totalSoFar( ) );
 			for ( int e = 0; e < number_of_symbols; e++ ) {
-				m12.emission_table[s][e] =
-						NumericLogarithm.elndivision( m12.emission_table[s][e],
-								denominator );
+				m12.emission.set( s, e,
+						NumericLogarithm.elndivision( m12.emission.get( s, e ),
+								denominator ) );
 			}
 		}
 
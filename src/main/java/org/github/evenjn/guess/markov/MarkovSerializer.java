@@ -62,15 +62,43 @@ public class MarkovSerializer implements
 				state_d = 0;
 				state_s++;
 			}
-			step = 1;
 			state_s = 0;
+			if ( core.emission instanceof MarkovSparseEmission ) {
+				step = 5;
+				state_d = -1;
+				return "---1 sparse---";
+			}
+			step = 1;
+			return "---" + step + "---";
+		}
+		if ( step == 5 ) {
+			/*
+			 * sparse emission: for each state, a line with the floor and the number
+			 * of stored symbols, followed by one line per stored symbol.
+			 */
+			MarkovSparseEmission sparse = (MarkovSparseEmission) core.emission;
+			while ( state_s < core.number_of_states ) {
+				if ( state_d < 0 ) {
+					state_d = 0;
+					return Double.toString( sparse.floor( state_s ) ) + " "
+							+ sparse.numberOfStoredSymbols( state_s );
+				}
+				if ( state_d < sparse.numberOfStoredSymbols( state_s ) ) {
+					final int position = state_d++;
+					return sparse.storedSymbol( state_s, position ) + " "
+							+ Double.toString( sparse.storedValue( state_s, position ) );
+				}
+				state_d = -1;
+				state_s++;
+			}
+			step = 0;
 			return "---" + step + "---";
 		}
 		if ( step == 1 ) {
 			/* emission */
 			while ( symbol < core.number_of_symbols ) {
 				if ( state_s < core.number_of_states ) {
-					return Double.toString( core.emission_table[state_s++][symbol] );
+					return Double.toString( core.emission.get( state_s++, symbol ) );
 				}
 				state_s = 0;
 				symbol++;
@@ -0,0 +1,222 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.markov;
+
+import java.util.Arrays;
+
+import org.github.evenjn.numeric.NumericLogarithm;
+
+/**
+ * An emission table that stores, for each state, only the emissions that
+ * differ from a floor value shared by all the other symbols.
+ * 
+ * After training, most emissions of a state are at the floor produced by
+ * smoothing. This table stores, for each state, the floor plus the symbols
+ * whose emission differs from it, sorted by symbol id, with their values.
+ * Memory is proportional to the number of stored emissions rather than to
+ * the number of states times the number of symbols.
+ * 
+ * Reading an emission takes a binary search over the stored symbols of the
+ * state. Setting an emission that is not stored inserts it, unless the value
+ * equals the floor.
+ * 
+ * Dense models can be converted with {@link #sparsify(Markov)}.
+ */
+public class MarkovSparseEmission implements
+		MarkovEmission {
+
+	private final int number_of_symbols;
+
+	private final double[] floor;
+
+	private final int[][] symbols;
+
+	private final double[][] values;
+
+	private final int[] size;
+
+	/**
+	 * Creates a table where every emission is at the floor, which is initially
+	 * the natural logarithm of zero.
+	 */
+	public MarkovSparseEmission(int number_of_states, int number_of_symbols) {
+		this.number_of_symbols = number_of_symbols;
+		floor = new double[number_of_states];
+		Arrays.fill( floor, NumericLogarithm.smallLogValue );
+		symbols = new int[number_of_states][0];
+		values = new double[number_of_states][0];
+		size = new int[number_of_states];
+	}
+
+	public int numberOfSymbols( ) {
+		return number_of_symbols;
+	}
+
+	/**
+	 * The emission of the symbols that are not stored for the state.
+	 */
+	public double floor( int state ) {
+		return floor[state];
+	}
+
+	/**
+	 * Changes the emission of all the symbols that are not stored for the
+	 * state.
+	 */
+	public void setFloor( int state, double value ) {
+		floor[state] = value;
+	}
+
+	public int numberOfStoredSymbols( int state ) {
+		return size[state];
+	}
+
+	/**
+	 * Returns the symbol stored at the given position; symbols are sorted in
+	 * increasing order.
+	 */
+	public int storedSymbol( int state, int position ) {
+		return symbols[state][position];
+	}
+
+	public double storedValue( int state, int position ) {
+		return values[state][position];
+	}
+
+	@Override
+	public double get( int state, int symbol ) {
+		final int position =
+				Arrays.binarySearch( symbols[state], 0, size[state], symbol );
+		return position < 0 ? floor[state] : values[state][position];
+	}
+
+	@Override
+	public void set( int state, int symbol, double value ) {
+		final int position =
+				Arrays.binarySearch( symbols[state], 0, size[state], symbol );
+		if ( position >= 0 ) {
+			values[state][position] = value;
+			return;
+		}
+		if ( value == floor[state] ) {
+			return;
+		}
+		final int insertion = -position - 1;
+		final int length = size[state];
+		if ( length == symbols[state].length ) {
+			final int capacity = Math.max( 4, 2 * length );
+			symbols[state] = Arrays.copyOf( symbols[state], capacity );
+			values[state] = Arrays.copyOf( values[state], capacity );
+		}
+		System.arraycopy( symbols[state], insertion, symbols[state],
+				insertion + 1, length - insertion );
+		System.arraycopy( values[state], insertion, values[state],
+				insertion + 1, length - insertion );
+		symbols[state][insertion] = symbol;
+		values[state][insertion] = value;
+		size[state] = length + 1;
+	}
+
+	@Override
+	public void getRow( int state, double[] target ) {
+		Arrays.fill( target, 0, number_of_symbols, floor[state] );
+		final int[] symbols_of_state = symbols[state];
+		final double[] values_of_state = values[state];
+		for ( int i = 0; i < size[state]; i++ ) {
+			target[symbols_of_state[i]] = values_of_state[i];
+		}
+	}
+
+	/**
+	 * Replaces the emissions of the state, storing only the values that differ
+	 * from the floor of the state.
+	 */
+	@Override
+	public void setRow( int state, double[] source ) {
+		final double floor_of_state = floor[state];
+		int count = 0;
+		for ( int y = 0; y < number_of_symbols; y++ ) {
+			if ( source[y] != floor_of_state ) {
+				count++;
+			}
+		}
+		final int[] symbols_of_state = new int[count];
+		final double[] values_of_state = new double[count];
+		int i = 0;
+		for ( int y = 0; y < number_of_symbols; y++ ) {
+			if ( source[y] != floor_of_state ) {
+				symbols_of_state[i] = y;
+				values_of_state[i] = source[y];
+				i++;
+			}
+		}
+		symbols[state] = symbols_of_state;
+		values[state] = values_of_state;
+		size[state] = count;
+	}
+
+	/**
+	 * Replaces the emissions of the state with the given floor and stored
+	 * symbols, which must be sorted in increasing order. The arrays are not
+	 * copied.
+	 */
+	void setRow( int state, double floor, int[] symbols, double[] values ) {
+		this.floor[state] = floor;
+		this.symbols[state] = symbols;
+		this.values[state] = values;
+		this.size[state] = symbols.length;
+	}
+
+	/**
+	 * Returns a copy of the model whose emission table is sparse. The floor of
+	 * each state is the value that occurs most often among its emissions. The
+	 * copy returns exactly the same emissions as the original.
+	 */
+	public static Markov sparsify( Markov core ) {
+		final int S = core.number_of_states;
+		final int V = core.number_of_symbols;
+		MarkovSparseEmission emission = new MarkovSparseEmission( S, V );
+		Markov result = new Markov( S, V, emission );
+		System.arraycopy( core.initial_table, 0, result.initial_table, 0, S );
+		final double[] row = new double[V];
+		final double[] sorted = new double[V];
+		for ( int s = 0; s < S; s++ ) {
+			System.arraycopy( core.transition_table[s], 0,
+					result.transition_table[s], 0, S );
+			core.emission.getRow( s, row );
+			System.arraycopy( row, 0, sorted, 0, V );
+			Arrays.sort( sorted );
+			double mode = V == 0 ? NumericLogarithm.smallLogValue : sorted[0];
+			int best_run = 0;
+			for ( int i = 0; i < V; ) {
+				int j = i + 1;
+				while ( j < V && sorted[j] == sorted[i] ) {
+					j++;
+				}
+				if ( j - i > best_run ) {
+					best_run = j - i;
+					mode = sorted[i];
+				}
+				i = j;
+			}
+			emission.setFloor( s, mode );
+			emission.setRow( s, row );
+		}
+		return result;
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.numeric;
+
+import java.util.Arrays;
+
+/**
+ * A three-dimensional array of primitive doubles, stored in a single array.
+ * 
+ * Unlike {@link DenseCubix}, values are not boxed. A cubix can be reused for a
+ * different shape with {@link #reset(int, int, int)}, which only reallocates
+ * when the new shape does not fit in the current array, at least doubling it.
+ */
+public class DoubleCubix {
+
+	private final double fill;
+
+	private double[] values;
+
+	private int sizex;
+
+	private int sizey;
+
+	private int sizez;
+
+	/**
+	 * Creates an empty cubix. Cells that have not been set since the last reset
+	 * hold the fill value.
+	 */
+	public DoubleCubix(double fill) {
+		this( 0, 0, 0, fill );
+	}
+
+	public DoubleCubix(int sizex, int sizey, int sizez, double fill) {
+		this.fill = fill;
+		this.values = new double[sizex * sizey * sizez];
+		reset( sizex, sizey, sizez );
+	}
+
+	/**
+	 * Changes the shape of this cubix, and sets every cell to the fill value.
+	 */
+	public void reset( int sizex, int sizey, int sizez ) {
+		final int size = sizex * sizey * sizez;
+		if ( values.length < size ) {
+			values = new double[Math.max( size, 2 * values.length )];
+		}
+		this.sizex = sizex;
+		this.sizey = sizey;
+		this.sizez = sizez;
+		Arrays.fill( values, 0, size, fill );
+	}
+
+	public int sizeX( ) {
+		return sizex;
+	}
+
+	public int sizeY( ) {
+		return sizey;
+	}
+
+	public int sizeZ( ) {
+		return sizez;
+	}
+
+	public double get( int x, int y, int z ) {
+		return values[( x * sizey + y ) * sizez + z];
+	}
+
+	public void set( int x, int y, int z, double value ) {
+		values[( x * sizey + y ) * sizez + z] = value;
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.numeric;
+
+import java.util.Arrays;
+
+/**
+ * A matrix of primitive ints, stored row by row in a single array.
+ * 
+ * Unlike {@link DenseMatrix}, values are not boxed. A matrix can be reused for
+ * a different shape with {@link #reset(int, int)}, which only reallocates when
+ * the new shape does not fit in the current array, at least doubling it.
+ */
+public class IntMatrix {
+
+	private final int fill;
+
+	private int[] values;
+
+	private int rows;
+
+	private int cols;
+
+	/**
+	 * Creates an empty matrix. Cells that have not been set since the last
+	 * reset hold the fill value.
+	 */
+	public IntMatrix(int fill) {
+		this( 0, 0, fill );
+	}
+
+	public IntMatrix(int rows, int cols, int fill) {
+		this.fill = fill;
+		this.values = new int[rows * cols];
+		reset( rows, cols );
+	}
+
+	/**
+	 * Changes the shape of this matrix, and sets every cell to the fill value.
+	 */
+	public void reset( int rows, int cols ) {
+		final int size = rows * cols;
+		if ( values.length < size ) {
+			values = new int[Math.max( size, 2 * values.length )];
+		}
+		this.rows = rows;
+		this.cols = cols;
+		Arrays.fill( values, 0, size, fill );
+	}
+
+	public int rows( ) {
+		return rows;
+	}
+
+	public int cols( ) {
+		return cols;
+	}
+
+	public int get( int row, int col ) {
+		return values[row * cols + col];
+	}
+
+	public void set( int row, int col, int value ) {
+		values[row * cols + col] = value;
+	}
+}
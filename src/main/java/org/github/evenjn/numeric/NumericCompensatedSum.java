@@ -0,0 +1,64 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.numeric;
+
+/**
+ * A running sum of doubles, with Neumaier compensation of the rounding error.
+ * 
+ * Adding a value takes constant time and does not allocate. Partial sums
+ * collected separately, for example by parallel workers, can be combined with
+ * {@link #merge(NumericCompensatedSum)}.
+ */
+public class NumericCompensatedSum {
+
+	private double sum = 0d;
+
+	/*
+	 * The low-order bits lost while computing sum.
+	 */
+	private double compensation = 0d;
+
+	public void add( double value ) {
+		final double t = sum + value;
+		if ( Math.abs( sum ) >= Math.abs( value ) ) {
+			compensation += ( sum - t ) + value;
+		}
+		else {
+			compensation += ( value - t ) + sum;
+		}
+		sum = t;
+	}
+
+	/**
+	 * Adds the values added to the other sum to this sum. The other sum is not
+	 * modified.
+	 */
+	public void merge( NumericCompensatedSum other ) {
+		add( other.sum );
+		add( other.compensation );
+	}
+
+	public double getSum( ) {
+		return sum + compensation;
+	}
+
+	public void reset( ) {
+		sum = 0d;
+		compensation = 0d;
+	}
+}
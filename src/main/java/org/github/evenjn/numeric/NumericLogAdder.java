@@ -0,0 +1,55 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.numeric;
+
+/**
+ * Adds numbers represented by their natural logarithm.
+ * 
+ * The exact implementation, {@link #exact()}, delegates to
+ * {@link NumericLogarithm}. {@link NumericTabulatedLogAdder} trades a bounded
+ * error for speed.
+ */
+public interface NumericLogAdder {
+
+	/**
+	 * The logarithm of the sum of the numbers obtained by raising e to the power
+	 * of the two input values.
+	 */
+	double elnsum2( double lna, double lnb );
+
+	/**
+	 * The logarithm of the sum of the numbers obtained by raising e to the power
+	 * of the first {@code len} values, given their maximum.
+	 */
+	double elnsum( double max, double[] values, int len );
+
+	static NumericLogAdder exact( ) {
+		return NumericLogarithmAdder.instance;
+	}
+
+	/**
+	 * Returns the exact adder when {@code max_error} is zero, and a
+	 * {@link NumericTabulatedLogAdder} with that error bound otherwise.
+	 */
+	static NumericLogAdder withMaxError( double max_error ) {
+		if ( max_error == 0d ) {
+			return exact( );
+		}
+		return new NumericTabulatedLogAdder( max_error );
+	}
+}
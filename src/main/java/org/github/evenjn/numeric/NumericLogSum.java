@@ -0,0 +1,110 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.numeric;
+
+/**
+ * A running sum of numbers represented by their natural logarithm.
+ * 
+ * The sum is kept relative to the largest value seen so far, and rescaled when
+ * a larger value arrives, so that a single pass is enough. Adding a value takes
+ * constant time and does not allocate. Partial sums collected separately, for
+ * example by parallel workers, can be combined with
+ * {@link #merge(NumericLogSum)}.
+ * 
+ * Values not larger than {@link NumericLogarithm#smallLogValue} count as zero,
+ * and the sum of no values is {@link NumericLogarithm#smallLogValue}, as in
+ * {@link NumericLogarithm#elnsum(double, double[], int)}.
+ */
+public class NumericLogSum {
+
+	private double max = NumericLogarithm.smallLogValue;
+
+	/*
+	 * The sum of e raised to the power of each value minus max, with its
+	 * rounding error kept separately.
+	 */
+	private double scaled = 0d;
+
+	private double compensation = 0d;
+
+	public void add( double value ) {
+		if ( value <= NumericLogarithm.smallLogValue ) {
+			return;
+		}
+		if ( value <= max ) {
+			addScaled( Math.exp( value - max ) );
+		}
+		else {
+			rescale( value );
+			addScaled( 1d );
+		}
+	}
+
+	/**
+	 * Adds the values added to the other sum to this sum. The other sum is not
+	 * modified.
+	 */
+	public void merge( NumericLogSum other ) {
+		if ( other.max <= NumericLogarithm.smallLogValue ) {
+			return;
+		}
+		if ( max < other.max ) {
+			rescale( other.max );
+		}
+		final double factor = Math.exp( other.max - max );
+		addScaled( other.scaled * factor );
+		addScaled( other.compensation * factor );
+	}
+
+	public double getSum( ) {
+		if ( max <= NumericLogarithm.smallLogValue ) {
+			return NumericLogarithm.smallLogValue;
+		}
+		double result = max + NumericLogarithm.eln( scaled + compensation );
+		if ( result < NumericLogarithm.smallLogValue ) {
+			return NumericLogarithm.smallLogValue;
+		}
+		return result;
+	}
+
+	public void reset( ) {
+		max = NumericLogarithm.smallLogValue;
+		scaled = 0d;
+		compensation = 0d;
+	}
+
+	private void rescale( double new_max ) {
+		if ( max > NumericLogarithm.smallLogValue ) {
+			final double factor = Math.exp( max - new_max );
+			scaled *= factor;
+			compensation *= factor;
+		}
+		max = new_max;
+	}
+
+	private void addScaled( double value ) {
+		final double t = scaled + value;
+		if ( Math.abs( scaled ) >= Math.abs( value ) ) {
+			compensation += ( scaled - t ) + value;
+		}
+		else {
+			compensation += ( value - t ) + scaled;
+		}
+		scaled = t;
+	}
+}
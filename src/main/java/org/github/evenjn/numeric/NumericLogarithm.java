@@ -40,8 +40,53 @@ public class NumericLogarithm {
 		return product;
 	}
 
+	/**
+	 * Same as {@link #elnproduct(double...)}, without allocating an array.
+	 */
+	public static double elnproduct( double lna, double lnb ) {
+		if ( lna <= smallLogValue || lnb <= smallLogValue ) {
+			return smallLogValue;
+		}
+		return lna + lnb;
+	}
+
+	/**
+	 * Same as {@link #elnproduct(double...)}, without allocating an array.
+	 */
+	public static double elnproduct( double lna, double lnb, double lnc ) {
+		if ( lna <= smallLogValue || lnb <= smallLogValue
+				|| lnc <= smallLogValue ) {
+			return smallLogValue;
+		}
+		return lna + lnb + lnc;
+	}
+
+	/**
+	 * The logarithm of the sum of the numbers obtained by raising e to the power
+	 * of the two input values.
+	 * 
+	 * Computes the same value as {@link #elnsum(Cursable)} on the two values,
+	 * without allocating.
+	 */
 	public static double elnsum2( double lna, double lnb ) {
-		return elnsum( KnittingCursable.on( lna, lnb ) );
+		final double max = lna < lnb ? lnb : lna;
+		if ( max < smallLogValue ) {
+			return smallLogValue;
+		}
+		double sum = 0d;
+		double dif = lna - max;
+		if ( dif > smallLogValue ) {
+			sum += Math.exp( dif );
+		}
+		dif = lnb - max;
+		if ( dif > smallLogValue ) {
+			sum += Math.exp( dif );
+		}
+		double result = max + eln( sum );
+		if ( result < smallLogValue ) {
+			return smallLogValue;
+		}
+		return result;
 	}
 
 	public static double elndivision( double lna, double lnb ) {
@@ -123,6 +168,24 @@ public class NumericLogarithm {
 		}
 	}
 
+	/**
+	 * The logarithm of the sum of the numbers obtained by raising e to the power
+	 * of the first {@code len} values.
+	 */
+	public static double elnsum( double[] values, int len ) {
+		double max = smallLogValue;
+		for ( int i = 0; i < len; i++ ) {
+			if ( max < values[i] ) {
+				max = values[i];
+			}
+		}
+		return elnsum( max, values, len );
+	}
+
+	/**
+	 * The logarithm of the sum of the numbers obtained by raising e to the power
+	 * of the first {@code len} values, given their maximum.
+	 */
 	public static double elnsum( double max, double[] values, int len ) {
 		if ( max < smallLogValue ) {
 			return smallLogValue;
@@ -0,0 +1,38 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.numeric;
+
+/**
+ * The exact {@link NumericLogAdder}, which delegates to
+ * {@link NumericLogarithm}.
+ */
+class NumericLogarithmAdder implements
+		NumericLogAdder {
+
+	static final NumericLogarithmAdder instance = new NumericLogarithmAdder( );
+
+	@Override
+	public double elnsum2( double lna, double lnb ) {
+		return NumericLogarithm.elnsum2( lna, lnb );
+	}
+
+	@Override
+	public double elnsum( double max, double[] values, int len ) {
+		return NumericLogarithm.elnsum( max, values, len );
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.numeric;
+
+/**
+ * Adds numbers represented by their natural logarithm using a lookup table,
+ * as done in speech decoders.
+ * 
+ * The sum of e^a and e^b, with a &ge; b, is e^(a + log(1 + e^-(a - b))). The
+ * correction term log(1 + e^-d) is tabulated for d between zero and the point
+ * where it falls below the error bound, and interpolated linearly between
+ * entries; beyond that point, it is taken to be zero.
+ * 
+ * Sums of many terms with a known maximum m are computed as m + log(sum of
+ * e^-(m - v)), where e^-d is tabulated and interpolated in the same way, so
+ * that there is one call to Math.log per sum and none to Math.exp.
+ * 
+ * The absolute error of each two-term addition is at most the error bound
+ * given to the constructor. The absolute error of a sum of many terms is at
+ * most the error bound times the number of terms.
+ */
+public class NumericTabulatedLogAdder implements
+		NumericLogAdder {
+
+	private final double inverse_step;
+
+	private final double limit;
+
+	private final double[] table;
+
+	private final double exp_inverse_step;
+
+	private final double exp_limit;
+
+	private final double[] exp_table;
+
+	/**
+	 * {@code max_error} must be greater than zero and less than one.
+	 */
+	public NumericTabulatedLogAdder(double max_error) {
+		if ( !( max_error > 0d && max_error < 1d ) ) {
+			throw new IllegalArgumentException(
+					"The error bound must be greater than zero and less than one." );
+		}
+		/*
+		 * The second derivative of log(1 + e^-d) is at most 1/4, so linear
+		 * interpolation with step h has error at most h^2 / 32.
+		 */
+		final double step = Math.sqrt( 32d * max_error );
+		inverse_step = 1d / step;
+		limit = -Math.log( Math.expm1( max_error ) );
+		table = new double[(int) Math.ceil( limit * inverse_step ) + 2];
+		for ( int i = 0; i < table.length; i++ ) {
+			table[i] = Math.log1p( Math.exp( -i * step ) );
+		}
+		/*
+		 * The second derivative of e^-d is at most 1, so linear interpolation
+		 * with step h has error at most h^2 / 8.
+		 */
+		final double exp_step = Math.sqrt( 8d * max_error );
+		exp_inverse_step = 1d / exp_step;
+		exp_limit = -Math.log( max_error );
+		exp_table = new double[(int) Math.ceil( exp_limit * exp_inverse_step ) + 2];
+		for ( int i = 0; i < exp_table.length; i++ ) {
+			exp_table[i] = Math.exp( -i * exp_step );
+		}
+	}
+
+	@Override
+	public double elnsum2( double lna, double lnb ) {
+		final double max;
+		final double min;
+		if ( lna < lnb ) {
+			max = lnb;
+			min = lna;
+		}
+		else {
+			max = lna;
+			min = lnb;
+		}
+		if ( max < NumericLogarithm.smallLogValue ) {
+			return NumericLogarithm.smallLogValue;
+		}
+		final double d = max - min;
+		if ( d >= limit ) {
+			return max;
+		}
+		final double x = d * inverse_step;
+		final int i = (int) x;
+		final double low = table[i];
+		return max + low + ( x - i ) * ( table[i + 1] - low );
+	}
+
+	@Override
+	public double elnsum( double max, double[] values, int len ) {
+		if ( max < NumericLogarithm.smallLogValue ) {
+			return NumericLogarithm.smallLogValue;
+		}
+		double sum = 0d;
+		for ( int i = 0; i < len; i++ ) {
+			final double d = max - values[i];
+			if ( d >= exp_limit ) {
+				continue;
+			}
+			final double x = d * exp_inverse_step;
+			final int j = (int) x;
+			final double low = exp_table[j];
+			sum += low + ( x - j ) * ( exp_table[j + 1] - low );
+		}
+		return max + Math.log( sum );
+	}
+}
@@ -37,10 +37,20 @@ public class NumericUtils {
 		return r;
 	}
 	
+	/**
+	 * @deprecated use {@link NumericCompensatedSum} or {@link NumericLogSum},
+	 *             which do not box nor buffer the values.
+	 */
+	@Deprecated
 	public static Summation summation(int buffer_size,  Function<Iterable<Double>, Double> sum) {
 		return new Summation( buffer_size, sum);
 	}
 	
+	/**
+	 * @deprecated use {@link NumericCompensatedSum} or {@link NumericLogSum},
+	 *             which do not box nor buffer the values.
+	 */
+	@Deprecated
 	public static class Summation {
 
 		private final int buffer_size;
@@ -0,0 +1,135 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabetGreedyBuilder;
+import org.github.evenjn.file.FileFool;
+import org.github.evenjn.file.FileFoolWriter;
+import org.github.evenjn.guess.Trainer;
+import org.github.evenjn.guess.TrainingData;
+import org.github.evenjn.guess.benchmark.Benchmark;
+import org.github.evenjn.guess.benchmark.BenchmarkHandicap;
+import org.github.evenjn.guess.benchmark.BenchmarkProblem;
+import org.github.evenjn.guess.benchmark.BenchmarkTrial;
+import org.github.evenjn.guess.benchmark.TupleEqualsEvaluator;
+import org.github.evenjn.guess.m12.baumwelch.M12BaumWelchTrainingPlan;
+import org.github.evenjn.lang.ProgressSpawner;
+import org.github.evenjn.lang.Tuple;
+
+/**
+ * Trains M12 models with Baum-Welch on the benchmark problems, once using the
+ * log-space kernel and once using the scaled kernel, and displays training
+ * time and accuracy side by side.
+ */
+public class DisplayM12BWKernels {
+
+	private static Path training_cache_path;
+
+	private final static TupleEqualsEvaluator<Boolean, Tuple<Boolean>, Tuple<Boolean>> evaluator =
+			new TupleEqualsEvaluator<Boolean, Tuple<Boolean>, Tuple<Boolean>>( );
+
+	private final static Trainer<Tuple<Boolean>, Tuple<Boolean>> trainer(
+			boolean scaled_kernel ) {
+		M12Fool fool = M12Fool.nu( training_cache_path );
+		Path test_crf_path = Paths.get( "test_m12_kernels" );
+		fool.delete( test_crf_path );
+
+		return new Trainer<Tuple<Boolean>, Tuple<Boolean>>( ) {
+
+			@Override
+			public <K> Function<Tuple<Boolean>, Tuple<Boolean>> train(
+					ProgressSpawner progress_spawner,
+					TrainingData<K, Tuple<Boolean>, Tuple<Boolean>> data ) {
+				M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean> plan =
+						new M12BaumWelchTrainingPlan<>( );
+				plan.setSeed( 43 );
+				plan.setNumberOfStates( 4 );
+				plan.setTrainingTime( 1, 50 );
+				plan.setScaledKernel( scaled_kernel );
+				plan.setMinMaxBelow( 0, 2 );
+				plan.setTupleAlignmentAlphabetBuilder(
+						new TupleAlignmentAlphabetGreedyBuilder<Boolean, Boolean>( true ) );
+				plan.setQualityChecker( null );
+				plan.setPrinters(
+						x -> x ? "1" : "0",
+						x -> x ? "1" : "0" );
+				plan.setTrainingData2( data );
+				plan.setAboveCoDec( x -> x ? "1" : "0", x -> x.startsWith( "1" ) );
+				plan.setBelowCoDec( x -> x ? "1" : "0", x -> x.startsWith( "1" ) );
+				plan.setProjector( x -> x );
+				fool.delete( test_crf_path );
+				Path created = fool.create( test_crf_path, progress_spawner, plan );
+				return fool.open( created, plan ).asMapleClassic( );
+			}
+		};
+	}
+
+	private static String run(
+			BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>> problem,
+			boolean scaled_kernel ) {
+		long start = System.currentTimeMillis( );
+		BenchmarkTrial
+				.builder( trainer( scaled_kernel ),
+						scaled_kernel ? "M12 Baum-Welch scaled" : "M12 Baum-Welch log" )
+				.problem( problem )
+				.evaluator( evaluator, "equals" )
+				.handicap( new BenchmarkHandicap( true, 200 ) )
+				.build( ).run( null );
+		long elapsed = System.currentTimeMillis( ) - start;
+		return ( scaled_kernel ? "scaled" : "log   " )
+				+ "  " + elapsed + " ms"
+				+ "  accuracy: " + evaluator.one_minus_relative_distance( );
+	}
+
+	public static void main( String[] args ) {
+		Path target = Paths.get( "." ).toAbsolutePath( ).resolve( "target" );
+		FileFoolWriter w = FileFool.w( target );
+		Path training_cache =
+				w.create( w.mold( Paths.get( "training_cache" ) ).asDirectory( )
+						.eraseIfExists( ) );
+		training_cache_path = w.normalizedAbsolute( training_cache );
+
+		List<BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>>> problems =
+				Arrays.asList(
+						Benchmark.identity,
+						Benchmark.reverse,
+						Benchmark.constant_true,
+						Benchmark.constant_true_false,
+						Benchmark.zebra,
+						Benchmark.delay_by_one,
+						Benchmark.absorb,
+						Benchmark.duplicate );
+
+		StringBuilder sb = new StringBuilder( );
+		for ( BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>> problem : problems ) {
+			String log = run( problem, false );
+			String scaled = run( problem, true );
+			sb.append( "\n" ).append( problem.label( ) );
+			sb.append( "\n  " ).append( log );
+			sb.append( "\n  " ).append( scaled );
+		}
+		System.out.println( sb.toString( ) );
+	}
+
+}
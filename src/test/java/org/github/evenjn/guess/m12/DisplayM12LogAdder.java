@@ -0,0 +1,195 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabetGreedyBuilder;
+import org.github.evenjn.file.FileFool;
+import org.github.evenjn.file.FileFoolWriter;
+import org.github.evenjn.guess.Trainer;
+import org.github.evenjn.guess.TrainingData;
+import org.github.evenjn.guess.benchmark.Benchmark;
+import org.github.evenjn.guess.benchmark.BenchmarkHandicap;
+import org.github.evenjn.guess.benchmark.BenchmarkProblem;
+import org.github.evenjn.guess.benchmark.BenchmarkTrial;
+import org.github.evenjn.guess.benchmark.TupleEqualsEvaluator;
+import org.github.evenjn.guess.m12.baumwelch.M12BaumWelchTrainingPlan;
+import org.github.evenjn.lang.ProgressSpawner;
+import org.github.evenjn.lang.Tuple;
+import org.github.evenjn.numeric.NumericLogAdder;
+import org.github.evenjn.numeric.NumericLogarithm;
+
+/**
+ * Trains M12 models with Baum-Welch on the benchmark problems, once summing
+ * probabilities exactly and once with the tabulated log-add, and displays
+ * training time and accuracy side by side. It then times the two adders on
+ * random inputs, and reports the largest error observed.
+ */
+public class DisplayM12LogAdder {
+
+	private final static double max_error = 1e-4;
+
+	private static Path training_cache_path;
+
+	private final static TupleEqualsEvaluator<Boolean, Tuple<Boolean>, Tuple<Boolean>> evaluator =
+			new TupleEqualsEvaluator<Boolean, Tuple<Boolean>, Tuple<Boolean>>( );
+
+	private final static Trainer<Tuple<Boolean>, Tuple<Boolean>> trainer(
+			double log_add_error ) {
+		M12Fool fool = M12Fool.nu( training_cache_path );
+		Path test_crf_path = Paths.get( "test_m12_log_adder" );
+		fool.delete( test_crf_path );
+
+		return new Trainer<Tuple<Boolean>, Tuple<Boolean>>( ) {
+
+			@Override
+			public <K> Function<Tuple<Boolean>, Tuple<Boolean>> train(
+					ProgressSpawner progress_spawner,
+					TrainingData<K, Tuple<Boolean>, Tuple<Boolean>> data ) {
+				M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean> plan =
+						new M12BaumWelchTrainingPlan<>( );
+				plan.setSeed( 43 );
+				plan.setNumberOfStates( 4 );
+				plan.setTrainingTime( 1, 50 );
+				plan.setLogAddError( log_add_error );
+				plan.setMinMaxBelow( 0, 2 );
+				plan.setTupleAlignmentAlphabetBuilder(
+						new TupleAlignmentAlphabetGreedyBuilder<Boolean, Boolean>( true ) );
+				plan.setQualityChecker( null );
+				plan.setPrinters(
+						x -> x ? "1" : "0",
+						x -> x ? "1" : "0" );
+				plan.setTrainingData2( data );
+				plan.setAboveCoDec( x -> x ? "1" : "0", x -> x.startsWith( "1" ) );
+				plan.setBelowCoDec( x -> x ? "1" : "0", x -> x.startsWith( "1" ) );
+				plan.setProjector( x -> x );
+				fool.delete( test_crf_path );
+				Path created = fool.create( test_crf_path, progress_spawner, plan );
+				return fool.open( created, plan ).asMaplePrecise( );
+			}
+		};
+	}
+
+	private static String run(
+			BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>> problem,
+			double log_add_error ) {
+		long start = System.currentTimeMillis( );
+		BenchmarkTrial
+				.builder( trainer( log_add_error ),
+						log_add_error > 0d ? "M12 Baum-Welch tabulated" : "M12 Baum-Welch exact" )
+				.problem( problem )
+				.evaluator( evaluator, "equals" )
+				.handicap( new BenchmarkHandicap( true, 200 ) )
+				.build( ).run( null );
+		long elapsed = System.currentTimeMillis( ) - start;
+		return ( log_add_error > 0d ? "tabulated" : "exact    " )
+				+ "  " + elapsed + " ms"
+				+ "  accuracy: " + evaluator.one_minus_relative_distance( );
+	}
+
+	public static void main( String[] args ) {
+		Path target = Paths.get( "." ).toAbsolutePath( ).resolve( "target" );
+		FileFoolWriter w = FileFool.w( target );
+		Path training_cache =
+				w.create( w.mold( Paths.get( "training_cache" ) ).asDirectory( )
+						.eraseIfExists( ) );
+		training_cache_path = w.normalizedAbsolute( training_cache );
+
+		List<BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>>> problems =
+				Arrays.asList(
+						Benchmark.identity,
+						Benchmark.reverse,
+						Benchmark.constant_true,
+						Benchmark.constant_true_false,
+						Benchmark.zebra,
+						Benchmark.delay_by_one,
+						Benchmark.absorb,
+						Benchmark.duplicate );
+
+		StringBuilder sb = new StringBuilder( );
+		for ( BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>> problem : problems ) {
+			String exact = run( problem, 0d );
+			String tabulated = run( problem, max_error );
+			sb.append( "\n" ).append( problem.label( ) );
+			sb.append( "\n  " ).append( exact );
+			sb.append( "\n  " ).append( tabulated );
+		}
+		sb.append( "\n" );
+		sb.append( "\n" ).append( time( "exact    ", NumericLogAdder.exact( ) ) );
+		sb.append( "\n" ).append(
+				time( "tabulated", NumericLogAdder.withMaxError( max_error ) ) );
+		System.out.println( sb.toString( ) );
+	}
+
+	/*
+	 * Times a few million sums of two values, and of rows of eight values, and
+	 * compares the results with the exact ones.
+	 */
+	private static String time( String label, NumericLogAdder adder ) {
+		final int size = 1 << 20;
+		final int row = 8;
+		Random random = new Random( 43 );
+		double[] values = new double[size + row];
+		for ( int i = 0; i < values.length; i++ ) {
+			values[i] = -30d * random.nextDouble( );
+		}
+		double[] buffer = new double[row];
+		double worst = 0d;
+		double sink = 0d;
+		long elnsum2_time = 0;
+		long elnsum_time = 0;
+		for ( int round = 0; round < 10; round++ ) {
+			long start = System.nanoTime( );
+			for ( int i = 0; i < size; i++ ) {
+				sink += adder.elnsum2( values[i], values[i + 1] );
+			}
+			elnsum2_time += System.nanoTime( ) - start;
+			start = System.nanoTime( );
+			for ( int i = 0; i < size; i += row ) {
+				System.arraycopy( values, i, buffer, 0, row );
+				double max = buffer[0];
+				for ( int j = 1; j < row; j++ ) {
+					if ( max < buffer[j] ) {
+						max = buffer[j];
+					}
+				}
+				sink += adder.elnsum( max, buffer, row );
+			}
+			elnsum_time += System.nanoTime( ) - start;
+		}
+		for ( int i = 0; i < size; i++ ) {
+			double error = Math.abs( adder.elnsum2( values[i], values[i + 1] )
+					- NumericLogarithm.elnsum2( values[i], values[i + 1] ) );
+			if ( worst < error ) {
+				worst = error;
+			}
+		}
+		return label
+				+ "  elnsum2: " + ( elnsum2_time / ( 10d * size ) ) + " ns"
+				+ "  elnsum: " + ( elnsum_time / ( 10d * size / row ) ) + " ns"
+				+ "  max error: " + worst
+				+ ( sink == 0d ? " " : "" );
+	}
+
+}
@@ -0,0 +1,195 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabetGreedyBuilder;
+import org.github.evenjn.file.FileFool;
+import org.github.evenjn.file.FileFoolWriter;
+import org.github.evenjn.guess.Trainer;
+import org.github.evenjn.guess.TrainingData;
+import org.github.evenjn.guess.benchmark.Benchmark;
+import org.github.evenjn.guess.benchmark.BenchmarkHandicap;
+import org.github.evenjn.guess.benchmark.BenchmarkProblem;
+import org.github.evenjn.guess.benchmark.BenchmarkTrial;
+import org.github.evenjn.guess.benchmark.TupleEqualsEvaluator;
+import org.github.evenjn.guess.m12.baumwelch.M12BaumWelchTrainingPlan;
+import org.github.evenjn.guess.m12.maple.M12MapleBeam;
+import org.github.evenjn.knit.KnittingTuple;
+import org.github.evenjn.lang.ProgressSpawner;
+import org.github.evenjn.lang.Tuple;
+
+/**
+ * Trains M12 models with Baum-Welch on the benchmark problems, and decodes
+ * the test data with the classic and precise maples, exhaustively and with a
+ * few beams. For each beam, displays how many outputs differ from the
+ * exhaustive ones, and the decoding time.
+ */
+public class DisplayM12MapleBeam {
+
+	private final static List<M12MapleBeam> beams = Arrays.asList(
+			M12MapleBeam.exact( ),
+			M12MapleBeam.width( 1 ),
+			M12MapleBeam.width( 2 ),
+			M12MapleBeam.threshold( 2d ),
+			M12MapleBeam.threshold( 5d ),
+			M12MapleBeam.nu( 2, 5d ) );
+
+	private static Path training_cache_path;
+
+	private final static TupleEqualsEvaluator<Boolean, Tuple<Boolean>, Tuple<Boolean>> evaluator =
+			new TupleEqualsEvaluator<Boolean, Tuple<Boolean>, Tuple<Boolean>>( );
+
+	/*
+	 * For each beam, the number of outputs that differ from the exhaustive
+	 * ones, and the time spent decoding.
+	 */
+	private static int decoded;
+
+	private final static int[] changed = new int[beams.size( )];
+
+	private final static long[] nanos = new long[beams.size( )];
+
+	private final static Trainer<Tuple<Boolean>, Tuple<Boolean>> trainer(
+			boolean precise ) {
+		M12Fool fool = M12Fool.nu( training_cache_path );
+		Path test_crf_path = Paths.get( "test_m12_maple_beam" );
+		fool.delete( test_crf_path );
+
+		return new Trainer<Tuple<Boolean>, Tuple<Boolean>>( ) {
+
+			@Override
+			public <K> Function<Tuple<Boolean>, Tuple<Boolean>> train(
+					ProgressSpawner progress_spawner,
+					TrainingData<K, Tuple<Boolean>, Tuple<Boolean>> data ) {
+				M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean> plan =
+						new M12BaumWelchTrainingPlan<>( );
+				plan.setSeed( 43 );
+				plan.setNumberOfStates( 4 );
+				plan.setTrainingTime( 1, 50 );
+				plan.setMinMaxBelow( 0, 2 );
+				plan.setTupleAlignmentAlphabetBuilder(
+						new TupleAlignmentAlphabetGreedyBuilder<Boolean, Boolean>( true ) );
+				plan.setQualityChecker( null );
+				plan.setPrinters(
+						x -> x ? "1" : "0",
+						x -> x ? "1" : "0" );
+				plan.setTrainingData2( data );
+				plan.setAboveCoDec( x -> x ? "1" : "0", x -> x.startsWith( "1" ) );
+				plan.setBelowCoDec( x -> x ? "1" : "0", x -> x.startsWith( "1" ) );
+				plan.setProjector( x -> x );
+				fool.delete( test_crf_path );
+				Path created = fool.create( test_crf_path, progress_spawner, plan );
+				M12<Tuple<Boolean>, Boolean, Boolean> m12 = fool.open( created, plan );
+				@SuppressWarnings("unchecked")
+				Function<Tuple<Boolean>, Tuple<Boolean>>[] decoders =
+						new Function[beams.size( )];
+				for ( int b = 0; b < decoders.length; b++ ) {
+					decoders[b] = precise
+							? m12.asMaplePrecise( beams.get( b ) )
+							: m12.asMapleClassic( beams.get( b ) );
+				}
+				return input -> decode( decoders, input );
+			}
+		};
+	}
+
+	/*
+	 * Decodes with each beam, and returns the exhaustive output.
+	 */
+	private static Tuple<Boolean> decode(
+			Function<Tuple<Boolean>, Tuple<Boolean>>[] decoders,
+			Tuple<Boolean> input ) {
+		Tuple<Boolean> exact = null;
+		for ( int b = 0; b < decoders.length; b++ ) {
+			long start = System.nanoTime( );
+			Tuple<Boolean> output = decoders[b].apply( input );
+			nanos[b] += System.nanoTime( ) - start;
+			if ( exact == null ) {
+				exact = output;
+			}
+			else if ( KnittingTuple.wrap( exact ).distance( output ) != 0 ) {
+				changed[b]++;
+			}
+		}
+		decoded++;
+		return exact;
+	}
+
+	private static String run(
+			BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>> problem,
+			boolean precise ) {
+		decoded = 0;
+		Arrays.fill( changed, 0 );
+		Arrays.fill( nanos, 0L );
+		BenchmarkTrial
+				.builder( trainer( precise ),
+						precise ? "M12 precise maple" : "M12 classic maple" )
+				.problem( problem )
+				.evaluator( evaluator, "equals" )
+				.handicap( new BenchmarkHandicap( true, 200 ) )
+				.build( ).run( null );
+		StringBuilder sb = new StringBuilder( );
+		sb.append( precise ? "precise" : "classic" );
+		sb.append( "  accuracy: " )
+				.append( evaluator.one_minus_relative_distance( ) );
+		for ( int b = 0; b < beams.size( ); b++ ) {
+			sb.append( "\n    " ).append( beams.get( b ) );
+			sb.append( "  " ).append( nanos[b] / 1000 ).append( " us" );
+			sb.append( "  changed: " ).append( changed[b] )
+					.append( " / " ).append( decoded );
+		}
+		return sb.toString( );
+	}
+
+	public static void main( String[] args ) {
+		Path target = Paths.get( "." ).toAbsolutePath( ).resolve( "target" );
+		FileFoolWriter w = FileFool.w( target );
+		Path training_cache =
+				w.create( w.mold( Paths.get( "training_cache" ) ).asDirectory( )
+						.eraseIfExists( ) );
+		training_cache_path = w.normalizedAbsolute( training_cache );
+
+		List<BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>>> problems =
+				Arrays.asList(
+						Benchmark.identity,
+						Benchmark.reverse,
+						Benchmark.constant_true,
+						Benchmark.constant_true_false,
+						Benchmark.zebra,
+						Benchmark.delay_by_one,
+						Benchmark.absorb,
+						Benchmark.duplicate );
+
+		StringBuilder sb = new StringBuilder( );
+		for ( BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>> problem : problems ) {
+			String classic = run( problem, false );
+			String precise = run( problem, true );
+			sb.append( "\n" ).append( problem.label( ) );
+			sb.append( "\n  " ).append( classic );
+			sb.append( "\n  " ).append( precise );
+		}
+		System.out.println( sb.toString( ) );
+	}
+
+}
@@ -17,8 +17,12 @@
  */
 package org.github.evenjn.guess.m12;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.github.evenjn.align.alphabet.TupleAlignmentAlphabetGreedyBuilder;
@@ -28,12 +32,16 @@ import org.github.evenjn.guess.Trainer;
 import org.github.evenjn.guess.TrainingData;
 import org.github.evenjn.guess.benchmark.Benchmark;
 import org.github.evenjn.guess.benchmark.BenchmarkHandicap;
+import org.github.evenjn.guess.benchmark.BenchmarkProblem;
 import org.github.evenjn.guess.benchmark.BenchmarkTrial;
 import org.github.evenjn.guess.benchmark.TupleEqualsEvaluator;
 import org.github.evenjn.guess.m12.baumwelch.M12BaumWelchTrainingPlan;
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.guess.markov.MarkovBinary;
 import org.github.evenjn.lang.ProgressSpawner;
 import org.github.evenjn.lang.Tuple;
 import org.github.evenjn.yarn.Cursable;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class TestM12BWClassicMapleTrainer {
@@ -129,6 +137,117 @@ public class TestM12BWClassicMapleTrainer {
 		};
 	}
 
+	/**
+	 * Returns a trainer that adjusts the training plan with {@code configure}
+	 * before training.
+	 */
+	private final static Trainer<Tuple<Boolean>, Tuple<Boolean>> trainer(
+			Consumer<M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean>> configure ) {
+		M12Fool fool = M12Fool.nu( training_cache_path );
+		Path test_crf_path = Paths.get( "test_m12" );
+		fool.delete( test_crf_path );
+
+		return new Trainer<Tuple<Boolean>, Tuple<Boolean>>( ) {
+
+			@Override
+			public <K> Function<Tuple<Boolean>, Tuple<Boolean>> train(
+					ProgressSpawner progress_spawner,
+					TrainingData<K, Tuple<Boolean>, Tuple<Boolean>> data ) {
+				M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean> plan =
+						getTrainingPlan( data );
+				configure.accept( plan );
+				Path created = fool.create( test_crf_path, progress_spawner, plan );
+				return fool.open( created, plan ).asMapleClassic( );
+			}
+		};
+	}
+
+	/**
+	 * Trains on the problem, and checks that the model solves it.
+	 */
+	private static void assertSolves(
+			Trainer<Tuple<Boolean>, Tuple<Boolean>> trainer,
+			BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>> problem ) {
+		/** RUN! */
+		BenchmarkTrial
+				.builder( trainer, trainer_label )
+				.problem( problem )
+				.evaluator( evaluator, evaluator_label )
+				.handicap( handicap )
+				.build( ).run( null );
+		/** CHECK */
+		org.junit.Assert
+				.assertTrue( 1.0 <= evaluator.one_minus_relative_distance( ) );
+		org.junit.Assert
+				.assertTrue( 1.0 >= evaluator.one_minus_relative_distance( ) );
+	}
+
+	/**
+	 * Trains a model on the reverse benchmark with the given number of workers,
+	 * and returns its core.
+	 */
+	private static Markov trainCore( int parallelism ) {
+		M12Fool fool = M12Fool.nu( training_cache_path );
+		Path test_crf_path = Paths.get( "test_m12" );
+		fool.delete( test_crf_path );
+		List<Markov> cores = new ArrayList<>( );
+
+		Trainer<Tuple<Boolean>, Tuple<Boolean>> trainer =
+				new Trainer<Tuple<Boolean>, Tuple<Boolean>>( ) {
+
+					@Override
+					public <K> Function<Tuple<Boolean>, Tuple<Boolean>> train(
+							ProgressSpawner progress_spawner,
+							TrainingData<K, Tuple<Boolean>, Tuple<Boolean>> data ) {
+						M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean> plan =
+								getTrainingPlan( data );
+						plan.setParallelism( parallelism );
+						Path created =
+								fool.create( test_crf_path, progress_spawner, plan );
+						try {
+							cores.add(
+									MarkovBinary.read( created.resolve( "m12_core.stable.bin" ) ) );
+						}
+						catch ( IOException e ) {
+							throw new RuntimeException( e );
+						}
+						return fool.open( created, plan ).asMapleClassic( );
+					}
+				};
+
+		/*
+		 * Enough data for several chunks, so that each worker decodes some of
+		 * them.
+		 */
+		BenchmarkTrial
+				.builder( trainer, trainer_label )
+				.problem( Benchmark.reverse )
+				.evaluator( evaluator, evaluator_label )
+				.handicap( new BenchmarkHandicap( true, 500 ) )
+				.build( ).run( null );
+		return cores.get( 0 );
+	}
+
+	/**
+	 * The result of training does not depend on the number of workers.
+	 */
+	@Test
+	public void testM12ParallelIsDeterministic( ) {
+		Markov one = trainCore( 1 );
+		Markov three = trainCore( 3 );
+		Assert.assertEquals( one.number_of_symbols, three.number_of_symbols );
+		Assert.assertArrayEquals( one.initial_table, three.initial_table, 0d );
+		double[] one_row = new double[one.number_of_symbols];
+		double[] three_row = new double[one.number_of_symbols];
+		for ( int s = 0; s < one.number_of_states; s++ ) {
+			Assert.assertArrayEquals( one.transition_table[s],
+					three.transition_table[s], 0d );
+			one.emission.getRow( s, one_row );
+			three.emission.getRow( s, three_row );
+			Assert.assertArrayEquals( one_row, three_row, 0d );
+		}
+	}
+
 	@Test
 	public void testM12Identity( ) {
 		/** RUN! */
@@ -315,4 +434,40 @@ public class TestM12BWClassicMapleTrainer {
 				.assertTrue( 1.0 >= evaluator.one_minus_relative_distance( ) );
 	}
 
+	@Test
+	public void testM12IdentityParallel( ) {
+		assertSolves( trainer( plan -> plan.setParallelism( 3 ) ),
+				Benchmark.identity );
+	}
+
+	@Test
+	public void testM12IdentityScaled( ) {
+		assertSolves( trainer( plan -> plan.setScaledKernel( true ) ),
+				Benchmark.identity );
+	}
+
+	@Test
+	public void testM12IdentityStepwise( ) {
+		assertSolves( trainer( plan -> plan.setMiniBatchSize( 10 ) ),
+				Benchmark.identity );
+	}
+
+	@Test
+	public void testM12IdentitySinglePrecision( ) {
+		assertSolves( trainer( plan -> plan.setSinglePrecision( true ) ),
+				Benchmark.identity );
+	}
+
+	@Test
+	public void testM12ReverseSinglePrecision( ) {
+		assertSolves( trainer( plan -> plan.setSinglePrecision( true ) ),
+				Benchmark.reverse );
+	}
+
+	@Test
+	public void testM12LycantropeDay2SinglePrecision( ) {
+		assertSolves( trainer( plan -> plan.setSinglePrecision( true ) ),
+				Benchmark.lycantrope2 );
+	}
+
 }
@@ -17,10 +17,18 @@
  */
 package org.github.evenjn.guess.m12;
 
+import static org.github.evenjn.numeric.NumericLogarithm.elnproduct;
+
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
 
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabet;
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabetDeserializer;
 import org.github.evenjn.align.alphabet.TupleAlignmentAlphabetGreedyBuilder;
 import org.github.evenjn.file.FileFool;
 import org.github.evenjn.file.FileFoolWriter;
@@ -28,12 +36,25 @@ import org.github.evenjn.guess.Trainer;
 import org.github.evenjn.guess.TrainingData;
 import org.github.evenjn.guess.benchmark.Benchmark;
 import org.github.evenjn.guess.benchmark.BenchmarkHandicap;
+import org.github.evenjn.guess.benchmark.BenchmarkProblem;
 import org.github.evenjn.guess.benchmark.BenchmarkTrial;
 import org.github.evenjn.guess.benchmark.TupleEqualsEvaluator;
 import org.github.evenjn.guess.m12.baumwelch.M12BaumWelchTrainingPlan;
+import org.github.evenjn.guess.m12.maple.M12PreciseMaple;
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.guess.markov.MarkovLoader;
+import org.github.evenjn.guess.markov.MarkovRandomBuilder;
+import org.github.evenjn.knit.KnittingCursable;
+import org.github.evenjn.knit.KnittingTuple;
+import org.github.evenjn.knit.TupleValue;
+import org.github.evenjn.lang.BasicRook;
 import org.github.evenjn.lang.ProgressSpawner;
 import org.github.evenjn.lang.Tuple;
+import org.github.evenjn.numeric.NumericLogAdder;
+import org.github.evenjn.numeric.NumericLogarithm;
+import org.github.evenjn.plaintext.PlainText;
 import org.github.evenjn.yarn.Cursable;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class TestM12BWPreciseMapleTrainer {
@@ -132,6 +153,254 @@ public class TestM12BWPreciseMapleTrainer {
 		};
 	}
 
+	/**
+	 * The precise maple as it was before the transition term was factorized:
+	 * for each pair of virtual states, it sums over all pairs of real states,
+	 * which takes time proportional to V^2 S^2 per input symbol.
+	 */
+	static class M12PreciseMapleReference<I, O> implements
+			Function<Tuple<I>, Tuple<O>> {
+
+		private final TupleAlignmentAlphabet<I, O> alphabet;
+
+		private final Markov core;
+
+		private final NumericLogAdder log_adder = NumericLogAdder.exact( );
+
+		M12PreciseMapleReference(TupleAlignmentAlphabet<I, O> alphabet,
+				Markov core) {
+			this.alphabet = alphabet;
+			this.core = core;
+		}
+
+		private double sum( double[] values, int size ) {
+			double max = NumericLogarithm.smallLogValue;
+			for ( int i = 0; i < size; i++ ) {
+				max = Math.max( max, values[i] );
+			}
+			return log_adder.elnsum( max, values, size );
+		}
+
+		@Override
+		public Tuple<O> apply( Tuple<I> observed ) {
+			final int length = observed.size( );
+			final int states = core.number_of_states;
+			final KnittingTuple<TupleValue<O>> below = alphabet.below( );
+			final int symbols = below.size( );
+			List<Set<TupleValue<O>>> corresponding = new ArrayList<>( );
+			List<TupleValue<I>> above = new ArrayList<>( );
+			for ( int t = 0; t < length; t++ ) {
+				above.add( KnittingTuple.on( observed.get( t ) ).asTupleValue( ) );
+				corresponding.add( alphabet.correspondingBelow( above.get( t ) ) );
+			}
+			final double small = NumericLogarithm.smallLogValue;
+			double[][] real = new double[length][states];
+			double[][] virtual = new double[length][symbols];
+			double[][][] real_virtual = new double[length][states][symbols];
+			double[] buffer = new double[Math.max( states * states, symbols )];
+
+			/*
+			 * Forward probabilities of real states, of virtual states, and of each
+			 * real state emitting each virtual state.
+			 */
+			for ( int t = 0; t < length; t++ ) {
+				for ( int s = 0; s < states; s++ ) {
+					double entering = core.initial_table[s];
+					if ( t > 0 ) {
+						for ( int r = 0; r < states; r++ ) {
+							buffer[r] =
+									elnproduct( real[t - 1][r], core.transition_table[r][s] );
+						}
+						entering = sum( buffer, states );
+					}
+					int size = 0;
+					for ( int v = 0; v < symbols; v++ ) {
+						real_virtual[t][s][v] = small;
+						if ( corresponding.get( t ).contains( below.get( v ) ) ) {
+							real_virtual[t][s][v] = elnproduct( entering, core.emission
+									.get( s, alphabet.encode( above.get( t ), below.get( v ) ) ) );
+							buffer[size++] = real_virtual[t][s][v];
+						}
+					}
+					real[t][s] = sum( buffer, size );
+				}
+				for ( int v = 0; v < symbols; v++ ) {
+					virtual[t][v] = small;
+					if ( corresponding.get( t ).contains( below.get( v ) ) ) {
+						for ( int s = 0; s < states; s++ ) {
+							buffer[s] = real_virtual[t][s][v];
+						}
+						virtual[t][v] = sum( buffer, states );
+					}
+				}
+			}
+
+			/*
+			 * Viterbi on virtual states.
+			 */
+			double[][] probability = new double[length][symbols];
+			int[][] pointers = new int[length][symbols];
+			for ( int t = 0; t < length; t++ ) {
+				for ( int v = 0; v < symbols; v++ ) {
+					probability[t][v] = small;
+					if ( !corresponding.get( t ).contains( below.get( v ) ) ) {
+						continue;
+					}
+					if ( t == 0 ) {
+						probability[t][v] = virtual[t][v];
+						continue;
+					}
+					boolean found = false;
+					for ( int u = 0; u < symbols; u++ ) {
+						if ( !corresponding.get( t - 1 ).contains( below.get( u ) ) ) {
+							continue;
+						}
+						int size = 0;
+						for ( int r = 0; r < states; r++ ) {
+							for ( int s = 0; s < states; s++ ) {
+								buffer[size++] = elnproduct( real_virtual[t - 1][r][u],
+										real_virtual[t][s][v], core.transition_table[r][s] );
+							}
+						}
+						double cost = elnproduct( sum( buffer, size ), virtual[t - 1][u] );
+						if ( !found || cost > probability[t][v] ) {
+							found = true;
+							pointers[t][v] = u;
+							probability[t][v] = cost;
+						}
+					}
+				}
+			}
+			int best = 0;
+			for ( int v = 1; v < symbols; v++ ) {
+				if ( probability[length - 1][v] > probability[length - 1][best] ) {
+					best = v;
+				}
+			}
+			List<Integer> path = new ArrayList<>( );
+			for ( int t = length - 1; t >= 0; t-- ) {
+				path.add( best );
+				best = pointers[t][best];
+			}
+			Collections.reverse( path );
+			List<O> result = new ArrayList<>( );
+			for ( int v : path ) {
+				Tuple<O> elements = below.get( v );
+				for ( int i = 0; i < elements.size( ); i++ ) {
+					result.add( elements.get( i ) );
+				}
+			}
+			return KnittingTuple.wrap( result );
+		}
+	}
+
+	/**
+	 * Reads the alphabet of the model trained in the given directory.
+	 */
+	static TupleAlignmentAlphabet<Boolean, Boolean> loadAlphabet( Path created ) {
+		try ( BasicRook rook = new BasicRook( ) ) {
+			return KnittingCursable
+					.wrap( h -> PlainText.reader( ).build( ).get( h, FileFool.r( )
+							.open( created.resolve( "./ta_alphabet.stable.txt" ) )
+							.read( h ) ) )
+					.pull( rook )
+					.purlOptional( new TupleAlignmentAlphabetDeserializer<>(
+							x -> x.startsWith( "1" ),
+							x -> x.startsWith( "1" ) ) )
+					.one( );
+		}
+	}
+
+	/**
+	 * Reads the core of the model trained in the given directory.
+	 */
+	static Markov loadCore( Path created ) {
+		return MarkovLoader.load( created.resolve( "./m12_core.stable.bin" ),
+				created.resolve( "./m12_core.stable.txt" ) );
+	}
+
+	static List<Boolean> asList( Tuple<Boolean> tuple ) {
+		List<Boolean> result = new ArrayList<>( tuple.size( ) );
+		for ( int i = 0; i < tuple.size( ); i++ ) {
+			result.add( tuple.get( i ) );
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a trainer whose guesser decodes each input with the precise maple
+	 * and with the reference, both on the trained model and on a random model
+	 * with the same alphabet, and checks that the outputs are the same.
+	 */
+	private final static Trainer<Tuple<Boolean>, Tuple<Boolean>>
+			trainerWithReference( int number_of_states, int[] checked ) {
+		M12Fool fool = M12Fool.nu( training_cache_path );
+		Path test_crf_path = Paths.get( "test_m12" );
+		fool.delete( test_crf_path );
+
+		return new Trainer<Tuple<Boolean>, Tuple<Boolean>>( ) {
+
+			@Override
+			public <K> Function<Tuple<Boolean>, Tuple<Boolean>> train(
+					ProgressSpawner progress_spawner,
+					TrainingData<K, Tuple<Boolean>, Tuple<Boolean>> training_data ) {
+				M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean> plan =
+						getTrainingPlan( training_data );
+				plan.setNumberOfStates( number_of_states );
+				Path created = fool.create( test_crf_path, progress_spawner, plan );
+				TupleAlignmentAlphabet<Boolean, Boolean> alphabet =
+						loadAlphabet( created );
+				Markov trained = loadCore( created );
+				Markov random = MarkovRandomBuilder.nu( )
+						.states( number_of_states ).symbols( alphabet.size( ) )
+						.seed( 43 ).build( );
+				List<Function<Tuple<Boolean>, Tuple<Boolean>>> maples =
+						new ArrayList<>( );
+				List<Function<Tuple<Boolean>, Tuple<Boolean>>> references =
+						new ArrayList<>( );
+				for ( Markov core : new Markov[] { trained, random } ) {
+					maples.add( new M12PreciseMaple<>( alphabet, core ) );
+					references.add( new M12PreciseMapleReference<>( alphabet, core ) );
+				}
+				return input -> {
+					for ( int m = 0; m < maples.size( ); m++ ) {
+						Assert.assertEquals(
+								asList( references.get( m ).apply( input ) ),
+								asList( maples.get( m ).apply( input ) ) );
+					}
+					checked[0]++;
+					return maples.get( 0 ).apply( input );
+				};
+			}
+		};
+	}
+
+	/**
+	 * The precise maple gives the same outputs as the reference on the inputs
+	 * of the benchmark problems.
+	 */
+	@Test
+	public void testM12MatchesReference( ) {
+		List<BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>>> problems =
+				new ArrayList<>( );
+		problems.add( Benchmark.identity );
+		problems.add( Benchmark.reverse );
+		problems.add( Benchmark.zebra );
+		problems.add( Benchmark.delay_by_one );
+		problems.add( Benchmark.lycantrope2 );
+		problems.add( Benchmark.absorb_and_duplicate );
+		for ( BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>> problem : problems ) {
+			int[] checked = { 0 };
+			BenchmarkTrial
+					.builder( trainerWithReference( 4, checked ), trainer_label )
+					.problem( problem )
+					.evaluator( evaluator, evaluator_label )
+					.handicap( handicap )
+					.build( ).run( null );
+			Assert.assertTrue( checked[0] > 0 );
+		}
+	}
+
 	@Test
 	public void testM12Identity( ) {
 		/** RUN! */
@@ -0,0 +1,301 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabetGreedyBuilder;
+import org.github.evenjn.file.FileFool;
+import org.github.evenjn.file.FileFoolWriter;
+import org.github.evenjn.guess.Trainer;
+import org.github.evenjn.guess.TrainingData;
+import org.github.evenjn.guess.benchmark.Benchmark;
+import org.github.evenjn.guess.benchmark.BenchmarkHandicap;
+import org.github.evenjn.guess.benchmark.BenchmarkTrial;
+import org.github.evenjn.guess.benchmark.TupleEqualsEvaluator;
+import org.github.evenjn.guess.m12.baumwelch.M12BaumWelchTrainingPlan;
+import org.github.evenjn.knit.KnittingCursable;
+import org.github.evenjn.knit.KnittingTuple;
+import org.github.evenjn.lang.ProgressSpawner;
+import org.github.evenjn.lang.Tuple;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestM12BatchDecoder {
+
+	{
+		Path target = Paths.get( "." ).toAbsolutePath( ).resolve( "target" );
+		FileFoolWriter w = FileFool.w( target );
+
+		Path training_cache =
+				w.create( w.mold( Paths.get( "training_cache" ) ).asDirectory( )
+						.eraseIfExists( ) );
+
+		training_cache_path = w.normalizedAbsolute( training_cache );
+	}
+
+	private static Path training_cache_path;
+
+	private final static int[] numbers_of_workers = { 0, 1, 3 };
+
+	private final static int chunk_size = 4;
+
+	/**
+	 * Thrown by the decoder of {@link #failing(int)}.
+	 */
+	private final static RuntimeException failure =
+			new IllegalStateException( "Decoding failed." );
+
+	private final static <K>
+			M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean>
+			getTrainingPlan(
+					TrainingData<K, Tuple<Boolean>, Tuple<Boolean>> training_data ) {
+		M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean> plan =
+				new M12BaumWelchTrainingPlan<>( );
+		plan.setSeed( 43 );
+		plan.setNumberOfStates( 3 );
+		plan.setTrainingTime( 1, 25 );
+		plan.setMinMaxBelow( 0, 2 );
+		plan.setTupleAlignmentAlphabetBuilder(
+				new TupleAlignmentAlphabetGreedyBuilder<Boolean, Boolean>( true ) );
+		plan.setQualityChecker( null );
+		plan.setPrinters(
+				x -> x ? "1" : "0",
+				x -> x ? "1" : "0" );
+		plan.setTrainingData2( training_data );
+		plan.setAboveCoDec( x -> x ? "1" : "0", x -> x.startsWith( "1" ) );
+		plan.setBelowCoDec( x -> x ? "1" : "0", x -> x.startsWith( "1" ) );
+		plan.setProjector( x -> x );
+		return plan;
+	}
+
+	/**
+	 * Trains a model on the reverse benchmark, and returns it.
+	 */
+	private static M12<Tuple<Boolean>, Boolean, Boolean> train( ) {
+		M12Fool fool = M12Fool.nu( training_cache_path );
+		Path test_crf_path = Paths.get( "test_m12_batch" );
+		fool.delete( test_crf_path );
+		List<M12<Tuple<Boolean>, Boolean, Boolean>> trained = new ArrayList<>( );
+
+		Trainer<Tuple<Boolean>, Tuple<Boolean>> trainer =
+				new Trainer<Tuple<Boolean>, Tuple<Boolean>>( ) {
+
+					@Override
+					public <K> Function<Tuple<Boolean>, Tuple<Boolean>> train(
+							ProgressSpawner progress_spawner,
+							TrainingData<K, Tuple<Boolean>, Tuple<Boolean>> data ) {
+						M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean> plan =
+								getTrainingPlan( data );
+						Path created =
+								fool.create( test_crf_path, progress_spawner, plan );
+						M12<Tuple<Boolean>, Boolean, Boolean> m12 =
+								fool.open( created, plan );
+						trained.add( m12 );
+						return m12.asMapleClassic( );
+					}
+				};
+
+		BenchmarkTrial
+				.builder( trainer, "Maple: M12 Baum-Welch batch" )
+				.problem( Benchmark.reverse )
+				.evaluator( new TupleEqualsEvaluator<>( ), "equals" )
+				.handicap( new BenchmarkHandicap( true, 20 ) )
+				.build( ).run( null );
+		return trained.get( 0 );
+	}
+
+	private static List<Tuple<Boolean>> booleans( int size ) {
+		Random random = new Random( 43 );
+		List<Tuple<Boolean>> result = new ArrayList<>( size );
+		for ( int i = 0; i < size; i++ ) {
+			List<Boolean> input = new ArrayList<>( );
+			int length = 1 + random.nextInt( 8 );
+			for ( int j = 0; j < length; j++ ) {
+				input.add( random.nextBoolean( ) );
+			}
+			result.add( KnittingTuple.wrap( input ) );
+		}
+		return result;
+	}
+
+	private static List<Integer> integers( int size ) {
+		List<Integer> result = new ArrayList<>( size );
+		for ( int i = 0; i < size; i++ ) {
+			result.add( i );
+		}
+		return result;
+	}
+
+	/**
+	 * Decodes each integer into the tuple of itself and its double.
+	 */
+	private static Tuple<Integer> twice( Integer input ) {
+		return KnittingTuple.on( input, 2 * input );
+	}
+
+	/**
+	 * Returns a decoder like {@link #twice(Integer)} that fails on the given
+	 * input.
+	 */
+	private static Function<Integer, Tuple<Integer>> failing( int failing_input ) {
+		return x -> {
+			if ( x == failing_input ) {
+				throw failure;
+			}
+			return twice( x );
+		};
+	}
+
+	private static <O> List<List<O>> asLists( List<Tuple<O>> tuples ) {
+		List<List<O>> result = new ArrayList<>( tuples.size( ) );
+		for ( Tuple<O> tuple : tuples ) {
+			List<O> list = new ArrayList<>( tuple.size( ) );
+			for ( int i = 0; i < tuple.size( ); i++ ) {
+				list.add( tuple.get( i ) );
+			}
+			result.add( list );
+		}
+		return result;
+	}
+
+	/**
+	 * Checks that the three ways of decoding a batch yield the outputs of the
+	 * sequential decoder, in order.
+	 */
+	private static <I, O> void assertSequential(
+			Function<I, Tuple<O>> sequential,
+			M12BatchDecoder<I, O> batch,
+			List<I> inputs ) {
+		List<Tuple<O>> expected = new ArrayList<>( inputs.size( ) );
+		for ( I input : inputs ) {
+			expected.add( sequential.apply( input ) );
+		}
+		List<List<O>> expected_lists = asLists( expected );
+		Assert.assertEquals( expected_lists, asLists( batch.decode( inputs ) ) );
+		Assert.assertEquals( expected_lists,
+				asLists( batch.decode( KnittingCursable.wrap( inputs ) ) ) );
+		List<Tuple<O>> streamed = new ArrayList<>( );
+		batch.decode( KnittingCursable.wrap( inputs ), streamed::add );
+		Assert.assertEquals( expected_lists, asLists( streamed ) );
+	}
+
+	@Test
+	public void testMapleClassic( ) {
+		M12<Tuple<Boolean>, Boolean, Boolean> m12 = train( );
+		Function<Tuple<Boolean>, Tuple<Boolean>> sequential =
+				m12.asMapleClassic( );
+		List<Tuple<Boolean>> inputs = booleans( 1000 );
+		for ( int workers : numbers_of_workers ) {
+			assertSequential( sequential, m12.asMapleClassicBatch( workers, null ),
+					inputs );
+		}
+	}
+
+	@Test
+	public void testMaplePrecise( ) {
+		M12<Tuple<Boolean>, Boolean, Boolean> m12 = train( );
+		Function<Tuple<Boolean>, Tuple<Boolean>> sequential =
+				m12.asMaplePrecise( );
+		List<Tuple<Boolean>> inputs = booleans( 1000 );
+		for ( int workers : numbers_of_workers ) {
+			assertSequential( sequential, m12.asMaplePreciseBatch( workers, null ),
+					inputs );
+		}
+	}
+
+	/**
+	 * Covers no input, exactly one chunk, one chunk and one input, and more
+	 * chunks than workers can hold in flight.
+	 */
+	@Test
+	public void testChunkBoundaries( ) {
+		int[] sizes = { 0, 1, chunk_size, chunk_size + 1, 10 * chunk_size + 3 };
+		for ( int workers : numbers_of_workers ) {
+			M12BatchDecoder<Integer, Integer> batch = new M12BatchDecoder<>(
+					( ) -> TestM12BatchDecoder::twice, workers, null, chunk_size );
+			for ( int size : sizes ) {
+				assertSequential( TestM12BatchDecoder::twice, batch,
+						integers( size ) );
+			}
+		}
+	}
+
+	@Test
+	public void testSharedExecutor( )
+			throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool( 2 );
+		try {
+			M12BatchDecoder<Integer, Integer> batch = new M12BatchDecoder<>(
+					( ) -> TestM12BatchDecoder::twice, 3, executor, chunk_size );
+			assertSequential( TestM12BatchDecoder::twice, batch,
+					integers( 10 * chunk_size + 3 ) );
+			Assert.assertFalse( executor.isShutdown( ) );
+		}
+		finally {
+			executor.shutdown( );
+		}
+		Assert.assertTrue( executor.awaitTermination( 10, TimeUnit.SECONDS ) );
+	}
+
+	/**
+	 * The failure reaches the caller, and the decoder can be used again
+	 * afterwards: workers return their decoders even when a chunk fails or is
+	 * cancelled.
+	 */
+	@Test
+	public void testFailingDecoder( ) {
+		List<Integer> inputs = integers( 10 * chunk_size + 3 );
+		for ( int workers : numbers_of_workers ) {
+			for ( int failing_input : new int[] { 0, chunk_size,
+					inputs.size( ) - 1 } ) {
+				M12BatchDecoder<Integer, Integer> batch = new M12BatchDecoder<>(
+						( ) -> failing( failing_input ), workers, null, chunk_size );
+				try {
+					batch.decode( inputs );
+					Assert.fail( "The failure was not reported." );
+				}
+				catch ( RuntimeException e ) {
+					Assert.assertTrue( e == failure || e.getCause( ) == failure );
+				}
+				List<Integer> good = integers( failing_input );
+				assertSequential( TestM12BatchDecoder::twice, batch, good );
+			}
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testNegativeWorkers( ) {
+		new M12BatchDecoder<Integer, Integer>(
+				( ) -> TestM12BatchDecoder::twice, -1, null );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testEmptyChunks( ) {
+		new M12BatchDecoder<Integer, Integer>(
+				( ) -> TestM12BatchDecoder::twice, 1, null, 0 );
+	}
+}
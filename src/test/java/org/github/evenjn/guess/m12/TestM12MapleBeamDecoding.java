@@ -0,0 +1,193 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabet;
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabetGreedyBuilder;
+import org.github.evenjn.file.FileFool;
+import org.github.evenjn.file.FileFoolWriter;
+import org.github.evenjn.guess.Trainer;
+import org.github.evenjn.guess.TrainingData;
+import org.github.evenjn.guess.benchmark.Benchmark;
+import org.github.evenjn.guess.benchmark.BenchmarkHandicap;
+import org.github.evenjn.guess.benchmark.BenchmarkProblem;
+import org.github.evenjn.guess.benchmark.BenchmarkTrial;
+import org.github.evenjn.guess.benchmark.TupleEqualsEvaluator;
+import org.github.evenjn.guess.m12.TestM12BWPreciseMapleTrainer.M12PreciseMapleReference;
+import org.github.evenjn.guess.m12.baumwelch.M12BaumWelchTrainingPlan;
+import org.github.evenjn.guess.m12.maple.M12ClassicMaple;
+import org.github.evenjn.guess.m12.maple.M12MapleBeam;
+import org.github.evenjn.guess.m12.maple.M12PreciseMaple;
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.lang.ProgressSpawner;
+import org.github.evenjn.lang.Tuple;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the pruning of the maple decoders on the inputs of the benchmark
+ * problems; see {@link M12MapleBeam}.
+ */
+public class TestM12MapleBeamDecoding {
+
+	{
+		Path target = Paths.get( "." ).toAbsolutePath( ).resolve( "target" );
+		FileFoolWriter w = FileFool.w( target );
+
+		Path training_cache =
+				w.create( w.mold( Paths.get( "training_cache" ) ).asDirectory( )
+						.eraseIfExists( ) );
+
+		training_cache_path = w.normalizedAbsolute( training_cache );
+	}
+
+	private static Path training_cache_path;
+
+	/**
+	 * A beam that goes through pruning, but is too wide to prune anything.
+	 */
+	private final static M12MapleBeam open =
+			M12MapleBeam.nu( 1000, Double.MAX_VALUE );
+
+	private final static <K>
+			M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean>
+			getTrainingPlan(
+					TrainingData<K, Tuple<Boolean>, Tuple<Boolean>> training_data ) {
+		M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean> plan =
+				new M12BaumWelchTrainingPlan<>( );
+		plan.setSeed( 43 );
+		plan.setNumberOfStates( 4 );
+		plan.setTrainingTime( 1, 25 );
+		plan.setMinMaxBelow( 0, 2 );
+		plan.setTupleAlignmentAlphabetBuilder(
+				new TupleAlignmentAlphabetGreedyBuilder<Boolean, Boolean>( true ) );
+		plan.setQualityChecker( null );
+		plan.setPrinters(
+				x -> x ? "1" : "0",
+				x -> x ? "1" : "0" );
+		plan.setTrainingData2( training_data );
+		plan.setAboveCoDec( x -> x ? "1" : "0", x -> x.startsWith( "1" ) );
+		plan.setBelowCoDec( x -> x ? "1" : "0", x -> x.startsWith( "1" ) );
+		plan.setProjector( x -> x );
+		return plan;
+	}
+
+	private static void assertSame(
+			Function<Tuple<Boolean>, Tuple<Boolean>> expected,
+			Function<Tuple<Boolean>, Tuple<Boolean>> actual,
+			Tuple<Boolean> input ) {
+		Assert.assertEquals(
+				TestM12BWPreciseMapleTrainer.asList( expected.apply( input ) ),
+				TestM12BWPreciseMapleTrainer.asList( actual.apply( input ) ) );
+	}
+
+	/**
+	 * Returns a trainer whose guesser checks the beams of both maples on each
+	 * input, and returns the output of the exact precise maple.
+	 */
+	private final static Trainer<Tuple<Boolean>, Tuple<Boolean>> trainer(
+			int[] checked ) {
+		M12Fool fool = M12Fool.nu( training_cache_path );
+		Path test_crf_path = Paths.get( "test_m12_beam" );
+		fool.delete( test_crf_path );
+
+		return new Trainer<Tuple<Boolean>, Tuple<Boolean>>( ) {
+
+			@Override
+			public <K> Function<Tuple<Boolean>, Tuple<Boolean>> train(
+					ProgressSpawner progress_spawner,
+					TrainingData<K, Tuple<Boolean>, Tuple<Boolean>> training_data ) {
+				M12BaumWelchTrainingPlan<Tuple<Boolean>, Boolean, Boolean> plan =
+						getTrainingPlan( training_data );
+				Path created = fool.create( test_crf_path, progress_spawner, plan );
+				TupleAlignmentAlphabet<Boolean, Boolean> alphabet =
+						TestM12BWPreciseMapleTrainer.loadAlphabet( created );
+				Markov core = TestM12BWPreciseMapleTrainer.loadCore( created );
+
+				M12PreciseMapleReference<Boolean, Boolean> reference =
+						new M12PreciseMapleReference<>( alphabet, core );
+				M12PreciseMaple<Boolean, Boolean> precise =
+						new M12PreciseMaple<>( alphabet, core );
+				M12ClassicMaple<Boolean, Boolean> classic =
+						new M12ClassicMaple<>( alphabet, core, false, null );
+				M12PreciseMaple<Boolean, Boolean> precise_width =
+						precise.withBeam( M12MapleBeam.width( 1 ) );
+				M12PreciseMaple<Boolean, Boolean> precise_threshold =
+						precise.withBeam( M12MapleBeam.threshold( 0d ) );
+				M12ClassicMaple<Boolean, Boolean> classic_width =
+						classic.withBeam( M12MapleBeam.width( 1 ) );
+				M12ClassicMaple<Boolean, Boolean> classic_threshold =
+						classic.withBeam( M12MapleBeam.threshold( 0d ) );
+				M12PreciseMaple<Boolean, Boolean> precise_open =
+						precise.withBeam( open );
+				M12ClassicMaple<Boolean, Boolean> classic_open =
+						classic.withBeam( open );
+
+				return input -> {
+					/*
+					 * The exact beam decodes as the maple did before pruning existed.
+					 */
+					assertSame( reference, precise, input );
+					/*
+					 * Pruning nothing changes nothing.
+					 */
+					assertSame( precise, precise_open, input );
+					assertSame( classic, classic_open, input );
+					/*
+					 * A width of one keeps the hypotheses tied with the best one, as
+					 * a threshold of zero does. In both cases, the best hypothesis
+					 * survives, so there is always an output.
+					 */
+					assertSame( precise_width, precise_threshold, input );
+					assertSame( classic_width, classic_threshold, input );
+					Assert.assertNotNull( precise_width.apply( input ) );
+					Assert.assertNotNull( classic_width.apply( input ) );
+					checked[0]++;
+					return precise.apply( input );
+				};
+			}
+		};
+	}
+
+	@Test
+	public void testBeams( ) {
+		List<BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>>> problems =
+				Arrays.asList(
+						Benchmark.identity,
+						Benchmark.reverse,
+						Benchmark.zebra,
+						Benchmark.delay_by_one,
+						Benchmark.absorb_and_duplicate );
+		for ( BenchmarkProblem<Tuple<Boolean>, Tuple<Boolean>> problem : problems ) {
+			int[] checked = { 0 };
+			BenchmarkTrial
+					.builder( trainer( checked ), "Maple: M12 beams" )
+					.problem( problem )
+					.evaluator( new TupleEqualsEvaluator<>( ), "equals" )
+					.handicap( new BenchmarkHandicap( true, 20 ) )
+					.build( ).run( null );
+			Assert.assertTrue( checked[0] > 0 );
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.github.evenjn.align.AlignmentElement;
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabet;
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabetDeserializer;
+import org.github.evenjn.guess.m12.aligner.M12Aligner;
+import org.github.evenjn.guess.m12.maple.M12ClassicMaple;
+import org.github.evenjn.guess.m12.maple.M12PreciseMaple;
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.guess.markov.MarkovRandomBuilder;
+import org.github.evenjn.knit.KnittingTuple;
+import org.github.evenjn.lang.Tuple;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Shares one decoder between threads, and checks that each thread obtains the
+ * outputs of sequential decoding.
+ */
+public class TestM12SharedDecoders {
+
+	private final static int number_of_threads = 8;
+
+	private final static int number_of_inputs = 400;
+
+	/**
+	 * An alphabet with every pair of a symbol above and up to two symbols
+	 * below.
+	 */
+	private static TupleAlignmentAlphabet<Boolean, Boolean> alphabet( ) {
+		TupleAlignmentAlphabetDeserializer<Boolean, Boolean> deserializer =
+				new TupleAlignmentAlphabetDeserializer<>( x -> x.equals( "1" ),
+						x -> x.equals( "1" ) );
+		String[] belows = { "", "0", "1", "0,0", "0,1", "1,0", "1,1" };
+		int id = 0;
+		for ( String above : new String[] { "0", "1" } ) {
+			for ( String below : belows ) {
+				deserializer.next( id++ + ";" + above + ";" + below + ";" );
+			}
+		}
+		return deserializer.end( ).get( );
+	}
+
+	private static Markov core( TupleAlignmentAlphabet<Boolean, Boolean> alphabet ) {
+		return MarkovRandomBuilder.nu( )
+				.states( 4 )
+				.symbols( alphabet.size( ) )
+				.seed( 43 )
+				.build( );
+	}
+
+	private static Tuple<Boolean> booleans( Random random, int length ) {
+		List<Boolean> result = new ArrayList<>( length );
+		for ( int j = 0; j < length; j++ ) {
+			result.add( random.nextBoolean( ) );
+		}
+		return KnittingTuple.wrap( result );
+	}
+
+	/**
+	 * Inputs of varying length, so that threads resize their tables while other
+	 * threads decode.
+	 */
+	private static List<Tuple<Boolean>> aboves( ) {
+		Random random = new Random( 43 );
+		List<Tuple<Boolean>> result = new ArrayList<>( number_of_inputs );
+		for ( int i = 0; i < number_of_inputs; i++ ) {
+			result.add( booleans( random, 1 + random.nextInt( 16 ) ) );
+		}
+		return result;
+	}
+
+	private static List<Tuple<Boolean>> belows( List<Tuple<Boolean>> aboves ) {
+		Random random = new Random( 44 );
+		List<Tuple<Boolean>> result = new ArrayList<>( aboves.size( ) );
+		for ( Tuple<Boolean> above : aboves ) {
+			result.add( booleans( random, random.nextInt( 2 * above.size( ) + 1 ) ) );
+		}
+		return result;
+	}
+
+	/**
+	 * Decodes input i with each thread, starting each thread at a different
+	 * input, and checks that every output equals the sequential one.
+	 */
+	private static <O> void assertShared( Function<Integer, O> decoder ) {
+		List<O> expected = new ArrayList<>( number_of_inputs );
+		for ( int i = 0; i < number_of_inputs; i++ ) {
+			expected.add( decoder.apply( i ) );
+		}
+		ExecutorService executor = Executors.newFixedThreadPool( number_of_threads );
+		try {
+			List<Future<List<O>>> futures = new ArrayList<>( );
+			for ( int thread = 0; thread < number_of_threads; thread++ ) {
+				final int start = thread * number_of_inputs / number_of_threads;
+				futures.add( executor.submit( ( ) -> {
+					List<O> decoded = new ArrayList<>( number_of_inputs );
+					for ( int i = 0; i < number_of_inputs; i++ ) {
+						decoded.add( null );
+					}
+					for ( int k = 0; k < number_of_inputs; k++ ) {
+						int i = ( start + k ) % number_of_inputs;
+						decoded.set( i, decoder.apply( i ) );
+					}
+					return decoded;
+				} ) );
+			}
+			for ( Future<List<O>> future : futures ) {
+				Assert.assertEquals( expected, future.get( ) );
+			}
+		}
+		catch ( InterruptedException | ExecutionException e ) {
+			throw new RuntimeException( e );
+		}
+		finally {
+			executor.shutdown( );
+		}
+	}
+
+	private static <T> List<T> asList( Tuple<T> tuple ) {
+		List<T> result = new ArrayList<>( tuple.size( ) );
+		for ( int i = 0; i < tuple.size( ); i++ ) {
+			result.add( tuple.get( i ) );
+		}
+		return result;
+	}
+
+	@Test
+	public void testMaplePrecise( ) {
+		TupleAlignmentAlphabet<Boolean, Boolean> alphabet = alphabet( );
+		M12PreciseMaple<Boolean, Boolean> maple =
+				new M12PreciseMaple<>( alphabet, core( alphabet ) );
+		List<Tuple<Boolean>> aboves = aboves( );
+		assertShared( i -> asList( maple.apply( aboves.get( i ) ) ) );
+	}
+
+	@Test
+	public void testMapleClassic( ) {
+		TupleAlignmentAlphabet<Boolean, Boolean> alphabet = alphabet( );
+		M12ClassicMaple<Boolean, Boolean> maple =
+				new M12ClassicMaple<>( alphabet, core( alphabet ), false, null );
+		List<Tuple<Boolean>> aboves = aboves( );
+		assertShared( i -> asList( maple.apply( aboves.get( i ) ) ) );
+	}
+
+	@Test
+	public void testAligner( ) {
+		TupleAlignmentAlphabet<Boolean, Boolean> alphabet = alphabet( );
+		M12Aligner<Boolean, Boolean> aligner =
+				new M12Aligner<>( alphabet, core( alphabet ) );
+		List<Tuple<Boolean>> aboves = aboves( );
+		List<Tuple<Boolean>> belows = belows( aboves );
+		assertShared( i -> {
+			List<String> result = new ArrayList<>( );
+			for ( AlignmentElement<Integer, Integer> element : asList(
+					aligner.align( aboves.get( i ), belows.get( i ) ) ) ) {
+				result.add( element.front( ) + "/" + element.back( ) );
+			}
+			return result;
+		} );
+	}
+}
@@ -0,0 +1,303 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.baumwelch;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabet;
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabetDeserializer;
+import org.github.evenjn.align.graph.NotAlignableException;
+import org.github.evenjn.align.graph.TupleAlignmentGraph;
+import org.github.evenjn.align.graph.TupleAlignmentGraphFactory;
+import org.github.evenjn.guess.m12.aligner.M12Aligner;
+import org.github.evenjn.guess.m12.libra.M12Libra;
+import org.github.evenjn.guess.m12.maple.M12ClassicMaple;
+import org.github.evenjn.guess.m12.maple.M12ClassicMapleSession;
+import org.github.evenjn.guess.m12.maple.M12PreciseMaple;
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.guess.markov.MarkovRandomBuilder;
+import org.github.evenjn.knit.KnittingTuple;
+import org.github.evenjn.lang.Tuple;
+import org.github.evenjn.numeric.NumericLogarithm;
+
+/**
+ * Runs the expectation step of the Baum-Welch kernels on random alignment
+ * graphs, and displays the number of bytes allocated per edge once the
+ * workspaces have been sized. The expected value is zero.
+ * 
+ * Then runs the decoders on random pairs, and displays the number of bytes
+ * allocated per edge (or per input symbol, for the maples) once their
+ * sessions have been sized. The aligner and the libra build the graph of each
+ * pair, which is measured on its own; the classic maple is measured both on
+ * ids, where nothing but the session is used, and on tuples. On tuples, the
+ * maples are expected to allocate the result only.
+ */
+public class DisplayM12BWAllocations {
+
+	private static final int number_of_states = 4;
+
+	private static final int number_of_symbols = 64;
+
+	private static final int number_of_graphs = 200;
+
+	private static final int repetitions = 20;
+
+	private static long allocatedBytes( ) {
+		return ( (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean( ) ).getThreadAllocatedBytes(
+						Thread.currentThread( ).getId( ) );
+	}
+
+	private static int encode( Tuple<Boolean> above, Tuple<Boolean> below ) {
+		int code = 1;
+		for ( int i = 0; i < above.size( ); i++ ) {
+			code = 2 * code + ( above.get( i ) ? 1 : 0 );
+		}
+		for ( int i = 0; i < below.size( ); i++ ) {
+			code = 2 * code + ( below.get( i ) ? 1 : 0 );
+		}
+		return code % number_of_symbols;
+	}
+
+	private static Tuple<Boolean> random( Random random, int length ) {
+		Boolean[] result = new Boolean[length];
+		for ( int i = 0; i < length; i++ ) {
+			result[i] = random.nextBoolean( );
+		}
+		return KnittingTuple.on( result );
+	}
+
+	private static String run( String label, M12BWKernel kernel,
+			List<TupleAlignmentGraph> graphs, long edges ) {
+		M12BWCounts counts = new M12BWCounts( number_of_states );
+		double[] probability = new double[1];
+		/* Warm up, so that workspaces and counts reach their final size. */
+		for ( TupleAlignmentGraph graph : graphs ) {
+			kernel.expectation( graph, counts, probability );
+		}
+		long before = allocatedBytes( );
+		for ( int r = 0; r < repetitions; r++ ) {
+			for ( TupleAlignmentGraph graph : graphs ) {
+				kernel.expectation( graph, counts, probability );
+			}
+		}
+		long allocated = allocatedBytes( ) - before;
+		return label + "  bytes per edge: "
+				+ ( (double) allocated / ( repetitions * edges ) );
+	}
+
+	/*
+	 * Keeps the results of the decoders alive, so that they are computed.
+	 */
+	private static long sink = 0;
+
+	/**
+	 * Runs the pass a few times to warm up, then displays the bytes allocated
+	 * per unit by each further pass.
+	 */
+	private static String run( String label, String unit, long units,
+			Runnable pass ) {
+		for ( int r = 0; r < repetitions; r++ ) {
+			pass.run( );
+		}
+		long before = allocatedBytes( );
+		for ( int r = 0; r < repetitions; r++ ) {
+			pass.run( );
+		}
+		long allocated = allocatedBytes( ) - before;
+		return label + "  bytes per " + unit + ": "
+				+ ( (double) allocated / ( repetitions * units ) );
+	}
+
+	/**
+	 * An alphabet with every pair of a symbol above and up to two symbols
+	 * below.
+	 */
+	private static TupleAlignmentAlphabet<Boolean, Boolean> alphabet( ) {
+		TupleAlignmentAlphabetDeserializer<Boolean, Boolean> deserializer =
+				new TupleAlignmentAlphabetDeserializer<>( x -> x.equals( "1" ),
+						x -> x.equals( "1" ) );
+		String[] belows = { "", "0", "1", "0,0", "0,1", "1,0", "1,1" };
+		int id = 0;
+		for ( String above : new String[] { "0", "1" } ) {
+			for ( String below : belows ) {
+				deserializer.next( id++ + ";" + above + ";" + below + ";" );
+			}
+		}
+		return deserializer.end( ).get( );
+	}
+
+	private static String runDecoders(
+			List<Tuple<Boolean>> aboves,
+			List<Tuple<Boolean>> belows ) {
+		TupleAlignmentAlphabet<Boolean, Boolean> alphabet = alphabet( );
+		Markov core = MarkovRandomBuilder.nu( )
+				.states( number_of_states )
+				.symbols( alphabet.size( ) )
+				.seed( 44 )
+				.build( );
+		final int pairs = aboves.size( );
+		long symbols = 0;
+		long edges = 0;
+		int max_length = 0;
+		for ( int i = 0; i < pairs; i++ ) {
+			symbols += aboves.get( i ).size( );
+			max_length = Math.max( max_length, aboves.get( i ).size( ) );
+			try {
+				edges += graph( alphabet, aboves.get( i ), belows.get( i ) )
+						.number_of_edges;
+			}
+			catch ( NotAlignableException e ) {
+			}
+		}
+
+		M12ClassicMaple<Boolean, Boolean> classic =
+				new M12ClassicMaple<>( alphabet, core, false, null );
+		M12PreciseMaple<Boolean, Boolean> precise =
+				new M12PreciseMaple<>( alphabet, core );
+		M12Aligner<Boolean, Boolean> aligner = new M12Aligner<>( alphabet, core );
+		M12Libra<Boolean, Boolean> libra = new M12Libra<>( alphabet, core );
+		M12ClassicMapleSession session = new M12ClassicMapleSession( );
+		final int[] ids = new int[max_length];
+		final int[] result = new int[max_length];
+
+		StringBuilder sb = new StringBuilder( );
+		sb.append( "\n" ).append( run( "graph     ", "edge", edges, ( ) -> {
+			for ( int i = 0; i < pairs; i++ ) {
+				try {
+					sink += graph( alphabet, aboves.get( i ), belows.get( i ) )
+							.number_of_edges;
+				}
+				catch ( NotAlignableException e ) {
+				}
+			}
+		} ) );
+		sb.append( "\n" ).append( run( "aligner   ", "edge", edges, ( ) -> {
+			for ( int i = 0; i < pairs; i++ ) {
+				sink += aligner.align( aboves.get( i ), belows.get( i ) ).size( );
+			}
+		} ) );
+		sb.append( "\n" ).append( run( "libra     ", "edge", edges, ( ) -> {
+			for ( int i = 0; i < pairs; i++ ) {
+				sink += (long) libra.weigh( aboves.get( i ), belows.get( i ) );
+			}
+		} ) );
+		sb.append( "\n" ).append( run( "classic   ", "symbol", symbols, ( ) -> {
+			for ( int i = 0; i < pairs; i++ ) {
+				final Tuple<Boolean> above = aboves.get( i );
+				classic.aboveIds( above, ids );
+				classic.mostLikelyBelow( session, ids, above.size( ), result );
+				sink += result[0];
+			}
+		} ) );
+		sb.append( "\n" ).append( run( "classic   (tuples)", "symbol", symbols,
+				( ) -> {
+					for ( int i = 0; i < pairs; i++ ) {
+						sink += classic.apply( aboves.get( i ) ).size( );
+					}
+				} ) );
+		sb.append( "\n" ).append( run( "precise   ", "symbol", symbols, ( ) -> {
+			for ( int i = 0; i < pairs; i++ ) {
+				sink += precise.apply( aboves.get( i ) ).size( );
+			}
+		} ) );
+		return sb.toString( );
+	}
+
+	private static TupleAlignmentGraph graph(
+			TupleAlignmentAlphabet<Boolean, Boolean> alphabet,
+			Tuple<Boolean> above,
+			Tuple<Boolean> below )
+			throws NotAlignableException {
+		return TupleAlignmentGraphFactory.graph(
+				( a, b ) -> alphabet.encode( a, b ),
+				above,
+				below,
+				alphabet.getMinAbove( ),
+				alphabet.getMaxAbove( ),
+				alphabet.getMinBelow( ),
+				alphabet.getMaxBelow( ) );
+	}
+
+	private static String runLogAdd( ) {
+		double sum = NumericLogarithm.smallLogValue;
+		long before = allocatedBytes( );
+		for ( int i = 0; i < 1000000; i++ ) {
+			sum = NumericLogarithm.elnsum2( sum,
+					NumericLogarithm.elnproduct( -i, -1d, -2d ) );
+		}
+		long allocated = allocatedBytes( ) - before;
+		return "elnsum2   bytes per call: " + ( allocated / 1000000d )
+				+ "  ( " + sum + " )";
+	}
+
+	public static void main( String[] args )
+			throws NotAlignableException {
+		Random random = new Random( 43 );
+		List<TupleAlignmentGraph> graphs = new ArrayList<>( );
+		List<Tuple<Boolean>> aboves = new ArrayList<>( );
+		List<Tuple<Boolean>> belows = new ArrayList<>( );
+		int max_length = 0;
+		int max_edges = 0;
+		long edges = 0;
+		while ( graphs.size( ) < number_of_graphs ) {
+			int length = 2 + random.nextInt( 20 );
+			Tuple<Boolean> above = random( random, length );
+			Tuple<Boolean> below =
+					random( random, length + random.nextInt( length ) );
+			try {
+				TupleAlignmentGraph graph = TupleAlignmentGraphFactory.graph(
+						DisplayM12BWAllocations::encode,
+						above,
+						below,
+						1, 1, 0, 2 );
+				graphs.add( graph );
+				aboves.add( above );
+				belows.add( below );
+				edges += graph.number_of_edges;
+				max_edges = Math.max( max_edges, graph.number_of_edges );
+				max_length = Math.max( max_length, 2 * length );
+			}
+			catch ( NotAlignableException e ) {
+			}
+		}
+
+		Markov hmm = MarkovRandomBuilder.nu( )
+				.states( number_of_states )
+				.symbols( number_of_symbols )
+				.seed( 43 )
+				.build( );
+		M12BWLinearModel linear = new M12BWLinearModel( hmm );
+		linear.update( );
+
+		StringBuilder sb = new StringBuilder( );
+		sb.append( "\n" ).append( run( "log       ",
+				new M12BWWorkspace( hmm, max_edges, max_length, max_length ),
+				graphs, edges ) );
+		sb.append( "\n" ).append( run( "scaled    ",
+				new M12BWScaledWorkspace( linear, max_edges, max_length,
+						max_length ),
+				graphs, edges ) );
+		sb.append( "\n" ).append( runLogAdd( ) );
+		sb.append( runDecoders( aboves, belows ) );
+		System.out.println( sb.toString( ) );
+	}
+}
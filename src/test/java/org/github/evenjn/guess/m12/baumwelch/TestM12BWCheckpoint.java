@@ -0,0 +1,133 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.baumwelch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.guess.markov.MarkovRandomBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestM12BWCheckpoint {
+
+	private final Path directory;
+
+	{
+		directory = Paths.get( "." ).toAbsolutePath( ).resolve( "target" )
+				.resolve( "test_m12_bw_checkpoint" );
+		try {
+			Files.createDirectories( directory );
+		}
+		catch ( IOException e ) {
+			throw new RuntimeException( e );
+		}
+	}
+
+	/*
+	 * The emission table alone takes several times the size of the buffer
+	 * used to write and read checkpoints.
+	 */
+	private static Markov model( long seed ) {
+		return MarkovRandomBuilder.nu( ).states( 7 ).symbols( 5000 )
+				.seed( seed ).build( );
+	}
+
+	private static void assertSame( Markov expected, Markov actual ) {
+		Assert.assertArrayEquals( expected.initial_table, actual.initial_table,
+				0d );
+		double[] expected_row = new double[expected.number_of_symbols];
+		double[] actual_row = new double[expected.number_of_symbols];
+		for ( int s = 0; s < expected.number_of_states; s++ ) {
+			Assert.assertArrayEquals( expected.transition_table[s],
+					actual.transition_table[s], 0d );
+			expected.emission.getRow( s, expected_row );
+			actual.emission.getRow( s, actual_row );
+			Assert.assertArrayEquals( expected_row, actual_row, 0d );
+		}
+	}
+
+	@Test
+	public void testRoundTrip( )
+			throws IOException {
+		Path file = directory.resolve( "round_trip.bin" );
+		Markov saved = model( 1 );
+		new M12BWCheckpoint( 77L, 12, 3, 40, -1234.5 ).write( file, saved );
+		Markov loaded = model( 2 );
+		M12BWCheckpoint checkpoint = M12BWCheckpoint.read( file, loaded, 77L );
+		Assert.assertNotNull( checkpoint );
+		Assert.assertEquals( 77L, checkpoint.fingerprint );
+		Assert.assertEquals( 12, checkpoint.epoch );
+		Assert.assertEquals( 3, checkpoint.not_increased_for_n_epochs );
+		Assert.assertEquals( 40, checkpoint.updates );
+		Assert.assertEquals( -1234.5, checkpoint.previous_probability, 0d );
+		assertSame( saved, loaded );
+	}
+
+	@Test
+	public void testCorruptedIsIgnored( )
+			throws IOException {
+		Path file = directory.resolve( "corrupted.bin" );
+		new M12BWCheckpoint( 77L, 12, 3, 40, null ).write( file, model( 1 ) );
+		try ( FileChannel channel =
+				FileChannel.open( file, StandardOpenOption.WRITE ) ) {
+			channel.write( ByteBuffer.wrap( new byte[] { 1, 2, 3 } ),
+					channel.size( ) / 2 );
+		}
+		Markov untouched = model( 2 );
+		Assert.assertNull( M12BWCheckpoint.read( file, untouched, 77L ) );
+		assertSame( model( 2 ), untouched );
+	}
+
+	@Test
+	public void testTruncatedOrMissingIsIgnored( )
+			throws IOException {
+		Path file = directory.resolve( "truncated.bin" );
+		new M12BWCheckpoint( 77L, 12, 3, 40, null ).write( file, model( 1 ) );
+		try ( FileChannel channel =
+				FileChannel.open( file, StandardOpenOption.WRITE ) ) {
+			channel.truncate( channel.size( ) - 1 );
+		}
+		Assert.assertNull( M12BWCheckpoint.read( file, model( 2 ), 77L ) );
+		Assert.assertNull( M12BWCheckpoint.read(
+				directory.resolve( "missing.bin" ), model( 2 ), 77L ) );
+	}
+
+	@Test
+	public void testOtherRunIsIgnored( )
+			throws IOException {
+		Path file = directory.resolve( "other_run.bin" );
+		new M12BWCheckpoint( M12BWCheckpoint.fingerprint( model( 1 ), 100 ), 12, 3,
+				40, null ).write( file, model( 3 ) );
+		Markov untouched = model( 2 );
+		Assert.assertNull( M12BWCheckpoint.read( file, untouched,
+				M12BWCheckpoint.fingerprint( model( 1 ), 101 ) ) );
+		Assert.assertNull( M12BWCheckpoint.read( file, untouched,
+				M12BWCheckpoint.fingerprint( model( 2 ), 100 ) ) );
+		assertSame( model( 2 ), untouched );
+		Assert.assertNotNull( M12BWCheckpoint.read( file, untouched,
+				M12BWCheckpoint.fingerprint( model( 1 ), 100 ) ) );
+		assertSame( model( 3 ), untouched );
+	}
+}
@@ -0,0 +1,187 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.baumwelch;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.github.evenjn.align.graph.TupleAlignmentGraph;
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.guess.markov.MarkovRandomBuilder;
+import org.github.evenjn.numeric.NumericLogarithm;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the scaled kernel computes the same expected counts and
+ * log-likelihood as the log-space kernel.
+ */
+public class TestM12BWKernels {
+
+	/**
+	 * The largest relative difference allowed between the expected counts, and
+	 * the largest absolute difference allowed between the log-likelihoods. Both
+	 * kernels compute the same sums in a different order and scale; on these
+	 * graphs they agree to about 1E-14.
+	 */
+	final static double tolerance = 1E-10;
+
+	final static int max_length_above = 12;
+
+	final static int max_below_per_above = 2;
+
+	/**
+	 * Returns a random graph where each edge consumes one symbol above and from
+	 * zero to max_below_per_above symbols below, labelled with random symbols.
+	 * The kernels do not accept sequences of length 0 or 1, so there are at
+	 * least two symbols above.
+	 */
+	static TupleAlignmentGraph graph(
+			Random random,
+			int number_of_symbols ) {
+		final int la = 2 + random.nextInt( max_length_above - 1 );
+		final int lb = random.nextInt( la * max_below_per_above + 1 );
+		final int max_nodes = ( la + 1 ) * ( lb + 1 );
+		final int max_edges = max_nodes * ( max_below_per_above + 1 );
+		int[][] index = new int[la + 1][lb + 1];
+		for ( int[] row : index ) {
+			Arrays.fill( row, -1 );
+		}
+		int[] node_a = new int[max_nodes];
+		int[] node_b = new int[max_nodes];
+		int[] edge_offset = new int[max_nodes + 1];
+		int[] edge_source = new int[max_edges];
+		int[] edge_symbol = new int[max_edges];
+		int number_of_nodes = 1;
+		int number_of_edges = 0;
+		index[0][0] = 0;
+		for ( int a = 1; a <= la; a++ ) {
+			for ( int b = 0; b <= lb; b++ ) {
+				if ( b > a * max_below_per_above
+						|| lb - b > ( la - a ) * max_below_per_above ) {
+					continue;
+				}
+				final int first_edge = number_of_edges;
+				for ( int y = Math.max( 0, b - max_below_per_above ); y <= b; y++ ) {
+					if ( index[a - 1][y] == -1 ) {
+						continue;
+					}
+					edge_source[number_of_edges] = index[a - 1][y];
+					edge_symbol[number_of_edges] = random.nextInt( number_of_symbols );
+					number_of_edges++;
+				}
+				if ( number_of_edges == first_edge ) {
+					continue;
+				}
+				index[a][b] = number_of_nodes;
+				node_a[number_of_nodes] = a;
+				node_b[number_of_nodes] = b;
+				edge_offset[number_of_nodes] = first_edge;
+				edge_offset[number_of_nodes + 1] = number_of_edges;
+				number_of_nodes++;
+			}
+		}
+		return new TupleAlignmentGraph( la, lb, number_of_nodes, node_a, node_b,
+				edge_offset, number_of_edges, edge_source, edge_symbol );
+	}
+
+	static double emission( M12BWCounts counts, int state, int symbol ) {
+		for ( int row = 0; row < counts.numberOfTouchedSymbols( ); row++ ) {
+			if ( counts.touchedSymbol( row ) == symbol ) {
+				return counts.emission[row * counts.initial.length + state];
+			}
+		}
+		return counts.emissionBase( );
+	}
+
+	/**
+	 * Compares two (logarithms of) counts by the ratio of their values.
+	 */
+	static void assertClose( String what, double expected,
+			double actual ) {
+		if ( expected <= NumericLogarithm.smallLogValue
+				&& actual <= NumericLogarithm.smallLogValue ) {
+			return;
+		}
+		Assert.assertEquals( what, 0d, Math.expm1( actual - expected ),
+				tolerance );
+	}
+
+	private static void check(
+			long seed,
+			int number_of_states,
+			int number_of_symbols,
+			int number_of_graphs ) {
+		Random random = new Random( seed );
+		Markov hmm = MarkovRandomBuilder.nu( ).states( number_of_states )
+				.symbols( number_of_symbols ).seed( seed ).build( );
+		TupleAlignmentGraph[] graphs = new TupleAlignmentGraph[number_of_graphs];
+		int total_number_of_edges = 0;
+		for ( int i = 0; i < number_of_graphs; i++ ) {
+			graphs[i] = graph( random, number_of_symbols );
+			total_number_of_edges =
+					Math.max( total_number_of_edges, graphs[i].number_of_edges );
+		}
+		M12BWLinearModel linear_model = new M12BWLinearModel( hmm );
+		linear_model.update( );
+		M12BWKernel log_kernel = new M12BWWorkspace( hmm, total_number_of_edges,
+				max_length_above, max_length_above * max_below_per_above );
+		M12BWKernel scaled_kernel = new M12BWScaledWorkspace( linear_model,
+				total_number_of_edges, max_length_above,
+				max_length_above * max_below_per_above );
+		M12BWCounts log_counts = new M12BWCounts( number_of_states );
+		M12BWCounts scaled_counts = new M12BWCounts( number_of_states );
+		double[] log_probability = new double[1];
+		double[] scaled_probability = new double[1];
+		for ( int i = 0; i < number_of_graphs; i++ ) {
+			log_kernel.expectation( graphs[i], log_counts, log_probability );
+			scaled_kernel.expectation( graphs[i], scaled_counts,
+					scaled_probability );
+			Assert.assertEquals( "log-likelihood of graph " + i,
+					log_probability[0], scaled_probability[0], tolerance );
+		}
+		for ( int s = 0; s < number_of_states; s++ ) {
+			assertClose( "initial " + s, log_counts.initial[s],
+					scaled_counts.initial[s] );
+			for ( int d = 0; d < number_of_states; d++ ) {
+				assertClose( "transition " + s + " " + d,
+						log_counts.transition[s][d], scaled_counts.transition[s][d] );
+			}
+			for ( int y = 0; y < number_of_symbols; y++ ) {
+				assertClose( "emission " + s + " " + y,
+						emission( log_counts, s, y ),
+						emission( scaled_counts, s, y ) );
+			}
+		}
+	}
+
+	@Test
+	public void testFewStates( ) {
+		check( 1, 2, 5, 200 );
+	}
+
+	@Test
+	public void testManySymbols( ) {
+		check( 2, 5, 40, 200 );
+	}
+
+	@Test
+	public void testManyStates( ) {
+		check( 3, 12, 20, 100 );
+	}
+}
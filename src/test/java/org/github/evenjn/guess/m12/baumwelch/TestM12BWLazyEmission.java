@@ -0,0 +1,108 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.baumwelch;
+
+import java.util.Random;
+
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.guess.markov.MarkovRandomBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the rows brought up to date lazily hold the values obtained by
+ * applying every update to every row, in linear space.
+ */
+public class TestM12BWLazyEmission {
+
+	private final static double tolerance = 1E-12;
+
+	private static void assertRow( Markov hmm, double[][] eager, int y ) {
+		for ( int s = 0; s < hmm.number_of_states; s++ ) {
+			Assert.assertEquals( "state " + s + " symbol " + y, 0d,
+					Math.expm1( hmm.emission.get( s, y ) - Math.log( eager[s][y] ) ),
+					tolerance );
+		}
+	}
+
+	private static void check( long seed, int updates, double exponent ) {
+		final int number_of_states = 3;
+		final int number_of_symbols = 40;
+		Random random = new Random( seed );
+		Markov hmm = MarkovRandomBuilder.nu( ).states( number_of_states )
+				.symbols( number_of_symbols ).seed( seed ).build( );
+		double[][] eager = new double[number_of_states][number_of_symbols];
+		for ( int s = 0; s < number_of_states; s++ ) {
+			for ( int y = 0; y < number_of_symbols; y++ ) {
+				eager[s][y] = Math.exp( hmm.emission.get( s, y ) );
+			}
+		}
+		M12BWLazyEmission lazy = new M12BWLazyEmission( hmm, null );
+		boolean[] touched = new boolean[number_of_symbols];
+		for ( int k = 0; k < updates; k++ ) {
+			final double step = Math.pow( k + 2, -exponent );
+			final double estimate = 1E-6 * random.nextDouble( );
+			/*
+			 * The symbols of a mini-batch are read before the update.
+			 */
+			for ( int y = 0; y < number_of_symbols; y++ ) {
+				touched[y] = random.nextInt( 8 ) == 0;
+				if ( touched[y] ) {
+					lazy.bring( y );
+					assertRow( hmm, eager, y );
+				}
+			}
+			lazy.update( Math.log( 1d - step ), Math.log( step ),
+					Math.log( estimate ) );
+			for ( int y = 0; y < number_of_symbols; y++ ) {
+				for ( int s = 0; s < number_of_states; s++ ) {
+					if ( touched[y] ) {
+						final double counted = random.nextDouble( );
+						eager[s][y] = ( 1d - step ) * eager[s][y] + step * counted;
+						hmm.emission.set( s, y, Math.log( eager[s][y] ) );
+					}
+					else {
+						eager[s][y] = ( 1d - step ) * eager[s][y] + step * estimate;
+					}
+				}
+				if ( touched[y] ) {
+					lazy.written( y );
+				}
+			}
+		}
+		lazy.finish( );
+		for ( int y = 0; y < number_of_symbols; y++ ) {
+			assertRow( hmm, eager, y );
+		}
+	}
+
+	@Test
+	public void testFewUpdates( ) {
+		check( 1, 10, 0.7 );
+	}
+
+	@Test
+	public void testManyUpdates( ) {
+		check( 2, 2000, 0.51 );
+	}
+
+	@Test
+	public void testHarmonicSteps( ) {
+		check( 3, 2000, 1d );
+	}
+}
@@ -0,0 +1,421 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.baumwelch;
+
+import static org.github.evenjn.numeric.NumericLogarithm.elndivision;
+import static org.github.evenjn.numeric.NumericLogarithm.elnproduct;
+import static org.github.evenjn.numeric.NumericLogarithm.elnsum;
+import static org.github.evenjn.numeric.NumericLogarithm.elnsum2;
+
+import java.util.Random;
+
+import org.github.evenjn.align.graph.TupleAlignmentGraph;
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.guess.markov.MarkovRandomBuilder;
+import org.github.evenjn.numeric.NumericLogarithm;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the single sweep of {@link M12BWWorkspace} collects the same
+ * expected counts as the separate walks over the graph it replaced.
+ */
+public class TestM12BWWorkspace {
+
+	/**
+	 * The expectation step as it was computed before the counts were collected
+	 * in a single sweep: a gamma lattice, then one walk over the graph per
+	 * state for the initial counts, one per pair of states for the transition
+	 * counts, and one per state and symbol for the emission counts.
+	 * 
+	 * Lattices are indexed by node, and every sum is computed with
+	 * {@link NumericLogarithm#elnsum(double, double[], int)}.
+	 */
+	static class M12BWReferenceWorkspace implements
+			M12BWKernel {
+
+		private final double[][] alpha;
+
+		private final double[][] message;
+
+		private final double[][] beta;
+
+		private final double[][] gamma;
+
+		private final double[] buffer_states;
+
+		private final double[] buffer_total_edges;
+
+		private final double[][] buffer_transitions;
+
+		private final int number_of_states;
+
+		private final Markov hmm;
+
+		M12BWReferenceWorkspace(
+				Markov hmm,
+				int max_number_of_nodes,
+				int total_number_of_edges) {
+			this.hmm = hmm;
+			number_of_states = hmm.number_of_states;
+			alpha = new double[max_number_of_nodes][number_of_states];
+			message = new double[max_number_of_nodes][number_of_states];
+			beta = new double[max_number_of_nodes][number_of_states];
+			gamma = new double[max_number_of_nodes][number_of_states];
+			buffer_states = new double[number_of_states];
+			buffer_total_edges = new double[1 + total_number_of_edges];
+			buffer_transitions = new double[number_of_states][number_of_states];
+		}
+
+		@Override
+		public void expectation(
+				TupleAlignmentGraph observed,
+				M12BWCounts counts,
+				double[] probability_of_this_graph ) {
+			forward( observed );
+			if ( probability_of_this_graph != null ) {
+				probability_of_this_graph[0] = probabilityOf( observed );
+			}
+			backward( observed );
+			double R = r( observed );
+			gamma( observed, R );
+			initial( observed, counts.initial );
+			transitions( observed, R, counts.transition );
+			emissions( observed, R, counts );
+		}
+
+		private double probabilityOf( TupleAlignmentGraph observed ) {
+			double max = NumericLogarithm.smallLogValue;
+			for ( int s = 0; s < number_of_states; s++ ) {
+				final double v = alpha[observed.last( )][s];
+				if ( max < v ) {
+					max = v;
+				}
+				buffer_states[s] = v;
+			}
+			return elnsum( max, buffer_states, number_of_states );
+		}
+
+		private double r( TupleAlignmentGraph observed ) {
+			final int last = observed.last( );
+			double max = NumericLogarithm.smallLogValue;
+			for ( int s = 0; s < number_of_states; s++ ) {
+				final double v = elnproduct( alpha[last][s], beta[last][s] );
+				buffer_states[s] = v;
+				if ( max < v ) {
+					max = v;
+				}
+			}
+			return elnsum( max, buffer_states, number_of_states );
+		}
+
+		private void forward( TupleAlignmentGraph observed ) {
+			for ( int node = 0; node < observed.number_of_nodes; node++ ) {
+				for ( int s = 0; s < number_of_states; s++ ) {
+					alpha[node][s] = NumericLogarithm.smallLogValue;
+				}
+			}
+			final int last = observed.last( );
+			for ( int node = 1; node <= last; node++ ) {
+				final int first_edge = observed.edge_offset[node];
+				final int edges = observed.edge_offset[node + 1] - first_edge;
+				for ( int destination_s =
+						0; destination_s < number_of_states; destination_s++ ) {
+					double edge_buffer_max = NumericLogarithm.smallLogValue;
+					for ( int edge = 0; edge < edges; edge++ ) {
+						final int source = observed.edge_source[first_edge + edge];
+						final int encoded = observed.edge_symbol[first_edge + edge];
+						double cost;
+						if ( source == 0 ) {
+							cost = hmm.initial_table[destination_s];
+						}
+						else {
+							cost = message[source][destination_s];
+						}
+						cost = elnproduct( cost,
+								hmm.emission.get( destination_s, encoded ) );
+						buffer_total_edges[edge] = cost;
+						if ( edge_buffer_max < cost ) {
+							edge_buffer_max = cost;
+						}
+					}
+					alpha[node][destination_s] =
+							elnsum( edge_buffer_max, buffer_total_edges, edges );
+				}
+				if ( node < last ) {
+					message( node );
+				}
+			}
+		}
+
+		private void message( int node ) {
+			for ( int destination_s =
+					0; destination_s < number_of_states; destination_s++ ) {
+				double max = NumericLogarithm.smallLogValue;
+				for ( int source_s = 0; source_s < number_of_states; source_s++ ) {
+					final double v = elnproduct(
+							alpha[node][source_s],
+							hmm.transition_table[source_s][destination_s] );
+					buffer_states[source_s] = v;
+					if ( max < v ) {
+						max = v;
+					}
+				}
+				message[node][destination_s] =
+						elnsum( max, buffer_states, number_of_states );
+			}
+		}
+
+		private void backward( TupleAlignmentGraph observed ) {
+			final int last = observed.last( );
+			for ( int node = 0; node < observed.number_of_nodes; node++ ) {
+				for ( int s = 0; s < number_of_states; s++ ) {
+					beta[node][s] = NumericLogarithm.smallLogValue;
+				}
+			}
+			for ( int s = 0; s < number_of_states; s++ ) {
+				beta[last][s] = NumericLogarithm.oneLogValue;
+			}
+			for ( int node = last; node > 0; node-- ) {
+				for ( int edge = observed.edge_offset[node]; edge < observed.edge_offset[node
+						+ 1]; edge++ ) {
+					final int source = observed.edge_source[edge];
+					final int encoded = observed.edge_symbol[edge];
+					for ( int source_s = 0; source_s < number_of_states; source_s++ ) {
+						double max = NumericLogarithm.smallLogValue;
+						for ( int destination_s =
+								0; destination_s < number_of_states; destination_s++ ) {
+							final double v = elnproduct(
+									beta[node][destination_s],
+									hmm.transition_table[source_s][destination_s],
+									hmm.emission.get( destination_s, encoded ) );
+							buffer_states[destination_s] = v;
+							if ( max < v ) {
+								max = v;
+							}
+						}
+						final double cost = elnsum( max, buffer_states, number_of_states );
+						beta[source][source_s] = elnsum2( cost, beta[source][source_s] );
+					}
+				}
+			}
+		}
+
+		private void gamma( TupleAlignmentGraph observed, double R ) {
+			for ( int node = 1; node <= observed.last( ); node++ ) {
+				for ( int s = 0; s < number_of_states; s++ ) {
+					gamma[node][s] = elndivision(
+							elnproduct( alpha[node][s], beta[node][s] ), R );
+				}
+			}
+		}
+
+		private void initial(
+				TupleAlignmentGraph observed,
+				double[] new_initial ) {
+			for ( int s = 0; s < number_of_states; s++ ) {
+				double max = new_initial[s];
+				int len = 1;
+				buffer_total_edges[0] = max;
+				for ( int node = 1; node <= observed.last( ); node++ ) {
+					for ( int edge = observed.edge_offset[node]; edge < observed.edge_offset[node
+							+ 1]; edge++ ) {
+						if ( observed.edge_source[edge] == 0 ) {
+							final double v = gamma[node][s];
+							if ( max < v ) {
+								max = v;
+							}
+							buffer_total_edges[len++] = v;
+						}
+					}
+				}
+				new_initial[s] = elnsum( max, buffer_total_edges, len );
+			}
+		}
+
+		private void transitions(
+				TupleAlignmentGraph observed,
+				double R,
+				double[][] new_transition ) {
+			final int last = observed.last( );
+			for ( int s = 0; s < number_of_states; s++ ) {
+				for ( int d = 0; d < number_of_states; d++ ) {
+					double max = NumericLogarithm.smallLogValue;
+					int len = 0;
+					for ( int node = 1; node <= last; node++ ) {
+						for ( int edge = observed.edge_offset[node]; edge < observed.edge_offset[node
+								+ 1]; edge++ ) {
+							final int source = observed.edge_source[edge];
+							final double v = elnproduct(
+									alpha[source][s],
+									hmm.transition_table[s][d],
+									hmm.emission.get( d, observed.edge_symbol[edge] ),
+									beta[node][d] );
+							if ( max < v ) {
+								max = v;
+							}
+							buffer_total_edges[len++] = v;
+						}
+					}
+					buffer_transitions[s][d] =
+							elndivision( elnsum( max, buffer_total_edges, len ), R );
+				}
+			}
+			for ( int s = 0; s < number_of_states; s++ ) {
+				double max = NumericLogarithm.smallLogValue;
+				int len = 0;
+				/* we want to count transitions, so the last node is left out */
+				for ( int node = 1; node < last; node++ ) {
+					final double v = gamma[node][s];
+					if ( max < v ) {
+						max = v;
+					}
+					buffer_total_edges[len++] = v;
+				}
+				final double denominator = elnsum( max, buffer_total_edges, len );
+				for ( int d = 0; d < number_of_states; d++ ) {
+					new_transition[s][d] = elnsum2( new_transition[s][d],
+							elndivision( buffer_transitions[s][d], denominator ) );
+				}
+			}
+		}
+
+		private void emissions(
+				TupleAlignmentGraph observed,
+				double R,
+				M12BWCounts counts ) {
+			final int last = observed.last( );
+			for ( int s = 0; s < number_of_states; s++ ) {
+				int len = 0;
+				double max = NumericLogarithm.smallLogValue;
+				for ( int node = 1; node <= last; node++ ) {
+					final double v = gamma[node][s];
+					if ( max < v ) {
+						max = v;
+					}
+					buffer_total_edges[len++] = v;
+				}
+				final double denominator = elnsum( max, buffer_total_edges, len );
+				for ( Integer e_type : observed.combinations( ) ) {
+					double max_across_all_edges = NumericLogarithm.smallLogValue;
+					len = 0;
+					for ( int node = 1; node <= last; node++ ) {
+						if ( observed.node_a[node] == 0 ) {
+							continue;
+						}
+						for ( int edge = observed.edge_offset[node]; edge < observed.edge_offset[node
+								+ 1]; edge++ ) {
+							if ( observed.edge_symbol[edge] != e_type ) {
+								continue;
+							}
+							final int source = observed.edge_source[edge];
+							final double zeno;
+							if ( source == 0 ) {
+								zeno = hmm.initial_table[s];
+							}
+							else {
+								zeno = message[source][s];
+							}
+							final double cost = elndivision( elnproduct(
+									hmm.emission.get( s, e_type ),
+									zeno,
+									beta[node][s] ), R );
+							if ( max_across_all_edges < cost ) {
+								max_across_all_edges = cost;
+							}
+							buffer_total_edges[len++] = cost;
+						}
+					}
+					final double numerator =
+							elnsum( max_across_all_edges, buffer_total_edges, len );
+					final int offset = counts.touch( e_type );
+					counts.emission[offset + s] = elnsum2(
+							counts.emission[offset + s],
+							elndivision( numerator, denominator ) );
+				}
+			}
+		}
+	}
+
+	private static void check(
+			long seed,
+			int number_of_states,
+			int number_of_symbols,
+			int number_of_graphs ) {
+		Random random = new Random( seed );
+		Markov hmm = MarkovRandomBuilder.nu( ).states( number_of_states )
+				.symbols( number_of_symbols ).seed( seed ).build( );
+		TupleAlignmentGraph[] graphs = new TupleAlignmentGraph[number_of_graphs];
+		int total_number_of_edges = 0;
+		int max_number_of_nodes = 0;
+		for ( int i = 0; i < number_of_graphs; i++ ) {
+			graphs[i] = TestM12BWKernels.graph( random, number_of_symbols );
+			total_number_of_edges =
+					Math.max( total_number_of_edges, graphs[i].number_of_edges );
+			max_number_of_nodes =
+					Math.max( max_number_of_nodes, graphs[i].number_of_nodes );
+		}
+		final int max_length_above = TestM12BWKernels.max_length_above;
+		M12BWKernel fused = new M12BWWorkspace( hmm, total_number_of_edges,
+				max_length_above,
+				max_length_above * TestM12BWKernels.max_below_per_above );
+		M12BWKernel reference = new M12BWReferenceWorkspace( hmm,
+				max_number_of_nodes, total_number_of_edges );
+		M12BWCounts fused_counts = new M12BWCounts( number_of_states );
+		M12BWCounts reference_counts = new M12BWCounts( number_of_states );
+		double[] fused_probability = new double[1];
+		double[] reference_probability = new double[1];
+		for ( int i = 0; i < number_of_graphs; i++ ) {
+			fused.expectation( graphs[i], fused_counts, fused_probability );
+			reference.expectation( graphs[i], reference_counts,
+					reference_probability );
+			Assert.assertEquals( "log-likelihood of graph " + i,
+					reference_probability[0], fused_probability[0],
+					TestM12BWKernels.tolerance );
+		}
+		for ( int s = 0; s < number_of_states; s++ ) {
+			TestM12BWKernels.assertClose( "initial " + s,
+					reference_counts.initial[s], fused_counts.initial[s] );
+			for ( int d = 0; d < number_of_states; d++ ) {
+				TestM12BWKernels.assertClose( "transition " + s + " " + d,
+						reference_counts.transition[s][d],
+						fused_counts.transition[s][d] );
+			}
+			for ( int y = 0; y < number_of_symbols; y++ ) {
+				TestM12BWKernels.assertClose( "emission " + s + " " + y,
+						TestM12BWKernels.emission( reference_counts, s, y ),
+						TestM12BWKernels.emission( fused_counts, s, y ) );
+			}
+		}
+	}
+
+	@Test
+	public void testFewStates( ) {
+		check( 4, 3, 5, 200 );
+	}
+
+	@Test
+	public void testManySymbols( ) {
+		check( 5, 5, 40, 200 );
+	}
+
+	@Test
+	public void testManyStates( ) {
+		check( 6, 20, 20, 100 );
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.maple;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabet;
+import org.github.evenjn.align.alphabet.TupleAlignmentAlphabetDeserializer;
+import org.github.evenjn.guess.markov.Markov;
+import org.github.evenjn.knit.KnittingTuple;
+import org.github.evenjn.lang.Tuple;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A symbol above that has no corresponding symbols below is an inner node of
+ * a tree of symbols. The classic maple predicts its output from the sum, over
+ * its descendants, of the probability of each output.
+ */
+public class TestM12ClassicMapleDescendants {
+
+	/**
+	 * Symbol "a" is the parent of "a1" and "a2".
+	 */
+	private final static BiFunction<Tuple<String>, Tuple<String>, Boolean> descendant_test =
+			( parent, child ) -> !parent.get( 0 ).equals( child.get( 0 ) )
+					&& child.get( 0 ).startsWith( parent.get( 0 ) );
+
+	/**
+	 * Returns the alphabet: a:x (see below), a1:x, a1:y, a2:y, b:z.
+	 * 
+	 * The alphabet has no way to add a symbol above without a symbol below, so
+	 * "a" is added with "x", and then its set of corresponding symbols is
+	 * emptied.
+	 */
+	private static TupleAlignmentAlphabet<String, String> alphabet( ) {
+		TupleAlignmentAlphabetDeserializer<String, String> deserializer =
+				new TupleAlignmentAlphabetDeserializer<>( x -> x, x -> x );
+		String[] lines = {
+				"0;a;x;",
+				"1;a1;x;",
+				"2;a1;y;",
+				"3;a2;y;",
+				"4;b;z;" };
+		for ( String line : lines ) {
+			deserializer.next( line );
+		}
+		TupleAlignmentAlphabet<String, String> result = deserializer.end( ).get( );
+		result.correspondingBelow( KnittingTuple.on( "a" ).asTupleValue( ) )
+				.clear( );
+		return result;
+	}
+
+	/**
+	 * A model with one state. Descendant "a1" prefers "x" (0.4 against 0.3),
+	 * but "y" is more likely for "a" overall: 0.3 from "a1" plus 0.3 from "a2".
+	 */
+	private static Markov core( ) {
+		Markov core = new Markov( 1, 5 );
+		core.initial_table[0] = 0d;
+		core.transition_table[0][0] = 0d;
+		core.emission.setRow( 0, new double[] {
+				Math.log( 0.1 ),
+				Math.log( 0.4 ),
+				Math.log( 0.3 ),
+				Math.log( 0.3 ),
+				Math.log( 1d ) } );
+		return core;
+	}
+
+	private static List<String> decode(
+			M12ClassicMaple<String, String> maple,
+			String... input ) {
+		Tuple<String> output = maple.apply( KnittingTuple.on( input ) );
+		List<String> result = new ArrayList<>( );
+		for ( int i = 0; i < output.size( ); i++ ) {
+			result.add( output.get( i ) );
+		}
+		return result;
+	}
+
+	@Test
+	public void testNonLeafSumsDescendants( ) {
+		M12ClassicMaple<String, String> maple = new M12ClassicMaple<>(
+				alphabet( ), core( ), descendant_test, false, null );
+		List<String> expected = new ArrayList<>( );
+		expected.add( "y" );
+		Assert.assertEquals( expected, decode( maple, "a" ) );
+		expected.add( 0, "z" );
+		Assert.assertEquals( expected, decode( maple, "b", "a" ) );
+	}
+
+	@Test
+	public void testLeavesUnchanged( ) {
+		M12ClassicMaple<String, String> maple = new M12ClassicMaple<>(
+				alphabet( ), core( ), descendant_test, false, null );
+		List<String> expected = new ArrayList<>( );
+		expected.add( "x" );
+		expected.add( "y" );
+		Assert.assertEquals( expected, decode( maple, "a1", "a2" ) );
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testNonLeafWithoutDescendantTest( ) {
+		new M12ClassicMaple<>( alphabet( ), core( ), false, null );
+	}
+}
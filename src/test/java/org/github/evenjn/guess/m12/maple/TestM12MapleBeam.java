@@ -0,0 +1,133 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.m12.maple;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestM12MapleBeam {
+
+	private static int kept( M12MapleBeam beam, double[] scores ) {
+		double cutoff = beam.cutoff( scores, scores.length,
+				new double[scores.length] );
+		int result = 0;
+		for ( double score : scores ) {
+			if ( score >= cutoff ) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testExactKeepsAll( ) {
+		double[] scores = { -3d, -1d, -1d, -2d, -1E300 };
+		Assert.assertEquals( Double.NEGATIVE_INFINITY, M12MapleBeam.exact( )
+				.cutoff( scores, scores.length, new double[scores.length] ), 0d );
+		Assert.assertTrue( M12MapleBeam.nu( 0, Double.POSITIVE_INFINITY )
+				.isExact( ) );
+		Assert.assertEquals( scores.length,
+				kept( M12MapleBeam.width( scores.length ), scores ) );
+	}
+
+	@Test
+	public void testEmpty( ) {
+		Assert.assertEquals( Double.NEGATIVE_INFINITY,
+				M12MapleBeam.width( 1 ).cutoff( new double[0], 0, new double[0] ),
+				0d );
+	}
+
+	@Test
+	public void testWidthKeepsTies( ) {
+		double[] scores = { -3d, -1d, -1d, -2d, -1d };
+		Assert.assertEquals( 3, kept( M12MapleBeam.width( 1 ), scores ) );
+		Assert.assertEquals( 3, kept( M12MapleBeam.width( 2 ), scores ) );
+		Assert.assertEquals( 4, kept( M12MapleBeam.width( 4 ), scores ) );
+	}
+
+	@Test
+	public void testThreshold( ) {
+		double[] scores = { -3d, -1d, -1.5d, -2d, -10d };
+		Assert.assertEquals( 1, kept( M12MapleBeam.threshold( 0d ), scores ) );
+		Assert.assertEquals( 2, kept( M12MapleBeam.threshold( 0.5d ), scores ) );
+		Assert.assertEquals( 4, kept( M12MapleBeam.threshold( 2d ), scores ) );
+	}
+
+	@Test
+	public void testBothBounds( ) {
+		double[] scores = { -3d, -1d, -1.5d, -2d, -10d };
+		Assert.assertEquals( 2, kept( M12MapleBeam.nu( 2, 5d ), scores ) );
+		Assert.assertEquals( 2, kept( M12MapleBeam.nu( 4, 0.5d ), scores ) );
+	}
+
+	/**
+	 * The scores are not modified: cutoff sorts a copy.
+	 */
+	@Test
+	public void testScoresUntouched( ) {
+		double[] scores = { -3d, -1d, -1.5d, -2d };
+		double[] copy = scores.clone( );
+		M12MapleBeam.width( 2 ).cutoff( scores, scores.length,
+				new double[scores.length] );
+		Assert.assertArrayEquals( copy, scores, 0d );
+	}
+
+	/**
+	 * Whatever the bounds, the best hypothesis is kept, and so are the
+	 * hypotheses tied with it.
+	 */
+	@Test
+	public void testBestSurvives( ) {
+		Random random = new Random( 43 );
+		int[] widths = { 0, 1, 2, 5 };
+		double[] thresholds = { 0d, 0.1d, 1d, Double.POSITIVE_INFINITY };
+		for ( int trial = 0; trial < 1000; trial++ ) {
+			int size = 1 + random.nextInt( 20 );
+			double[] scores = new double[size];
+			double best = Double.NEGATIVE_INFINITY;
+			for ( int i = 0; i < size; i++ ) {
+				/*
+				 * Few distinct values, so that ties are common.
+				 */
+				scores[i] = random.nextBoolean( ) ? -random.nextInt( 5 ) : -1E300;
+				best = Math.max( best, scores[i] );
+			}
+			int ties = 0;
+			for ( double score : scores ) {
+				if ( score == best ) {
+					ties++;
+				}
+			}
+			for ( int width : widths ) {
+				for ( double threshold : thresholds ) {
+					M12MapleBeam beam = M12MapleBeam.nu( width, threshold );
+					Assert.assertTrue(
+							best >= beam.cutoff( scores, size, new double[size] ) );
+					Assert.assertTrue( kept( beam, scores ) >= ties );
+				}
+			}
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testNegativeThreshold( ) {
+		M12MapleBeam.threshold( -1d );
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.guess.markov;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.github.evenjn.yarn.EndOfCursorException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMarkovLoader {
+
+	private final Path directory;
+
+	{
+		directory = Paths.get( "." ).toAbsolutePath( ).resolve( "target" )
+				.resolve( "test_markov_loader" );
+		try {
+			Files.createDirectories( directory );
+		}
+		catch ( IOException e ) {
+			throw new RuntimeException( e );
+		}
+	}
+
+	private static Markov model( ) {
+		return MarkovRandomBuilder.nu( ).states( 3 ).symbols( 5 ).seed( 43 )
+				.build( );
+	}
+
+	private static void assertSame( Markov expected, Markov actual ) {
+		Assert.assertArrayEquals( expected.initial_table, actual.initial_table,
+				0d );
+		double[] expected_row = new double[expected.number_of_symbols];
+		double[] actual_row = new double[expected.number_of_symbols];
+		for ( int s = 0; s < expected.number_of_states; s++ ) {
+			Assert.assertArrayEquals( expected.transition_table[s],
+					actual.transition_table[s], 0d );
+			expected.emission.getRow( s, expected_row );
+			actual.emission.getRow( s, actual_row );
+			Assert.assertArrayEquals( expected_row, actual_row, 0d );
+		}
+	}
+
+	private static void writeText( Path file, Markov core )
+			throws IOException {
+		List<String> lines = new ArrayList<>( );
+		MarkovSerializer serializer = new MarkovSerializer( core );
+		try {
+			for ( ;; ) {
+				lines.add( serializer.next( ) );
+			}
+		}
+		catch ( EndOfCursorException e ) {
+			/* done */
+		}
+		Files.write( file, lines );
+	}
+
+	@Test
+	public void testWriteAtomically( )
+			throws IOException {
+		Markov core = model( );
+		Path binary = directory.resolve( "atomic.bin" );
+		MarkovBinary.writeAtomically( binary, core, false );
+		Assert.assertFalse(
+				Files.exists( binary.resolveSibling( "atomic.bin.tmp" ) ) );
+		assertSame( core, MarkovBinary.read( binary ) );
+	}
+
+	@Test
+	public void testMapped( )
+			throws IOException {
+		Markov core = model( );
+		Path binary = directory.resolve( "mapped.bin" );
+		Path text = directory.resolve( "mapped.txt" );
+		MarkovBinary.writeAtomically( binary, core, false );
+		Markov mapped = MarkovLoader.load( binary, text, true );
+		Assert.assertTrue( mapped.emission instanceof MarkovMappedEmission );
+		assertSame( core, mapped );
+	}
+
+	@Test
+	public void testMappedFallbackOnSinglePrecision( )
+			throws IOException {
+		Markov core = MarkovFloatEmission.toSinglePrecision( model( ) );
+		Path binary = directory.resolve( "mapped_float.bin" );
+		Path text = directory.resolve( "mapped_float.txt" );
+		MarkovBinary.writeAtomically( binary, core, true );
+		Markov loaded = MarkovLoader.load( binary, text, true );
+		Assert.assertFalse( loaded.emission instanceof MarkovMappedEmission );
+		double[] expected_row = new double[core.number_of_symbols];
+		double[] actual_row = new double[core.number_of_symbols];
+		for ( int s = 0; s < core.number_of_states; s++ ) {
+			core.emission.getRow( s, expected_row );
+			loaded.emission.getRow( s, actual_row );
+			Assert.assertArrayEquals( expected_row, actual_row, 0d );
+		}
+	}
+
+	@Test
+	public void testFallbackOnTruncatedBinary( )
+			throws IOException {
+		Markov core = model( );
+		Path binary = directory.resolve( "truncated.bin" );
+		Path text = directory.resolve( "truncated.txt" );
+		MarkovBinary.write( binary, core );
+		writeText( text, core );
+		try ( FileChannel channel =
+				FileChannel.open( binary, StandardOpenOption.WRITE ) ) {
+			channel.truncate( channel.size( ) / 2 );
+		}
+		assertSame( core, MarkovLoader.load( binary, text ) );
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ *
+ * Copyright 2017 Marco Trevisan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.github.evenjn.numeric;
+
+import java.util.Random;
+import java.util.function.Function;
+
+import org.github.evenjn.knit.KnittingCursable;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the running sums yield the sums of the buffered summation they
+ * replace, as configured at each place where it was used.
+ */
+@SuppressWarnings( "deprecation" )
+public class TestNumericSums {
+
+	private final static int[] sizes = { 0, 1, 2, 9, 10, 11, 100, 9999, 10000,
+			10001, 25000 };
+
+	private final static double tolerance = 1E-10;
+
+	/*
+	 * The sum of M12BaumWelch and M12LibraQualityChecker.
+	 */
+	private final static Function<Iterable<Double>, Double> elnsum_cursable =
+			x -> NumericLogarithm.elnsum( KnittingCursable.wrap( x ) );
+
+	/**
+	 * Logarithms of probabilities, spread over many orders of magnitude, with
+	 * some zeros.
+	 */
+	private static double[] logValues( Random random, int size ) {
+		double[] result = new double[size];
+		for ( int i = 0; i < size; i++ ) {
+			result[i] = random.nextInt( 10 ) == 0
+					? NumericLogarithm.smallLogValue
+					: -60 * random.nextDouble( );
+		}
+		return result;
+	}
+
+	private static double[] values( Random random, int size ) {
+		double[] result = new double[size];
+		for ( int i = 0; i < size; i++ ) {
+			result[i] = random.nextDouble( );
+		}
+		return result;
+	}
+
+	private static double summation( int buffer_size,
+			Function<Iterable<Double>, Double> sum, double[] values ) {
+		NumericUtils.Summation summation =
+				NumericUtils.summation( buffer_size, sum );
+		for ( double value : values ) {
+			summation.add( value );
+		}
+		return summation.getSum( );
+	}
+
+	private static double logSum( double[] values, int from, int to ) {
+		NumericLogSum sum = new NumericLogSum( );
+		for ( int i = from; i < to; i++ ) {
+			sum.add( values[i] );
+		}
+		return sum.getSum( );
+	}
+
+	private static double compensatedSum( double[] values, int from, int to ) {
+		NumericCompensatedSum sum = new NumericCompensatedSum( );
+		for ( int i = from; i < to; i++ ) {
+			sum.add( values[i] );
+		}
+		return sum.getSum( );
+	}
+
+	@Test
+	public void testLogSumAsBaumWelch( ) {
+		Random random = new Random( 43 );
+		for ( int size : sizes ) {
+			double[] values = logValues( random, size );
+			Assert.assertEquals( summation( 10000, elnsum_cursable, values ),
+					logSum( values, 0, size ), tolerance );
+		}
+	}
+
+	/**
+	 * M12ClassicMaple buffered as many values as there are pairs in the
+	 * alphabet, which is usually far fewer than the values summed.
+	 */
+	@Test
+	public void testLogSumAsClassicMaple( ) {
+		Random random = new Random( 44 );
+		for ( int size : sizes ) {
+			double[] values = logValues( random, size );
+			Assert.assertEquals(
+					summation( 7, NumericLogarithm::elnsumIterable, values ),
+					logSum( values, 0, size ), tolerance );
+		}
+	}
+
+	@Test
+	public void testLogSumOfZeros( ) {
+		double[] values = { NumericLogarithm.smallLogValue,
+				NumericLogarithm.smallLogValue };
+		Assert.assertEquals( summation( 10000, elnsum_cursable, values ),
+				logSum( values, 0, values.length ), 0d );
+		Assert.assertEquals( NumericLogarithm.smallLogValue,
+				logSum( values, 0, 0 ), 0d );
+	}
+
+	@Test
+	public void testCompensatedSumAsMapleEvaluation( ) {
+		Random random = new Random( 45 );
+		for ( int size : sizes ) {
+			double[] values = values( random, size );
+			double expected =
+					summation( 10000, NumericUtils::sumDoubles, values );
+			Assert.assertEquals( expected, compensatedSum( values, 0, size ),
+					tolerance * Math.max( 1d, expected ) );
+		}
+	}
+
+	@Test
+	public void testMerge( ) {
+		Random random = new Random( 46 );
+		for ( int size : sizes ) {
+			double[] log_values = logValues( random, size );
+			double[] values = values( random, size );
+			int half = size / 2;
+			NumericLogSum log_first = new NumericLogSum( );
+			NumericLogSum log_second = new NumericLogSum( );
+			NumericCompensatedSum first = new NumericCompensatedSum( );
+			NumericCompensatedSum second = new NumericCompensatedSum( );
+			for ( int i = 0; i < size; i++ ) {
+				( i < half ? log_first : log_second ).add( log_values[i] );
+				( i < half ? first : second ).add( values[i] );
+			}
+			log_first.merge( log_second );
+			first.merge( second );
+			Assert.assertEquals( logSum( log_values, 0, size ),
+					log_first.getSum( ), tolerance );
+			Assert.assertEquals( compensatedSum( values, 0, size ),
+					first.getSum( ), tolerance * Math.max( 1d, size ) );
+		}
+	}
+
+	@Test
+	public void testReset( ) {
+		NumericLogSum log_sum = new NumericLogSum( );
+		log_sum.add( 3d );
+		log_sum.reset( );
+		log_sum.add( -2d );
+		Assert.assertEquals( -2d, log_sum.getSum( ), 0d );
+		NumericCompensatedSum sum = new NumericCompensatedSum( );
+		sum.add( 3d );
+		sum.reset( );
+		sum.add( -2d );
+		Assert.assertEquals( -2d, sum.getSum( ), 0d );
+	}
+}